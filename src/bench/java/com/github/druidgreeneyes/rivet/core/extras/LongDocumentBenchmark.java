@@ -0,0 +1,65 @@
+package com.github.druidgreeneyes.rivet.core.extras;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+
+/**
+ * Time to rivettize one long document, sequentially and across the common
+ * fork-join pool. Run with
+ *
+ * <pre>
+ * mvn -Dbench=true test-compile exec:exec -Djmh.args="LongDocumentBenchmark"
+ * </pre>
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LongDocumentBenchmark {
+
+  @Param({ "1000", "100000" })
+  public int tokens;
+
+  @Param({ "16000" })
+  public int size;
+
+  @Param({ "16" })
+  public int nnz;
+
+  private String[] words;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    words = new String[tokens];
+    for (int i = 0; i < tokens; i++)
+      words[i] = "word-" + (i * 7919 % 20000);
+  }
+
+  @Benchmark
+  public RIV parallel() {
+    return UntrainedWordsMap.parallelRivAndSumWords(words, size, nnz);
+  }
+
+  @Benchmark
+  public RIV sequential() {
+    return UntrainedWordsMap.rivAndSumWords(words, size, nnz);
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.druidgreeneyes.rivet.core.extras;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+
+/**
+ * Time to rivettize one text by its character shingles, substring by
+ * substring and with the rolling hash. Run with
+ *
+ * <pre>
+ * mvn -Dbench=true test-compile exec:exec -Djmh.args="ShingleBenchmark"
+ * </pre>
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShingleBenchmark {
+
+  @Param({ "100000" })
+  public int chars;
+
+  @Param({ "9" })
+  public int width;
+
+  @Param({ "16000" })
+  public int size;
+
+  @Param({ "16" })
+  public int nnz;
+
+  private String text;
+  private int[] points;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(1);
+    final char[] cs = new char[chars];
+    for (int i = 0; i < chars; i++)
+      cs[i] = random.nextInt(6) == 0
+                                     ? ' '
+                                     : (char) ('a' + random.nextInt(26));
+    text = new String(cs);
+    points = Shingles.findShinglePoints(text, 1, width);
+  }
+
+  @Benchmark
+  public RIV rolling() {
+    return Shingles.rollingRivAndSumShingles(text, points, width, size, nnz);
+  }
+
+  @Benchmark
+  public RIV substrings() {
+    return Shingles.rivAndSumShingles(text, points, width, size, nnz);
+  }
+}
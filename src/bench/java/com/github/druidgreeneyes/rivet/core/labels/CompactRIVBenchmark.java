@@ -0,0 +1,97 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+
+/**
+ * Similarity scans over compact vectors against the same over SparseRIVs and
+ * DenseRIVs, which is what encoding=DOUBLE measures. Each operation compares
+ * one document vector with a table of LEXICON others, so that the table is
+ * too big for the innermost caches, as a lexicon would be. Run with
+ *
+ * <pre>
+ * mvn -Dbench=true test-compile exec:exec -Djmh.args="CompactRIVBenchmark"
+ * </pre>
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompactRIVBenchmark {
+
+  public static final int LEXICON = 4096;
+
+  @Param({ "DOUBLE", "FLOAT", "INT16", "INT8" })
+  public Encoding encoding;
+
+  @Param({ "16000" })
+  public int size;
+
+  @Param({ "16" })
+  public int nnz;
+
+  private RIV query;
+  private RIV[] sparse;
+  private RIV[] dense;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    sparse = new RIV[LEXICON];
+    dense = new RIV[LEXICON / 64];
+    for (int i = 0; i < LEXICON; i++) {
+      final SparseRIV doc = document(i);
+      sparse[i] = encoding == Encoding.DOUBLE
+                                              ? doc
+                                              : new CompactSparseRIV(doc,
+                                                                     encoding);
+      if (i < dense.length)
+        dense[i] = encoding == Encoding.DOUBLE
+                                               ? doc.toDense()
+                                               : new CompactDenseRIV(doc,
+                                                                     encoding);
+    }
+    query = sparse[LEXICON / 2];
+  }
+
+  private SparseRIV document(final int seed) {
+    final SparseRIV doc = SparseRIV.empty(size);
+    for (int w = 0; w < RIVBenchmark.DOC_LENGTH; w++)
+      doc.destructiveAdd(SparseRIV.generate(size, nnz, "word-"
+                                                       + (seed * 7 + w) % 1000));
+    return doc;
+  }
+
+  @Benchmark
+  public double denseScan() {
+    double best = -1;
+    for (final RIV riv : dense)
+      best = Math.max(best, query.similarityTo(riv));
+    return best;
+  }
+
+  @Benchmark
+  public double sparseScan() {
+    double best = -1;
+    for (final RIV riv : sparse)
+      best = Math.max(best, query.similarityTo(riv));
+    return best;
+  }
+}
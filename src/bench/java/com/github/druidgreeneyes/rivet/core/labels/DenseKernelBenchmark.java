@@ -0,0 +1,116 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The scalar DenseKernels against whichever this JVM picked (the Vector API
+ * ones, when the java17 profile built them and the bench JVM was started
+ * with jdk.incubator.vector). Run with
+ *
+ * <pre>
+ * mvn -Dbench=true test-compile exec:exec -Djmh.args="DenseKernelBenchmark"
+ * </pre>
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DenseKernelBenchmark {
+
+  public static final int BLOCK = 64;
+
+  @Param({ "scalar", "best" })
+  public String kernels;
+
+  @Param({ "8000", "16000", "100000" })
+  public int size;
+
+  @Param({ "48" })
+  public int nnz;
+
+  private DenseKernels k;
+  private double[] a;
+  private double[] b;
+  private double[][] block;
+  private int[] keys;
+  private double[] vals;
+  private double[] out;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    k = kernels.equals("scalar")
+                                 ? DenseKernels.SCALAR
+                                 : DenseKernels.INSTANCE;
+    final Random random = new Random(size);
+    a = random.doubles(size)
+              .toArray();
+    b = random.doubles(size)
+              .toArray();
+    block = new double[BLOCK][];
+    for (int r = 0; r < BLOCK; r++)
+      block[r] = random.doubles(size)
+                       .toArray();
+    keys = random.ints(nnz, 0, size)
+                 .toArray();
+    vals = random.doubles(nnz)
+                 .toArray();
+    out = new double[BLOCK];
+  }
+
+  @Benchmark
+  public double[] add() {
+    k.add(a, b, size);
+    return a;
+  }
+
+  @Benchmark
+  public double dot() {
+    return k.dot(a, b, size);
+  }
+
+  @Benchmark
+  public double[] dots() {
+    k.dots(a, block, size, out);
+    return out;
+  }
+
+  @Benchmark
+  public double gather() {
+    return k.gather(a, keys, vals, nnz);
+  }
+
+  @Benchmark
+  public double[] gathers() {
+    k.gathers(keys, vals, nnz, block, out);
+    return out;
+  }
+
+  @Benchmark
+  public double[] scale() {
+    k.scale(a, 1.0000001);
+    return a;
+  }
+
+  @Benchmark
+  public double sumOfSquares() {
+    return k.sumOfSquares(a);
+  }
+}
@@ -0,0 +1,120 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.druidgreeneyes.rivet.core.search.Match;
+import com.github.druidgreeneyes.rivet.core.search.RIVStore;
+
+/**
+ * The example from the README, run end to end against the sample documents in
+ * resources/test/hilbert/data: rivettize every document, then compare every
+ * document against every other. This replaces the old Speed test, which timed
+ * the same thing with System.nanoTime() inside a parallel stream.
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExampleBenchmark {
+
+  private static final Path DATA = Paths.get("resources/test/hilbert/data");
+
+  @Param
+  public RIVType type;
+
+  @Param({ "8000" })
+  public int size;
+
+  @Param({ "4" })
+  public int nnz;
+
+  private String[] documents;
+  private RIV[] rivs;
+  private RIVStore store;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    documents = getDocuments(DATA);
+    rivs = rivettize();
+    store = new RIVStore(rivs);
+  }
+
+  /**
+   * The same question the similarity matrix is usually built to answer
+   * (which document is each document closest to?), asked of a RIVStore.
+   */
+  @Benchmark
+  public Match[][] nearestNeighbours() {
+    final Match[][] res = new Match[store.count()][];
+    for (int id = 0; id < res.length; id++)
+      res[id] = store.nearest(id, 10);
+    return res;
+  }
+
+  @Benchmark
+  public RIV[] rivettize() {
+    final RIV[] res = new RIV[documents.length];
+    for (int d = 0; d < documents.length; d++) {
+      RIV riv = type.empty.apply(size);
+      for (final String word : documents[d].split("\\W+"))
+        riv = type.accumulate(riv,
+                              RIVs.generateRIV(size, nnz, word,
+                                               type.constructor));
+      res[d] = riv;
+    }
+    return res;
+  }
+
+  @Benchmark
+  public double[][] similarities() {
+    final double[][] sims = new double[rivs.length][rivs.length];
+    for (int c = 0; c < rivs.length; c++)
+      for (int i = c + 1; i < rivs.length; i++)
+        sims[c][i] = rivs[c].similarityTo(rivs[i]);
+    return sims;
+  }
+
+  private static String[] getDocuments(final Path path) {
+    try (Stream<Path> files = Files.walk(path, 1)) {
+      return files.filter(p -> !Files.isDirectory(p) && p.toFile()
+                                                         .length() > 50)
+                  .sorted()
+                  .map(ExampleBenchmark::read)
+                  .toArray(String[]::new);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String read(final Path file) {
+    try (Stream<String> lines = Files.lines(file)) {
+      return lines.collect(Collectors.joining(" "));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
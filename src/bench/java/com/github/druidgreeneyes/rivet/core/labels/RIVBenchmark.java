@@ -0,0 +1,185 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+/**
+ * Per-operation throughput for every RIV implementation. Run with
+ *
+ * <pre>
+ * mvn -Dbench=true test-compile exec:exec
+ * </pre>
+ *
+ * and narrow the grid with e.g.
+ * -Djmh.args="-prof gc RIVBenchmark.dot -p type=MAP,MTJ -p size=16000".
+ *
+ * The two operands are "document" vectors, each the sum of DOC_LENGTH
+ * generated word vectors, so that they overlap the way real documents do.
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RIVBenchmark {
+
+  public static final int DOC_LENGTH = 64;
+
+  private static final String[] WORDS = makeWords(DOC_LENGTH * 2);
+
+  @Param
+  public RIVType type;
+
+  @Param({ "8000", "16000", "100000" })
+  public int size;
+
+  @Param({ "4", "16", "48" })
+  public int nnz;
+
+  private RIV[] words;
+  private RIV a;
+  private RIV b;
+  private String aString;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    words = new RIV[WORDS.length];
+    for (int i = 0; i < WORDS.length; i++)
+      words[i] = RIVs.generateRIV(size, nnz, WORDS[i], type.constructor);
+    a = type.empty.apply(size);
+    b = type.empty.apply(size);
+    for (int i = 0; i < DOC_LENGTH; i++) {
+      a = type.accumulate(a, words[i]);
+      b = type.accumulate(b, words[i + DOC_LENGTH / 2]);
+    }
+    aString = a.toString();
+  }
+
+  @Benchmark
+  public RIV generateRIV() {
+    next = (next + 1) % WORDS.length;
+    return RIVs.generateRIV(size, nnz, WORDS[next], type.constructor);
+  }
+
+  @Benchmark
+  public RIV generateRIVSplitMix() {
+    next = (next + 1) % WORDS.length;
+    return RIVs.generateRIV(size, nnz, WORDS[next], type.constructor,
+                            RIVs.Generation.SPLITMIX);
+  }
+
+  /**
+   * Builds one document vector out of DOC_LENGTH word vectors, so the score is
+   * documents per second rather than single adds against an ever-growing
+   * accumulator.
+   */
+  @Benchmark
+  public RIV destructiveAdd() {
+    RIV acc = type.empty.apply(size);
+    for (int i = 0; i < DOC_LENGTH; i++)
+      acc = type.accumulate(acc, words[i]);
+    return acc;
+  }
+
+  /**
+   * The same document as destructiveAdd, summed through a RIVAccumulator.
+   */
+  @Benchmark
+  public RIV accumulator() {
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    for (int i = 0; i < DOC_LENGTH; i++)
+      acc.add(words[i]);
+    return acc.finish(type.constructor);
+  }
+
+  @Benchmark
+  public RIV add() {
+    return a.add(b);
+  }
+
+  /**
+   * The same document as destructiveAdd, summed by one n-ary add().
+   */
+  @Benchmark
+  public RIV addAll() {
+    return type.empty.apply(size)
+                     .add(Arrays.copyOf(words, DOC_LENGTH));
+  }
+
+  @Benchmark
+  public double dot() {
+    return a.dot(b);
+  }
+
+  @Benchmark
+  public double similarityTo() {
+    return a.similarityTo(b);
+  }
+
+  @Benchmark
+  public RIV normalize() {
+    return a.normalize();
+  }
+
+  @Benchmark
+  public String toStringBenchmark() {
+    return a.toString();
+  }
+
+  @Benchmark
+  public RIV fromString() {
+    return type.fromString.apply(aString);
+  }
+
+  @Benchmark
+  public void permute(final PermutationState perms, final Blackhole bh) {
+    bh.consume(a.permute(perms.permutations, 1));
+    bh.consume(a.permute(perms.permutations, -1));
+  }
+
+  @Benchmark
+  public double permutedDot(final PermutationState perms) {
+    return a.permutedDot(b, perms.permutations, 3);
+  }
+
+  /**
+   * Kept separate from the main state so that only the permute benchmark pays
+   * for generating a permutation pair.
+   */
+  @State(Scope.Thread)
+  public static class PermutationState {
+    public Permutations permutations;
+
+    @Setup(Level.Trial)
+    public void setUp(final RIVBenchmark bench) {
+      permutations = Permutations.generate(bench.size);
+    }
+  }
+
+  private static String[] makeWords(final int count) {
+    final String[] words = new String[count];
+    for (int i = 0; i < count; i++)
+      words[i] = "word-" + i;
+    return words;
+  }
+}
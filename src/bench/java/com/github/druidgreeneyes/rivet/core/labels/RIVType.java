@@ -0,0 +1,47 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Every RIV implementation under benchmark, along with the handful of static
+ * entry points the benchmarks need from each. Kept as an enum so that JMH can
+ * use it directly as a @Param.
+ *
+ * @author josh
+ */
+public enum RIVType {
+  ARRAY(ArrayRIV::new, ArrayRIV::new, ArrayRIV::fromString),
+  COLT(ColtRIV::new, ColtRIV::new, ColtRIV::fromString),
+  DENSE(DenseRIV::new, DenseRIV::new, DenseRIV::fromString),
+  HPPC(HPPCRIV::new, HPPCRIV::new, HPPCRIV::fromString),
+  IMMUTABLE(ImmutableRIV::new, ImmutableRIV::new, ImmutableRIV::fromString),
+  KOLO(KoloRIV::new, KoloRIV::new, KoloRIV::fromString),
+  MAP(MapRIV::new, MapRIV::new, MapRIV::fromString),
+  MTJ(MTJRIV::new, MTJRIV::new, MTJRIV::fromString),
+  SPARSE(SparseRIV::new, SparseRIV::new, SparseRIV::fromString);
+
+  public final RIVConstructor constructor;
+  public final IntFunction<RIV> empty;
+  public final Function<String, RIV> fromString;
+
+  RIVType(final RIVConstructor constructor,
+          final IntFunction<RIV> empty,
+          final Function<String, RIV> fromString) {
+    this.constructor = constructor;
+    this.empty = empty;
+    this.fromString = fromString;
+  }
+
+  /**
+   * ImmutableRIV throws on every destructive method, so anything that wants to
+   * accumulate has to go through the non-destructive path instead.
+   *
+   * @return acc + riv, in place if this type allows it
+   */
+  public RIV accumulate(final RIV acc, final RIV riv) {
+    return this == IMMUTABLE
+                             ? acc.add(riv)
+                             : acc.destructiveAdd(riv);
+  }
+}
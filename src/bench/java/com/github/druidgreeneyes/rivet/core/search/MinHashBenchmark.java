@@ -0,0 +1,82 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.druidgreeneyes.rivet.core.extras.Shingles;
+
+/**
+ * Time to sketch one document's character shingles, and to compare two
+ * sketches. Run with
+ *
+ * <pre>
+ * mvn -Dbench=true test-compile exec:exec -Djmh.args="MinHashBenchmark"
+ * </pre>
+ *
+ * @author josh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MinHashBenchmark {
+
+  @Param({ "10000" })
+  public int chars;
+
+  @Param({ "256" })
+  public int hashes;
+
+  @Param({ "false", "true" })
+  public boolean onePermutation;
+
+  @Param({ "8", "64" })
+  public int bits;
+
+  private MinHash hash;
+  private String text;
+  private int[] points;
+  private long[] a;
+  private long[] b;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    hash = new MinHash(hashes, bits, 0, onePermutation);
+    final Random random = new Random(1);
+    final char[] cs = new char[chars];
+    for (int i = 0; i < chars; i++)
+      cs[i] = random.nextInt(6) == 0
+                                     ? ' '
+                                     : (char) ('a' + random.nextInt(26));
+    text = new String(cs);
+    points = Shingles.findShinglePoints(text, 1, 9);
+    a = hash.signature(text, points, 9);
+    final String tail = text.substring(100);
+    b = hash.signature(tail, Shingles.findShinglePoints(tail, 1, 9), 9);
+  }
+
+  @Benchmark
+  public double estimate() {
+    return hash.estimateJaccard(a, b);
+  }
+
+  @Benchmark
+  public long[] sketch() {
+    return hash.signature(text, points, 9);
+  }
+}
@@ -11,6 +11,7 @@ import com.github.druidgreeneyes.rivet.core.labels.DenseRIV;
 import com.github.druidgreeneyes.rivet.core.labels.HPPCRIV;
 import com.github.druidgreeneyes.rivet.core.labels.MTJRIV;
 import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
 
 public class SOLR {
   public static MTJRIV mtjRIVFromCollections(final Collection<Object> indices,
@@ -80,4 +81,16 @@ public class SOLR {
     return new ArrayRIV(ArrayUtils.toPrimitive(is),
                         ArrayUtils.toPrimitive(vs), size);
   }
+
+  public static SparseRIV sparseRIVFromCollections(
+                                                   final Collection<Object> indices,
+                                                   final Collection<Object> values,
+                                                   final int size) {
+    final SparseRIV res = SparseRIV.empty(size);
+    final Iterator<Object> is = indices.iterator();
+    final Iterator<Object> vs = values.iterator();
+    while (is.hasNext() && vs.hasNext())
+      res.put((int) is.next(), (double) vs.next());
+    return res;
+  }
 }
@@ -0,0 +1,419 @@
+package com.github.druidgreeneyes.rivet.core.extras;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+import com.github.druidgreeneyes.rivet.core.lexicon.IndexVectorCache;
+
+/**
+ * Turns a stream of documents into a stream of document vectors, for corpora
+ * too big to hold as Strings and RIV[]s. One thread reads documents from the
+ * source, a number of workers tokenize them on whitespace and sum their
+ * words' index vectors, and the results come out of the returned Stream as
+ * they're finished. The queues between the stages are bounded, so a slow
+ * consumer stalls the workers and the reader rather than letting documents
+ * pile up in memory.
+ *
+ * Documents come out roughly, but not exactly, in the order they went in;
+ * each carries the ordinal of its source document. Close the returned stream
+ * (or use it in try-with-resources) to stop the pipeline early; a failure in
+ * any stage, Errors included, is rethrown to the consumer.
+ *
+ * The counters describe the most recent run, and can be polled while it's
+ * going.
+ *
+ * @author josh
+ */
+public final class DocumentPipeline {
+
+  private static final Object END = new Object();
+
+  private final int size;
+  private final Function<CharSequence, RIV> indexVectors;
+  private final int parallelism;
+  private final int queueCapacity;
+
+  private final LongAdder documents = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private final LongAdder chars = new LongAdder();
+  private volatile long started;
+  private volatile long finished;
+  private volatile Run current;
+
+  /**
+   * A pipeline with a worker per processor, generating index vectors as it
+   * goes.
+   */
+  public DocumentPipeline(final int size, final int nnz) {
+    this(size, RIVs.generator(size, nnz, SparseRIV::new),
+         Runtime.getRuntime()
+                .availableProcessors(),
+         1024);
+  }
+
+  public DocumentPipeline(final IndexVectorCache cache, final int parallelism,
+                          final int queueCapacity) {
+    this(cache.size(), cache::get, parallelism, queueCapacity);
+  }
+
+  /**
+   * @param indexVectors
+   *          : gives the index vector for a token; called concurrently
+   * @param parallelism
+   *          : the number of worker threads
+   * @param queueCapacity
+   *          : how many documents may wait between the reader and the
+   *          workers, and between the workers and the consumer
+   */
+  public DocumentPipeline(final int size,
+                          final Function<CharSequence, RIV> indexVectors,
+                          final int parallelism, final int queueCapacity) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive: "
+                                         + parallelism);
+    if (queueCapacity < 1)
+      throw new IllegalArgumentException("queueCapacity must be positive: "
+                                         + queueCapacity);
+    this.size = size;
+    this.indexVectors = indexVectors;
+    this.parallelism = parallelism;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * A document's ordinal in the source, and its vector.
+   */
+  public static final class Document {
+    private final long id;
+    private final RIV riv;
+
+    Document(final long id, final RIV riv) {
+      this.id = id;
+      this.riv = riv;
+    }
+
+    public long id() {
+      return id;
+    }
+
+    public RIV riv() {
+      return riv;
+    }
+
+    @Override
+    public String toString() {
+      return id + ": " + riv;
+    }
+  }
+
+  private static final class Task {
+    final long id;
+    final String text;
+
+    Task(final long id, final String text) {
+      this.id = id;
+      this.text = text;
+    }
+  }
+
+  private static final class Failure {
+    final Throwable cause;
+
+    Failure(final Throwable cause) {
+      this.cause = cause;
+    }
+
+    /**
+     * Unchecked exceptions and Errors go to the consumer as they are;
+     * anything else is wrapped.
+     */
+    RuntimeException rethrow() {
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IllegalStateException("Pipeline stage failed.", cause);
+    }
+  }
+
+  /**
+   * One pass over a source: the queues, the threads, and the consumer's end
+   * of the output queue.
+   */
+  private final class Run implements Iterator<Document> {
+    final Stream<String> source;
+    final ArrayBlockingQueue<Object> in = new ArrayBlockingQueue<>(queueCapacity);
+    final ArrayBlockingQueue<Object> out = new ArrayBlockingQueue<>(queueCapacity);
+    final Thread[] threads = new Thread[parallelism + 1];
+    int ended = 0;
+    Document next;
+
+    Run(final Stream<String> source) {
+      this.source = source;
+      threads[0] = new Thread(this::read, "rivet-pipeline-reader");
+      for (int i = 1; i <= parallelism; i++)
+        threads[i] = new Thread(this::work, "rivet-pipeline-worker-" + i);
+      for (final Thread t : threads) {
+        t.setDaemon(true);
+        t.start();
+      }
+    }
+
+    void close() {
+      for (final Thread t : threads)
+        t.interrupt();
+      source.close();
+    }
+
+    void fail(final Throwable e) {
+      try {
+        out.put(new Failure(e));
+      } catch (final InterruptedException ie) {
+        // the consumer has gone
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (ended == parallelism)
+          return false;
+        final Object o;
+        try {
+          o = out.take();
+        } catch (final InterruptedException e) {
+          Thread.currentThread()
+                .interrupt();
+          close();
+          throw new IllegalStateException("Interrupted waiting for documents.",
+                                          e);
+        }
+        if (o == END) {
+          if (++ended == parallelism)
+            finished = System.nanoTime();
+        } else if (o instanceof Failure) {
+          close();
+          throw ((Failure) o).rethrow();
+        } else
+          next = (Document) o;
+      }
+      return true;
+    }
+
+    @Override
+    public Document next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      final Document res = next;
+      next = null;
+      return res;
+    }
+
+    void read() {
+      try {
+        long id = 0;
+        for (final Iterator<String> it = source.iterator(); it.hasNext();)
+          in.put(new Task(id++, it.next()));
+        for (int i = 0; i < parallelism; i++)
+          in.put(END);
+      } catch (final InterruptedException e) {
+        return;
+      } catch (final Throwable e) {
+        // Errors too, or the consumer would wait forever for this thread
+        fail(e);
+      }
+    }
+
+    void work() {
+      final double[] sums = new double[size];
+      final BitSet touched = new BitSet(size);
+      try {
+        for (Object o = in.take(); o != END; o = in.take()) {
+          final Task task = (Task) o;
+          out.put(new Document(task.id, rivettize(task.text, sums, touched)));
+        }
+        out.put(END);
+      } catch (final InterruptedException e) {
+        return;
+      } catch (final Throwable e) {
+        // Errors too, or the consumer would wait forever for this thread
+        fail(e);
+      }
+    }
+  }
+
+  /**
+   * @return the number of characters read in the most recent run
+   */
+  public long charCount() {
+    return chars.sum();
+  }
+
+  /**
+   * @return the number of documents finished in the most recent run
+   */
+  public long documentCount() {
+    return documents.sum();
+  }
+
+  public double documentsPerSecond() {
+    return perSecond(documents.sum());
+  }
+
+  /**
+   * @return how long the most recent run took, or has taken so far
+   */
+  public long elapsedNanos() {
+    if (started == 0)
+      return 0;
+    return (finished == 0
+                          ? System.nanoTime()
+                          : finished)
+           - started;
+  }
+
+  /**
+   * @return the number of documents waiting for a worker
+   */
+  public int inputBacklog() {
+    final Run run = current;
+    return run == null
+                       ? 0
+                       : run.in.size();
+  }
+
+  /**
+   * @return the number of finished documents waiting for the consumer
+   */
+  public int outputBacklog() {
+    final Run run = current;
+    return run == null
+                       ? 0
+                       : run.out.size();
+  }
+
+  private double perSecond(final long count) {
+    final long nanos = elapsedNanos();
+    return nanos == 0
+                      ? 0
+                      : count * 1e9 / nanos;
+  }
+
+  /**
+   * Rivettizes each line of the file at path, read as UTF-8, as one document.
+   */
+  public Stream<Document> rivettize(final Path path) {
+    try {
+      return rivettize(Files.lines(path, StandardCharsets.UTF_8));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Rivettizes each line read from reader as one document. Closing the
+   * returned stream closes reader.
+   */
+  public Stream<Document> rivettize(final Reader reader) {
+    final BufferedReader buffered = reader instanceof BufferedReader
+                                                                     ? (BufferedReader) reader
+                                                                     : new BufferedReader(reader);
+    return rivettize(buffered.lines()
+                             .onClose(() -> {
+                               try {
+                                 buffered.close();
+                               } catch (final IOException e) {
+                                 throw new UncheckedIOException(e);
+                               }
+                             }));
+  }
+
+  /**
+   * Rivettizes each of documents. They're read from another thread; closing
+   * the returned stream closes documents.
+   */
+  public Stream<Document> rivettize(final Stream<String> documents) {
+    this.documents.reset();
+    tokens.reset();
+    chars.reset();
+    finished = 0;
+    started = System.nanoTime();
+    final Run run = new Run(documents);
+    current = run;
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(run,
+                                                                    Spliterator.NONNULL),
+                                false)
+                        .onClose(run::close);
+  }
+
+  /**
+   * Sums the index vectors of text's whitespace-separated tokens into sums,
+   * noting which indices it touches, then copies them out into a sorted
+   * SparseRIV and zeroes them again.
+   */
+  private RIV rivettize(final String text, final double[] sums,
+                        final BitSet touched) {
+    final int n = text.length();
+    int words = 0;
+    for (int i = 0; i < n;) {
+      while (i < n && Character.isWhitespace(text.charAt(i)))
+        i++;
+      final int start = i;
+      while (i < n && !Character.isWhitespace(text.charAt(i)))
+        i++;
+      if (start < i) {
+        indexVectors.apply(text.subSequence(start, i))
+                    .forEachNZ((k, v) -> {
+                      sums[k] += v;
+                      touched.set(k);
+                    });
+        words++;
+      }
+    }
+    final int[] keys = new int[touched.cardinality()];
+    final double[] vals = new double[keys.length];
+    int c = 0;
+    for (int k = touched.nextSetBit(0); k >= 0; k = touched.nextSetBit(k + 1)) {
+      if (sums[k] != 0) {
+        keys[c] = k;
+        vals[c++] = sums[k];
+      }
+      sums[k] = 0;
+    }
+    touched.clear();
+    documents.increment();
+    tokens.add(words);
+    chars.add(n);
+    return new SparseRIV(Arrays.copyOf(keys, c), Arrays.copyOf(vals, c), size);
+  }
+
+  /**
+   * @return the number of tokens read in the most recent run
+   */
+  public long tokenCount() {
+    return tokens.sum();
+  }
+
+  public double tokensPerSecond() {
+    return perSecond(tokens.sum());
+  }
+}
@@ -4,6 +4,9 @@ import java.util.Arrays;
 
 import com.github.druidgreeneyes.rivet.core.exceptions.ShingleInfection;
 import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVAccumulator;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+import com.github.druidgreeneyes.rivet.core.util.RollingHash;
 import com.github.druidgreeneyes.rivet.core.util.Util;
 
 public final class Shingles {
@@ -25,20 +28,69 @@ public final class Shingles {
                              .toArray();
   }
 
+  /**
+   * Like rivAndSumShingles, but a long text is split across the common
+   * fork-join pool; see RIVAccumulator.parallelSum.
+   */
+  public static MapRIV parallelRivAndSumShingles(final String text,
+                                                 final int[] shinglePoints,
+                                                 final int width,
+                                                 final int size,
+                                                 final int k) {
+    return (MapRIV) RIVAccumulator.parallelSum(size, MapRIV::new,
+                                               shinglePoints.length,
+                                               i -> SparseRIV.generate(size,
+                                                                       k,
+                                                                       text,
+                                                                       shinglePoints[i],
+                                                                       width));
+  }
+
+  public static MapRIV parallelRivettizeText(final String text,
+                                             final int width,
+                                             final int offset,
+                                             final int size,
+                                             final int k)
+                                                          throws ShingleInfection {
+    final int[] points = findShinglePoints(text, offset, width);
+    return parallelRivAndSumShingles(text, points, width, size, k);
+  }
+
   public static MapRIV rivAndSumShingles(final String text,
                                          final int[] shinglePoints,
                                          final int width,
                                          final int size,
                                          final int k) {
-    return Arrays.stream(shinglePoints)
-                 .boxed()
-                 .reduce(new MapRIV(size),
-                         (riv, point) -> riv.destructiveAdd(MapRIV.generate(size,
-                                                                            k,
-                                                                            text,
-                                                                            point,
-                                                                            width)),
-                         (rivA, rivB) -> rivA.destructiveAdd(rivB));
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    for (final int point : shinglePoints)
+      acc.add(SparseRIV.generate(size, k, text, point, width));
+    return (MapRIV) acc.finish(MapRIV::new);
+  }
+
+  /**
+   * Like rivAndSumShingles, but with ROLLING index vectors, seeded in one pass
+   * over the text and added without being built; see RollingHash. Nothing is
+   * allocated per shingle, so it suits texts of many megabytes.
+   */
+  public static MapRIV rollingRivAndSumShingles(final String text,
+                                                final int[] shinglePoints,
+                                                final int width,
+                                                final int size,
+                                                final int k) {
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    RollingHash.forEachSeed(text, shinglePoints, width,
+                            seed -> acc.addGenerated(seed, k));
+    return (MapRIV) acc.finish(MapRIV::new);
+  }
+
+  public static MapRIV rollingRivettizeText(final String text,
+                                            final int width,
+                                            final int offset,
+                                            final int size,
+                                            final int k)
+                                                         throws ShingleInfection {
+    final int[] points = findShinglePoints(text, offset, width);
+    return rollingRivAndSumShingles(text, points, width, size, k);
   }
 
   public static MapRIV rivettizeText(final String text,
@@ -66,8 +118,6 @@ public final class Shingles {
   }
 
   public static MapRIV sumRIVs(final MapRIV[] rivs) {
-    return Arrays.stream(rivs)
-                 .reduce(new MapRIV(rivs[0].size()),
-                         (i, r) -> i.destructiveAdd(r));
+    return (MapRIV) RIVAccumulator.sum(MapRIV::new, rivs);
   }
 }
\ No newline at end of file
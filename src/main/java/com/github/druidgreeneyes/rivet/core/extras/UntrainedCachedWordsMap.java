@@ -6,7 +6,9 @@ import java.util.stream.IntStream;
 
 import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
 import com.github.druidgreeneyes.rivet.core.labels.RIV;
-import com.github.druidgreeneyes.rivet.core.labels.RIVs;
+import com.github.druidgreeneyes.rivet.core.labels.RIVAccumulator;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+import com.github.druidgreeneyes.rivet.core.lexicon.IndexVectorCache;
 
 public final class UntrainedCachedWordsMap {
   private UntrainedCachedWordsMap() {}
@@ -19,6 +21,22 @@ public final class UntrainedCachedWordsMap {
     return sumMapRIVs(rivAndCacheWords(cache, tokenizeText(text), size, k));
   }
 
+  /**
+   * Like the ConcurrentHashMap version, but the cache is bounded, so an open
+   * vocabulary can't grow it without limit.
+   */
+  public static RIV cacheingRivettizeText(final IndexVectorCache cache,
+                                          final String text) {
+    return sumMapRIVs(rivAndCacheWords(cache, tokenizeText(text)));
+  }
+
+  public static RIV[] rivAndCacheWords(final IndexVectorCache cache,
+                                       final String[] words) {
+    return Arrays.stream(words)
+                 .map(cache::get)
+                 .toArray(RIV[]::new);
+  }
+
   public static RIV[]
          rivAndCacheWords(final ConcurrentHashMap<String, RIV> cache,
                           final String[] words,
@@ -36,12 +54,23 @@ public final class UntrainedCachedWordsMap {
 
   }
 
+  /**
+   * Like rivAndSumWords, but a long document is split across the common
+   * fork-join pool; see RIVAccumulator.parallelSum.
+   */
+  public static RIV parallelRivAndSumWords(final String[] words,
+                                           final int size, final int nnz) {
+    return RIVAccumulator.parallelSum(size, MapRIV::new, words.length,
+                                      i -> SparseRIV.generate(size, nnz,
+                                                              words[i]));
+  }
+
   public static RIV rivAndSumWords(final String[] words, final int size,
                                    final int nnz) {
-    return Arrays.stream(words)
-                 .map(RIVs.generator(size, nnz, MapRIV::new))
-                 .reduce(new MapRIV(size),
-                         (i, r) -> i.destructiveAdd(r));
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    for (final String word : words)
+      acc.add(SparseRIV.generate(size, nnz, word));
+    return acc.finish(MapRIV::new);
   }
 
   public static RIV rivettizeText(final String text, final int size,
@@ -60,8 +89,7 @@ public final class UntrainedCachedWordsMap {
   }
 
   public static RIV sumMapRIVs(final RIV[] rivs) {
-    return Arrays.stream(rivs).reduce(new MapRIV(rivs[0].size()),
-                                      (i, r) -> i.destructiveAdd(r));
+    return RIVAccumulator.sum(MapRIV::new, rivs);
   }
 
   public static String[] tokenizeText(final String text) {
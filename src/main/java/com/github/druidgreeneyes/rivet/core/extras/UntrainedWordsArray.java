@@ -1,23 +1,40 @@
 package com.github.druidgreeneyes.rivet.core.extras;
 
-import static java.util.Arrays.stream;
-
 import com.github.druidgreeneyes.rivet.core.labels.ArrayRIV;
 import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVAccumulator;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
 
 public final class UntrainedWordsArray {
 
   private UntrainedWordsArray() {
   }
 
+  /**
+   * Like rivAndSumWords, but a long document is split across the common
+   * fork-join pool; see RIVAccumulator.parallelSum.
+   */
+  public static RIV parallelRivAndSumWords(final String[] words,
+                                           final int size,
+                                           final int k) {
+    return RIVAccumulator.parallelSum(size, ArrayRIV::new, words.length,
+                                      i -> SparseRIV.generate(size, k,
+                                                              words[i]));
+  }
+
+  public static RIV parallelRivettizeText(final String text,
+                                          final int size,
+                                          final int k) {
+    return parallelRivAndSumWords(tokenizeText(text), size, k);
+  }
+
   public static RIV rivAndSumWords(final String[] words,
                                    final int size,
                                    final int k) {
-    return stream(words).reduce(new ArrayRIV(size),
-                                (identity, word) -> identity.destructiveAdd(ArrayRIV.generate(size,
-                                                                                              k,
-                                                                                              word)),
-                                (a, b) -> a.destructiveAdd(b));
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    for (final String word : words)
+      acc.add(SparseRIV.generate(size, k, word));
+    return acc.finish(ArrayRIV::new);
   }
 
   public static RIV rivettizeText(final String text,
@@ -38,8 +55,7 @@ public final class UntrainedWordsArray {
   }
 
   public static RIV sumArrayRIVs(final ArrayRIV[] rivs) {
-    return stream(rivs).reduce(new ArrayRIV(rivs[0].size()),
-                               (i, r) -> i.destructiveAdd(r));
+    return RIVAccumulator.sum(ArrayRIV::new, rivs);
   }
 
   public static String[] tokenizeText(final String text) {
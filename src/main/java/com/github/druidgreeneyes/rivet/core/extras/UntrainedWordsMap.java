@@ -1,25 +1,40 @@
 package com.github.druidgreeneyes.rivet.core.extras;
 
-import java.util.Arrays;
-
 import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
 import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVAccumulator;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
 
 public final class UntrainedWordsMap {
 
   private UntrainedWordsMap() {
   }
 
+  /**
+   * Like rivAndSumWords, but a long document is split across the common
+   * fork-join pool; see RIVAccumulator.parallelSum.
+   */
+  public static RIV parallelRivAndSumWords(final String[] words,
+                                           final int size,
+                                           final int k) {
+    return RIVAccumulator.parallelSum(size, MapRIV::new, words.length,
+                                      i -> SparseRIV.generate(size, k,
+                                                              words[i]));
+  }
+
+  public static RIV parallelRivettizeText(final String text,
+                                          final int size,
+                                          final int k) {
+    return parallelRivAndSumWords(tokenizeText(text), size, k);
+  }
+
   public static RIV rivAndSumWords(final String[] words,
                                    final int size,
                                    final int k) {
-    return Arrays.stream(words)
-                 .reduce(new MapRIV(size),
-                         (identity,
-                          word) -> identity.destructiveAdd(MapRIV.generate(size,
-                                                                           k,
-                                                                           word)),
-                         (a, b) -> a.destructiveAdd(b));
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    for (final String word : words)
+      acc.add(SparseRIV.generate(size, k, word));
+    return acc.finish(MapRIV::new);
   }
 
   public static RIV rivettizeText(final String text,
@@ -40,9 +55,7 @@ public final class UntrainedWordsMap {
   }
 
   public static RIV sumMapRIVs(final RIV[] rivs) {
-    return Arrays.stream(rivs)
-                 .reduce(new MapRIV(rivs[0].size()),
-                         (i, r) -> i.destructiveAdd(r));
+    return RIVAccumulator.sum(MapRIV::new, rivs);
   }
 
   public static String[] tokenizeText(final String text) {
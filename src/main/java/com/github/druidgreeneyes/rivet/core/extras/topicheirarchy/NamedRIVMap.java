@@ -5,6 +5,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.github.druidgreeneyes.rivet.core.labels.ArrayRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVAccumulator;
 
 public class NamedRIVMap extends HashMap<String, ArrayRIV> {
     /**
@@ -39,7 +40,7 @@ public class NamedRIVMap extends HashMap<String, ArrayRIV> {
     }
 
     public ArrayRIV meanVector() {
-        return stream().reduce(new ArrayRIV(size), ArrayRIV::destructiveAdd);
+        return (ArrayRIV) RIVAccumulator.sum(size, ArrayRIV::new, values());
     }
 
     public String name() {
@@ -1,9 +1,11 @@
 package com.github.druidgreeneyes.rivet.core.extras.topicheirarchy;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.github.druidgreeneyes.rivet.core.labels.ArrayRIV;
 import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.search.HNSWIndex;
 
 public class RIVTopicHeirarchy {
 
@@ -15,12 +17,16 @@ public class RIVTopicHeirarchy {
     if (!point.hasChildren())
       return nodes;
     else {
-      final RIVTopicHeirarchy next = point.children.stream()
-                                                   .reduce(point,
-                                                           (i,
-                                                            node) -> riv.similarityTo(i.topic.meanVector()) > riv.similarityTo(node.topic.meanVector())
-                                                                                                                                                        ? i
-                                                                                                                                                        : node);
+      // each mean vector is a sum over the whole topic, so build it only once
+      RIVTopicHeirarchy next = point;
+      double best = riv.similarityTo(point.topic.meanVector());
+      for (final RIVTopicHeirarchy child : point.children) {
+        final double sim = riv.similarityTo(child.topic.meanVector());
+        if (sim >= best) {
+          best = sim;
+          next = child;
+        }
+      }
       if (next == point)
         return nodes;
       else
@@ -70,6 +76,14 @@ public class RIVTopicHeirarchy {
   private ArrayList<RIVTopicHeirarchy> children;
   final double similarityThreshold;
 
+  /**
+   * Kept on the root only: an ANN index over the mean vectors of every topic
+   * in the tree, and the topic behind each id. Built on demand by
+   * nearestTopics() and dropped whenever anything is grafted or pruned.
+   */
+  private HNSWIndex topicIndex;
+  private RIVTopicHeirarchy[] indexedTopics;
+
   private RIVTopicHeirarchy(final NamedRIVMap t, final double s) {
     this(t, null, s);
   }
@@ -117,7 +131,14 @@ public class RIVTopicHeirarchy {
     return findRoot(this);
   }
 
+  private void collect(final ArrayList<RIVTopicHeirarchy> nodes) {
+    nodes.add(this);
+    for (final RIVTopicHeirarchy child : children)
+      child.collect(nodes);
+  }
+
   public void graftNew(final NamedRIV riv) {
+    invalidateIndex();
     final RIVTopicHeirarchy point = find(riv.riv());
     if (riv.riv().similarityTo(point.topic.meanVector()) >= similarityThreshold)
       point.add(riv);
@@ -126,7 +147,15 @@ public class RIVTopicHeirarchy {
   }
 
   private boolean hasChildren() {
-    return children.size() == 0;
+    return !children.isEmpty();
+  }
+
+  private void invalidateIndex() {
+    final RIVTopicHeirarchy root = findRoot();
+    synchronized (root) {
+      root.topicIndex = null;
+      root.indexedTopics = null;
+    }
   }
 
   private boolean isRoot() {
@@ -141,6 +170,30 @@ public class RIVTopicHeirarchy {
     return topic.name();
   }
 
+  /**
+   * Unlike find(), which walks down from the root one level at a time, this
+   * looks across every topic in the tree at once.
+   *
+   * @return the (approximately) k topics anywhere in this tree whose mean
+   *         vectors are most similar to riv, most similar first
+   */
+  public RIVTopicHeirarchy[] nearestTopics(final RIV riv, final int k) {
+    final RIVTopicHeirarchy root = findRoot();
+    synchronized (root) {
+      if (root.topicIndex == null) {
+        final ArrayList<RIVTopicHeirarchy> nodes = new ArrayList<>();
+        root.collect(nodes);
+        root.topicIndex = new HNSWIndex(root.topic.size);
+        root.indexedTopics = new RIVTopicHeirarchy[nodes.size()];
+        for (final RIVTopicHeirarchy node : nodes)
+          root.indexedTopics[root.topicIndex.add(node.topic.meanVector())] = node;
+      }
+      return Arrays.stream(root.topicIndex.nearest(riv, k))
+                   .map(m -> root.indexedTopics[m.id()])
+                   .toArray(RIVTopicHeirarchy[]::new);
+    }
+  }
+
   private void orphan(final RIVTopicHeirarchy child) {
     child.parent = null;
     children.remove(child);
@@ -151,6 +204,7 @@ public class RIVTopicHeirarchy {
   }
 
   public void prune(final NamedRIV riv) {
+    invalidateIndex();
     find(riv.riv()).subtract(riv);
   }
 
@@ -1,6 +1,9 @@
 package com.github.druidgreeneyes.rivet.core.extras.topicheirarchy;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -8,8 +11,11 @@ import org.apache.commons.collections4.bidimap.DualHashBidiMap;
 
 import com.github.druidgreeneyes.rivet.core.labels.ArrayRIV;
 import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVAccumulator;
 import com.github.druidgreeneyes.rivet.core.labels.RIVConstructor;
 import com.github.druidgreeneyes.rivet.core.labels.RIVs;
+import com.github.druidgreeneyes.rivet.core.lexicon.IndexVectorCache;
+import com.github.druidgreeneyes.rivet.core.search.HNSWIndex;
 import com.github.druidgreeneyes.rivet.core.util.Util;
 import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
 
@@ -23,6 +29,15 @@ public class WordLexicon {
   private final DualHashBidiMap<String, RIV> lexicon;
   private final Permutations permutations;
 
+  /**
+   * An ANN index over the lexicon for nearestWords(), and the word behind
+   * each of its ids. Built on first use; new words are added to it as they
+   * come, but changing an existing word's vector throws it away, since HNSW
+   * can't move a node.
+   */
+  private HNSWIndex index;
+  private ArrayList<String> indexedWords;
+
   public WordLexicon(final int size, final int nnz,
                      final Function<CharSequence, RIV> rivMaker,
                      final RIVTopicHeirarchy topics,
@@ -58,6 +73,15 @@ public class WordLexicon {
          lexicon);
   }
 
+  /**
+   * A lexicon whose out-of-vocabulary words get their vectors from cache.
+   */
+  public WordLexicon(final IndexVectorCache cache,
+                     final RIVTopicHeirarchy topics) {
+    this(cache.size(), cache.nnz(), cache::get, topics,
+         new DualHashBidiMap<>());
+  }
+
   public String[] assignTopicsToDocument(final RIV docRIV) {
     return RIVTopicHeirarchy.assignTopics(topics, docRIV);
   }
@@ -76,14 +100,51 @@ public class WordLexicon {
   }
 
   public RIV get(final String word) {
-    return lexicon.getOrDefault(word, rivMaker.apply(word));
+    final RIV riv = lexicon.get(word);
+    return riv != null
+                       ? riv
+                       : rivMaker.apply(word);
+  }
+
+  private void buildIndex() {
+    final List<Entry<String, RIV>> entries = new ArrayList<>(lexicon.entrySet());
+    final String[] words = new String[entries.size()];
+    final HNSWIndex idx = new HNSWIndex(size);
+    entries.parallelStream()
+           .forEach(e -> words[idx.add(e.getValue())] = e.getKey());
+    index = idx;
+    indexedWords = new ArrayList<>(Arrays.asList(words));
   }
 
   public RIV meanVector() {
-    return lexicon.values()
-                  .stream()
-                  .reduce(new ArrayRIV(size), RIV::destructiveAdd)
-                  .divide(lexicon.size());
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    lexicon.values()
+           .forEach(acc::add);
+    return acc.finish(ArrayRIV::new, 1.0 / lexicon.size());
+  }
+
+  /**
+   * @return the (approximately) k words in this lexicon whose vectors are
+   *         most similar to riv, most similar first
+   */
+  public String[] nearestWords(final RIV riv, final int k) {
+    if (index == null)
+      buildIndex();
+    return Arrays.stream(index.nearest(riv, k))
+                 .map(m -> indexedWords.get(m.id()))
+                 .toArray(String[]::new);
+  }
+
+  /**
+   * @return the (approximately) k words in this lexicon most similar to word,
+   *         not counting word itself, most similar first
+   */
+  public String[] nearestWords(final String word, final int k) {
+    final String[] res = nearestWords(get(word), k + 1);
+    return Arrays.stream(res)
+                 .filter(w -> !w.equals(word))
+                 .limit(k)
+                 .toArray(String[]::new);
   }
 
   public double nGramTest(final String[] parts) {
@@ -101,8 +162,9 @@ public class WordLexicon {
                                         final boolean permute) {
     final BiFunction<Integer, Integer, Double> sim = permute
                                                              ? (i,
-                                                                c) -> rivs[i].similarityTo(rivs[c].permute(permutations,
-                                                                                                           c - i))
+                                                                c) -> rivs[i].permutedSimilarity(rivs[c],
+                                                                                                 permutations,
+                                                                                                 c - i)
                                                              : (i,
                                                                 c) -> rivs[i].similarityTo(rivs[c]);
     return Util.range(rivs.length)
@@ -113,10 +175,17 @@ public class WordLexicon {
   }
 
   public void set(final String word, final ArrayRIV riv) {
-    if (contains(word))
+    if (contains(word)) {
       topics.reGraft(NamedRIV.make(word, riv));
-    else
+      index = null;
+      indexedWords = null;
+    } else {
       topics.graftNew(NamedRIV.make(word, riv));
+      if (index != null) {
+        index.add(riv);
+        indexedWords.add(word);
+      }
+    }
     lexicon.put(word, riv);
   }
 
@@ -1,6 +1,8 @@
 package com.github.druidgreeneyes.rivet.core.labels;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import org.apache.commons.lang3.ArrayUtils;
 
 import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
@@ -12,6 +14,20 @@ public abstract class AbstractRIV implements RIV, Serializable {
    */
   private static final long serialVersionUID = -3648672040431659942L;
 
+  private static final AtomicIntegerFieldUpdater<AbstractRIV> MODIFICATIONS =
+      AtomicIntegerFieldUpdater.newUpdater(AbstractRIV.class, "modifications");
+
+  /**
+   * Bumped by every mutator. A cached magnitude is only good for the
+   * modification count it was computed at, so a write that races with
+   * magnitude() leaves a stale entry that is simply never used. Bumped
+   * atomically, so that two concurrent writers can't both land on the same
+   * count and leave a magnitude cached against it from between their writes.
+   */
+  private transient volatile int modifications;
+
+  private transient volatile CachedMagnitude cachedMagnitude;
+
   @Override
   public AbstractRIV add(final RIV other) {
     return copy().destructiveAdd(other).destructiveRemoveZeros();
@@ -22,6 +38,14 @@ public abstract class AbstractRIV implements RIV, Serializable {
     return copy().destructiveAdd(rivs).destructiveRemoveZeros();
   }
 
+  /**
+   * Computes the magnitude from scratch; magnitude() caches the result until
+   * the next mutation.
+   */
+  protected double computeMagnitude() {
+    return Math.sqrt(valStream().map(x -> x * x).sum());
+  }
+
   @Override
   public abstract AbstractRIV copy();
 
@@ -40,6 +64,31 @@ public abstract class AbstractRIV implements RIV, Serializable {
   @Override
   public abstract AbstractRIV destructiveRemoveZeros();
 
+  /**
+   * Takes every non-zero out and puts it back in its new place. Types that
+   * can rearrange their storage directly override this.
+   */
+  @Override
+  public AbstractRIV destructivePermute(final Permutations permutations,
+                                        final int times) {
+    if (times == 0)
+      return this;
+    final int[] keys = new int[count()];
+    final double[] vals = new double[keys.length];
+    final int[] c = { 0 };
+    forEachNZ((k, v) -> {
+      keys[c[0]] = k;
+      vals[c[0]++] = v;
+    });
+    final int[] power = permutations.power(times);
+    for (final int k : keys)
+      put(k, 0);
+    destructiveRemoveZeros();
+    for (int i = 0; i < keys.length; i++)
+      put(power[keys[i]], vals[i]);
+    return this;
+  }
+
   @Override
   public abstract AbstractRIV destructiveSub(final RIV other);
 
@@ -51,12 +100,12 @@ public abstract class AbstractRIV implements RIV, Serializable {
     return copy().destructiveDiv(scalar).destructiveRemoveZeros();
   }
 
+  /**
+   * Dispatches on the concrete types of both vectors; see DotProduct.
+   */
   @Override
   public double dot(final RIV riv) {
-    double sum = 0;
-    for (final VectorElement p : points())
-      sum += p.value() * riv.get(p.index());
-    return sum;
+    return DotProduct.dot(this, riv);
   }
 
   @Override
@@ -99,9 +148,23 @@ public abstract class AbstractRIV implements RIV, Serializable {
     return sum;
   }
 
+  /**
+   * Every mutating method must call this once its writes are done, so that
+   * magnitude() stops returning the old value.
+   */
+  protected final void invalidateMagnitude() {
+    MODIFICATIONS.incrementAndGet(this);
+  }
+
   @Override
   public double magnitude() {
-    return Math.sqrt(valStream().map(x -> x * x).sum());
+    final int stamp = modifications;
+    final CachedMagnitude cached = cachedMagnitude;
+    if (cached != null && cached.stamp == stamp)
+      return cached.value;
+    final double magnitude = computeMagnitude();
+    cachedMagnitude = new CachedMagnitude(stamp, magnitude);
+    return magnitude;
   }
 
   @Override
@@ -158,12 +221,26 @@ public abstract class AbstractRIV implements RIV, Serializable {
 
   @Override
   public String toString() {
-    destructiveRemoveZeros();
+    // a sorted copy, so that printing neither scans every index nor drops
+    // this RIV's zeros as a side effect
+    final SparseRIV sorted = new SparseRIV(this);
+    final int[] keys = sorted.keyArr();
+    final double[] vals = sorted.valArr();
     final StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < size(); i++)
-      if (contains(i))
-        sb.append(String.format("%d|%f ", i, get(i)));
+    for (int i = 0; i < keys.length; i++)
+      if (vals[i] != 0)
+        sb.append(String.format("%d|%f ", keys[i], vals[i]));
     sb.append(size());
     return sb.toString();
   }
+
+  private static final class CachedMagnitude {
+    final int stamp;
+    final double value;
+
+    CachedMagnitude(final int stamp, final double value) {
+      this.stamp = stamp;
+      this.value = value;
+    }
+  }
 }
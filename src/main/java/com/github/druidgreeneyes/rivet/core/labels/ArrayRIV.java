@@ -83,14 +83,25 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
     other.keyStream()
          .forEach((
                    k) -> destructiveSet(getPoint(k).destructiveAdd(other.get(k))));
+    invalidateMagnitude();
     return this;
   }
 
+  /**
+   * Sums through a RIVAccumulator, so it costs the operands' non-zeros rather
+   * than size lookups per operand.
+   */
   @Override
   public ArrayRIV destructiveAdd(final RIV... rivs) {
-    for (int i = 0; i < size; i++)
-      for (final RIV riv : rivs)
-        getPoint(i).destructiveAdd(riv.get(i));
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    try {
+      acc.add(this)
+         .add(rivs);
+      points = ((ArrayRIV) acc.finish(ArrayRIV::new)).points;
+    } finally {
+      acc.reset();
+    }
+    invalidateMagnitude();
     return this;
   }
 
@@ -98,6 +109,7 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
   public ArrayRIV destructiveDiv(final double scalar) {
     Arrays.stream(points)
           .forEach(elt -> elt.destructiveDiv(scalar));
+    invalidateMagnitude();
     return this;
   }
 
@@ -105,6 +117,7 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
   public ArrayRIV destructiveMult(final double scalar) {
     Arrays.stream(points)
           .forEach(elt -> elt.destructiveMult(scalar));
+    invalidateMagnitude();
     return this;
   }
 
@@ -115,6 +128,7 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
         points = ArrayUtils.remove(points, i);
         i--;
       }
+    invalidateMagnitude();
     return this;
   }
 
@@ -136,14 +150,22 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
   public ArrayRIV destructiveSub(final RIV other) {
     other.keyStream()
          .forEach(k -> destructiveSet(getPoint(k).destructiveSub(other.get(k))));
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public ArrayRIV destructiveSub(final RIV... rivs) {
-    for (int i = 0; i < size; i++)
+    final RIVAccumulator acc = RIVAccumulator.forThread(size);
+    try {
+      acc.add(this);
       for (final RIV riv : rivs)
-        getPoint(i).destructiveSub(riv.get(i));
+        acc.add(riv, -1);
+      points = ((ArrayRIV) acc.finish(ArrayRIV::new)).points;
+    } finally {
+      acc.reset();
+    }
+    invalidateMagnitude();
     return this;
   }
 
@@ -197,24 +219,12 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
     return stream().mapToInt(VectorElement::index);
   }
 
-  @Override
-  public double magnitude() {
-    return Math.sqrt(valStream().map((v) -> v * v)
-                                .sum());
-  }
-
   @Override
   public ArrayRIV permute(final Permutations permutations, final int times) {
     if (times == 0)
       return this;
     else
-      return new ArrayRIV(times > 0
-                                    ? RIVs.permuteKeys(keyArr(),
-                                                       permutations.permute,
-                                                       times)
-                                    : RIVs.permuteKeys(keyArr(),
-                                                       permutations.inverse,
-                                                       -times),
+      return new ArrayRIV(RIVs.permuteKeys(keyArr(), permutations, times),
                           valArr(),
                           size);
   }
@@ -233,6 +243,7 @@ public final class ArrayRIV extends AbstractRIV implements RIV, Serializable {
   public double put(final int index, final double value) {
     final double v = get(index);
     destructiveSet(VectorElement.elt(index, value));
+    invalidateMagnitude();
     return v;
   }
 
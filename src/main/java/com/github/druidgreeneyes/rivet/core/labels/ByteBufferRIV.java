@@ -0,0 +1,502 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+/**
+ * A read-only RIV that reads straight out of a ByteBuffer holding one vector
+ * in RIVCodec's format: heap, direct or memory-mapped, it's never copied.
+ * Only the header is parsed up front; get(), forEachNZ(), dot(), magnitude()
+ * and the rest decode keys and values in place, so scanning a file of
+ * vectors only allocates the views themselves.
+ *
+ * get() and contains() binary search when keys are fixed-width and values
+ * aren't varints; otherwise they have to walk from the start. Vectors meant
+ * for random access should be written that way; vectors that are only ever
+ * iterated or dotted can use the smaller delta-coded keys.
+ *
+ * The buffer's position, limit and byte order are left alone, and it must
+ * not be changed while views into it are in use. Destructive methods throw;
+ * copy() and the non-destructive arithmetic return heap vectors.
+ * Serializing one writes an ImmutableRIV.
+ *
+ * @author josh
+ */
+public final class ByteBufferRIV extends AbstractRIV implements RIV {
+
+  private static final long serialVersionUID = -5089460478453538816L;
+
+  private final transient ByteBuffer buf;
+  private final boolean swap;
+  private final int offset;
+  private final int size;
+  private final int count;
+  private final Encoding encoding;
+  private final boolean fixedKeys;
+  private final double scale;
+  private final int keysStart;
+  private final int valsStart;
+  private final int end;
+
+  /**
+   * A view of the vector at buf's current position.
+   */
+  public ByteBufferRIV(final ByteBuffer buf) {
+    this(buf, buf.position());
+  }
+
+  /**
+   * A view of the vector at offset in buf.
+   */
+  public ByteBufferRIV(final ByteBuffer buf, final int offset) {
+    this.buf = buf;
+    this.offset = offset;
+    swap = buf.order() != ByteOrder.LITTLE_ENDIAN;
+    final int version = buf.get(offset);
+    if (version != RIVCodec.VERSION)
+      throw new IllegalArgumentException("Unsupported RIV format version: "
+                                         + version);
+    final int flags = buf.get(offset + 1);
+    encoding = RIVCodec.encoding(flags);
+    fixedKeys = (flags & RIVCodec.FIXED_KEYS) != 0;
+    final Cursor c = new Cursor(offset + 2, 0);
+    final int length = c.varint();
+    end = c.keyPos + length;
+    size = c.varint();
+    count = c.varint();
+    if (encoding.quantized()) {
+      scale = getDouble(c.keyPos);
+      c.keyPos += 8;
+    } else
+      scale = 1;
+    keysStart = c.keyPos;
+    if (fixedKeys)
+      valsStart = keysStart + 4 * count;
+    else {
+      for (int i = 0; i < count; i++)
+        c.varint();
+      valsStart = c.keyPos;
+    }
+  }
+
+  /**
+   * Encodes the given vector into a new heap buffer, with fixed-width keys
+   * and float64 values, and views it.
+   */
+  public ByteBufferRIV(final int[] keys, final double[] vals, final int size) {
+    this(ByteBuffer.wrap(RIVCodec.encode(new SparseRIV(keys, vals, size),
+                                         Encoding.DOUBLE, true)));
+  }
+
+  /**
+   * Walks the keys and values in step.
+   */
+  private final class Cursor {
+    int keyPos;
+    int valPos;
+    int key = 0;
+    double val;
+
+    Cursor(final int keyPos, final int valPos) {
+      this.keyPos = keyPos;
+      this.valPos = valPos;
+    }
+
+    /** Moves on to the next non-zero; there must be one. */
+    void next() {
+      if (fixedKeys) {
+        key = getInt(keyPos);
+        keyPos += 4;
+      } else
+        key += varint();
+      switch (encoding) {
+        case DOUBLE:
+          val = getDouble(valPos);
+          valPos += 8;
+          break;
+        case FLOAT:
+          val = Float.intBitsToFloat(getInt(valPos));
+          valPos += 4;
+          break;
+        case VARINT:
+          long l = 0;
+          for (int shift = 0;; shift += 7) {
+            final byte b = buf.get(valPos++);
+            l |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+              break;
+          }
+          val = RIVCodec.unzigzag(l);
+          break;
+        case INT8:
+          val = buf.get(valPos++) * scale;
+          break;
+        case INT16:
+          final short s = buf.getShort(valPos);
+          val = (swap
+                      ? Short.reverseBytes(s)
+                      : s)
+                * scale;
+          valPos += 2;
+          break;
+      }
+    }
+
+    int varint() {
+      int res = 0;
+      for (int shift = 0;; shift += 7) {
+        final byte b = buf.get(keyPos++);
+        res |= (b & 0x7F) << shift;
+        if (b >= 0)
+          return res;
+      }
+    }
+  }
+
+  private Cursor cursor() {
+    return new Cursor(keysStart, valsStart);
+  }
+
+  @Override
+  protected double computeMagnitude() {
+    final Cursor c = cursor();
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      c.next();
+      sum += c.val * c.val;
+    }
+    return Math.sqrt(sum);
+  }
+
+  @Override
+  public boolean contains(final int index) {
+    return find(index) >= 0;
+  }
+
+  /**
+   * @return a mutable heap copy
+   */
+  @Override
+  public SparseRIV copy() {
+    return new SparseRIV(keyArr(), valArr(), size);
+  }
+
+  @Override
+  public int count() {
+    return count;
+  }
+
+  @Override
+  public AbstractRIV destructiveAdd(final RIV other) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveAdd(final RIV... rivs) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveDiv(final double scalar) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveMult(final double scalar) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructivePermute(final Permutations permutations,
+                                        final int times) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveRemoveZeros() {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveSub(final RIV other) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveSub(final RIV... rivs) {
+    throw readOnly();
+  }
+
+  /**
+   * Merges this vector's non-zeros with a sorted key array.
+   */
+  double dot(final int[] keys, final double[] vals, final int n) {
+    final Cursor c = cursor();
+    double sum = 0;
+    int i = 0, j = 0;
+    if (n == 0 || count == 0)
+      return 0;
+    c.next();
+    while (true) {
+      if (c.key < keys[j]) {
+        if (++i == count)
+          return sum;
+        c.next();
+      } else if (keys[j] < c.key) {
+        if (++j == n)
+          return sum;
+      } else {
+        sum += c.val * vals[j];
+        if (++i == count || ++j == n)
+          return sum;
+        c.next();
+      }
+    }
+  }
+
+  /**
+   * Merges this vector's non-zeros with another view's.
+   */
+  double dot(final ByteBufferRIV other) {
+    if (count == 0 || other.count == 0)
+      return 0;
+    final Cursor a = cursor();
+    final Cursor b = other.cursor();
+    int i = 1, j = 1;
+    a.next();
+    b.next();
+    double sum = 0;
+    while (true)
+      if (a.key < b.key) {
+        if (i++ == count)
+          return sum;
+        a.next();
+      } else if (b.key < a.key) {
+        if (j++ == other.count)
+          return sum;
+        b.next();
+      } else {
+        sum += a.val * b.val;
+        if (i++ == count || j++ == other.count)
+          return sum;
+        a.next();
+        b.next();
+      }
+  }
+
+  /**
+   * @return the number of bytes this vector takes up in its buffer
+   */
+  public int encodedLength() {
+    return end - offset;
+  }
+
+  @Override
+  public boolean equals(final RIV other) {
+    if (other.size() != size)
+      return false;
+    final SparseRIV that = new SparseRIV(other);
+    that.destructiveRemoveZeros();
+    if (that.count() != count)
+      return false;
+    final int[] keys = that.rawKeys();
+    final double[] vals = that.rawVals();
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      if (c.key != keys[i] || c.val != vals[i])
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return the position of index among the non-zeros, or a negative number
+   */
+  private int find(final int index) {
+    if (fixedKeys && encoding != Encoding.VARINT) {
+      int lo = 0, hi = count - 1;
+      while (lo <= hi) {
+        final int mid = lo + hi >>> 1;
+        final int k = getInt(keysStart + 4 * mid);
+        if (k < index)
+          lo = mid + 1;
+        else if (k > index)
+          hi = mid - 1;
+        else
+          return mid;
+      }
+      return -1;
+    }
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      if (c.key == index)
+        return i;
+      if (c.key > index)
+        return -1;
+    }
+    return -1;
+  }
+
+  @Override
+  public void forEachNZ(final IntDoubleConsumer fun) {
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      fun.accept(c.key, c.val);
+    }
+  }
+
+  /**
+   * @return the dot product of this vector with a dense array
+   */
+  double gather(final double[] dense) {
+    final Cursor c = cursor();
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      c.next();
+      sum += c.val * dense[c.key];
+    }
+    return sum;
+  }
+
+  @Override
+  public double get(final int index) throws IndexOutOfBoundsException {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index
+                                          + " is outside a RIV of size "
+                                          + size);
+    if (fixedKeys && encoding != Encoding.VARINT) {
+      final int i = find(index);
+      return i < 0
+                   ? 0
+                   : valueAt(i);
+    }
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      if (c.key >= index)
+        return c.key == index
+                              ? c.val
+                              : 0;
+    }
+    return 0;
+  }
+
+  private double getDouble(final int pos) {
+    final long l = buf.getLong(pos);
+    return Double.longBitsToDouble(swap
+                                        ? Long.reverseBytes(l)
+                                        : l);
+  }
+
+  private int getInt(final int pos) {
+    final int i = buf.getInt(pos);
+    return swap
+                ? Integer.reverseBytes(i)
+                : i;
+  }
+
+  @Override
+  public int[] keyArr() {
+    final int[] keys = new int[count];
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      keys[i] = c.key;
+    }
+    return keys;
+  }
+
+  @Override
+  public IntStream keyStream() {
+    return IntStream.of(keyArr());
+  }
+
+  @Override
+  public SparseRIV permute(final Permutations permutations, final int times) {
+    return copy().permute(permutations, times);
+  }
+
+  @Override
+  public VectorElement[] points() {
+    final VectorElement[] points = new VectorElement[count];
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      points[i] = VectorElement.elt(c.key, c.val);
+    }
+    return points;
+  }
+
+  @Override
+  public Stream<VectorElement> pointStream() {
+    return Stream.of(points());
+  }
+
+  @Override
+  public double put(final int index, final double value) {
+    throw readOnly();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double[] valArr() {
+    final double[] vals = new double[count];
+    final Cursor c = cursor();
+    for (int i = 0; i < count; i++) {
+      c.next();
+      vals[i] = c.val;
+    }
+    return vals;
+  }
+
+  /**
+   * The value of the i-th non-zero, for fixed-width values only.
+   */
+  private double valueAt(final int i) {
+    final Cursor c = new Cursor(keysStart + 4 * i, valsStart);
+    switch (encoding) {
+      case DOUBLE:
+        c.valPos += 8 * i;
+        break;
+      case FLOAT:
+        c.valPos += 4 * i;
+        break;
+      case INT16:
+        c.valPos += 2 * i;
+        break;
+      default:
+        c.valPos += i;
+    }
+    c.next();
+    return c.val;
+  }
+
+  @Override
+  public DoubleStream valStream() {
+    return DoubleStream.of(valArr());
+  }
+
+  private Object writeReplace() {
+    return toImmutable();
+  }
+
+  private static NotImplementedException readOnly() {
+    return new NotImplementedException("ByteBufferRIV is read-only.");
+  }
+}
@@ -74,6 +74,7 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
   public ColtRIV destructiveAdd(final RIV other) {
     for (final int i : other.keyArr())
       data.put(i, get(i) + other.get(i));
+    invalidateMagnitude();
     return this;
   }
 
@@ -88,18 +89,21 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
       else
         data.put(i, v);
     }
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public ColtRIV destructiveDiv(final double scalar) {
     data.assign(DoubleMult.div(scalar));
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public ColtRIV destructiveMult(final double scalar) {
     data.assign(DoubleMult.mult(scalar));
+    invalidateMagnitude();
     return this;
   }
 
@@ -108,6 +112,7 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
     int i;
     while (Integer.MIN_VALUE != (i = data.keyOf(0.0)))
       data.removeKey(i);
+    invalidateMagnitude();
     return this;
   }
 
@@ -120,6 +125,7 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
   public ColtRIV destructiveSub(final RIV other) {
     for (final int i : other.keyArr())
       data.put(i, get(i) - other.get(i));
+    invalidateMagnitude();
     return this;
   }
 
@@ -134,6 +140,7 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
       else
         data.put(i, v);
     }
+    invalidateMagnitude();
     return this;
   }
 
@@ -190,13 +197,7 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
     if (times == 0)
       return this;
     else
-      return new ColtRIV(times > 0
-                                   ? RIVs.permuteKeys(keyArr(),
-                                                      permutations.permute,
-                                                      times)
-                                   : RIVs.permuteKeys(keyArr(),
-                                                      permutations.inverse,
-                                                      -times),
+      return new ColtRIV(RIVs.permuteKeys(keyArr(), permutations, times),
                          valArr(),
                          size);
   }
@@ -228,6 +229,7 @@ public class ColtRIV extends AbstractRIV implements RIV, Serializable {
   public double put(final int index, final double value) {
     final double v = get(index);
     data.put(index, value);
+    invalidateMagnitude();
     return v;
   }
 
@@ -0,0 +1,209 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+/**
+ * A read-only dense RIV whose values are stored as float32, or as int8 or
+ * int16 with a scale factor (see RIVCodec.Encoding): a half, a quarter or an
+ * eighth of DenseRIV's footprint, for lexical vectors that are saturated
+ * enough to be worth storing densely but are only compared from then on.
+ *
+ * Like CompactSparseRIV, it dots against other compact vectors, DenseRIVs and
+ * the sorted sparse types without decoding to doubles first. Destructive
+ * methods throw; copy() and the non-destructive arithmetic return DenseRIVs.
+ *
+ * @author josh
+ */
+public final class CompactDenseRIV extends AbstractRIV implements RIV {
+
+  private static final long serialVersionUID = 4610937946349541376L;
+
+  private final CompactValues vals;
+
+  /**
+   * @param encoding
+   *          : FLOAT, INT8 or INT16
+   */
+  public CompactDenseRIV(final double[] densePoints,
+                         final Encoding encoding) {
+    vals = CompactValues.of(densePoints, encoding);
+  }
+
+  /**
+   * @param encoding
+   *          : FLOAT, INT8 or INT16
+   */
+  public CompactDenseRIV(final RIV source, final Encoding encoding) {
+    this(source instanceof DenseRIV
+                                    ? ((DenseRIV) source).rawVals()
+                                    : new DenseRIV(source).rawVals(),
+         encoding);
+  }
+
+  @Override
+  protected double computeMagnitude() {
+    return Math.sqrt(vals.sumOfSquares());
+  }
+
+  @Override
+  public boolean contains(final int index) {
+    return index >= 0 && index < vals.length();
+  }
+
+  /**
+   * @return a mutable DenseRIV of the stored values
+   */
+  @Override
+  public DenseRIV copy() {
+    return new DenseRIV(vals.toArray());
+  }
+
+  @Override
+  public int count() {
+    return size();
+  }
+
+  @Override
+  public AbstractRIV destructiveAdd(final RIV other) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveAdd(final RIV... rivs) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveDiv(final double scalar) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveMult(final double scalar) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructivePermute(final Permutations permutations,
+                                        final int times) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveRemoveZeros() {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveSub(final RIV other) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveSub(final RIV... rivs) {
+    throw readOnly();
+  }
+
+  public Encoding encoding() {
+    return vals.encoding();
+  }
+
+  @Override
+  public boolean equals(final RIV other) {
+    if (other.size() != size())
+      return false;
+    for (int i = 0; i < vals.length(); i++)
+      if (vals.get(i) != other.get(i))
+        return false;
+    return true;
+  }
+
+  @Override
+  public void forEach(final IntDoubleConsumer fun) {
+    for (int i = 0; i < vals.length(); i++)
+      fun.accept(i, vals.get(i));
+  }
+
+  @Override
+  public void forEachNZ(final IntDoubleConsumer fun) {
+    forEach(fun);
+  }
+
+  @Override
+  public double get(final int index) {
+    return vals.get(index);
+  }
+
+  @Override
+  public int[] keyArr() {
+    return IntStream.range(0, vals.length())
+                    .toArray();
+  }
+
+  @Override
+  public IntStream keyStream() {
+    return IntStream.range(0, vals.length());
+  }
+
+  @Override
+  public DenseRIV permute(final Permutations permutations, final int times) {
+    return copy().permute(permutations, times);
+  }
+
+  @Override
+  public VectorElement[] points() {
+    final VectorElement[] points = new VectorElement[vals.length()];
+    for (int i = 0; i < points.length; i++)
+      points[i] = VectorElement.elt(i, vals.get(i));
+    return points;
+  }
+
+  @Override
+  public Stream<VectorElement> pointStream() {
+    return Stream.of(points());
+  }
+
+  @Override
+  public double put(final int index, final double value) {
+    throw readOnly();
+  }
+
+  @Override
+  public double saturation() {
+    return 1;
+  }
+
+  @Override
+  public int size() {
+    return vals.length();
+  }
+
+  @Override
+  public double[] valArr() {
+    return vals.toArray();
+  }
+
+  /**
+   * The stored values, indexed by vector index.
+   */
+  CompactValues values() {
+    return vals;
+  }
+
+  @Override
+  public DoubleStream valStream() {
+    return DoubleStream.of(valArr());
+  }
+
+  private static NotImplementedException readOnly() {
+    return new NotImplementedException("CompactDenseRIV is read-only.");
+  }
+}
@@ -0,0 +1,242 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.Arrays;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+/**
+ * A read-only sorted-array RIV whose values are stored as float32, or as
+ * int8 or int16 with a scale factor (see RIVCodec.Encoding), for holding
+ * large numbers of vectors that are only compared. Against SparseRIV's 12
+ * bytes per non-zero, FLOAT takes 8, INT16 6 and INT8 5, and similarity
+ * scans move that much less memory.
+ *
+ * Index vectors' values are all ±1, so every encoding stores them exactly.
+ * Summed vectors lose a little: FLOAT keeps about 7 significant digits, and
+ * INT8 and INT16 keep each value to within half a step of max |value| / 127
+ * or / 32767. Values that round to 0 are dropped.
+ *
+ * Dot products with other compact vectors, SparseRIVs, MTJRIVs and DenseRIVs
+ * read the stored values directly; see DotProduct. Destructive methods throw;
+ * copy() and the non-destructive arithmetic return SparseRIVs.
+ *
+ * @author josh
+ */
+public final class CompactSparseRIV extends AbstractRIV implements RIV {
+
+  private static final long serialVersionUID = -2231720512829997056L;
+
+  private final int size;
+  private final int[] keys;
+  private final CompactValues vals;
+
+  /**
+   * @param encoding
+   *          : FLOAT, INT8 or INT16
+   */
+  public CompactSparseRIV(final int[] keys, final double[] vals,
+                          final int size, final Encoding encoding) {
+    this(new SparseRIV(keys, vals, size), encoding);
+  }
+
+  /**
+   * @param encoding
+   *          : FLOAT, INT8 or INT16
+   */
+  public CompactSparseRIV(final RIV source, final Encoding encoding) {
+    final SparseRIV sorted = new SparseRIV(source);
+    sorted.destructiveRemoveZeros();
+    int[] k = sorted.keyArr();
+    double[] v = sorted.valArr();
+    CompactValues compact = CompactValues.of(v, encoding);
+    int c = 0;
+    for (int i = 0; i < k.length; i++)
+      if (compact.get(i) != 0) {
+        k[c] = k[i];
+        v[c++] = v[i];
+      }
+    if (c < k.length) {
+      k = Arrays.copyOf(k, c);
+      v = Arrays.copyOf(v, c);
+      compact = CompactValues.of(v, encoding);
+    }
+    size = source.size();
+    keys = k;
+    vals = compact;
+  }
+
+  @Override
+  protected double computeMagnitude() {
+    return Math.sqrt(vals.sumOfSquares());
+  }
+
+  @Override
+  public boolean contains(final int index) {
+    return Arrays.binarySearch(keys, index) >= 0;
+  }
+
+  /**
+   * @return a mutable SparseRIV of the stored values
+   */
+  @Override
+  public SparseRIV copy() {
+    return new SparseRIV(keyArr(), valArr(), size);
+  }
+
+  @Override
+  public int count() {
+    return keys.length;
+  }
+
+  @Override
+  public AbstractRIV destructiveAdd(final RIV other) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveAdd(final RIV... rivs) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveDiv(final double scalar) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveMult(final double scalar) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructivePermute(final Permutations permutations,
+                                        final int times) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveRemoveZeros() {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveSub(final RIV other) {
+    throw readOnly();
+  }
+
+  @Override
+  public AbstractRIV destructiveSub(final RIV... rivs) {
+    throw readOnly();
+  }
+
+  public Encoding encoding() {
+    return vals.encoding();
+  }
+
+  @Override
+  public boolean equals(final RIV other) {
+    if (other.size() != size)
+      return false;
+    final SparseRIV that = new SparseRIV(other);
+    that.destructiveRemoveZeros();
+    if (that.count() != keys.length)
+      return false;
+    final int[] k = that.rawKeys();
+    final double[] v = that.rawVals();
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != k[i] || vals.get(i) != v[i])
+        return false;
+    return true;
+  }
+
+  @Override
+  public void forEachNZ(final IntDoubleConsumer fun) {
+    for (int i = 0; i < keys.length; i++)
+      fun.accept(keys[i], vals.get(i));
+  }
+
+  @Override
+  public double get(final int index) throws IndexOutOfBoundsException {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index
+                                          + " is outside a RIV of size "
+                                          + size);
+    final int i = Arrays.binarySearch(keys, index);
+    return i < 0
+                 ? 0
+                 : vals.get(i);
+  }
+
+  @Override
+  public int[] keyArr() {
+    return Arrays.copyOf(keys, keys.length);
+  }
+
+  @Override
+  public IntStream keyStream() {
+    return IntStream.of(keys);
+  }
+
+  @Override
+  public SparseRIV permute(final Permutations permutations, final int times) {
+    return copy().permute(permutations, times);
+  }
+
+  @Override
+  public VectorElement[] points() {
+    final VectorElement[] points = new VectorElement[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      points[i] = VectorElement.elt(keys[i], vals.get(i));
+    return points;
+  }
+
+  @Override
+  public Stream<VectorElement> pointStream() {
+    return Stream.of(points());
+  }
+
+  @Override
+  public double put(final int index, final double value) {
+    throw readOnly();
+  }
+
+  /**
+   * The sorted keys themselves; not to be changed.
+   */
+  int[] rawKeys() {
+    return keys;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double[] valArr() {
+    return vals.toArray();
+  }
+
+  /**
+   * The stored values, in key order.
+   */
+  CompactValues values() {
+    return vals;
+  }
+
+  @Override
+  public DoubleStream valStream() {
+    return DoubleStream.of(valArr());
+  }
+
+  private static NotImplementedException readOnly() {
+    return new NotImplementedException("CompactSparseRIV is read-only.");
+  }
+}
@@ -0,0 +1,257 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.io.Serializable;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+
+/**
+ * An array of values in one of RIVCodec's lossy encodings: float32, or int8
+ * or int16 times a scale of max |value| / 127 or / 32767, exactly as RIVCodec
+ * writes them. Backs CompactSparseRIV and CompactDenseRIV.
+ *
+ * The dot products work on the stored form. Between two quantized arrays of
+ * the same encoding the products are summed as longs and scaled once at the
+ * end, which is both exact and quick; any other pairing converts each value
+ * as it goes.
+ *
+ * Each dot product runs over positions 0 to n - 1 and reads the two sides at
+ * at[i] and otherAt[i]; a null index array stands for i itself, so the same
+ * loop serves dense . dense, sparse . dense and the matched positions of a
+ * sparse . sparse merge.
+ *
+ * @author josh
+ */
+abstract class CompactValues implements Serializable {
+
+  private static final long serialVersionUID = 5318422466085591040L;
+
+  /** What each stored unit is worth; 1 for floats. */
+  final double scale;
+
+  private CompactValues(final double scale) {
+    this.scale = scale;
+  }
+
+  /**
+   * @return vals in the given encoding, which must be FLOAT, INT8 or INT16
+   */
+  static CompactValues of(final double[] vals, final Encoding encoding) {
+    switch (encoding) {
+      case FLOAT:
+        return new Floats(vals);
+      case INT8:
+        return new Bytes(vals);
+      case INT16:
+        return new Shorts(vals);
+      default:
+        throw new IllegalArgumentException("Compact values can be FLOAT, INT8 or INT16, not "
+                                           + encoding);
+    }
+  }
+
+  /**
+   * @return max |value| / max, or 1 if every value is 0
+   */
+  private static double scale(final double[] vals, final int max) {
+    double m = 0;
+    for (final double v : vals)
+      m = Math.max(m, Math.abs(v));
+    return m == 0
+                  ? 1
+                  : m / max;
+  }
+
+  private static int index(final int[] at, final int i) {
+    return at == null
+                      ? i
+                      : at[i];
+  }
+
+  /**
+   * @return the sum of this[at[i]] * other[otherAt[i]] for i < n
+   */
+  abstract double dot(int[] at, CompactValues other, int[] otherAt, int n);
+
+  /**
+   * @return the sum of this[at[i]] * other[otherAt[i]] for i < n
+   */
+  abstract double dot(int[] at, double[] other, int[] otherAt, int n);
+
+  abstract Encoding encoding();
+
+  abstract double get(int i);
+
+  abstract int length();
+
+  double sumOfSquares() {
+    return dot(null, this, null, length());
+  }
+
+  /**
+   * @return the values, decoded
+   */
+  double[] toArray() {
+    final double[] vals = new double[length()];
+    for (int i = 0; i < vals.length; i++)
+      vals[i] = get(i);
+    return vals;
+  }
+
+  /**
+   * The generic pairing, for mismatched encodings.
+   */
+  final double slowDot(final int[] at, final CompactValues other,
+                       final int[] otherAt, final int n) {
+    double sum = 0;
+    for (int i = 0; i < n; i++)
+      sum += get(index(at, i)) * other.get(index(otherAt, i));
+    return sum;
+  }
+
+  static final class Bytes extends CompactValues {
+    private static final long serialVersionUID = -1617206125402669056L;
+
+    final byte[] vals;
+
+    Bytes(final double[] vals) {
+      super(scale(vals, Byte.MAX_VALUE));
+      this.vals = new byte[vals.length];
+      for (int i = 0; i < vals.length; i++)
+        this.vals[i] = (byte) Math.round(vals[i] / scale);
+    }
+
+    @Override
+    double dot(final int[] at, final CompactValues other, final int[] otherAt,
+               final int n) {
+      if (!(other instanceof Bytes))
+        return slowDot(at, other, otherAt, n);
+      final byte[] o = ((Bytes) other).vals;
+      long sum = 0;
+      for (int i = 0; i < n; i++)
+        sum += vals[index(at, i)] * o[index(otherAt, i)];
+      return sum * scale * other.scale;
+    }
+
+    @Override
+    double dot(final int[] at, final double[] other, final int[] otherAt,
+               final int n) {
+      double sum = 0;
+      for (int i = 0; i < n; i++)
+        sum += vals[index(at, i)] * other[index(otherAt, i)];
+      return sum * scale;
+    }
+
+    @Override
+    Encoding encoding() {
+      return Encoding.INT8;
+    }
+
+    @Override
+    double get(final int i) {
+      return vals[i] * scale;
+    }
+
+    @Override
+    int length() {
+      return vals.length;
+    }
+  }
+
+  static final class Floats extends CompactValues {
+    private static final long serialVersionUID = 2049626343700447232L;
+
+    final float[] vals;
+
+    Floats(final double[] vals) {
+      super(1);
+      this.vals = new float[vals.length];
+      for (int i = 0; i < vals.length; i++)
+        this.vals[i] = (float) vals[i];
+    }
+
+    @Override
+    double dot(final int[] at, final CompactValues other, final int[] otherAt,
+               final int n) {
+      if (!(other instanceof Floats))
+        return slowDot(at, other, otherAt, n);
+      final float[] o = ((Floats) other).vals;
+      double sum = 0;
+      for (int i = 0; i < n; i++)
+        sum += (double) vals[index(at, i)] * o[index(otherAt, i)];
+      return sum;
+    }
+
+    @Override
+    double dot(final int[] at, final double[] other, final int[] otherAt,
+               final int n) {
+      double sum = 0;
+      for (int i = 0; i < n; i++)
+        sum += vals[index(at, i)] * other[index(otherAt, i)];
+      return sum;
+    }
+
+    @Override
+    Encoding encoding() {
+      return Encoding.FLOAT;
+    }
+
+    @Override
+    double get(final int i) {
+      return vals[i];
+    }
+
+    @Override
+    int length() {
+      return vals.length;
+    }
+  }
+
+  static final class Shorts extends CompactValues {
+    private static final long serialVersionUID = -7766560398367506432L;
+
+    final short[] vals;
+
+    Shorts(final double[] vals) {
+      super(scale(vals, Short.MAX_VALUE));
+      this.vals = new short[vals.length];
+      for (int i = 0; i < vals.length; i++)
+        this.vals[i] = (short) Math.round(vals[i] / scale);
+    }
+
+    @Override
+    double dot(final int[] at, final CompactValues other, final int[] otherAt,
+               final int n) {
+      if (!(other instanceof Shorts))
+        return slowDot(at, other, otherAt, n);
+      final short[] o = ((Shorts) other).vals;
+      long sum = 0;
+      for (int i = 0; i < n; i++)
+        sum += vals[index(at, i)] * o[index(otherAt, i)];
+      return sum * scale * other.scale;
+    }
+
+    @Override
+    double dot(final int[] at, final double[] other, final int[] otherAt,
+               final int n) {
+      double sum = 0;
+      for (int i = 0; i < n; i++)
+        sum += vals[index(at, i)] * other[index(otherAt, i)];
+      return sum * scale;
+    }
+
+    @Override
+    Encoding encoding() {
+      return Encoding.INT16;
+    }
+
+    @Override
+    double get(final int i) {
+      return vals[i] * scale;
+    }
+
+    @Override
+    int length() {
+      return vals.length;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+/**
+ * The inner loops behind DenseRIV's arithmetic and the dense side of
+ * DotProduct, kept in one place so that they can be swapped out whole.
+ *
+ * This class is the portable version: plain loops, with the reductions split
+ * over four accumulators so that they don't serialize on one add. On JDK 17
+ * and later, the java17 build profile also compiles VectorKernels, which does
+ * the same with explicit SIMD through jdk.incubator.vector, into the jar's
+ * META-INF/versions/17. It's loaded reflectively, so it's only used on Java
+ * 17 or later, when the JVM was started with --add-modules
+ * jdk.incubator.vector and the platform actually has vectors wider than one
+ * double; anywhere else, or with -Drivet.vector=false, these loops are used
+ * instead.
+ *
+ * Arrays are used from 0 to the n given; callers check sizes.
+ *
+ * @author josh
+ */
+class DenseKernels {
+
+  static final DenseKernels SCALAR = new DenseKernels();
+
+  /** The best kernels this JVM can run. */
+  static final DenseKernels INSTANCE = load();
+
+  DenseKernels() {}
+
+  private static DenseKernels load() {
+    if (!Boolean.parseBoolean(System.getProperty("rivet.vector", "true")))
+      return SCALAR;
+    try {
+      return (DenseKernels) Class.forName(DenseKernels.class.getPackage()
+                                                            .getName()
+                                          + ".VectorKernels")
+                                 .getDeclaredConstructor()
+                                 .newInstance();
+    } catch (final ReflectiveOperationException | LinkageError
+        | RuntimeException e) {
+      return SCALAR;
+    }
+  }
+
+  /**
+   * a += b
+   */
+  void add(final double[] a, final double[] b, final int n) {
+    for (int i = 0; i < n; i++)
+      a[i] += b[i];
+  }
+
+  /**
+   * a /= scalar
+   */
+  void divide(final double[] a, final double scalar) {
+    for (int i = 0; i < a.length; i++)
+      a[i] /= scalar;
+  }
+
+  double dot(final double[] a, final double[] b, final int n) {
+    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+    int i = 0;
+    for (; i + 3 < n; i += 4) {
+      s0 += a[i] * b[i];
+      s1 += a[i + 1] * b[i + 1];
+      s2 += a[i + 2] * b[i + 2];
+      s3 += a[i + 3] * b[i + 3];
+    }
+    for (; i < n; i++)
+      s0 += a[i] * b[i];
+    return s0 + s1 + s2 + s3;
+  }
+
+  /**
+   * out[r] = query . rows[r], for vectors of length n. Rows are taken four
+   * at a time, so each stretch of query is read once per four rows.
+   */
+  void dots(final double[] query, final double[][] rows, final int n,
+            final double[] out) {
+    int r = 0;
+    for (; r + 3 < rows.length; r += 4) {
+      final double[] r0 = rows[r], r1 = rows[r + 1], r2 = rows[r + 2],
+          r3 = rows[r + 3];
+      double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+      for (int i = 0; i < n; i++) {
+        final double q = query[i];
+        s0 += q * r0[i];
+        s1 += q * r1[i];
+        s2 += q * r2[i];
+        s3 += q * r3[i];
+      }
+      out[r] = s0;
+      out[r + 1] = s1;
+      out[r + 2] = s2;
+      out[r + 3] = s3;
+    }
+    for (; r < rows.length; r++)
+      out[r] = dot(query, rows[r], n);
+  }
+
+  /**
+   * @return the dot product of the sparse vector (keys, vals) with dense
+   */
+  double gather(final double[] dense, final int[] keys, final double[] vals,
+                final int count) {
+    double s0 = 0, s1 = 0;
+    int i = 0;
+    for (; i + 1 < count; i += 2) {
+      s0 += vals[i] * dense[keys[i]];
+      s1 += vals[i + 1] * dense[keys[i + 1]];
+    }
+    if (i < count)
+      s0 += vals[i] * dense[keys[i]];
+    return s0 + s1;
+  }
+
+  /**
+   * out[r] = (keys, vals) . rows[r], four rows at a time.
+   */
+  void gathers(final int[] keys, final double[] vals, final int count,
+               final double[][] rows, final double[] out) {
+    int r = 0;
+    for (; r + 3 < rows.length; r += 4) {
+      final double[] r0 = rows[r], r1 = rows[r + 1], r2 = rows[r + 2],
+          r3 = rows[r + 3];
+      double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+      for (int i = 0; i < count; i++) {
+        final int k = keys[i];
+        final double v = vals[i];
+        s0 += v * r0[k];
+        s1 += v * r1[k];
+        s2 += v * r2[k];
+        s3 += v * r3[k];
+      }
+      out[r] = s0;
+      out[r + 1] = s1;
+      out[r + 2] = s2;
+      out[r + 3] = s3;
+    }
+    for (; r < rows.length; r++)
+      out[r] = gather(rows[r], keys, vals, count);
+  }
+
+  /**
+   * a *= scalar
+   */
+  void scale(final double[] a, final double scalar) {
+    for (int i = 0; i < a.length; i++)
+      a[i] *= scalar;
+  }
+
+  /**
+   * a -= b
+   */
+  void sub(final double[] a, final double[] b, final int n) {
+    for (int i = 0; i < n; i++)
+      a[i] -= b[i];
+  }
+
+  double sumOfSquares(final double[] a) {
+    return dot(a, a, a.length);
+  }
+
+  /**
+   * For tests and benchmarks: "scalar" or "vector".
+   */
+  String name() {
+    return "scalar";
+  }
+}
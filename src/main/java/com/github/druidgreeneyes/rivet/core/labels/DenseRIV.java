@@ -2,10 +2,12 @@ package com.github.druidgreeneyes.rivet.core.labels;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
 import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
 import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
 
@@ -62,6 +64,11 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
     return index >= 0 && index < vector.length;
   }
 
+  @Override
+  protected double computeMagnitude() {
+    return Math.sqrt(DenseKernels.INSTANCE.sumOfSquares(vector));
+  }
+
   @Override
   public DenseRIV copy() {
     return new DenseRIV(this);
@@ -74,8 +81,12 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public DenseRIV destructiveAdd(final RIV other) {
-    for (final VectorElement point : other.points())
-      vector[point.index()] += point.value();
+    if (other instanceof DenseRIV) {
+      final double[] o = ((DenseRIV) other).vector;
+      DenseKernels.INSTANCE.add(vector, o, Math.min(vector.length, o.length));
+    } else
+      other.forEachNZ((i, v) -> vector[i] += v);
+    invalidateMagnitude();
     return this;
   }
 
@@ -87,13 +98,14 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
                                               .parallel()
                                               .mapToDouble(riv -> riv.get(i))
                                               .sum());
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public DenseRIV destructiveDiv(final double scalar) {
-    for (int i = 0; i < vector.length; i++)
-      vector[i] = vector[i] / scalar;
+    DenseKernels.INSTANCE.divide(vector, scalar);
+    invalidateMagnitude();
     return this;
   }
 
@@ -104,8 +116,34 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public DenseRIV destructiveMult(final double scalar) {
-    for (int i = 0; i < vector.length; i++)
-      vector[i] = vector[i] * scalar;
+    DenseKernels.INSTANCE.scale(vector, scalar);
+    invalidateMagnitude();
+    return this;
+  }
+
+  /**
+   * Follows the permutation's cycles through the vector, carrying one value
+   * along each, so nothing but a visited set is allocated.
+   */
+  @Override
+  public DenseRIV destructivePermute(final Permutations permutations,
+                                     final int times) {
+    if (times == 0)
+      return this;
+    final int[] power = permutations.power(times);
+    final BitSet done = new BitSet(vector.length);
+    for (int start = done.nextClearBit(0); start < vector.length;
+         start = done.nextClearBit(start + 1)) {
+      double carry = vector[start];
+      for (int i = power[start]; i != start; i = power[i]) {
+        final double next = vector[i];
+        vector[i] = carry;
+        carry = next;
+        done.set(i);
+      }
+      vector[start] = carry;
+      done.set(start);
+    }
     return this;
   }
 
@@ -120,8 +158,12 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public DenseRIV destructiveSub(final RIV other) {
-    for (final VectorElement point : other.points())
-      vector[point.index()] -= point.value();
+    if (other instanceof DenseRIV) {
+      final double[] o = ((DenseRIV) other).vector;
+      DenseKernels.INSTANCE.sub(vector, o, Math.min(vector.length, o.length));
+    } else
+      other.forEachNZ((i, v) -> vector[i] -= v);
+    invalidateMagnitude();
     return this;
   }
 
@@ -133,6 +175,7 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
                                               .parallel()
                                               .mapToDouble(riv -> riv.get(i))
                                               .sum());
+    invalidateMagnitude();
     return this;
   }
 
@@ -184,21 +227,14 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
   }
 
   @Override
-  public DenseRIV permute(final Permutations permutations, int times) {
+  public DenseRIV permute(final Permutations permutations, final int times) {
     if (times == 0)
       return this;
     else {
-      final int[] prm = times > 0
-                                  ? permutations.permute
-                                  : permutations.inverse;
-      times = Math.abs(times);
-      double[] res = Arrays.copyOf(vector, vector.length);
-      final double[] p = new double[vector.length];
-      for (int t = 0; t < times; t++) {
-        for (int i = 0; i < res.length; i++)
-          p[prm[i]] = res[i];
-        res = Arrays.copyOf(p, p.length);
-      }
+      final int[] power = permutations.power(times);
+      final double[] res = new double[vector.length];
+      for (int i = 0; i < res.length; i++)
+        res[power[i]] = vector[i];
       return new DenseRIV(res);
     }
   }
@@ -220,9 +256,17 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
   public double put(final int index, final double value) {
     final double v = vector[index];
     vector[index] = value;
+    invalidateMagnitude();
     return v;
   }
 
+  /**
+   * The backing array itself, indexed by vector index.
+   */
+  double[] rawVals() {
+    return vector;
+  }
+
   /**
    * Doesn't do anything.
    */
@@ -261,6 +305,29 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
     return Arrays.stream(vector);
   }
 
+  private static void checkSizes(final RIV query, final DenseRIV[] block) {
+    for (int r = 0; r < block.length; r++)
+      if (block[r].size() != query.size())
+        throw new SizeMismatchException("Query has size " + query.size()
+                                        + "; block row " + r + " has size "
+                                        + block[r].size());
+  }
+
+  /**
+   * Scores one query against a block of dense vectors at once, which is
+   * quicker than calling query.dot() on each: the rows are walked a few at a
+   * time, so the query (or its non-zeros) is read once per group rather than
+   * once per row.
+   *
+   * @return query.dot(block[r]) for each r
+   */
+  public static double[] dots(final RIV query, final DenseRIV... block) {
+    checkSizes(query, block);
+    final double[] out = new double[block.length];
+    DotProduct.dots(query, block, out);
+    return out;
+  }
+
   public static DenseRIV empty(final int size) {
     return new DenseRIV(size);
   }
@@ -292,4 +359,20 @@ public class DenseRIV extends AbstractRIV implements RIV, Serializable {
   public static RIVConstructor getConstructor() {
     return DenseRIV::new;
   }
+
+  /**
+   * @return query.similarityTo(block[r]) for each r, computed as by dots()
+   */
+  public static double[] similarities(final RIV query,
+                                      final DenseRIV... block) {
+    final double[] out = dots(query, block);
+    final double mag = query.magnitude();
+    for (int r = 0; r < out.length; r++) {
+      final double m = mag * block[r].magnitude();
+      out[r] = m == 0
+                      ? 0
+                      : out[r] / m;
+    }
+    return out;
+  }
 }
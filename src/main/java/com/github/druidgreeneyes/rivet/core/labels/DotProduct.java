@@ -0,0 +1,381 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.Arrays;
+
+import no.uib.cipr.matrix.sparse.SparseVector;
+
+/**
+ * Dot products between RIVs, specialized on the concrete types of both
+ * operands. The generic way to do this (walk one vector's points(), call get()
+ * on the other) allocates a VectorElement per point and, depending on the
+ * implementation, boxes and bounds-checks every lookup. Here we read the
+ * backing storage directly wherever we know what it is:
+ *
+ * - dense . anything: walk the non-zeros of the other vector and gather from
+ * the dense array. These loops, and dense . dense, are DenseKernels', so they
+ * use SIMD where the JVM allows it.
+ *
+ * - sorted . sorted (SparseRIV, MTJRIV): a linear merge of the two key arrays,
+ * or binary searches from the smaller one into the larger when they are
+ * lopsided enough that that's cheaper.
+ *
+ * - ByteBufferRIV . sorted: a merge that decodes the buffer in place.
+ *
+ * - compact (CompactSparseRIV, CompactDenseRIV) . anything: the same three
+ * strategies, run by CompactValues over the stored floats or scaled integers,
+ * with the sparse . sparse merge only collecting the matching positions.
+ *
+ * - anything else: walk whichever side has fewer points and probe the other.
+ *
+ * @author josh
+ */
+final class DotProduct {
+
+  private DotProduct() {}
+
+  /**
+   * Sorted key arrays whose lengths differ by more than this factor are
+   * searched rather than merged.
+   */
+  private static final int GALLOP_RATIO = 8;
+
+  static double dot(final RIV a, final RIV b) {
+    if (isCompact(a))
+      return compact(a, b);
+    else if (isCompact(b))
+      return compact(b, a);
+    else if (a instanceof DenseRIV)
+      return b instanceof DenseRIV
+                                   ? dense(((DenseRIV) a).rawVals(),
+                                           ((DenseRIV) b).rawVals())
+                                   : gather(((DenseRIV) a).rawVals(), b);
+    else if (b instanceof DenseRIV)
+      return gather(((DenseRIV) b).rawVals(), a);
+    else if (a instanceof ByteBufferRIV)
+      return buffer((ByteBufferRIV) a, b);
+    else if (b instanceof ByteBufferRIV)
+      return buffer((ByteBufferRIV) b, a);
+    else if (isSorted(a) && isSorted(b))
+      return sorted(a, b);
+    else if (a instanceof MapRIV && b instanceof MapRIV)
+      return ((MapRIV) a).table().dot(((MapRIV) b).table());
+    else
+      return a.count() <= b.count()
+                                    ? probe(a, b)
+                                    : probe(b, a);
+  }
+
+  private static double buffer(final ByteBufferRIV a, final RIV b) {
+    if (b instanceof ByteBufferRIV)
+      return a.dot((ByteBufferRIV) b);
+    else if (b instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) b;
+      return a.dot(s.rawKeys(), s.rawVals(), s.count());
+    } else if (b instanceof MTJRIV) {
+      final SparseVector v = ((MTJRIV) b).vector();
+      return a.dot(v.getRawIndex(), v.getRawData(), v.getUsed());
+    } else
+      return probe(a, b);
+  }
+
+  /**
+   * a is compact; b may be.
+   */
+  private static double compact(final RIV a, final RIV b) {
+    if (a instanceof CompactDenseRIV) {
+      final CompactValues av = ((CompactDenseRIV) a).values();
+      if (b instanceof CompactDenseRIV) {
+        final CompactValues bv = ((CompactDenseRIV) b).values();
+        return av.dot(null, bv, null, Math.min(av.length(), bv.length()));
+      } else if (b instanceof CompactSparseRIV) {
+        final CompactSparseRIV s = (CompactSparseRIV) b;
+        return s.values()
+                .dot(null, av, s.rawKeys(), s.count());
+      } else if (b instanceof DenseRIV) {
+        final double[] d = ((DenseRIV) b).rawVals();
+        return av.dot(null, d, null, Math.min(av.length(), d.length));
+      } else if (b instanceof SparseRIV) {
+        final SparseRIV s = (SparseRIV) b;
+        return av.dot(s.rawKeys(), s.rawVals(), null, s.count());
+      } else if (b instanceof MTJRIV) {
+        final SparseVector v = ((MTJRIV) b).vector();
+        return av.dot(v.getRawIndex(), v.getRawData(), null, v.getUsed());
+      } else {
+        final double[] sum = { 0 };
+        b.forEachNZ((i, v) -> {
+          if (i < av.length())
+            sum[0] += v * av.get(i);
+        });
+        return sum[0];
+      }
+    }
+    final CompactSparseRIV s = (CompactSparseRIV) a;
+    final int[] ak = s.rawKeys();
+    final CompactValues av = s.values();
+    final int an = s.count();
+    if (b instanceof CompactSparseRIV) {
+      final CompactSparseRIV t = (CompactSparseRIV) b;
+      final int[][] at = matches(ak, an, t.rawKeys(), t.count());
+      return av.dot(at[0], t.values(), at[1], at[0].length);
+    } else if (b instanceof CompactDenseRIV)
+      return av.dot(null, ((CompactDenseRIV) b).values(), ak, an);
+    else if (b instanceof DenseRIV)
+      return av.dot(null, ((DenseRIV) b).rawVals(), ak, an);
+    else if (b instanceof SparseRIV) {
+      final SparseRIV t = (SparseRIV) b;
+      final int[][] at = matches(ak, an, t.rawKeys(), t.count());
+      return av.dot(at[0], t.rawVals(), at[1], at[0].length);
+    } else if (b instanceof MTJRIV) {
+      final SparseVector v = ((MTJRIV) b).vector();
+      final int[][] at = matches(ak, an, v.getRawIndex(), v.getUsed());
+      return av.dot(at[0], v.getRawData(), at[1], at[0].length);
+    } else {
+      double sum = 0;
+      for (int i = 0; i < an; i++)
+        sum += av.get(i) * valueAt(b, ak[i]);
+      return sum;
+    }
+  }
+
+  private static double dense(final double[] a, final double[] b) {
+    return DenseKernels.INSTANCE.dot(a, b, Math.min(a.length, b.length));
+  }
+
+  /**
+   * out[r] = query . block[r], with the block's rows taken several at a time
+   * so that query is only read once per group of rows.
+   */
+  static void dots(final RIV query, final DenseRIV[] block,
+                   final double[] out) {
+    final double[][] rows = new double[block.length][];
+    for (int r = 0; r < rows.length; r++)
+      rows[r] = block[r].rawVals();
+    if (query instanceof DenseRIV) {
+      final double[] q = ((DenseRIV) query).rawVals();
+      DenseKernels.INSTANCE.dots(q, rows, q.length, out);
+    } else if (query instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) query;
+      DenseKernels.INSTANCE.gathers(s.rawKeys(), s.rawVals(), s.count(), rows,
+                                    out);
+    } else if (query instanceof MTJRIV) {
+      final SparseVector v = ((MTJRIV) query).vector();
+      DenseKernels.INSTANCE.gathers(v.getRawIndex(), v.getRawData(),
+                                    v.getUsed(), rows, out);
+    } else if (query instanceof ImmutableRIV) {
+      final ImmutableRIV s = (ImmutableRIV) query;
+      DenseKernels.INSTANCE.gathers(s.rawKeys(), s.rawVals(), s.count(), rows,
+                                    out);
+    } else {
+      final int[] keys = query.keyArr();
+      DenseKernels.INSTANCE.gathers(keys, query.valArr(), keys.length, rows,
+                                    out);
+    }
+  }
+
+  private static double gather(final double[] dense, final RIV sparse) {
+    if (sparse instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) sparse;
+      return gather(dense, s.rawKeys(), s.rawVals(), s.count());
+    } else if (sparse instanceof MTJRIV) {
+      final SparseVector v = ((MTJRIV) sparse).vector();
+      return gather(dense, v.getRawIndex(), v.getRawData(), v.getUsed());
+    } else if (sparse instanceof ImmutableRIV) {
+      final ImmutableRIV s = (ImmutableRIV) sparse;
+      return gather(dense, s.rawKeys(), s.rawVals(), s.count());
+    } else if (sparse instanceof ArrayRIV) {
+      double sum = 0;
+      for (final VectorElement p : ((ArrayRIV) sparse).points())
+        sum += p.value() * dense[p.index()];
+      return sum;
+    } else if (sparse instanceof ByteBufferRIV)
+      return ((ByteBufferRIV) sparse).gather(dense);
+    else {
+      final double[] sum = { 0 };
+      sparse.forEachNZ((i, v) -> sum[0] += v * dense[i]);
+      return sum[0];
+    }
+  }
+
+  private static double gather(final double[] dense, final int[] keys,
+                               final double[] vals, final int count) {
+    return DenseKernels.INSTANCE.gather(dense, keys, vals, count);
+  }
+
+  private static boolean isCompact(final RIV riv) {
+    return riv instanceof CompactSparseRIV || riv instanceof CompactDenseRIV;
+  }
+
+  private static boolean isSorted(final RIV riv) {
+    return riv instanceof SparseRIV || riv instanceof MTJRIV;
+  }
+
+  /**
+   * Walks the non-zeros of small and looks each one up in large.
+   */
+  private static double probe(final RIV small, final RIV large) {
+    if (small instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) small;
+      return probe(s.rawKeys(), s.rawVals(), s.count(), large);
+    } else if (small instanceof MTJRIV) {
+      final SparseVector v = ((MTJRIV) small).vector();
+      return probe(v.getRawIndex(), v.getRawData(), v.getUsed(), large);
+    } else if (small instanceof ImmutableRIV) {
+      final ImmutableRIV s = (ImmutableRIV) small;
+      return probe(s.rawKeys(), s.rawVals(), s.count(), large);
+    } else if (small instanceof ArrayRIV) {
+      double sum = 0;
+      for (final VectorElement p : ((ArrayRIV) small).points())
+        sum += p.value() * valueAt(large, p.index());
+      return sum;
+    } else {
+      final double[] sum = { 0 };
+      small.forEachNZ((i, v) -> sum[0] += v * valueAt(large, i));
+      return sum[0];
+    }
+  }
+
+  private static double probe(final int[] keys, final double[] vals,
+                              final int count, final RIV large) {
+    double sum = 0;
+    for (int i = 0; i < count; i++)
+      sum += vals[i] * valueAt(large, keys[i]);
+    return sum;
+  }
+
+  private static double search(final int[] smallKeys,
+                               final double[] smallVals,
+                               final int smallCount,
+                               final int[] largeKeys,
+                               final double[] largeVals,
+                               final int largeCount) {
+    double sum = 0;
+    int from = 0;
+    for (int i = 0; i < smallCount && from < largeCount; i++) {
+      final int j = Arrays.binarySearch(largeKeys, from, largeCount,
+                                        smallKeys[i]);
+      if (j >= 0) {
+        sum += smallVals[i] * largeVals[j];
+        from = j + 1;
+      } else
+        from = ~j;
+    }
+    return sum;
+  }
+
+  private static double sorted(final RIV a, final RIV b) {
+    final int[] ak, bk;
+    final double[] av, bv;
+    final int an, bn;
+    if (a instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) a;
+      ak = s.rawKeys();
+      av = s.rawVals();
+      an = s.count();
+    } else {
+      final SparseVector v = ((MTJRIV) a).vector();
+      ak = v.getRawIndex();
+      av = v.getRawData();
+      an = v.getUsed();
+    }
+    if (b instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) b;
+      bk = s.rawKeys();
+      bv = s.rawVals();
+      bn = s.count();
+    } else {
+      final SparseVector v = ((MTJRIV) b).vector();
+      bk = v.getRawIndex();
+      bv = v.getRawData();
+      bn = v.getUsed();
+    }
+    if (an * GALLOP_RATIO < bn)
+      return search(ak, av, an, bk, bv, bn);
+    else if (bn * GALLOP_RATIO < an)
+      return search(bk, bv, bn, ak, av, an);
+    else
+      return merge(ak, av, an, bk, bv, bn);
+  }
+
+  /**
+   * Merges two sorted key arrays.
+   *
+   * @return the positions in each at which they hold the same key
+   */
+  private static int[][] matches(final int[] ak, final int an, final int[] bk,
+                                 final int bn) {
+    final int[] ai = new int[Math.min(an, bn)];
+    final int[] bi = new int[ai.length];
+    int i = 0, j = 0, m = 0;
+    while (i < an && j < bn) {
+      final int x = ak[i];
+      final int y = bk[j];
+      if (x < y)
+        i++;
+      else if (y < x)
+        j++;
+      else {
+        ai[m] = i++;
+        bi[m++] = j++;
+      }
+    }
+    return new int[][] { Arrays.copyOf(ai, m), Arrays.copyOf(bi, m) };
+  }
+
+  private static double merge(final int[] ak, final double[] av, final int an,
+                              final int[] bk, final double[] bv,
+                              final int bn) {
+    double sum = 0;
+    int i = 0, j = 0;
+    while (i < an && j < bn) {
+      final int x = ak[i];
+      final int y = bk[j];
+      if (x < y)
+        i++;
+      else if (y < x)
+        j++;
+      else
+        sum += av[i++] * bv[j++];
+    }
+    return sum;
+  }
+
+  /**
+   * get() without the boxing, allocation or exceptions that some
+   * implementations' get() carries; indices outside the vector read as 0.
+   */
+  private static double valueAt(final RIV riv, final int index) {
+    if (riv instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) riv;
+      final int i = Arrays.binarySearch(s.rawKeys(), 0, s.count(), index);
+      return i < 0
+                   ? 0
+                   : s.rawVals()[i];
+    } else if (riv instanceof MapRIV)
+      return ((MapRIV) riv).getOrDefault(index, 0);
+    else if (riv instanceof MTJRIV) {
+      final SparseVector v = ((MTJRIV) riv).vector();
+      final int i = Arrays.binarySearch(v.getRawIndex(), 0, v.getUsed(),
+                                        index);
+      return i < 0
+                   ? 0
+                   : v.getRawData()[i];
+    } else if (riv instanceof ArrayRIV) {
+      final VectorElement[] points = ((ArrayRIV) riv).points();
+      int lo = 0, hi = points.length - 1;
+      while (lo <= hi) {
+        final int mid = lo + hi >>> 1;
+        final int k = points[mid].index();
+        if (k < index)
+          lo = mid + 1;
+        else if (k > index)
+          hi = mid - 1;
+        else
+          return points[mid].value();
+      }
+      return 0;
+    } else
+      return index < riv.size()
+                                ? riv.get(index)
+                                : 0;
+  }
+}
@@ -71,6 +71,7 @@ public class HPPCRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public HPPCRIV destructiveAdd(final RIV other) {
     other.forEachNZ(data::addTo);
+    invalidateMagnitude();
     return this;
   }
 
@@ -85,6 +86,7 @@ public class HPPCRIV extends AbstractRIV implements RIV, Serializable {
   public HPPCRIV destructiveDiv(final double scalar) {
     for (int i = 0; i < data.values.length; i++)
       data.values[i] /= scalar;
+    invalidateMagnitude();
     return this;
   }
 
@@ -92,18 +94,21 @@ public class HPPCRIV extends AbstractRIV implements RIV, Serializable {
   public HPPCRIV destructiveMult(final double scalar) {
     for (int i = 0; i < data.values.length; i++)
       data.values[i] *= scalar;
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public HPPCRIV destructiveRemoveZeros() {
     data.removeAll((IntDoublePredicate) (k, v) -> Util.doubleEquals(v, 0.0));
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public HPPCRIV destructiveSub(final RIV other) {
     other.forEachNZ((i, v) -> data.addTo(i, -v));
+    invalidateMagnitude();
     return this;
   }
 
@@ -150,10 +155,8 @@ public class HPPCRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public int[] keyArr() {
-    final int[] keys = new int[count()];
-    for (int i = 0, j = 0; i < size; i++)
-      if (!Util.doubleEquals(get(i), 0))
-        keys[j++] = i;
+    final int[] keys = data.keys().toArray();
+    Arrays.sort(keys);
     return keys;
   }
 
@@ -167,13 +170,7 @@ public class HPPCRIV extends AbstractRIV implements RIV, Serializable {
     if (times == 0)
       return this;
     else
-      return new HPPCRIV(times > 0
-                                   ? RIVs.permuteKeys(keyArr(),
-                                                      permutations.permute,
-                                                      times)
-                                   : RIVs.permuteKeys(keyArr(),
-                                                      permutations.inverse,
-                                                      -times),
+      return new HPPCRIV(RIVs.permuteKeys(keyArr(), permutations, times),
                          valArr(),
                          size);
   }
@@ -196,7 +193,9 @@ public class HPPCRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public double put(final int index, final double value) {
-    return data.put(index, value);
+    final double v = data.put(index, value);
+    invalidateMagnitude();
+    return v;
   }
 
   @Override
@@ -12,7 +12,11 @@ import java.util.stream.Stream;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.NotImplementedException;
 
+import no.uib.cipr.matrix.sparse.SparseVector;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
 import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleTable;
 import com.github.druidgreeneyes.rivet.core.util.Util;
 import com.github.druidgreeneyes.rivet.core.util.hilbert.Hilbert;
 import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
@@ -36,23 +40,41 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
 
   private final double magnitude;
 
+  /**
+   * Whether keys ascend, so that get() can binary search them and the merges
+   * can use them as they are. False when read from an older stream, which
+   * only costs speed.
+   */
+  private final boolean sorted;
+
   public ImmutableRIV(final int size) {
     this.size = size;
     keys = new int[0];
     vals = new double[0];
+    sorted = true;
     magnitude = computeMagnitude();
   }
 
   public ImmutableRIV(final int[] keys,
                       final double[] vals,
                       final int size) {
+    this(keys, vals, keys.length, size);
+  }
+
+  /**
+   * Takes the first count keys and values.
+   */
+  private ImmutableRIV(final int[] keys, final double[] vals, final int count,
+                       final int size) {
     this.size = size;
-    this.keys = Arrays.copyOf(keys, keys.length);
-    this.vals = Arrays.copyOf(vals, vals.length);
+    this.keys = Arrays.copyOf(keys, count);
+    this.vals = Arrays.copyOf(vals, count);
+    sorted = ascending(this.keys);
     magnitude = computeMagnitude();
   }
 
-  private double computeMagnitude() {
+  @Override
+  protected double computeMagnitude() {
     double sum = 0;
     for (final double val : vals)
       sum += val * val;
@@ -63,6 +85,143 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
     this(riv.keyArr(), riv.valArr(), riv.size());
   }
 
+  /**
+   * Sums vectors into a scratch table and freezes the total into an
+   * ImmutableRIV, for building a document out of many word vectors without
+   * the intermediate vector that every add() would otherwise make. build()
+   * leaves the running total alone, so a builder can keep going afterwards.
+   *
+   * Not thread safe.
+   */
+  public static final class Builder {
+    private final int size;
+    private final IntDoubleTable table;
+
+    public Builder(final int size) {
+      this.size = size;
+      table = new IntDoubleTable();
+    }
+
+    public Builder add(final int index, final double value) {
+      if (index < 0 || index >= size)
+        throw new IndexOutOfBoundsException("Index " + index
+                                            + " is outside a RIV of size "
+                                            + size);
+      table.addTo(index, value);
+      return this;
+    }
+
+    public Builder add(final RIV riv) {
+      checkSize(riv);
+      riv.forEachNZ(table::addTo);
+      return this;
+    }
+
+    /**
+     * @return the running total; zeros are left out
+     */
+    public ImmutableRIV build() {
+      final int[] keys = table.keys();
+      Arrays.sort(keys);
+      final double[] vals = new double[keys.length];
+      int n = 0;
+      for (final int k : keys) {
+        final double v = table.get(k, 0);
+        if (v != 0) {
+          keys[n] = k;
+          vals[n++] = v;
+        }
+      }
+      return new ImmutableRIV(keys, vals, n, size);
+    }
+
+    private void checkSize(final RIV riv) {
+      if (riv.size() != size)
+        throw new SizeMismatchException("RIV has size " + riv.size()
+                                        + "; builder has size " + size);
+    }
+
+    /**
+     * Starts again from zero.
+     */
+    public Builder clear() {
+      table.clear();
+      return this;
+    }
+
+    public Builder subtract(final RIV riv) {
+      checkSize(riv);
+      riv.forEachNZ((k, v) -> table.addTo(k, -v));
+      return this;
+    }
+  }
+
+  /**
+   * One operand's non-zeros in ascending key order, and how far a merge has
+   * got through them.
+   */
+  private static final class Run {
+    final int[] keys;
+    final double[] vals;
+    final int count;
+    final int operand;
+    int pos = 0;
+
+    Run(final int[] keys, final double[] vals, final int count,
+        final int operand) {
+      this.keys = keys;
+      this.vals = vals;
+      this.count = count;
+      this.operand = operand;
+    }
+
+    int key() {
+      return keys[pos];
+    }
+
+    /**
+     * Reads sorted types' arrays in place, and sorts a copy of anything
+     * else.
+     */
+    static Run of(final RIV riv, final int operand) {
+      if (riv instanceof ImmutableRIV && ((ImmutableRIV) riv).sorted) {
+        final ImmutableRIV r = (ImmutableRIV) riv;
+        return new Run(r.keys, r.vals, r.keys.length, operand);
+      } else if (riv instanceof MTJRIV) {
+        final SparseVector v = ((MTJRIV) riv).vector();
+        return new Run(v.getRawIndex(), v.getRawData(), v.getUsed(), operand);
+      }
+      final SparseRIV s = riv instanceof SparseRIV
+                                                   ? (SparseRIV) riv
+                                                   : new SparseRIV(riv);
+      return new Run(s.rawKeys(), s.rawVals(), s.count(), operand);
+    }
+
+    /**
+     * @return whether a comes off the heap before b
+     */
+    static boolean before(final Run a, final Run b) {
+      final int x = a.key(), y = b.key();
+      return x < y || x == y && a.operand < b.operand;
+    }
+
+    static void siftDown(final Run[] heap, final int h, int i) {
+      final Run run = heap[i];
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= h)
+          break;
+        if (child + 1 < h && before(heap[child + 1], heap[child]))
+          child++;
+        if (!before(heap[child], run))
+          break;
+        heap[i] = heap[child];
+        i = child;
+      }
+      heap[i] = run;
+    }
+  }
+
   @Override
   public ImmutableRIV add(final RIV other) {
     return merge(add, other);
@@ -75,7 +234,7 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public boolean contains(final int index) {
-    return ArrayUtils.contains(keys, index);
+    return find(index) >= 0;
   }
 
   @Override
@@ -112,6 +271,13 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
                                       "Destructive methods not available on Immutable RIV.");
   }
 
+  @Override
+  public ImmutableRIV destructivePermute(final Permutations permutations,
+                                         final int times) {
+    throw new NotImplementedException(
+                                      "Destructive methods not available on Immutable RIV.");
+  }
+
   @Override
   public ImmutableRIV destructiveRemoveZeros() {
     throw new NotImplementedException(
@@ -159,13 +325,22 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
   public double get(final int index) throws IndexOutOfBoundsException {
     if (index < 0 || index >= size)
       throw new IndexOutOfBoundsException();
-    final int i = ArrayUtils.indexOf(keys, index);
-    if (i == ArrayUtils.INDEX_NOT_FOUND)
+    final int i = find(index);
+    if (i < 0)
       return 0;
     else
       return vals[i];
   }
 
+  /**
+   * @return the position of index in keys, or a negative number
+   */
+  private int find(final int index) {
+    return sorted
+                  ? Arrays.binarySearch(keys, index)
+                  : ArrayUtils.indexOf(keys, index);
+  }
+
   public BigInteger getFHilbertKey() {
     return Hilbert.fEncodeHilbertKey(this);
   }
@@ -218,58 +393,96 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
   }
 
   private ImmutableRIV map(final DoubleUnaryOperator operation) {
-    double[] newVals = new double[vals.length];
-    int[] zeros = new int[0];
-    for (int i = 0; i < vals.length; i++) {
-      newVals[i] = operation.applyAsDouble(vals[i]);
-      if (newVals[i] == 0)
-        zeros = ArrayUtils.add(zeros, i);
+    final int[] newKeys = new int[keys.length];
+    final double[] newVals = new double[keys.length];
+    int n = 0;
+    for (int i = 0; i < keys.length; i++) {
+      final double v = operation.applyAsDouble(vals[i]);
+      if (v != 0) {
+        newKeys[n] = keys[i];
+        newVals[n++] = v;
+      }
     }
-    final int[] newKeys = ArrayUtils.removeAll(keys, zeros);
-    newVals = ArrayUtils.removeAll(newVals, zeros);
-    return new ImmutableRIV(newKeys, newVals, size);
+    return new ImmutableRIV(newKeys, newVals, n, size);
   }
 
+  /**
+   * A linear merge of the two vectors' sorted non-zeros.
+   */
   private ImmutableRIV merge(final DoubleBinaryOperator mergeFunction,
                              final RIV other) {
-    int[] newKeys = IntStream.concat(keyStream(), other.keyStream())
-                             .distinct()
-                             .sorted()
-                             .toArray();
-    double[] newVals = new double[newKeys.length];
-    int[] zeros = new int[0];
-    for (int i = 0; i < newKeys.length; i++) {
-      final int k = newKeys[i];
-      newVals[i] = mergeFunction.applyAsDouble(get(k), other.get(k));
-      if (newVals[i] == 0)
-        zeros = ArrayUtils.add(zeros, i);
+    final Run a = Run.of(this, 0);
+    final Run b = Run.of(other, 1);
+    final int[] newKeys = new int[a.count + b.count];
+    final double[] newVals = new double[newKeys.length];
+    int n = 0;
+    int i = 0, j = 0;
+    while (i < a.count || j < b.count) {
+      final int k;
+      final double v;
+      if (j == b.count || i < a.count && a.keys[i] < b.keys[j]) {
+        k = a.keys[i];
+        v = mergeFunction.applyAsDouble(a.vals[i++], 0);
+      } else if (i == a.count || b.keys[j] < a.keys[i]) {
+        k = b.keys[j];
+        v = mergeFunction.applyAsDouble(0, b.vals[j++]);
+      } else {
+        k = a.keys[i];
+        v = mergeFunction.applyAsDouble(a.vals[i++], b.vals[j++]);
+      }
+      if (v != 0) {
+        newKeys[n] = k;
+        newVals[n++] = v;
+      }
     }
-    newKeys = ArrayUtils.removeAll(newKeys, zeros);
-    newVals = ArrayUtils.removeAll(newVals, zeros);
-    return new ImmutableRIV(newKeys, newVals, size);
+    return new ImmutableRIV(newKeys, newVals, n, size);
   }
 
+  /**
+   * A k-way merge of every operand's sorted non-zeros, through a heap of
+   * runs ordered by their next key (and, among equal keys, by operand, so
+   * that this vector's value always comes first). Each key's values are
+   * folded together with mergeFunction as its runs come off the heap. Costs
+   * O(n log k) for n non-zeros in k operands, and boxes nothing.
+   */
   private ImmutableRIV merge(final DoubleBinaryOperator mergeFunction,
                              final RIV... others) {
-    int[] newKeys = Stream.concat(Stream.of(this), Arrays.stream(others))
-                          .flatMapToInt(RIV::keyStream)
-                          .distinct()
-                          .sorted()
-                          .toArray();
-    double[] newVals = new double[newKeys.length];
-    int[] zeros = new int[0];
-    for (int i = 0; i < newKeys.length; i++) {
-      final int k = newKeys[i];
-      double v = get(k);
-      for (final RIV riv : others)
-        v = mergeFunction.applyAsDouble(v, riv.get(k));
-      if (Util.doubleEquals(v, 0, Util.roundingError))
-        zeros = ArrayUtils.add(zeros, i);
-      newVals[i] = v;
+    final Run[] heap = new Run[others.length + 1];
+    int h = 0;
+    int total = 0;
+    for (int j = 0; j <= others.length; j++) {
+      final Run run = Run.of(j == 0
+                                    ? this
+                                    : others[j - 1],
+                             j);
+      total += run.count;
+      if (run.count > 0)
+        heap[h++] = run;
+    }
+    for (int i = h / 2 - 1; i >= 0; i--)
+      Run.siftDown(heap, h, i);
+    final int[] newKeys = new int[total];
+    final double[] newVals = new double[total];
+    int n = 0;
+    while (h > 0) {
+      final int k = heap[0].key();
+      double v = 0;
+      do {
+        final Run run = heap[0];
+        final double x = run.vals[run.pos++];
+        v = run.operand == 0
+                             ? x
+                             : mergeFunction.applyAsDouble(v, x);
+        if (run.pos == run.count)
+          heap[0] = heap[--h];
+        Run.siftDown(heap, h, 0);
+      } while (h > 0 && heap[0].key() == k);
+      if (!Util.doubleEquals(v, 0, Util.roundingError)) {
+        newKeys[n] = k;
+        newVals[n++] = v;
+      }
     }
-    newKeys = ArrayUtils.removeAll(newKeys, zeros);
-    newVals = ArrayUtils.removeAll(newVals, zeros);
-    return new ImmutableRIV(newKeys, newVals, size);
+    return new ImmutableRIV(newKeys, newVals, n, size);
   }
 
   @Override
@@ -282,13 +495,7 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
                               final int times) {
     if (times == 0)
       return this;
-    return new ImmutableRIV(times > 0
-                                      ? RIVs.permuteKeys(keyArr(),
-                                                         permutations.permute,
-                                                         times)
-                                      : RIVs.permuteKeys(keyArr(),
-                                                         permutations.inverse,
-                                                         -times),
+    return new ImmutableRIV(RIVs.permuteKeys(keyArr(), permutations, times),
                             valArr(),
                             size);
   }
@@ -312,6 +519,21 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
     throw new NotImplementedException("Cannot make destructive modifications to ImmutableRIV.");
   }
 
+  /**
+   * The backing key array, in whatever order it was constructed with. Callers
+   * must not write to it.
+   */
+  int[] rawKeys() {
+    return keys;
+  }
+
+  /**
+   * The backing value array, matching rawKeys(). Callers must not write to it.
+   */
+  double[] rawVals() {
+    return vals;
+  }
+
   @Override
   public ImmutableRIV removeZeros() {
     return this;
@@ -351,6 +573,13 @@ public class ImmutableRIV extends AbstractRIV implements RIV, Serializable {
     return Arrays.stream(vals);
   }
 
+  private static boolean ascending(final int[] keys) {
+    for (int i = 1; i < keys.length; i++)
+      if (keys[i - 1] >= keys[i])
+        return false;
+    return true;
+  }
+
   private static DoubleUnaryOperator divideBy(final double scalar) {
     return a -> a / scalar;
   }
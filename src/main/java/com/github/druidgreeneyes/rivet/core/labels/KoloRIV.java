@@ -82,6 +82,7 @@ public final class KoloRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public KoloRIV destructiveAdd(final RIV other) {
     other.forEachNZ(data::addValue);
+    invalidateMagnitude();
     return this;
   }
 
@@ -99,6 +100,7 @@ public final class KoloRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public KoloRIV destructiveDiv(final double scalar) {
     data.replaceAll(div(scalar));
+    invalidateMagnitude();
     return this;
   }
 
@@ -116,12 +118,14 @@ public final class KoloRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public KoloRIV destructiveMult(final double scalar) {
     data.replaceAll(mult(scalar));
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public KoloRIV destructiveRemoveZeros() {
     data.removeIf((i, v) -> Util.doubleEquals(v, 0));
+    invalidateMagnitude();
     return this;
   }
 
@@ -129,6 +133,7 @@ public final class KoloRIV extends AbstractRIV implements RIV, Serializable {
   public KoloRIV destructiveSub(final RIV other) throws SizeMismatchException {
     // assertSizeMatch(other, "Cannot subtract rivs of mismatched sizes.");
     other.forEachNZ(this::subtractPoint);
+    invalidateMagnitude();
     return this;
   }
 
@@ -192,12 +197,7 @@ public final class KoloRIV extends AbstractRIV implements RIV, Serializable {
     if (times == 0)
       return this;
     else
-      return new KoloRIV(times > 0 ? RIVs.permuteKeys(keyArr(),
-                                                      permutations.permute,
-                                                      times)
-                                   : RIVs.permuteKeys(keyArr(),
-                                                      permutations.inverse,
-                                                      -times),
+      return new KoloRIV(RIVs.permuteKeys(keyArr(), permutations, times),
                          valArr(),
                          size);
   }
@@ -220,7 +220,9 @@ public final class KoloRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public double put(final int index, final double value) {
-    return data.put(index, value);
+    final double v = data.put(index, value);
+    invalidateMagnitude();
+    return v;
   }
 
   @Override
@@ -33,8 +33,17 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
     data = new SparseVector(size);
   }
 
+  /**
+   * SparseVector needs its keys sorted and distinct, so unsorted keys (from
+   * permute(), say) go through a SparseRIV first.
+   */
   public MTJRIV(final int[] keys, final double[] vals, final int size) {
-    data = new SparseVector(size, keys, vals, true);
+    if (isSorted(keys))
+      data = new SparseVector(size, keys, vals, true);
+    else {
+      final SparseRIV sorted = new SparseRIV(keys, vals, size);
+      data = new SparseVector(size, sorted.keyArr(), sorted.valArr(), false);
+    }
   }
 
   public MTJRIV(final MTJRIV riv) {
@@ -68,6 +77,7 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
 
   public MTJRIV destructiveAdd(final MTJRIV other) {
     data.add(other.data);
+    invalidateMagnitude();
     return this;
   }
 
@@ -81,6 +91,7 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
   public MTJRIV destructiveAdd(final RIV other) throws SizeMismatchException {
     // assertSizeMatch(other, "Cannot add rivs of mismatched sizes.");
     other.forEachNZ(data::add);
+    invalidateMagnitude();
     return this;
   }
 
@@ -106,6 +117,7 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public MTJRIV destructiveMult(final double scalar) {
     data.scale(scalar);
+    invalidateMagnitude();
     return this;
   }
 
@@ -118,17 +130,20 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public MTJRIV destructiveRemoveZeros() {
     data.compact();
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public MTJRIV destructiveSub(final RIV other) throws SizeMismatchException {
     other.forEachNZ(this::sub);
+    invalidateMagnitude();
     return this;
   }
 
   public MTJRIV destructiveSub(final MTJRIV other) {
     data.add(-1, other.data);
+    invalidateMagnitude();
     return this;
   }
 
@@ -155,8 +170,15 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
 
   public boolean equals(final MTJRIV other) {
     return data.size() == other.data.size()
-           && Arrays.equals(data.getData(), other.data.getData())
-           && Arrays.equals(data.getIndex(), other.data.getIndex());
+           && Arrays.equals(valArr(), other.valArr())
+           && Arrays.equals(keyArr(), other.keyArr());
+  }
+
+  private static boolean isSorted(final int[] keys) {
+    for (int i = 1; i < keys.length; i++)
+      if (keys[i - 1] >= keys[i])
+        return false;
+    return true;
   }
 
   @Override
@@ -164,9 +186,12 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
     data.forEach(e -> fun.accept(e.index(), e.get()));
   }
 
+  /**
+   * A copy; SparseVector.getIndex() can hand back the live index array.
+   */
   @Override
   public int[] keyArr() {
-    return data.getIndex();
+    return Arrays.copyOf(data.getIndex(), data.getUsed());
   }
 
   @Override
@@ -179,13 +204,7 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
     if (times == 0) return this;
     else
       return new MTJRIV(
-                        times > 0
-                                  ? RIVs.permuteKeys(keyArr(),
-                                                     permutations.permute,
-                                                     times)
-                                  : RIVs.permuteKeys(keyArr(),
-                                                     permutations.inverse,
-                                                     -times),
+                        RIVs.permuteKeys(keyArr(), permutations, times),
                         valArr(),
                         data.size());
   }
@@ -225,6 +244,7 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
   public double put(final int index, final double value) {
     final double v = get(index);
     data.set(index, value);
+    invalidateMagnitude();
     return v;
   }
 
@@ -254,7 +274,7 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public double[] valArr() {
-    return data.getData();
+    return Arrays.copyOf(data.getData(), data.getUsed());
   }
 
   @Override
@@ -262,6 +282,11 @@ public final class MTJRIV extends AbstractRIV implements RIV, Serializable {
     return Arrays.stream(valArr());
   }
 
+  /** The backing vector itself; its raw index array is kept sorted. */
+  SparseVector vector() {
+    return data;
+  }
+
   public static MTJRIV empty(final int size) {
     return new MTJRIV(size);
   }
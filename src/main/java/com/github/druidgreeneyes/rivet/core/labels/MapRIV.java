@@ -3,84 +3,90 @@ package com.github.druidgreeneyes.rivet.core.labels;
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiConsumer;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.mutable.MutableDouble;
 
 import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
 import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleTable;
+import com.github.druidgreeneyes.rivet.core.util.StripedIntDoubleTable;
 import com.github.druidgreeneyes.rivet.core.util.Util;
 import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
 
 /**
- * Implementation of RIV that uses ConcurrentHashMap<Integer, Double> to store data. Has proven to
- * be significantly faster than array-based representations of RIVs when doing vector arithmetic.
+ * Implementation of RIV that uses a hash map to store data. Has proven to be significantly faster
+ * than array-based representations of RIVs when doing vector arithmetic.
+ *
+ * <p>The map is a StripedIntDoubleTable: primitive open addressing, so there is no Integer, no
+ * MutableDouble and no map node per point, and every operation is thread-safe. By default the
+ * whole RIV shares one lock, which is cheap when uncontended; pass a concurrencyLevel to the
+ * constructor for RIVs that many threads will write to at once.
  *
  * @author josh
  */
 public final class MapRIV extends AbstractRIV implements RIV, Serializable {
 
   /** CEREAL */
-  private static final long serialVersionUID = 350977843775988038L;
+  private static final long serialVersionUID = 350977843775988039L;
 
   /** The dimensionality of this riv. */
   private final int size;
 
-  private final ConcurrentHashMap<Integer, MutableDouble> data;
+  /**
+   * Replaced whole by destructivePermute, so that nothing sees a half-permuted vector; every
+   * operation reads it once.
+   */
+  private volatile StripedIntDoubleTable data;
 
+  /**
+   * Kept for compatibility with code that built MapRIVs out of the old ConcurrentHashMap
+   * representation; the points are copied in.
+   */
   public MapRIV(final ConcurrentHashMap<Integer, MutableDouble> points, final int size) {
     this(size);
-    points.forEach((i, v) -> _addPoint(i, v));
+    points.forEach((i, v) -> addPoint(i, v.getValue()));
   }
 
   public MapRIV(final int size) {
-    data = new ConcurrentHashMap<Integer, MutableDouble>();
+    data = new StripedIntDoubleTable();
+    this.size = size;
+  }
+
+  /**
+   * @param size : the dimensionality of this riv
+   * @param concurrencyLevel : the number of threads expected to write to this riv at once
+   */
+  public MapRIV(final int size, final int concurrencyLevel) {
+    data = new StripedIntDoubleTable(concurrencyLevel);
     this.size = size;
   }
 
   public MapRIV(final int[] keys, final double[] vals, final int size) {
-    this(size);
     final int l = keys.length;
     if (l != vals.length) throw new SizeMismatchException("Different quantity keys than values!");
-    for (int i = 0; i < l; i++) data.put(keys[i], new MutableDouble(vals[i]));
+    data = new StripedIntDoubleTable(1, l);
+    this.size = size;
+    for (int i = 0; i < l; i++) data.put(keys[i], vals[i]);
   }
 
   public MapRIV(final MapRIV riv) {
-    this(riv.size);
-    destructiveAdd(riv);
+    data = new StripedIntDoubleTable(riv.data);
+    size = riv.size;
   }
 
   public MapRIV(final RIV riv) {
-    this(riv.size());
+    data = new StripedIntDoubleTable(1, riv.count());
+    size = riv.size();
     destructiveAdd(riv);
   }
 
-  private void _addPoint(final Integer index, final MutableDouble value) {
-    data.compute(
-        index,
-        (i, v) -> {
-          if (v == null) v = new MutableDouble();
-          v.add(value);
-          return v;
-        });
-  }
-
   private void addPoint(final int index, final double value) {
-    data.compute(
-        index,
-        (i, v) -> {
-          if (v == null) v = new MutableDouble();
-          v.add(value);
-          return v;
-        });
+    data.addTo(index, value);
   }
 
   private void assertValidIndex(final int index) {
@@ -105,13 +111,17 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
   }
 
   public MapRIV destructiveAdd(final MapRIV other) {
-    other.data.forEach(this::_addPoint);
+    if (other == this) return destructiveMult(2);
+    other.data.forEach(this::addPoint);
+    invalidateMagnitude();
     return this;
   }
 
   @Override
   public MapRIV destructiveAdd(final RIV other) {
+    if (other == this) return destructiveMult(2);
     other.forEachNZ(this::addPoint);
+    invalidateMagnitude();
     return this;
   }
 
@@ -123,11 +133,8 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public MapRIV destructiveDiv(final double scalar) {
-    data.replaceAll(
-        (k, v) -> {
-          v.setValue(v.getValue() / scalar);
-          return v;
-        });
+    data.scale(1 / scalar);
+    invalidateMagnitude();
     return this;
   }
 
@@ -140,23 +147,41 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
    */
   @Override
   public MapRIV destructiveMult(final double scalar) {
-    data.replaceAll(
-        (k, v) -> {
-          v.setValue(v.getValue() * scalar);
-          return v;
-        });
+    data.scale(scalar);
+    invalidateMagnitude();
+    return this;
+  }
+
+  /**
+   * Builds the permuted table off to the side and swaps it in, so readers see this riv either
+   * before or after the permutation. Writes that race the permutation may land in the old table and
+   * be lost.
+   */
+  @Override
+  public MapRIV destructivePermute(final Permutations permutations,
+                                   final int times) {
+    if (times == 0)
+      return this;
+    final StripedIntDoubleTable old = data;
+    final int[] power = permutations.power(times);
+    final StripedIntDoubleTable permuted =
+        new StripedIntDoubleTable(old.concurrencyLevel(), old.size());
+    old.forEach((k, v) -> permuted.put(power[k], v));
+    data = permuted;
     return this;
   }
 
   @Override
   public MapRIV destructiveRemoveZeros() {
-    for (final int i : new HashSet<>(data.keySet()))
-      data.compute(i, (k, v) -> Util.doubleEquals(v.getValue(), 0) ? null : v);
+    data.removeIf(v -> Util.doubleEquals(v, 0));
+    invalidateMagnitude();
     return this;
   }
 
   public MapRIV destructiveSub(final MapRIV other) throws SizeMismatchException {
-    other.data.forEach((BiConsumer<Integer, MutableDouble>) this::subtractPoint);
+    if (other == this) return destructiveMult(0);
+    other.data.forEach(this::subtractPoint);
+    invalidateMagnitude();
     return this;
   }
 
@@ -169,7 +194,9 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public MapRIV destructiveSub(final RIV other) throws SizeMismatchException {
     // assertSizeMatch(other, "Cannot subtract rivs of mismatched sizes.");
+    if (other == this) return destructiveMult(0);
     other.forEachNZ(this::subtractPoint);
+    invalidateMagnitude();
     return this;
   }
 
@@ -193,7 +220,7 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
 
   @Override
   public void forEachNZ(final IntDoubleConsumer fun) {
-    data.forEach((i, v) -> fun.accept(i, v.getValue()));
+    data.forEach(fun);
   }
 
   @Override
@@ -203,19 +230,20 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
   }
 
   public double getOrDefault(final int index, final double otherVal) {
-    final MutableDouble v = data.get(index);
-    if (null == v) return otherVal;
-    return v.getValue();
+    return data.get(index, otherVal);
   }
 
+  /** @return the non-zero indices of this riv, in ascending order. */
   @Override
   public int[] keyArr() {
-    return ArrayUtils.toPrimitive(data.keySet().toArray(new Integer[count()]));
+    final int[] keys = data.keys();
+    Arrays.sort(keys);
+    return keys;
   }
 
   @Override
   public IntStream keyStream() {
-    return data.keySet().stream().mapToInt(x -> x);
+    return Arrays.stream(data.keys());
   }
 
   /*
@@ -226,34 +254,32 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
   @Override
   public MapRIV permute(final Permutations permutations, final int times) {
     if (times == 0) return this;
-    else
-      return new MapRIV(
-          times > 0
-              ? RIVs.permuteKeys(keyArr(), permutations.permute, times)
-              : RIVs.permuteKeys(keyArr(), permutations.inverse, -times),
-          valArr(),
-          size);
+    final IntDoubleTable points = data.snapshot();
+    return new MapRIV(
+        RIVs.permuteKeys(points.keys(), permutations, times), points.values(), size);
   }
 
   @Override
   public VectorElement[] points() {
-    final VectorElement[] points = new VectorElement[count()];
-    final AtomicInteger c = new AtomicInteger();
-    data.forEach(10000, (a, b) -> points[c.getAndIncrement()] = VectorElement.elt(a, b.getValue()));
-    Arrays.sort(points);
+    final IntDoubleTable snapshot = data.snapshot();
+    final int[] keys = snapshot.keys();
+    Arrays.sort(keys);
+    final VectorElement[] points = new VectorElement[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      points[i] = VectorElement.elt(keys[i], snapshot.get(keys[i], 0));
     return points;
   }
 
   @Override
   public Stream<VectorElement> pointStream() {
-    return stream().map(VectorElement::elt);
+    return Arrays.stream(points());
   }
 
   @Override
   public double put(final int index, final double value) {
-    MutableDouble d = data.put(index, new MutableDouble(value));
-    if (null == d) return 0;
-    else return d.getValue();
+    final double v = data.put(index, value);
+    invalidateMagnitude();
+    return v;
   }
 
   @Override
@@ -273,9 +299,7 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
 
   /** @return all index/value pairs in this, as a stream */
   public Stream<Entry<Integer, Double>> stream() {
-    return data.entrySet()
-        .stream()
-        .map(e -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue().getValue()));
+    return pointStream().map(p -> new AbstractMap.SimpleImmutableEntry<>(p.index(), p.value()));
   }
 
   /*
@@ -305,13 +329,9 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
     addPoint(index, -value);
   }
 
-  private void subtractPoint(final Integer index, final MutableDouble value) {
-    data.compute(
-        index,
-        (i, v) -> {
-          v.subtract(value);
-          return v;
-        });
+  /** The backing table itself. */
+  StripedIntDoubleTable table() {
+    return data;
   }
 
   @Override
@@ -324,17 +344,21 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
     return sb.toString();
   }
 
+  /** @return the non-zero values of this riv, in the same order as keyArr(). */
   @Override
   public double[] valArr() {
-    final double[] vals = new double[count()];
-    final AtomicInteger c = new AtomicInteger();
-    data.values().forEach(v -> vals[c.getAndIncrement()] = v.getValue());
+    final IntDoubleTable points = data.snapshot();
+    final int[] keys = points.keys();
+    Arrays.sort(keys);
+    final double[] vals = new double[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      vals[i] = points.get(keys[i], 0);
     return vals;
   }
 
   @Override
   public DoubleStream valStream() {
-    return data.values().stream().mapToDouble(x -> x.getValue());
+    return Arrays.stream(valArr());
   }
 
   public static MapRIV empty(final int size) {
@@ -350,13 +374,13 @@ public final class MapRIV extends AbstractRIV implements RIV, Serializable {
     final int last = pointStrings.length - 1;
     final int size = Integer.parseInt(pointStrings[last]);
     pointStrings = Arrays.copyOf(pointStrings, last);
-    final ConcurrentHashMap<Integer, MutableDouble> elts = new ConcurrentHashMap<>();
+    final MapRIV res = new MapRIV(size);
     for (final String s : pointStrings) {
       final String[] elt = s.split("\\|");
       if (elt.length != 2) throw new IndexOutOfBoundsException("Wrong number of partitions: " + s);
-      else elts.put(Integer.parseInt(elt[0]), new MutableDouble(Double.parseDouble(elt[1])));
+      else res.put(Integer.parseInt(elt[0]), Double.parseDouble(elt[1]));
     }
-    return new MapRIV(elts, size).destructiveRemoveZeros();
+    return res.destructiveRemoveZeros();
   }
 
   public static RIV generate(final int size, final int nnz, final CharSequence token) {
@@ -91,6 +91,13 @@ public interface RIV {
 
   RIV destructiveRemoveZeros();
 
+  /**
+   * Permutes this random index vector in place, exactly as permute() would.
+   *
+   * @return this
+   */
+  RIV destructivePermute(final Permutations permutations, final int times);
+
   /**
    * Destructive add/subtract methods are provided for optimization purposes,
    * but because they modify the calling structure, neither should be used in
@@ -226,6 +233,40 @@ public interface RIV {
    */
   RIV permute(final Permutations permutations, final int times);
 
+  /**
+   * @return this.dot(other.permute(permutations, times)), without making the
+   *         permuted copy: whichever vector has fewer non-zeros is walked,
+   *         and the other is looked up through a precomputed power of the
+   *         permutation.
+   */
+  default double permutedDot(final RIV other, final Permutations permutations,
+                             final int times) {
+    if (times == 0)
+      return dot(other);
+    final double[] sum = { 0 };
+    if (other.count() <= count()) {
+      final int[] power = permutations.power(times);
+      other.forEachNZ((k, v) -> sum[0] += v * get(power[k]));
+    } else {
+      final int[] power = permutations.power(-times);
+      forEachNZ((k, v) -> sum[0] += v * other.get(power[k]));
+    }
+    return sum[0];
+  }
+
+  /**
+   * @return this.similarityTo(other.permute(permutations, times)), without
+   *         making the permuted copy
+   */
+  default double permutedSimilarity(final RIV other,
+                                    final Permutations permutations,
+                                    final int times) {
+    final double mag = magnitude() * other.magnitude();
+    return mag == 0
+                    ? 0
+                    : permutedDot(other, permutations, times) / mag;
+  }
+
   /**
    * @return An array of VectorElements representing the non-zero points in this
    *         random index vector.
@@ -0,0 +1,292 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+
+/**
+ * Sums any number of RIVs into a dense scratch array, remembering which
+ * indices it has touched, and hands the total out as whatever RIV type the
+ * caller wants. Each add costs one array write per non-zero, wherever the
+ * non-zero lands and however big the total gets, so summing a document is
+ * O(total non-zeros) with nothing allocated until the result.
+ *
+ * finish() zeroes only the touched indices, so one accumulator can be reused
+ * for document after document; forThread() keeps one per thread for that,
+ * and hands out a fresh one to sums nested inside a sum that already has it.
+ *
+ * parallelSum() splits a long run of vectors across the common fork-join
+ * pool: each leaf sums its share into an accumulator of its own, and the
+ * partial sums are merged pairwise on the way back up.
+ *
+ * Not thread safe.
+ *
+ * @author josh
+ */
+public final class RIVAccumulator {
+
+  private static final ThreadLocal<RIVAccumulator> PER_THREAD = new ThreadLocal<>();
+
+  /**
+   * Vectors per fork-join leaf; parallelSum() of no more than this many runs
+   * on the calling thread.
+   */
+  public static final int SEQUENTIAL_THRESHOLD = 1 << 12;
+
+  private final int size;
+  private final double[] sums;
+  private final BitSet touched;
+  private int[] scratchKeys = new int[0];
+  private double[] scratchVals = new double[0];
+  /** Whether forThread() has lent this out since its last finish or reset. */
+  private boolean lent;
+
+  public RIVAccumulator(final int size) {
+    this.size = size;
+    sums = new double[size];
+    touched = new BitSet(size);
+  }
+
+  public RIVAccumulator add(final int index, final double value) {
+    sums[index] += value;
+    touched.set(index);
+    return this;
+  }
+
+  public RIVAccumulator add(final RIV riv) {
+    return add(riv, 1);
+  }
+
+  public RIVAccumulator add(final RIV... rivs) {
+    for (final RIV riv : rivs)
+      add(riv, 1);
+    return this;
+  }
+
+  /**
+   * Adds riv times weight.
+   */
+  public RIVAccumulator add(final RIV riv, final double weight) {
+    checkSize(riv);
+    if (riv instanceof SparseRIV) {
+      final SparseRIV s = (SparseRIV) riv;
+      add(s.rawKeys(), s.rawVals(), s.count(), weight);
+    } else if (riv instanceof ImmutableRIV) {
+      final ImmutableRIV s = (ImmutableRIV) riv;
+      add(s.rawKeys(), s.rawVals(), s.count(), weight);
+    } else if (riv instanceof DenseRIV) {
+      final double[] d = ((DenseRIV) riv).rawVals();
+      for (int i = 0; i < d.length; i++)
+        sums[i] += d[i] * weight;
+      touched.set(0, d.length);
+    } else
+      riv.forEachNZ((k, v) -> {
+        sums[k] += v * weight;
+        touched.set(k);
+      });
+    return this;
+  }
+
+  /**
+   * Adds the index vector that SPLITMIX or ROLLING generation draws from seed
+   * (see RIVs.generateRIV(int, int, long, RIVConstructor)), without building
+   * it.
+   */
+  public RIVAccumulator addGenerated(final long seed, final int nnz) {
+    if (scratchKeys.length != nnz) {
+      RIVs.checkNNZ(size, nnz);
+      scratchKeys = new int[nnz];
+      scratchVals = new double[nnz];
+    }
+    RIVs.splitMix(size, seed, scratchKeys, scratchVals);
+    add(scratchKeys, scratchVals, nnz, 1);
+    return this;
+  }
+
+  /**
+   * Adds other's running total, leaving other as it was.
+   */
+  public RIVAccumulator add(final RIVAccumulator other) {
+    if (other.size != size)
+      throw new SizeMismatchException("Accumulator has size " + other.size
+                                      + "; accumulator has size " + size);
+    final BitSet t = other.touched;
+    for (int k = t.nextSetBit(0); k >= 0; k = t.nextSetBit(k + 1))
+      sums[k] += other.sums[k];
+    touched.or(t);
+    return this;
+  }
+
+  private void add(final int[] keys, final double[] vals, final int count,
+                   final double weight) {
+    for (int i = 0; i < count; i++) {
+      final int k = keys[i];
+      sums[k] += vals[i] * weight;
+      touched.set(k);
+    }
+  }
+
+  private void checkSize(final RIV riv) {
+    if (riv.size() != size)
+      throw new SizeMismatchException("RIV has size " + riv.size()
+                                      + "; accumulator has size " + size);
+  }
+
+  /**
+   * @return the number of indices touched since the last finish()
+   */
+  public int count() {
+    return touched.cardinality();
+  }
+
+  /**
+   * @return the total, as made by constructor from its sorted non-zeros; the
+   *         accumulator is then empty again
+   */
+  public RIV finish(final RIVConstructor constructor) {
+    return finish(constructor, 1);
+  }
+
+  /**
+   * @return the total times scale, as made by constructor from its sorted
+   *         non-zeros; the accumulator is then empty again
+   */
+  public RIV finish(final RIVConstructor constructor, final double scale) {
+    final int[] keys = new int[touched.cardinality()];
+    final double[] vals = new double[keys.length];
+    int c = 0;
+    for (int k = touched.nextSetBit(0); k >= 0; k = touched.nextSetBit(k + 1)) {
+      if (sums[k] != 0) {
+        keys[c] = k;
+        vals[c++] = sums[k] * scale;
+      }
+      sums[k] = 0;
+    }
+    touched.clear();
+    lent = false;
+    return constructor.make(Arrays.copyOf(keys, c), Arrays.copyOf(vals, c),
+                            size);
+  }
+
+  /**
+   * Throws the running total away.
+   */
+  public RIVAccumulator reset() {
+    for (int k = touched.nextSetBit(0); k >= 0; k = touched.nextSetBit(k + 1))
+      sums[k] = 0;
+    touched.clear();
+    lent = false;
+    return this;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return this thread's accumulator for vectors of the given size, emptied.
+   *         It's lent out until its next finish() or reset(); asking again
+   *         before then, as a sum inside another sum's callback does, gets a
+   *         new accumulator instead, so that the two totals don't mix.
+   */
+  public static RIVAccumulator forThread(final int size) {
+    RIVAccumulator acc = PER_THREAD.get();
+    if (acc != null && acc.lent)
+      return new RIVAccumulator(size);
+    if (acc == null || acc.size != size) {
+      acc = new RIVAccumulator(size);
+      PER_THREAD.set(acc);
+    }
+    acc.reset().lent = true;
+    return acc;
+  }
+
+  /**
+   * @return the sum of rivs, all of the given size, made by constructor
+   */
+  public static RIV sum(final int size, final RIVConstructor constructor,
+                        final Iterable<? extends RIV> rivs) {
+    final RIVAccumulator acc = forThread(size);
+    try {
+      for (final RIV riv : rivs)
+        acc.add(riv);
+      return acc.finish(constructor);
+    } finally {
+      acc.reset();
+    }
+  }
+
+  /**
+   * @return the sum of rivs.apply(i) for i < count, all of the given size,
+   *         made by constructor. rivs is called from pool threads, and in no
+   *         particular order, once count is over SEQUENTIAL_THRESHOLD.
+   */
+  public static RIV parallelSum(final int size,
+                                final RIVConstructor constructor,
+                                final int count,
+                                final IntFunction<? extends RIV> rivs) {
+    if (count <= SEQUENTIAL_THRESHOLD) {
+      final RIVAccumulator acc = forThread(size);
+      try {
+        for (int i = 0; i < count; i++)
+          acc.add(rivs.apply(i));
+        return acc.finish(constructor);
+      } finally {
+        acc.reset();
+      }
+    }
+    return ForkJoinPool.commonPool()
+                       .invoke(new SumTask(size, rivs, 0, count))
+                       .finish(constructor);
+  }
+
+  /**
+   * @return the sum of rivs, made by constructor; rivs must not be empty
+   */
+  public static RIV sum(final RIVConstructor constructor, final RIV... rivs) {
+    final RIVAccumulator acc = forThread(rivs[0].size());
+    try {
+      return acc.add(rivs)
+                .finish(constructor);
+    } finally {
+      acc.reset();
+    }
+  }
+
+  private static final class SumTask extends RecursiveTask<RIVAccumulator> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int size;
+    private final IntFunction<? extends RIV> rivs;
+    private final int from;
+    private final int to;
+
+    SumTask(final int size, final IntFunction<? extends RIV> rivs,
+            final int from, final int to) {
+      this.size = size;
+      this.rivs = rivs;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected RIVAccumulator compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        final RIVAccumulator acc = new RIVAccumulator(size);
+        for (int i = from; i < to; i++)
+          acc.add(rivs.apply(i));
+        return acc;
+      }
+      final int mid = from + to >>> 1;
+      final SumTask right = new SumTask(size, rivs, mid, to);
+      right.fork();
+      final RIVAccumulator acc = new SumTask(size, rivs, from, mid).compute();
+      return acc.add(right.join());
+    }
+  }
+}
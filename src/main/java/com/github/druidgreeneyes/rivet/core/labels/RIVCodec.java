@@ -0,0 +1,325 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A compact, versioned binary format for RIVs of any type.
+ *
+ * <pre>
+ * byte    version (currently 1)
+ * byte    flags: the low 3 bits are the value Encoding's ordinal; bit 3
+ *         set means keys are fixed-width
+ * varint  length of everything after this field, in bytes
+ * varint  size
+ * varint  count of non-zeros
+ * double  scale, only for the quantized encodings
+ * keys    ascending; either a varint of each gap from the previous key
+ *         (the first from 0), or a little-endian int32 each if fixed-width
+ * values  one per key, in the chosen encoding
+ * </pre>
+ *
+ * Varints are unsigned LEB128, 7 bits per byte. Fixed-width keys are bigger
+ * but can be binary searched in place, which delta-coded keys can't.
+ *
+ * Zeros are never written, so what comes back is the RIV without them.
+ *
+ * @author josh
+ */
+public final class RIVCodec {
+
+  public static final byte VERSION = 1;
+
+  /** How values are written. */
+  public enum Encoding {
+    /** Little-endian float64; exact. */
+    DOUBLE,
+    /** Little-endian float32. */
+    FLOAT,
+    /**
+     * A zigzag varint of each value; exact, but only for integral values,
+     * which is what sums of untrained index vectors are. Usually 1 byte.
+     */
+    VARINT,
+    /** A signed byte times a scale of max |value| / 127. */
+    INT8,
+    /** A little-endian signed short times a scale of max |value| / 32767. */
+    INT16;
+
+    /**
+     * @return VARINT if every value is an integer small enough for it to be
+     *         exact, otherwise DOUBLE
+     */
+    public static Encoding lossless(final double[] vals) {
+      for (final double v : vals)
+        if (v != Math.rint(v) || Math.abs(v) > 1L << 53)
+          return DOUBLE;
+      return VARINT;
+    }
+
+    boolean quantized() {
+      return this == INT8 || this == INT16;
+    }
+  }
+
+  static final int FIXED_KEYS = 1 << 3;
+  static final int ENCODING_MASK = 7;
+
+  private RIVCodec() {}
+
+  /**
+   * @return riv in the binary format, with delta-coded keys and whichever
+   *         lossless encoding fits its values
+   */
+  public static byte[] encode(final RIV riv) {
+    final SparseRIV sorted = sorted(riv);
+    return encode(sorted, Encoding.lossless(sorted.valArr()), false);
+  }
+
+  /**
+   * @param fixedKeys
+   *          : write keys as plain int32s, so that they can be searched
+   *          without decoding, instead of as varint gaps
+   * @return riv in the binary format
+   */
+  public static byte[] encode(final RIV riv, final Encoding encoding,
+                              final boolean fixedKeys) {
+    final SparseRIV sorted = sorted(riv);
+    final int[] keys = sorted.keyArr();
+    final double[] vals = sorted.valArr();
+    final int n = keys.length;
+    final ByteBuffer body = ByteBuffer.allocate(20 + n * 15)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+    putVarint(body, riv.size());
+    putVarint(body, n);
+    double scale = 1;
+    if (encoding.quantized()) {
+      double max = 0;
+      for (final double v : vals)
+        max = Math.max(max, Math.abs(v));
+      scale = max == 0
+                       ? 1
+                       : max / (encoding == Encoding.INT8
+                                                          ? Byte.MAX_VALUE
+                                                          : Short.MAX_VALUE);
+      body.putDouble(scale);
+    }
+    int prev = 0;
+    for (final int k : keys) {
+      if (fixedKeys)
+        body.putInt(k);
+      else
+        putVarint(body, k - prev);
+      prev = k;
+    }
+    for (final double v : vals)
+      switch (encoding) {
+        case DOUBLE:
+          body.putDouble(v);
+          break;
+        case FLOAT:
+          body.putFloat((float) v);
+          break;
+        case VARINT:
+          if (v != Math.rint(v))
+            throw new IllegalArgumentException("VARINT can't encode " + v);
+          putVarlong(body, zigzag((long) v));
+          break;
+        case INT8:
+          body.put((byte) Math.round(v / scale));
+          break;
+        case INT16:
+          body.putShort((short) Math.round(v / scale));
+          break;
+      }
+    body.flip();
+    final ByteBuffer res = ByteBuffer.allocate(7 + body.remaining());
+    res.put(VERSION);
+    res.put((byte) (encoding.ordinal() | (fixedKeys
+                                                    ? FIXED_KEYS
+                                                    : 0)));
+    putVarint(res, body.remaining());
+    res.put(body);
+    final byte[] bytes = new byte[res.position()];
+    res.flip();
+    res.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Reads one RIV from buf's position on, leaving the position just past it.
+   */
+  public static RIV decode(final ByteBuffer buf,
+                           final RIVConstructor rivConstructor) {
+    final int version = buf.get();
+    if (version != VERSION)
+      throw new IllegalArgumentException("Unsupported RIV format version: "
+                                         + version);
+    final int flags = buf.get();
+    final int length = getVarint(buf);
+    if (buf.remaining() < length)
+      throw new BufferUnderflowException();
+    final ByteBuffer body = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+    body.limit(length);
+    buf.position(buf.position() + length);
+    final Encoding encoding = encoding(flags);
+    final boolean fixedKeys = (flags & FIXED_KEYS) != 0;
+    final int size = getVarint(body);
+    final int n = getVarint(body);
+    final double scale = encoding.quantized()
+                                              ? body.getDouble()
+                                              : 1;
+    final int[] keys = new int[n];
+    int prev = 0;
+    for (int i = 0; i < n; i++)
+      keys[i] = prev = fixedKeys
+                                 ? body.getInt()
+                                 : prev + getVarint(body);
+    final double[] vals = new double[n];
+    for (int i = 0; i < n; i++)
+      switch (encoding) {
+        case DOUBLE:
+          vals[i] = body.getDouble();
+          break;
+        case FLOAT:
+          vals[i] = body.getFloat();
+          break;
+        case VARINT:
+          vals[i] = unzigzag(getVarlong(body));
+          break;
+        case INT8:
+          vals[i] = body.get() * scale;
+          break;
+        case INT16:
+          vals[i] = body.getShort() * scale;
+          break;
+      }
+    return rivConstructor.make(keys, vals, size);
+  }
+
+  /**
+   * Reads one RIV from buf's position on, as a SparseRIV.
+   */
+  public static RIV decode(final ByteBuffer buf) {
+    return decode(buf, SparseRIV::new);
+  }
+
+  public static RIV decode(final byte[] bytes) {
+    return decode(ByteBuffer.wrap(bytes));
+  }
+
+  static Encoding encoding(final int flags) {
+    final int e = flags & ENCODING_MASK;
+    if (e >= Encoding.values().length)
+      throw new IllegalArgumentException("Unknown value encoding: " + e);
+    return Encoding.values()[e];
+  }
+
+  static int getVarint(final ByteBuffer buf) {
+    int res = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      final byte b = buf.get();
+      res |= (b & 0x7F) << shift;
+      if (b >= 0)
+        return res;
+    }
+    throw new IllegalArgumentException("Malformed varint.");
+  }
+
+  static long getVarlong(final ByteBuffer buf) {
+    long res = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      final byte b = buf.get();
+      res |= (long) (b & 0x7F) << shift;
+      if (b >= 0)
+        return res;
+    }
+    throw new IllegalArgumentException("Malformed varint.");
+  }
+
+  private static void putVarint(final ByteBuffer buf, final int i) {
+    putVarlong(buf, i & 0xFFFFFFFFL);
+  }
+
+  private static void putVarlong(final ByteBuffer buf, long l) {
+    while ((l & ~0x7FL) != 0) {
+      buf.put((byte) (l & 0x7F | 0x80));
+      l >>>= 7;
+    }
+    buf.put((byte) l);
+  }
+
+  /**
+   * Reads one RIV written by write(RIV, OutputStream).
+   *
+   * @throws EOFException
+   *           if the stream ends before a whole RIV has been read
+   */
+  public static RIV read(final InputStream in,
+                         final RIVConstructor rivConstructor) throws IOException {
+    final DataInputStream data = new DataInputStream(in);
+    final byte version = data.readByte();
+    final byte flags = data.readByte();
+    int length = 0;
+    final byte[] header = new byte[7];
+    header[0] = version;
+    header[1] = flags;
+    int h = 2;
+    for (int shift = 0;; shift += 7) {
+      if (shift >= 35)
+        throw new IOException("Malformed varint.");
+      final byte b = data.readByte();
+      header[h++] = b;
+      length |= (b & 0x7F) << shift;
+      if (b >= 0)
+        break;
+    }
+    final byte[] bytes = new byte[h + length];
+    System.arraycopy(header, 0, bytes, 0, h);
+    data.readFully(bytes, h, length);
+    return decode(ByteBuffer.wrap(bytes), rivConstructor);
+  }
+
+  private static SparseRIV sorted(final RIV riv) {
+    final SparseRIV res = new SparseRIV(riv);
+    res.destructiveRemoveZeros();
+    return res;
+  }
+
+  /**
+   * Writes riv at buf's position, leaving the position just past it.
+   */
+  public static void write(final RIV riv, final ByteBuffer buf) {
+    buf.put(encode(riv));
+  }
+
+  public static void write(final RIV riv, final Encoding encoding,
+                           final boolean fixedKeys, final ByteBuffer buf) {
+    buf.put(encode(riv, encoding, fixedKeys));
+  }
+
+  public static void write(final RIV riv,
+                           final OutputStream out) throws IOException {
+    out.write(encode(riv));
+  }
+
+  public static void write(final RIV riv, final Encoding encoding,
+                           final boolean fixedKeys,
+                           final OutputStream out) throws IOException {
+    out.write(encode(riv, encoding, fixedKeys));
+  }
+
+  static double unzigzag(final long l) {
+    return l >>> 1 ^ -(l & 1);
+  }
+
+  private static long zigzag(final long l) {
+    return l << 1 ^ l >> 63;
+  }
+}
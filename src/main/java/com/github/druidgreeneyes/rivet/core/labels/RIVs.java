@@ -1,8 +1,11 @@
 package com.github.druidgreeneyes.rivet.core.labels;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.IntStream;
+import com.github.druidgreeneyes.rivet.core.util.RollingHash;
+import com.github.druidgreeneyes.rivet.core.util.SplitMix64;
 import com.github.druidgreeneyes.rivet.core.util.Util;
 import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
 
@@ -14,6 +17,33 @@ public class RIVs {
     T apply(int a, int b);
   }
 
+  /**
+   * How index vectors are generated from tokens. The two modes give different
+   * vectors for the same token, so a lexicon must keep using whichever it
+   * was trained with.
+   */
+  public enum Generation {
+    /**
+     * The original algorithm: a seed from the token's digits, then
+     * java.util.Random streams for the indices and the shuffled values.
+     * Everything trained before SPLITMIX existed used this.
+     */
+    LEGACY,
+    /**
+     * A 64-bit hash of the token seeds a SplitMix64 generator, indices are
+     * drawn by rejection sampling straight into a primitive array, and each
+     * value's sign follows its draw order. Several times faster and nearly
+     * allocation-free; keys come out sorted.
+     */
+    SPLITMIX,
+    /**
+     * As SPLITMIX, but seeded from RollingHash, which can be slid along a
+     * text: every shingle of a text can be seeded in one pass, without
+     * substrings. See Shingles.rollingRivettizeText.
+     */
+    ROLLING
+  }
+
   public static RIV generateRIV(final int size,
                                 final int k,
                                 final CharSequence text,
@@ -28,16 +58,68 @@ public class RIVs {
                        rivConstructor);
   }
 
+  public static RIV generateRIV(final int size,
+                                final int k,
+                                final CharSequence text,
+                                final int point,
+                                final int width,
+                                final RIVConstructor rivConstructor,
+                                final Generation generation) {
+    return generateRIV(size,
+                       k,
+                       text.subSequence(Integer.max(0, point),
+                                        Integer.min(text.length(),
+                                                    point + width)),
+                       rivConstructor,
+                       generation);
+  }
+
   public static RIV generateRIV(final int size,
                                 final int nnz,
                                 final CharSequence token,
                                 final RIVConstructor rivConstructor) {
+    return generateRIV(size, nnz, token, rivConstructor, Generation.LEGACY);
+  }
+
+  public static RIV generateRIV(final int size,
+                                final int nnz,
+                                final CharSequence token,
+                                final RIVConstructor rivConstructor,
+                                final Generation generation) {
+    if (generation == Generation.SPLITMIX)
+      return generateRIV(size, nnz, SplitMix64.hash(token), rivConstructor);
+    if (generation == Generation.ROLLING)
+      return generateRIV(size, nnz, RollingHash.seed(token), rivConstructor);
     final long seed = makeSeed(token);
     final int[] indices = makeIndices(size, nnz, seed);
     final double[] vals = makeVals(nnz, seed);
     return rivConstructor.make(indices, vals, size);
   }
 
+  /**
+   * @return the index vector SPLITMIX or ROLLING draws from seed, which is
+   *         the token's hash under the one or the other
+   */
+  public static RIV generateRIV(final int size,
+                                final int nnz,
+                                final long seed,
+                                final RIVConstructor rivConstructor) {
+    checkNNZ(size, nnz);
+    final int[] keys = new int[nnz];
+    final double[] vals = new double[nnz];
+    splitMix(size, seed, keys, vals);
+    return rivConstructor.make(keys, vals, size);
+  }
+
+  static void checkNNZ(final int size, final int nnz) {
+    if (nnz < 0)
+      throw new IllegalArgumentException("Cannot pick " + nnz + " indices");
+    if (nnz > size)
+      throw new IllegalArgumentException("Cannot pick " + nnz
+                                         + " distinct indices out of "
+                                         + size);
+  }
+
   /**
    * @param size
    * @param count
@@ -57,6 +139,14 @@ public class RIVs {
     return (token) -> generateRIV(size, nnz, token, rivConstructor);
   }
 
+  public static Function<CharSequence, RIV> generator(final int size,
+                                                      final int nnz,
+                                                      final RIVConstructor rivConstructor,
+                                                      final Generation generation) {
+    return (token) -> generateRIV(size, nnz, token, rivConstructor,
+                                  generation);
+  }
+
   public static IntBiFunction<RIV>
          generator(final int size, final int nnz, final CharSequence text,
                    final RIVConstructor rivConstructor) {
@@ -90,6 +180,70 @@ public class RIVs {
     return Util.shuffleDoubleArray(l, seed);
   }
 
+  /**
+   * Fills keys with distinct random indices below size, sorted, and vals with
+   * 1s and -1s alternating by draw. Duplicates are rejected by insertion into
+   * the sorted prefix, which beats a hash set for the handful of non-zeros
+   * index vectors have; large counts draw everything first, then sort and
+   * redraw whatever collided, and shuffle the signs in afterwards.
+   */
+  static void splitMix(final int size, final long seed, final int[] keys,
+                       final double[] vals) {
+    final SplitMix64 random = new SplitMix64(seed);
+    final int n = keys.length;
+    if (n <= 64) {
+      for (int c = 0; c < n;) {
+        final int k = random.nextInt(size);
+        final double v = (c & 1) == 0
+                                      ? 1
+                                      : -1;
+        int i = c - 1;
+        while (i >= 0 && keys[i] > k)
+          i--;
+        if (i >= 0 && keys[i] == k)
+          continue;
+        System.arraycopy(keys, i + 1, keys, i + 2, c - i - 1);
+        System.arraycopy(vals, i + 1, vals, i + 2, c - i - 1);
+        keys[i + 1] = k;
+        vals[i + 1] = v;
+        c++;
+      }
+      return;
+    }
+    int c = 0;
+    while (c < n) {
+      for (int i = c; i < n; i++)
+        keys[i] = random.nextInt(size);
+      Arrays.sort(keys, 0, n);
+      c = 0;
+      for (int i = 0; i < n; i++)
+        if (c == 0 || keys[i] != keys[c - 1])
+          keys[c++] = keys[i];
+    }
+    // redraws would unbalance signs tied to draws, so deal them out afterwards
+    for (int i = 0; i < n; i++) {
+      final int j = random.nextInt(i + 1);
+      vals[i] = vals[j];
+      vals[j] = (i & 1) == 0
+                             ? 1
+                             : -1;
+    }
+  }
+
+  /**
+   * Permutes keys in place, in a single pass whatever times is.
+   */
+  protected static int[] permuteKeys(final int[] keys,
+                                     final Permutations permutations,
+                                     final int times) {
+    if (times == 0)
+      return keys;
+    final int[] power = permutations.power(times);
+    for (int c = 0; c < keys.length; c++)
+      keys[c] = power[keys[c]];
+    return keys;
+  }
+
   protected static int[] permuteKeys(final int[] keys, final int[] permutation,
                                      final int times) {
     for (int i = 0; i < times; i++)
@@ -98,12 +252,10 @@ public class RIVs {
     return keys;
   }
 
-  protected static int[] permuteKeys(IntStream keys,
+  protected static int[] permuteKeys(final IntStream keys,
                                      final int[] permutation,
                                      final int times) {
-    for (int i = 0; i < times; i++)
-      keys = keys.map((k) -> permutation[k]);
-    return keys.toArray();
+    return permuteKeys(keys.toArray(), permutation, times);
   }
 
   public static RIV permuteRIV(final RIV riv,
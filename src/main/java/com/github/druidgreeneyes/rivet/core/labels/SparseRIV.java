@@ -0,0 +1,513 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.util.Util;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+/**
+ * Implementation of RIV that keeps its non-zero points in a pair of parallel
+ * primitive arrays (int[] keys, double[] vals), sorted by index. Lookups are
+ * binary searches, and adding, subtracting or dotting two SparseRIVs is a
+ * single linear merge. The arrays grow the same way ArrayList does, so
+ * accumulating a document out of many word vectors does not copy the whole
+ * vector on every add.
+ *
+ * @author josh
+ */
+public final class SparseRIV extends AbstractRIV implements RIV, Serializable {
+
+  /** CEREAL */
+  private static final long serialVersionUID = -2937645098214378650L;
+
+  private static final int MIN_CAPACITY = 8;
+
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** The dimensionality of this riv. */
+  private final int size;
+
+  /** Sorted, distinct indices; only the first count are in use. */
+  private int[] keys;
+
+  /** Values matching keys; only the first count are in use. */
+  private double[] vals;
+
+  private int count;
+
+  public SparseRIV(final int size) {
+    this.size = size;
+    keys = new int[0];
+    vals = new double[0];
+    count = 0;
+  }
+
+  public SparseRIV(final int[] keys, final double[] vals, final int size) {
+    if (keys.length != vals.length)
+      throw new SizeMismatchException("Different quantity keys than values!");
+    this.size = size;
+    this.keys = Arrays.copyOf(keys, keys.length);
+    this.vals = Arrays.copyOf(vals, vals.length);
+    count = keys.length;
+    sortAndCombine();
+  }
+
+  public SparseRIV(final RIV riv) {
+    this(riv.size());
+    final int n = riv.count();
+    keys = new int[n];
+    vals = new double[n];
+    riv.forEachNZ(this::append);
+    sortAndCombine();
+  }
+
+  public SparseRIV(final SparseRIV riv) {
+    size = riv.size;
+    keys = Arrays.copyOf(riv.keys, riv.count);
+    vals = Arrays.copyOf(riv.vals, riv.count);
+    count = riv.count;
+  }
+
+  public SparseRIV(final VectorElement[] points, final int size) {
+    this(size);
+    keys = new int[points.length];
+    vals = new double[points.length];
+    for (final VectorElement point : points)
+      append(point.index(), point.value());
+    sortAndCombine();
+  }
+
+  /**
+   * Used by the RIV copy constructor; tolerates riv.count() having been a
+   * little off, which can happen with DenseRIV and with concurrent MapRIVs.
+   */
+  private void append(final int index, final double value) {
+    if (value == 0)
+      return;
+    ensureCapacity(count + 1);
+    keys[count] = index;
+    vals[count] = value;
+    count++;
+  }
+
+  private void assertValidIndex(final int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index
+                                          + " is outside the bounds of this vector.");
+  }
+
+  private int binarySearch(final int index) {
+    return Arrays.binarySearch(keys, 0, count, index);
+  }
+
+  @Override
+  public boolean contains(final int index) {
+    return binarySearch(index) >= 0;
+  }
+
+  @Override
+  public SparseRIV copy() {
+    return new SparseRIV(this);
+  }
+
+  @Override
+  public int count() {
+    return count;
+  }
+
+  @Override
+  public SparseRIV destructiveAdd(final RIV other) {
+    if (other == this)
+      return destructiveMult(2);
+    else if (other instanceof SparseRIV) {
+      final SparseRIV riv = (SparseRIV) other;
+      merge(riv.keys, riv.vals, riv.count, 1);
+    } else {
+      final SparseRIV riv = new SparseRIV(other);
+      merge(riv.keys, riv.vals, riv.count, 1);
+    }
+    invalidateMagnitude();
+    return this;
+  }
+
+  @Override
+  public SparseRIV destructiveAdd(final RIV... rivs) {
+    for (final RIV riv : rivs)
+      destructiveAdd(riv);
+    return this;
+  }
+
+  @Override
+  public SparseRIV destructiveDiv(final double scalar) {
+    for (int i = 0; i < count; i++)
+      vals[i] /= scalar;
+    invalidateMagnitude();
+    return this;
+  }
+
+  @Override
+  public SparseRIV destructiveMult(final double scalar) {
+    for (int i = 0; i < count; i++)
+      vals[i] *= scalar;
+    invalidateMagnitude();
+    return this;
+  }
+
+  /**
+   * Maps the keys in place and re-sorts them; the magnitude is unchanged.
+   */
+  @Override
+  public SparseRIV destructivePermute(final Permutations permutations,
+                                      final int times) {
+    if (times == 0 || count == 0)
+      return this;
+    final int[] power = permutations.power(times);
+    for (int i = 0; i < count; i++)
+      keys[i] = power[keys[i]];
+    sort(keys, vals, 0, count - 1);
+    return this;
+  }
+
+  @Override
+  public SparseRIV destructiveRemoveZeros() {
+    int w = 0;
+    for (int i = 0; i < count; i++)
+      if (!Util.doubleEquals(vals[i], 0)) {
+        keys[w] = keys[i];
+        vals[w] = vals[i];
+        w++;
+      }
+    count = w;
+    invalidateMagnitude();
+    return this;
+  }
+
+  @Override
+  public SparseRIV destructiveSub(final RIV other) {
+    if (other == this)
+      return destructiveMult(0);
+    else if (other instanceof SparseRIV) {
+      final SparseRIV riv = (SparseRIV) other;
+      merge(riv.keys, riv.vals, riv.count, -1);
+    } else {
+      final SparseRIV riv = new SparseRIV(other);
+      merge(riv.keys, riv.vals, riv.count, -1);
+    }
+    invalidateMagnitude();
+    return this;
+  }
+
+  @Override
+  public SparseRIV destructiveSub(final RIV... rivs) {
+    for (final RIV riv : rivs)
+      destructiveSub(riv);
+    return this;
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (keys.length < capacity) {
+      final int grown = keys.length + (keys.length >> 1);
+      final int newCapacity = Math.max(capacity,
+                                       Math.max(grown, MIN_CAPACITY));
+      keys = Arrays.copyOf(keys, newCapacity);
+      vals = Arrays.copyOf(vals, newCapacity);
+    }
+  }
+
+  @Override
+  public boolean equals(final RIV other) {
+    if (other instanceof SparseRIV)
+      return equals((SparseRIV) other);
+    else
+      return equals((AbstractRIV) other);
+  }
+
+  public boolean equals(final SparseRIV other) {
+    if (size != other.size || count != other.count)
+      return false;
+    for (int i = 0; i < count; i++)
+      if (keys[i] != other.keys[i] || vals[i] != other.vals[i])
+        return false;
+    return true;
+  }
+
+  @Override
+  public void forEachNZ(final IntDoubleConsumer fun) {
+    for (int i = 0; i < count; i++)
+      fun.accept(keys[i], vals[i]);
+  }
+
+  @Override
+  public double get(final int index) throws IndexOutOfBoundsException {
+    assertValidIndex(index);
+    final int i = binarySearch(index);
+    return i < 0
+                 ? 0
+                 : vals[i];
+  }
+
+  @Override
+  public int[] keyArr() {
+    return Arrays.copyOf(keys, count);
+  }
+
+  @Override
+  public IntStream keyStream() {
+    return Arrays.stream(keys, 0, count);
+  }
+
+  @Override
+  protected double computeMagnitude() {
+    double sum = 0;
+    for (int i = 0; i < count; i++)
+      sum += vals[i] * vals[i];
+    return Math.sqrt(sum);
+  }
+
+  /**
+   * Merges a sorted run of points into this one, in place. Our own points are
+   * first shifted to the tail of the (grown) arrays, and the merge then writes
+   * forward from the head; the write position can never pass the read
+   * position, so nothing is overwritten before it has been read.
+   */
+  private void merge(final int[] otherKeys, final double[] otherVals,
+                     final int otherCount, final double sign) {
+    if (otherCount == 0)
+      return;
+    ensureCapacity(count + otherCount);
+    System.arraycopy(keys, 0, keys, otherCount, count);
+    System.arraycopy(vals, 0, vals, otherCount, count);
+    final int end = otherCount + count;
+    int i = otherCount, j = 0, w = 0;
+    while (i < end && j < otherCount) {
+      final int a = keys[i];
+      final int b = otherKeys[j];
+      if (a < b) {
+        keys[w] = a;
+        vals[w++] = vals[i++];
+      } else if (b < a) {
+        keys[w] = b;
+        vals[w++] = sign * otherVals[j++];
+      } else {
+        keys[w] = a;
+        vals[w++] = vals[i++] + sign * otherVals[j++];
+      }
+    }
+    while (i < end) {
+      keys[w] = keys[i];
+      vals[w++] = vals[i++];
+    }
+    while (j < otherCount) {
+      keys[w] = otherKeys[j];
+      vals[w++] = sign * otherVals[j++];
+    }
+    count = w;
+  }
+
+  @Override
+  public SparseRIV permute(final Permutations permutations, final int times) {
+    if (times == 0)
+      return this;
+    else
+      return new SparseRIV(RIVs.permuteKeys(keyArr(), permutations, times),
+                           valArr(),
+                           size);
+  }
+
+  @Override
+  public VectorElement[] points() {
+    final VectorElement[] points = new VectorElement[count];
+    for (int i = 0; i < count; i++)
+      points[i] = VectorElement.elt(keys[i], vals[i]);
+    return points;
+  }
+
+  @Override
+  public Stream<VectorElement> pointStream() {
+    return IntStream.range(0, count)
+                    .mapToObj(i -> VectorElement.elt(keys[i], vals[i]));
+  }
+
+  @Override
+  public double put(final int index, final double value) {
+    assertValidIndex(index);
+    final int i = binarySearch(index);
+    if (i >= 0) {
+      final double v = vals[i];
+      vals[i] = value;
+      invalidateMagnitude();
+      return v;
+    } else {
+      final int at = ~i;
+      ensureCapacity(count + 1);
+      System.arraycopy(keys, at, keys, at + 1, count - at);
+      System.arraycopy(vals, at, vals, at + 1, count - at);
+      keys[at] = index;
+      vals[at] = value;
+      count++;
+      invalidateMagnitude();
+      return 0;
+    }
+  }
+
+  /**
+   * The backing key array; only the first count() entries are in use.
+   */
+  int[] rawKeys() {
+    return keys;
+  }
+
+  /**
+   * The backing value array; only the first count() entries are in use.
+   */
+  double[] rawVals() {
+    return vals;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Restores the sorted/distinct invariant after the arrays have been filled
+   * in arbitrary order. Generated RIVs have only a handful of points, so most
+   * of the time this is an insertion sort over a few elements, or nothing at
+   * all if the input was already sorted.
+   */
+  private void sortAndCombine() {
+    boolean sorted = true;
+    for (int i = 1; i < count && sorted; i++)
+      sorted = keys[i - 1] < keys[i];
+    if (sorted)
+      return;
+    sort(keys, vals, 0, count - 1);
+    int w = 0;
+    for (int i = 0; i < count; i++)
+      if (w > 0 && keys[w - 1] == keys[i])
+        vals[w - 1] += vals[i];
+      else {
+        keys[w] = keys[i];
+        vals[w] = vals[i];
+        w++;
+      }
+    count = w;
+  }
+
+  @Override
+  public String toString() {
+    // "0|1 1|3 4|2 5"
+    // "I|V I|V I|V Size"
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++)
+      if (vals[i] != 0)
+        sb.append(String.format("%d|%f ", keys[i], vals[i]));
+    sb.append(size);
+    return sb.toString();
+  }
+
+  @Override
+  public double[] valArr() {
+    return Arrays.copyOf(vals, count);
+  }
+
+  @Override
+  public DoubleStream valStream() {
+    return Arrays.stream(vals, 0, count);
+  }
+
+  public static SparseRIV empty(final int size) {
+    return new SparseRIV(size);
+  }
+
+  /**
+   * @param rivString
+   *          : A string representation of a RIV, generally got by calling
+   *          RIV.toString().
+   * @return a SparseRIV
+   */
+  public static SparseRIV fromString(final String rivString) {
+    final String[] pointStrings = rivString.split(" ");
+    final int last = pointStrings.length - 1;
+    final int size = Integer.parseInt(pointStrings[last]);
+    final int[] keys = new int[last];
+    final double[] vals = new double[last];
+    for (int i = 0; i < last; i++) {
+      final String s = pointStrings[i];
+      final int bar = s.indexOf('|');
+      if (bar < 0 || bar != s.lastIndexOf('|'))
+        throw new IndexOutOfBoundsException("Wrong number of partitions: " + s);
+      keys[i] = Integer.parseInt(s.substring(0, bar));
+      vals[i] = Double.parseDouble(s.substring(bar + 1));
+    }
+    return new SparseRIV(keys, vals, size).destructiveRemoveZeros();
+  }
+
+  public static RIV generate(final int size, final int nnz,
+                             final CharSequence token) {
+    return RIVs.generateRIV(size, nnz, token, SparseRIV::new);
+  }
+
+  public static RIV generate(final int size,
+                             final int nnz,
+                             final CharSequence text,
+                             final int tokenStart,
+                             final int tokenWidth) {
+    return RIVs.generateRIV(size, nnz, text, tokenStart, tokenWidth,
+                            SparseRIV::new);
+  }
+
+  public static RIVConstructor getConstructor() {
+    return SparseRIV::new;
+  }
+
+  private static void sort(final int[] keys, final double[] vals,
+                           final int lo, final int hi) {
+    if (hi - lo < INSERTION_SORT_THRESHOLD) {
+      for (int i = lo + 1; i <= hi; i++) {
+        final int k = keys[i];
+        final double v = vals[i];
+        int j = i - 1;
+        while (j >= lo && keys[j] > k) {
+          keys[j + 1] = keys[j];
+          vals[j + 1] = vals[j];
+          j--;
+        }
+        keys[j + 1] = k;
+        vals[j + 1] = v;
+      }
+      return;
+    }
+    final int pivot = keys[lo + (hi - lo >>> 1)];
+    int i = lo, j = hi;
+    while (i <= j) {
+      while (keys[i] < pivot)
+        i++;
+      while (keys[j] > pivot)
+        j--;
+      if (i <= j) {
+        swap(keys, vals, i++, j--);
+      }
+    }
+    if (lo < j)
+      sort(keys, vals, lo, j);
+    if (i < hi)
+      sort(keys, vals, i, hi);
+  }
+
+  private static void swap(final int[] keys, final double[] vals, final int a,
+                           final int b) {
+    final int k = keys[a];
+    keys[a] = keys[b];
+    keys[b] = k;
+    final double v = vals[a];
+    vals[a] = vals[b];
+    vals[b] = v;
+  }
+}
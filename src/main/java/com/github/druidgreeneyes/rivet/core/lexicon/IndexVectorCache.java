@@ -0,0 +1,252 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.druidgreeneyes.rivet.core.labels.ImmutableRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVConstructor;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs.Generation;
+
+/**
+ * A bounded, thread-safe cache of generated index vectors, for vocabularies
+ * too open-ended to keep every word's vector forever. Index vectors are a
+ * pure function of the word, so an evicted one is simply generated again the
+ * next time it's asked for.
+ *
+ * Eviction is segmented LRU: a word enters on probation, and is promoted to
+ * the protected segment (80% of the capacity) when it's asked for again. A
+ * long run of one-off words can then only push out other one-off words, not
+ * the common vocabulary. Keys are spread across independently locked
+ * stripes, each with its own share of the capacity, and vectors are
+ * generated outside the locks.
+ *
+ * The vectors handed out are shared between callers and must not be
+ * changed; the default constructor makes ImmutableRIVs for that reason.
+ *
+ * @author josh
+ */
+public final class IndexVectorCache {
+
+  private static final int MAX_STRIPES = 1 << 10;
+
+  private final int size;
+  private final int nnz;
+  private final RIVConstructor rivConstructor;
+  private final Generation generation;
+  private final int capacity;
+
+  private final Segment[] segments;
+  private final int mask;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * A cache of up to capacity ImmutableRIVs, generated the legacy way.
+   */
+  public IndexVectorCache(final int size, final int nnz, final int capacity) {
+    this(size, nnz, ImmutableRIV::new, capacity);
+  }
+
+  public IndexVectorCache(final int size, final int nnz,
+                          final RIVConstructor rivConstructor,
+                          final int capacity) {
+    this(size, nnz, rivConstructor, Generation.LEGACY, capacity,
+         Runtime.getRuntime()
+                .availableProcessors()
+                                      * 4);
+  }
+
+  /**
+   * @param capacity
+   *          : the most vectors to keep; each stripe gets an equal share
+   * @param concurrencyLevel
+   *          : the number of threads expected to use the cache at once;
+   *          rounded up to a power of two, and capped so that no stripe is
+   *          left with less than one slot
+   */
+  public IndexVectorCache(final int size, final int nnz,
+                          final RIVConstructor rivConstructor,
+                          final Generation generation, final int capacity,
+                          final int concurrencyLevel) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive: "
+                                         + capacity);
+    this.size = size;
+    this.nnz = nnz;
+    this.rivConstructor = rivConstructor;
+    this.generation = generation;
+    this.capacity = capacity;
+    int n = 1;
+    while (n < concurrencyLevel && n < MAX_STRIPES && n * 2 <= capacity)
+      n <<= 1;
+    segments = new Segment[n];
+    final int share = (capacity + n - 1) / n;
+    for (int i = 0; i < n; i++)
+      segments[i] = new Segment(share);
+    mask = n - 1;
+  }
+
+  /**
+   * One stripe: a probationary and a protected segment, each an LRU-ordered
+   * LinkedHashMap, guarded by the stripe's monitor.
+   */
+  private final class Segment {
+    final int max;
+    final int protectedMax;
+    final LinkedHashMap<String, RIV> probation;
+    final LinkedHashMap<String, RIV> protect;
+
+    Segment(final int max) {
+      this.max = max;
+      protectedMax = max * 4 / 5;
+      probation = new LinkedHashMap<>(16, 0.75f, true);
+      protect = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    RIV lookup(final String word) {
+      RIV riv = protect.get(word);
+      if (riv == null) {
+        riv = probation.remove(word);
+        if (riv != null) {
+          protect.put(word, riv);
+          if (protect.size() > protectedMax) {
+            final Map.Entry<String, RIV> eldest = removeEldest(protect);
+            probation.put(eldest.getKey(), eldest.getValue());
+          }
+        }
+      }
+      return riv;
+    }
+
+    /**
+     * @return whatever another thread cached for word in the meantime, or
+     *         riv if nothing was
+     */
+    RIV admit(final String word, final RIV riv) {
+      final RIV raced = protect.containsKey(word)
+                                                  ? protect.get(word)
+                                                  : probation.get(word);
+      if (raced != null)
+        return raced;
+      probation.put(word, riv);
+      while (probation.size() + protect.size() > max) {
+        removeEldest(probation.isEmpty()
+                                         ? protect
+                                         : probation);
+        evictions.increment();
+      }
+      return riv;
+    }
+
+    void clear() {
+      probation.clear();
+      protect.clear();
+    }
+
+    int count() {
+      return probation.size() + protect.size();
+    }
+  }
+
+  /**
+   * @return the number of vectors that have been evicted to stay under the
+   *         capacity
+   */
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return word's index vector, from the cache if it's there
+   */
+  public RIV get(final CharSequence word) {
+    final String key = word.toString();
+    final Segment segment = segment(key);
+    synchronized (segment) {
+      final RIV riv = segment.lookup(key);
+      if (riv != null) {
+        hits.increment();
+        return riv;
+      }
+    }
+    misses.increment();
+    final RIV riv = RIVs.generateRIV(size, nnz, key, rivConstructor,
+                                     generation);
+    synchronized (segment) {
+      return segment.admit(key, riv);
+    }
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of vectors currently cached
+   */
+  public int count() {
+    int count = 0;
+    for (final Segment segment : segments)
+      synchronized (segment) {
+        count += segment.count();
+      }
+    return count;
+  }
+
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * @return hits / requests, or 1 if there haven't been any requests
+   */
+  public double hitRate() {
+    final long h = hits.sum();
+    final long total = h + misses.sum();
+    return total == 0
+                      ? 1
+                      : (double) h / total;
+  }
+
+  /**
+   * Empties the cache; statistics are kept.
+   */
+  public void invalidateAll() {
+    for (final Segment segment : segments)
+      synchronized (segment) {
+        segment.clear();
+      }
+  }
+
+  public long missCount() {
+    return misses.sum();
+  }
+
+  public int nnz() {
+    return nnz;
+  }
+
+  private Segment segment(final String word) {
+    final int h = word.hashCode() * 0x9E3779B9;
+    return segments[h >>> 16 & mask];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private static Map.Entry<String, RIV>
+          removeEldest(final LinkedHashMap<String, RIV> map) {
+    final Iterator<Map.Entry<String, RIV>> it = map.entrySet()
+                                                   .iterator();
+    final Map.Entry<String, RIV> eldest = it.next();
+    it.remove();
+    return eldest;
+  }
+}
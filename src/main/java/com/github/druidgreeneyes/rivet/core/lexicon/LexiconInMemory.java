@@ -15,21 +15,37 @@ public class LexiconInMemory extends ConcurrentHashMap<String, LexiconEntry>
 
   private final int size;
   private final int nnz;
-  private final RIV emptyRIV;
+
+  /**
+   * Where index vectors come from, if not MapRIV.generate(). Not serialized;
+   * a deserialized lexicon generates them directly.
+   */
+  private final transient IndexVectorCache cache;
 
   public LexiconInMemory(final int vectorSize, final int vectorNNZ) {
     super();
     size = vectorSize;
     nnz = vectorNNZ;
-    emptyRIV = MapRIV.empty(size);
+    cache = null;
+  }
+
+  /**
+   * A lexicon that takes its index vectors from cache, and so doesn't have
+   * to keep an entry for every word it's merely asked about.
+   */
+  public LexiconInMemory(final IndexVectorCache cache) {
+    super();
+    size = cache.size();
+    nnz = cache.nnz();
+    this.cache = cache;
   }
 
   @Override
   public LexiconInMemory add(final String word, final RIV riv) {
     compute(word,
-            (k, v) -> v == null
-                                ? newEntry(k)
-                                : v.mapRight(r -> r.destructiveAdd(riv)));
+            (k, v) -> (v == null
+                                 ? newEntry(k)
+                                 : v).mapRight(r -> r.destructiveAdd(riv)));
     return this;
   }
 
@@ -53,9 +69,21 @@ public class LexiconInMemory extends ConcurrentHashMap<String, LexiconEntry>
                                        : v);
   }
 
+  /**
+   * Looking up a word's index vector doesn't add an entry for it.
+   */
   @Override
   public RIV getInd(final String word) {
-    return get(word).left;
+    final LexiconEntry entry = super.get(word);
+    return entry != null
+                         ? entry.left
+                         : indexVector(word);
+  }
+
+  private RIV indexVector(final String word) {
+    return cache != null
+                         ? cache.get(word)
+                         : MapRIV.generate(size, nnz, word);
   }
 
   @Override
@@ -64,8 +92,7 @@ public class LexiconInMemory extends ConcurrentHashMap<String, LexiconEntry>
   }
 
   private LexiconEntry newEntry(final String word) {
-    return new LexiconEntry(MapRIV.generate(size, nnz, word),
-                            emptyRIV);
+    return new LexiconEntry(indexVector(word), MapRIV.empty(size));
   }
 
   @Override
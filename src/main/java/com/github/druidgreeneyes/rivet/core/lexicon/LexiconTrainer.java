@@ -0,0 +1,246 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleTable;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+/**
+ * Trains a LexiconInMemory's lexical vectors over a corpus: every token's
+ * lexical vector gets the index vectors of the tokens within window places
+ * of it in the same document. With Permutations, a neighbour d places away
+ * is permuted d times first (backwards for negative d), as in
+ * RIV.permute(), so the lexical vectors encode word order too.
+ *
+ * Documents are whitespace-tokenized and shared out among worker threads.
+ * Each worker sums its updates into private per-word tables and only adds
+ * them to the lexicon every flushEvery tokens, so the lexicon's locks are
+ * taken once per distinct word per flush rather than once per token, and
+ * the workers hardly contend at all.
+ *
+ * @author josh
+ */
+public final class LexiconTrainer {
+
+  /** Compared by identity, so it can't be confused with a real document. */
+  private static final String END = new String("END");
+
+  private final LexiconInMemory lexicon;
+  private final int window;
+  private final Permutations permutations;
+  private final int parallelism;
+  private final int flushEvery;
+
+  /**
+   * A trainer without order encoding, with a worker per processor.
+   */
+  public LexiconTrainer(final LexiconInMemory lexicon, final int window) {
+    this(lexicon, window, null, Runtime.getRuntime()
+                                       .availableProcessors(),
+         1 << 16);
+  }
+
+  /**
+   * @param window
+   *          : how many tokens either side of each token count as its context
+   * @param permutations
+   *          : encodes each neighbour's position if not null
+   * @param parallelism
+   *          : the number of worker threads
+   * @param flushEvery
+   *          : how many tokens a worker trains on before adding its updates
+   *          to the lexicon; more is faster, but takes more memory
+   */
+  public LexiconTrainer(final LexiconInMemory lexicon, final int window,
+                        final Permutations permutations,
+                        final int parallelism, final int flushEvery) {
+    if (window < 1)
+      throw new IllegalArgumentException("window must be positive: "
+                                         + window);
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive: "
+                                         + parallelism);
+    this.lexicon = lexicon;
+    this.window = window;
+    this.permutations = permutations;
+    this.parallelism = parallelism;
+    this.flushEvery = Math.max(1, flushEvery);
+  }
+
+  /**
+   * One worker's pending updates, and the index vectors it has looked up
+   * since its last flush.
+   */
+  private final class Worker implements Runnable {
+    final ArrayBlockingQueue<String> queue;
+    final AtomicReference<Throwable> failure;
+    final LongAdder tokens;
+    final HashMap<String, IntDoubleTable> pending = new HashMap<>();
+    final HashMap<String, RIV> indexVectors = new HashMap<>();
+    final ArrayList<String> words = new ArrayList<>();
+    int unflushed = 0;
+
+    Worker(final ArrayBlockingQueue<String> queue,
+           final AtomicReference<Throwable> failure,
+           final LongAdder tokens) {
+      this.queue = queue;
+      this.failure = failure;
+      this.tokens = tokens;
+    }
+
+    void flush() {
+      final int size = lexicon.size();
+      for (final Map.Entry<String, IntDoubleTable> e : pending.entrySet()) {
+        final IntDoubleTable table = e.getValue();
+        final int[] keys = new int[table.size()];
+        final double[] vals = new double[keys.length];
+        final int[] c = { 0 };
+        table.forEach((k, v) -> {
+          keys[c[0]] = k;
+          vals[c[0]++] = v;
+        });
+        lexicon.add(e.getKey(), new SparseRIV(keys, vals, size));
+      }
+      pending.clear();
+      indexVectors.clear();
+      unflushed = 0;
+    }
+
+    RIV indexVector(final String word) {
+      return indexVectors.computeIfAbsent(word, lexicon::getInd);
+    }
+
+    /**
+     * Keeps taking documents after a failure, without training on them, so
+     * that LexiconTrainer.train() can't block on a full queue.
+     */
+    @Override
+    public void run() {
+      try {
+        for (String doc = queue.take(); doc != END; doc = queue.take())
+          if (failure.get() == null)
+            try {
+              train(doc);
+              if (unflushed >= flushEvery)
+                flush();
+            } catch (final Throwable e) {
+              // Errors too, or train() would report success without this
+              // worker's updates
+              failure.compareAndSet(null, e);
+            }
+        if (failure.get() == null)
+          flush();
+      } catch (final InterruptedException e) {
+        return;
+      } catch (final Throwable e) {
+        failure.compareAndSet(null, e);
+      }
+    }
+
+    void train(final String doc) {
+      tokenize(doc, words);
+      final int n = words.size();
+      for (int i = 0; i < n; i++) {
+        final IntDoubleTable lex = pending.computeIfAbsent(words.get(i),
+                                                           w -> new IntDoubleTable());
+        final int from = Math.max(0, i - window);
+        final int to = Math.min(n, i + window + 1);
+        for (int j = from; j < to; j++)
+          if (j != i) {
+            final int times = j - i;
+            indexVector(words.get(j)).forEachNZ((k, v) -> lex.addTo(permute(k,
+                                                                            times),
+                                                                    v));
+          }
+      }
+      tokens.add(n);
+      unflushed += n;
+    }
+  }
+
+  /**
+   * @return where index k ends up after permuting a vector times times
+   */
+  private int permute(int k, final int times) {
+    if (permutations == null)
+      return k;
+    final int[] perm = times > 0
+                                 ? permutations.permute
+                                 : permutations.inverse;
+    for (int t = Math.abs(times); t > 0; t--)
+      k = perm[k];
+    return k;
+  }
+
+  private static void tokenize(final String text,
+                               final ArrayList<String> words) {
+    words.clear();
+    final int n = text.length();
+    for (int i = 0; i < n;) {
+      while (i < n && Character.isWhitespace(text.charAt(i)))
+        i++;
+      final int start = i;
+      while (i < n && !Character.isWhitespace(text.charAt(i)))
+        i++;
+      if (start < i)
+        words.add(text.substring(start, i));
+    }
+  }
+
+  /**
+   * Trains on each of documents, and returns once every update has been
+   * added to the lexicon. Anything a worker throws, Errors included, is
+   * rethrown from here.
+   *
+   * @return the number of tokens trained on
+   */
+  public long train(final Stream<String> documents) {
+    final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(parallelism
+                                                                      * 64);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final LongAdder tokens = new LongAdder();
+    final Thread[] threads = new Thread[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      threads[i] = new Thread(new Worker(queue, failure, tokens),
+                              "rivet-trainer-" + i);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+    try {
+      for (final Iterator<String> it = documents.iterator(); it.hasNext()
+                                                             && failure.get() == null;)
+        queue.put(it.next());
+      for (int i = 0; i < parallelism; i++)
+        queue.put(END);
+      for (final Thread t : threads)
+        t.join();
+    } catch (final InterruptedException e) {
+      for (final Thread t : threads)
+        t.interrupt();
+      Thread.currentThread()
+            .interrupt();
+      throw new IllegalStateException("Interrupted while training.", e);
+    } catch (final RuntimeException | Error e) {
+      for (final Thread t : threads)
+        t.interrupt();
+      throw e;
+    }
+    final Throwable e = failure.get();
+    if (e instanceof RuntimeException)
+      throw (RuntimeException) e;
+    else if (e instanceof Error)
+      throw (Error) e;
+    else if (e != null)
+      throw new IllegalStateException("Training failed.", e);
+    return tokens.sum();
+  }
+}
@@ -0,0 +1,113 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file mapped into memory in fixed-size chunks, so that it can be longer
+ * than one MappedByteBuffer allows and can grow without remapping what's
+ * already mapped. Addresses are longs; ints, longs and doubles are read and
+ * written at absolute positions, and must be aligned to their own width so
+ * that none straddles two chunks.
+ *
+ * Reads and writes at distinct positions are safe from any thread; callers
+ * are responsible for not racing on the same position.
+ *
+ * @author josh
+ */
+final class MappedFile implements Closeable {
+
+  private static final int CHUNK_BITS = 26;
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+  private static final int CHUNK_MASK = (int) CHUNK_SIZE - 1;
+
+  private final FileChannel channel;
+  private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+  /**
+   * @param create
+   *          : whether to create the file if it isn't there; if not, a missing
+   *          file throws NoSuchFileException
+   */
+  MappedFile(final Path path, final boolean create) throws IOException {
+    channel = create
+                     ? FileChannel.open(path, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE)
+                     : FileChannel.open(path, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+    try {
+      ensure(channel.size());
+    } catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  /**
+   * Maps enough chunks to cover every position below end, growing the file
+   * if need be.
+   */
+  synchronized void ensure(final long end) throws IOException {
+    final int needed = (int) ((end + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    if (needed <= chunks.length)
+      return;
+    final MappedByteBuffer[] grown = Arrays.copyOf(chunks, needed);
+    for (int c = chunks.length; c < needed; c++) {
+      grown[c] = channel.map(MapMode.READ_WRITE, c * CHUNK_SIZE, CHUNK_SIZE);
+      grown[c].order(ByteOrder.LITTLE_ENDIAN);
+    }
+    chunks = grown;
+  }
+
+  void force() {
+    for (final MappedByteBuffer chunk : chunks)
+      chunk.force();
+  }
+
+  byte getByte(final long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].get((int) pos & CHUNK_MASK);
+  }
+
+  double getDouble(final long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].getDouble((int) pos
+                                                        & CHUNK_MASK);
+  }
+
+  int getInt(final long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].getInt((int) pos & CHUNK_MASK);
+  }
+
+  long getLong(final long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].getLong((int) pos & CHUNK_MASK);
+  }
+
+  void putByte(final long pos, final byte b) {
+    chunks[(int) (pos >>> CHUNK_BITS)].put((int) pos & CHUNK_MASK, b);
+  }
+
+  void putDouble(final long pos, final double d) {
+    chunks[(int) (pos >>> CHUNK_BITS)].putDouble((int) pos & CHUNK_MASK, d);
+  }
+
+  void putInt(final long pos, final int i) {
+    chunks[(int) (pos >>> CHUNK_BITS)].putInt((int) pos & CHUNK_MASK, i);
+  }
+
+  void putLong(final long pos, final long l) {
+    chunks[(int) (pos >>> CHUNK_BITS)].putLong((int) pos & CHUNK_MASK, l);
+  }
+}
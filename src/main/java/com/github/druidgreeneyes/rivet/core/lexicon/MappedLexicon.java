@@ -0,0 +1,502 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+/**
+ * A Lexicon kept in memory-mapped files instead of on the heap. Opening one
+ * maps the files and reads a 64-byte header, so it takes the same time
+ * however big the lexicon is, and pages are only read in as words are looked
+ * up.
+ *
+ * A lexicon lives in a directory of four files:
+ * <ul>
+ * <li>entries: the header, then one fixed-width record per word id, holding
+ * where the word's lexical vector and spelling are, and its index vector
+ * inline (nnz int keys, then nnz double values).</li>
+ * <li>vectors: lexical vectors, each in a slot of some capacity; keys first,
+ * then values. A vector that outgrows its slot moves to a new slot twice the
+ * size at the end of the file, and the old one is abandoned.</li>
+ * <li>words: every word's UTF-8 bytes, back to back.</li>
+ * <li>dict: an open-addressing hash table from word to id; each slot is a
+ * long holding the word's hash in the high half and id + 1 in the low half.
+ * When it fills up, a table twice the size is built after it in the same
+ * file.</li>
+ * </ul>
+ *
+ * As with LexiconInMemory, looking up a word that isn't there adds it, with a
+ * generated index vector and an empty lexical vector. Adding new words takes
+ * an exclusive lock; adding to the lexical vectors of words that are already
+ * there takes only a lock per stripe of ids, so any number of threads can
+ * train at once.
+ *
+ * Nothing here is crash-safe: call force() or close() to be sure everything
+ * is on disk.
+ *
+ * @author josh
+ */
+public final class MappedLexicon implements Lexicon, Closeable {
+
+  private static final int MAGIC = 0x5249564C;
+  private static final int VERSION = 1;
+
+  private static final long MAGIC_POS = 0;
+  private static final long VERSION_POS = 4;
+  private static final long SIZE_POS = 8;
+  private static final long NNZ_POS = 12;
+  private static final long COUNT_POS = 16;
+  private static final long DICT_CAPACITY_POS = 20;
+  private static final long DICT_OFFSET_POS = 24;
+  private static final long VECTORS_END_POS = 32;
+  private static final long WORDS_END_POS = 40;
+  private static final long DICT_END_POS = 48;
+  private static final long HEADER_SIZE = 64;
+
+  /** Offsets within an entry record. */
+  private static final int LEX_OFFSET = 0;
+  private static final int WORD_OFFSET = 8;
+  private static final int LEX_CAPACITY = 16;
+  private static final int LEX_COUNT = 20;
+  private static final int WORD_LENGTH = 24;
+  private static final int IND_COUNT = 28;
+  private static final int IND_KEYS = 32;
+
+  private static final int INITIAL_DICT_CAPACITY = 1024;
+  private static final int MIN_LEX_CAPACITY = 8;
+  private static final int STRIPES = 64;
+
+  private final MappedFile entries;
+  private final MappedFile vectors;
+  private final MappedFile words;
+  private final MappedFile dict;
+
+  private final int size;
+  private final int nnz;
+  private final int recordWidth;
+  private final int indValsOffset;
+
+  private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+  private final Object[] stripes = new Object[STRIPES];
+  private final Object headerLock = new Object();
+
+  /** Guarded by the structure lock. */
+  private volatile int count;
+  private long dictOffset;
+  private int dictCapacity;
+  private long dictEnd;
+  private long wordsEnd;
+
+  private final AtomicLong vectorsEnd;
+
+  /**
+   * Maps the four files, which must already exist; if anything here fails,
+   * whatever was already opened is closed again.
+   */
+  private MappedLexicon(final Path dir) throws IOException {
+    if (Files.size(dir.resolve("entries")) < HEADER_SIZE)
+      throw new IOException(dir + " does not hold a MappedLexicon.");
+    final MappedFile[] files = new MappedFile[4];
+    try {
+      files[0] = new MappedFile(dir.resolve("entries"), false);
+      if (files[0].getInt(MAGIC_POS) != MAGIC)
+        throw new IOException(dir + " does not hold a MappedLexicon.");
+      final int version = files[0].getInt(VERSION_POS);
+      if (version != VERSION)
+        throw new IOException("Unsupported MappedLexicon version: "
+                              + version);
+      files[1] = new MappedFile(dir.resolve("vectors"), false);
+      files[2] = new MappedFile(dir.resolve("words"), false);
+      files[3] = new MappedFile(dir.resolve("dict"), false);
+    } catch (final IOException | RuntimeException e) {
+      for (final MappedFile file : files)
+        if (file != null)
+          try {
+            file.close();
+          } catch (final IOException suppressed) {
+            e.addSuppressed(suppressed);
+          }
+      throw e;
+    }
+    entries = files[0];
+    vectors = files[1];
+    words = files[2];
+    dict = files[3];
+    size = entries.getInt(SIZE_POS);
+    nnz = entries.getInt(NNZ_POS);
+    count = entries.getInt(COUNT_POS);
+    dictCapacity = entries.getInt(DICT_CAPACITY_POS);
+    dictOffset = entries.getLong(DICT_OFFSET_POS);
+    dictEnd = entries.getLong(DICT_END_POS);
+    wordsEnd = entries.getLong(WORDS_END_POS);
+    vectorsEnd = new AtomicLong(entries.getLong(VECTORS_END_POS));
+    indValsOffset = IND_KEYS + align(4 * nnz);
+    recordWidth = indValsOffset + 8 * nnz;
+    for (int i = 0; i < STRIPES; i++)
+      stripes[i] = new Object();
+  }
+
+  @Override
+  public MappedLexicon add(final String word, final RIV riv) {
+    final int id = idFor(word);
+    final SparseRIV delta = new SparseRIV(riv);
+    delta.destructiveRemoveZeros();
+    if (delta.count() == 0)
+      return this;
+    structure.readLock().lock();
+    try {
+      synchronized (stripes[id % STRIPES]) {
+        merge(record(id), delta.keyArr(), delta.valArr());
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      structure.readLock().unlock();
+    }
+    return this;
+  }
+
+  @Override
+  public void close() throws IOException {
+    structure.writeLock().lock();
+    try {
+      writeHeader();
+      entries.close();
+      vectors.close();
+      words.close();
+      dict.close();
+    } finally {
+      structure.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return true if word has an entry; unlike the getters, this doesn't add
+   *         one
+   */
+  public boolean contains(final String word) {
+    final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+    structure.readLock().lock();
+    try {
+      return lookup(bytes, hash(bytes)) >= 0;
+    } finally {
+      structure.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Flushes everything to disk.
+   */
+  public void force() {
+    structure.writeLock().lock();
+    try {
+      writeHeader();
+      entries.force();
+      vectors.force();
+      words.force();
+      dict.force();
+    } finally {
+      structure.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public RIV getInd(final String word) {
+    final long rec = record(idFor(word));
+    final int n = entries.getInt(rec + IND_COUNT);
+    final int[] keys = new int[n];
+    final double[] vals = new double[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = entries.getInt(rec + IND_KEYS + 4L * i);
+      vals[i] = entries.getDouble(rec + indValsOffset + 8L * i);
+    }
+    return new SparseRIV(keys, vals, size);
+  }
+
+  @Override
+  public RIV getLex(final String word) {
+    final int id = idFor(word);
+    structure.readLock().lock();
+    try {
+      synchronized (stripes[id % STRIPES]) {
+        final long rec = record(id);
+        final long offset = entries.getLong(rec + LEX_OFFSET);
+        final int capacity = entries.getInt(rec + LEX_CAPACITY);
+        final int n = entries.getInt(rec + LEX_COUNT);
+        final int[] keys = new int[n];
+        final double[] vals = new double[n];
+        readLex(offset, capacity, n, keys, vals);
+        return new SparseRIV(keys, vals, size);
+      }
+    } finally {
+      structure.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds word's dictionary entry, spelling and record. Must hold the write
+   * lock, and word must not be there already.
+   */
+  private int insert(final byte[] bytes, final int hash,
+                     final String word) throws IOException {
+    final int id = count;
+    if ((id + 1) * 2L > dictCapacity)
+      growDict();
+    final long wordOffset = wordsEnd;
+    words.ensure(wordOffset + bytes.length);
+    for (int i = 0; i < bytes.length; i++)
+      words.putByte(wordOffset + i, bytes[i]);
+    wordsEnd += bytes.length;
+    final RIV ind = MapRIV.generate(size, nnz, word);
+    final int[] keys = ind.keyArr();
+    final double[] vals = ind.valArr();
+    final long rec = record(id);
+    entries.ensure(rec + recordWidth);
+    entries.putLong(rec + LEX_OFFSET, 0);
+    entries.putLong(rec + WORD_OFFSET, wordOffset);
+    entries.putInt(rec + LEX_CAPACITY, 0);
+    entries.putInt(rec + LEX_COUNT, 0);
+    entries.putInt(rec + WORD_LENGTH, bytes.length);
+    entries.putInt(rec + IND_COUNT, keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      entries.putInt(rec + IND_KEYS + 4L * i, keys[i]);
+      entries.putDouble(rec + indValsOffset + 8L * i, vals[i]);
+    }
+    place(dictOffset, dictCapacity, (long) hash << 32 | id + 1L);
+    count = id + 1;
+    writeHeader();
+    return id;
+  }
+
+  private void growDict() throws IOException {
+    final int capacity = dictCapacity * 2;
+    final long offset = dictEnd;
+    dict.ensure(offset + 8L * capacity);
+    for (int i = 0; i < dictCapacity; i++) {
+      final long slot = dict.getLong(dictOffset + 8L * i);
+      if (slot != 0)
+        place(offset, capacity, slot);
+    }
+    dictOffset = offset;
+    dictCapacity = capacity;
+    dictEnd = offset + 8L * capacity;
+  }
+
+  /**
+   * @return word's id, adding it if it isn't there
+   */
+  private int idFor(final String word) {
+    final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+    final int hash = hash(bytes);
+    structure.readLock().lock();
+    try {
+      final int id = lookup(bytes, hash);
+      if (id >= 0)
+        return id;
+    } finally {
+      structure.readLock().unlock();
+    }
+    structure.writeLock().lock();
+    try {
+      final int id = lookup(bytes, hash);
+      return id >= 0
+                     ? id
+                     : insert(bytes, hash, word);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      structure.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the id of the word spelled by bytes, or -1
+   */
+  private int lookup(final byte[] bytes, final int hash) {
+    final int mask = dictCapacity - 1;
+    for (int i = hash & mask;; i = i + 1 & mask) {
+      final long slot = dict.getLong(dictOffset + 8L * i);
+      if (slot == 0)
+        return -1;
+      if ((int) (slot >>> 32) == hash && spells((int) slot - 1, bytes))
+        return (int) slot - 1;
+    }
+  }
+
+  /**
+   * Adds keys and vals into the lexical vector at rec, moving it to a bigger
+   * slot if the sum doesn't fit. Must hold the record's stripe.
+   */
+  private void merge(final long rec, final int[] keys,
+                     final double[] vals) throws IOException {
+    long offset = entries.getLong(rec + LEX_OFFSET);
+    int capacity = entries.getInt(rec + LEX_CAPACITY);
+    final int n = entries.getInt(rec + LEX_COUNT);
+    final int[] oldKeys = new int[n];
+    final double[] oldVals = new double[n];
+    readLex(offset, capacity, n, oldKeys, oldVals);
+    final int[] newKeys = new int[n + keys.length];
+    final double[] newVals = new double[n + keys.length];
+    int i = 0, j = 0, c = 0;
+    while (i < n || j < keys.length) {
+      final int k;
+      double v;
+      if (j == keys.length || i < n && oldKeys[i] < keys[j]) {
+        k = oldKeys[i];
+        v = oldVals[i++];
+      } else if (i == n || keys[j] < oldKeys[i]) {
+        k = keys[j];
+        v = vals[j++];
+      } else {
+        k = oldKeys[i];
+        v = oldVals[i++] + vals[j++];
+      }
+      if (v != 0) {
+        newKeys[c] = k;
+        newVals[c++] = v;
+      }
+    }
+    if (c > capacity) {
+      capacity = Math.max(MIN_LEX_CAPACITY, Math.max(c, capacity * 2));
+      capacity += capacity & 1;
+      offset = vectorsEnd.getAndAdd(12L * capacity);
+      vectors.ensure(offset + 12L * capacity);
+      synchronized (headerLock) {
+        entries.putLong(VECTORS_END_POS, vectorsEnd.get());
+      }
+    }
+    for (int x = 0; x < c; x++) {
+      vectors.putInt(offset + 4L * x, newKeys[x]);
+      vectors.putDouble(offset + 4L * capacity + 8L * x, newVals[x]);
+    }
+    entries.putLong(rec + LEX_OFFSET, offset);
+    entries.putInt(rec + LEX_CAPACITY, capacity);
+    entries.putInt(rec + LEX_COUNT, c);
+  }
+
+  /**
+   * Puts slot into the first free place from its hash on in the table at
+   * offset.
+   */
+  private void place(final long offset, final int capacity, final long slot) {
+    final int mask = capacity - 1;
+    int i = (int) (slot >>> 32) & mask;
+    while (dict.getLong(offset + 8L * i) != 0)
+      i = i + 1 & mask;
+    dict.putLong(offset + 8L * i, slot);
+  }
+
+  private void readLex(final long offset, final int capacity, final int n,
+                       final int[] keys, final double[] vals) {
+    for (int i = 0; i < n; i++) {
+      keys[i] = vectors.getInt(offset + 4L * i);
+      vals[i] = vectors.getDouble(offset + 4L * capacity + 8L * i);
+    }
+  }
+
+  private long record(final int id) {
+    return HEADER_SIZE + (long) id * recordWidth;
+  }
+
+  /**
+   * @return the dimensionality of this lexicon's vectors
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if the word with the given id is spelled bytes
+   */
+  private boolean spells(final int id, final byte[] bytes) {
+    final long rec = record(id);
+    if (entries.getInt(rec + WORD_LENGTH) != bytes.length)
+      return false;
+    final long offset = entries.getLong(rec + WORD_OFFSET);
+    for (int i = 0; i < bytes.length; i++)
+      if (words.getByte(offset + i) != bytes[i])
+        return false;
+    return true;
+  }
+
+  private void writeHeader() {
+    synchronized (headerLock) {
+      entries.putInt(COUNT_POS, count);
+      entries.putInt(DICT_CAPACITY_POS, dictCapacity);
+      entries.putLong(DICT_OFFSET_POS, dictOffset);
+      entries.putLong(VECTORS_END_POS, vectorsEnd.get());
+      entries.putLong(WORDS_END_POS, wordsEnd);
+      entries.putLong(DICT_END_POS, dictEnd);
+    }
+  }
+
+  private static int align(final int bytes) {
+    return bytes + 7 & ~7;
+  }
+
+  /**
+   * Creates a new, empty lexicon in dir, which is created if need be but
+   * mustn't already hold one.
+   */
+  public static MappedLexicon create(final Path dir, final int size,
+                                     final int nnz) throws IOException {
+    Files.createDirectories(dir);
+    if (Files.exists(dir.resolve("entries")))
+      throw new FileAlreadyExistsException(dir.resolve("entries").toString());
+    Files.write(dir.resolve("vectors"), new byte[0]);
+    Files.write(dir.resolve("words"), new byte[0]);
+    try (MappedFile header = new MappedFile(dir.resolve("entries"), true);
+         MappedFile d = new MappedFile(dir.resolve("dict"), true)) {
+      header.ensure(HEADER_SIZE);
+      d.ensure(8L * INITIAL_DICT_CAPACITY);
+      header.putInt(MAGIC_POS, MAGIC);
+      header.putInt(VERSION_POS, VERSION);
+      header.putInt(SIZE_POS, size);
+      header.putInt(NNZ_POS, nnz);
+      header.putInt(COUNT_POS, 0);
+      header.putInt(DICT_CAPACITY_POS, INITIAL_DICT_CAPACITY);
+      header.putLong(DICT_OFFSET_POS, 0);
+      header.putLong(VECTORS_END_POS, 0);
+      header.putLong(WORDS_END_POS, 0);
+      header.putLong(DICT_END_POS, 8L * INITIAL_DICT_CAPACITY);
+    }
+    return open(dir);
+  }
+
+  /**
+   * FNV-1a, with a final mix so that the low bits, which pick the slot, depend
+   * on every byte.
+   */
+  private static int hash(final byte[] bytes) {
+    int h = 0x811C9DC5;
+    for (final byte b : bytes)
+      h = (h ^ b & 0xFF) * 0x01000193;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    return h ^ h >>> 13;
+  }
+
+  /**
+   * Opens the lexicon in dir by mapping its files. Nothing is created: a
+   * directory that doesn't hold a lexicon throws IOException and is left as
+   * it was.
+   */
+  public static MappedLexicon open(final Path dir) throws IOException {
+    return new MappedLexicon(dir);
+  }
+}
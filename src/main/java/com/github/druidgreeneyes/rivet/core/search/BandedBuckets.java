@@ -0,0 +1,130 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.github.druidgreeneyes.rivet.core.util.SplitMix64;
+
+/**
+ * The bucket tables behind banded LSH: a signature is cut into bands, each
+ * band is reduced to a long key, and an id goes into one bucket per band. Two
+ * ids are candidates for each other if they share a bucket in any band.
+ *
+ * Each band is an open-addressing table from key to the head of a chain of
+ * entries; the chains themselves live in two flat arrays shared by all bands,
+ * so adding an id costs no allocation beyond the occasional doubling.
+ *
+ * Not thread safe.
+ *
+ * @author josh
+ */
+final class BandedBuckets implements Serializable {
+
+  private static final long serialVersionUID = -2459311806271133696L;
+
+  private static final int NONE = -1;
+
+  private final int bands;
+
+  /** Per band: the bucket keys and the entry at the head of each chain. */
+  private final long[][] keys;
+  private final int[][] heads;
+  private final int[] used;
+
+  /** Entry e holds ids[e], and its chain continues at next[e]. */
+  private int[] ids;
+  private int[] next;
+  private int entries;
+
+  private int maxId = -1;
+
+  BandedBuckets(final int bands) {
+    if (bands < 1)
+      throw new IllegalArgumentException("bands must be positive: " + bands);
+    this.bands = bands;
+    keys = new long[bands][16];
+    heads = new int[bands][16];
+    for (final int[] h : heads)
+      Arrays.fill(h, NONE);
+    used = new int[bands];
+    ids = new int[16];
+    next = new int[16];
+    entries = 0;
+  }
+
+  /**
+   * Puts id into the bucket for each of its band keys.
+   */
+  void add(final int id, final long[] bandKeys) {
+    checkBands(bandKeys);
+    for (int b = 0; b < bands; b++) {
+      if ((used[b] + 1) * 2 > heads[b].length)
+        grow(b);
+      final int slot = slot(b, bandKeys[b]);
+      if (heads[b][slot] == NONE) {
+        keys[b][slot] = bandKeys[b];
+        used[b]++;
+      }
+      if (entries == ids.length) {
+        ids = Arrays.copyOf(ids, entries * 2);
+        next = Arrays.copyOf(next, entries * 2);
+      }
+      ids[entries] = id;
+      next[entries] = heads[b][slot];
+      heads[b][slot] = entries++;
+    }
+    maxId = Math.max(maxId, id);
+  }
+
+  int bands() {
+    return bands;
+  }
+
+  /**
+   * @return every id that shares at least one bucket with bandKeys, ascending
+   */
+  int[] candidates(final long[] bandKeys) {
+    checkBands(bandKeys);
+    final BitSet found = new BitSet(maxId + 1);
+    for (int b = 0; b < bands; b++) {
+      final int slot = slot(b, bandKeys[b]);
+      for (int e = heads[b][slot]; e != NONE; e = next[e])
+        found.set(ids[e]);
+    }
+    return found.stream().toArray();
+  }
+
+  private void checkBands(final long[] bandKeys) {
+    if (bandKeys.length != bands)
+      throw new IllegalArgumentException("Expected " + bands
+                                         + " band keys; got "
+                                         + bandKeys.length);
+  }
+
+  private void grow(final int b) {
+    final long[] oldKeys = keys[b];
+    final int[] oldHeads = heads[b];
+    keys[b] = new long[oldKeys.length * 2];
+    heads[b] = new int[oldHeads.length * 2];
+    Arrays.fill(heads[b], NONE);
+    for (int i = 0; i < oldHeads.length; i++)
+      if (oldHeads[i] != NONE) {
+        final int slot = slot(b, oldKeys[i]);
+        keys[b][slot] = oldKeys[i];
+        heads[b][slot] = oldHeads[i];
+      }
+  }
+
+  /**
+   * @return the slot in band b that holds key, or the empty slot where it
+   *         would go
+   */
+  private int slot(final int b, final long key) {
+    final int mask = heads[b].length - 1;
+    int i = (int) SplitMix64.mix(key) & mask;
+    while (heads[b][i] != NONE && keys[b][i] != key)
+      i = i + 1 & mask;
+    return i;
+  }
+}
@@ -0,0 +1,596 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleTable;
+
+/**
+ * Approximate nearest-neighbour search over RIVs, using a hierarchical
+ * navigable small world graph (Malkov & Yashunin). Every vector is a node on
+ * layer 0 and, with exponentially falling probability, on the layers above
+ * it; each node links to up to m neighbours per layer (2m on layer 0). A
+ * search walks greedily down from the single node on the top layer, then does
+ * a best-first search of width ef on layer 0.
+ *
+ * Vectors are stored normalized, as a sorted int[] of indices and a float[]
+ * of values, so cosine similarity is a plain dot product and a node costs
+ * about 8 bytes per non-zero plus its links.
+ *
+ * Any number of threads may add() at once, and searches may run alongside
+ * them. Each node's links are guarded by that node's monitor; the entry point
+ * is guarded by a lock that an insert only holds for its whole run when it is
+ * about to become the new top of the graph. save() must not race with add().
+ *
+ * ef trades recall for latency: the wider the layer-0 search, the more nodes
+ * it scores and the less likely it is to miss a true neighbour. It can be
+ * changed at any time, or per query.
+ *
+ * @author josh
+ */
+public final class HNSWIndex {
+
+  public static final int DEFAULT_M = 16;
+  public static final int DEFAULT_EF_CONSTRUCTION = 200;
+  public static final int DEFAULT_EF = 64;
+  /** Every node allocates room for 2m links, so m is kept sane. */
+  public static final int MAX_M = 1 << 12;
+
+  private static final int MAGIC = 0x484E5357;
+  private static final int VERSION = 1;
+  /**
+   * Above any level add() can draw, which is at most -log(2^-53) / log(2),
+   * about 53.
+   */
+  private static final int MAX_LEVEL = 64;
+
+  private static final class Node {
+    final int id;
+    final int[] keys;
+    final float[] vals;
+    final int[][] links;
+    final int[] linkCounts;
+
+    Node(final int id, final int[] keys, final float[] vals,
+         final int level, final int m) {
+      this.id = id;
+      this.keys = keys;
+      this.vals = vals;
+      links = new int[level + 1][];
+      for (int l = 0; l <= level; l++)
+        links[l] = new int[l == 0
+                                  ? 2 * m
+                                  : m];
+      linkCounts = new int[level + 1];
+    }
+
+    int level() {
+      return links.length - 1;
+    }
+
+    /** A snapshot of this node's links on layer. */
+    synchronized int[] links(final int layer) {
+      return Arrays.copyOf(links[layer], linkCounts[layer]);
+    }
+
+    synchronized void setLinks(final int layer, final int[] ids,
+                               final int count) {
+      System.arraycopy(ids, 0, links[layer], 0, count);
+      linkCounts[layer] = count;
+    }
+  }
+
+  /** An unbounded max-heap of (id, score), best at the root. */
+  private static final class Candidates {
+    private int[] ids = new int[16];
+    private double[] scores = new double[16];
+    private int count = 0;
+
+    boolean isEmpty() {
+      return count == 0;
+    }
+
+    double peekScore() {
+      return scores[0];
+    }
+
+    int poll() {
+      final int res = ids[0];
+      count--;
+      final int id = ids[count];
+      final double score = scores[count];
+      int i = 0;
+      int child;
+      while ((child = 2 * i + 1) < count) {
+        if (child + 1 < count && scores[child + 1] > scores[child])
+          child++;
+        if (scores[child] <= score)
+          break;
+        ids[i] = ids[child];
+        scores[i] = scores[child];
+        i = child;
+      }
+      ids[i] = id;
+      scores[i] = score;
+      return res;
+    }
+
+    void push(final int id, final double score) {
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, count * 2);
+        scores = Arrays.copyOf(scores, count * 2);
+      }
+      int i = count++;
+      while (i > 0) {
+        final int parent = i - 1 >>> 1;
+        if (scores[parent] >= score)
+          break;
+        ids[i] = ids[parent];
+        scores[i] = scores[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      scores[i] = score;
+    }
+  }
+
+  private final int size;
+  private final int m;
+  private final int efConstruction;
+  private final double levelMultiplier;
+  private volatile int ef;
+
+  private final AtomicInteger count = new AtomicInteger();
+  private final Object growLock = new Object();
+  private volatile Node[] nodes = new Node[16];
+
+  private final ReentrantLock entryLock = new ReentrantLock();
+  private volatile Node entry = null;
+
+  public HNSWIndex(final int size) {
+    this(size, DEFAULT_M, DEFAULT_EF_CONSTRUCTION);
+  }
+
+  /**
+   * @param size
+   *          : the dimensionality of the vectors to index
+   * @param m
+   *          : the number of links per node per layer; 2m on layer 0. At
+   *          most MAX_M.
+   * @param efConstruction
+   *          : the search width used to find a new node's neighbours
+   */
+  public HNSWIndex(final int size, final int m, final int efConstruction) {
+    if (m < 2 || m > MAX_M)
+      throw new IllegalArgumentException("m must be between 2 and " + MAX_M
+                                         + ": " + m);
+    if (efConstruction < 1)
+      throw new IllegalArgumentException(
+                                         "efConstruction must be positive: "
+                                         + efConstruction);
+    this.size = size;
+    this.m = m;
+    this.efConstruction = efConstruction;
+    levelMultiplier = 1 / Math.log(m);
+    ef = DEFAULT_EF;
+  }
+
+  /**
+   * Adds riv to the index. Safe to call from many threads at once.
+   *
+   * @return the id of the new node; ids are handed out in order from 0
+   */
+  public int add(final RIV riv) {
+    if (riv.size() != size)
+      throw new SizeMismatchException("RIV has size " + riv.size()
+                                      + "; this index holds vectors of size "
+                                      + size);
+    final SparseRIV sparse = new SparseRIV(riv);
+    sparse.destructiveRemoveZeros();
+    final double mag = sparse.magnitude();
+    final int[] keys = sparse.keyArr();
+    final double[] vs = sparse.valArr();
+    final float[] vals = new float[vs.length];
+    for (int i = 0; i < vs.length; i++)
+      vals[i] = (float) (vs[i] / mag);
+    final int level = (int) (-Math.log(1 - ThreadLocalRandom.current()
+                                                            .nextDouble())
+                             * levelMultiplier);
+    final Node node = new Node(count.getAndIncrement(), keys, vals, level, m);
+    store(node);
+    link(node);
+    return node.id;
+  }
+
+  /**
+   * @return the number of vectors in this index
+   */
+  public int count() {
+    return count.get();
+  }
+
+  public int ef() {
+    return ef;
+  }
+
+  private void link(final Node node) {
+    entryLock.lock();
+    boolean holding = true;
+    try {
+      final Node top = entry;
+      if (top == null) {
+        entry = node;
+        return;
+      }
+      if (node.level() <= top.level()) {
+        entryLock.unlock();
+        holding = false;
+      }
+      final double[] query = scatter(node);
+      final double[] scratch = new double[size];
+      int[] entries = { greedy(query, top, node.level()) };
+      for (int layer = Math.min(node.level(), top.level());
+           layer >= 0; layer--) {
+        final TopK found = searchLayer(query, entries,
+                                       Math.min(efConstruction, count()),
+                                       layer);
+        final int max = node.links[layer].length;
+        final int[] chosen = selectNeighbours(found, max, node.id, scratch);
+        node.setLinks(layer, chosen, chosen.length);
+        for (final int id : chosen)
+          linkBack(node(id), layer, node, scratch);
+        entries = new int[found.count()];
+        for (int i = 0; i < entries.length; i++)
+          entries[i] = found.id(i);
+      }
+      if (node.level() > top.level())
+        entry = node;
+    } finally {
+      if (holding)
+        entryLock.unlock();
+    }
+  }
+
+  /**
+   * Adds a link from node to added on layer, re-choosing node's neighbours if
+   * it already has as many as it's allowed.
+   */
+  private void linkBack(final Node node, final int layer, final Node added,
+                        final double[] scratch) {
+    synchronized (node) {
+      final int n = node.linkCounts[layer];
+      final int[] links = node.links[layer];
+      if (n < links.length) {
+        links[n] = added.id;
+        node.linkCounts[layer]++;
+        return;
+      }
+      final TopK candidates = new TopK(n + 1);
+      for (int k = 0; k < node.keys.length; k++)
+        scratch[node.keys[k]] = node.vals[k];
+      candidates.offer(added.id, similarity(scratch, added));
+      for (int i = 0; i < n; i++)
+        candidates.offer(links[i], similarity(scratch, node(links[i])));
+      for (final int key : node.keys)
+        scratch[key] = 0;
+      final int[] chosen = selectNeighbours(candidates, links.length, -1,
+                                            scratch);
+      node.setLinks(layer, chosen, chosen.length);
+    }
+  }
+
+  /**
+   * Walks down from top to the layer above floor, always moving to the
+   * neighbour most similar to the query.
+   *
+   * @return the id of the closest node found
+   */
+  private int greedy(final double[] query, final Node top, final int floor) {
+    Node cur = top;
+    double best = similarity(query, cur);
+    for (int layer = top.level(); layer > floor; layer--) {
+      boolean moved = true;
+      while (moved) {
+        moved = false;
+        for (final int id : cur.links(layer)) {
+          final Node next = node(id);
+          final double s = similarity(query, next);
+          if (s > best) {
+            best = s;
+            cur = next;
+            moved = true;
+          }
+        }
+      }
+    }
+    return cur.id;
+  }
+
+  /**
+   * @return the (approximately) k indexed vectors most similar to query, best
+   *         first, searching with the current ef
+   */
+  public Match[] nearest(final RIV query, final int k) {
+    return nearest(query, k, ef);
+  }
+
+  /**
+   * @param ef
+   *          : the width of the layer-0 search; raised to k if it's smaller
+   * @return the (approximately) k indexed vectors most similar to query, best
+   *         first
+   */
+  public Match[] nearest(final RIV query, final int k, final int ef) {
+    if (query.size() != size)
+      throw new SizeMismatchException("Query has size " + query.size()
+                                      + "; this index holds vectors of size "
+                                      + size);
+    final int n = count();
+    final int kept = TopK.clamp(k, n);
+    final TopK top = new TopK(kept);
+    final Node start = entry;
+    final double mag = query.magnitude();
+    if (start == null || mag == 0 || kept == 0)
+      return top.toMatches();
+    final double[] dense = new double[size];
+    query.forEachNZ((i, v) -> dense[i] += v / mag);
+    final int[] entries = { greedy(dense, start, 0) };
+    final TopK found = searchLayer(dense, entries,
+                                   Math.min(Math.max(ef, kept), n), 0);
+    for (int i = 0; i < found.count(); i++)
+      top.offer(found.id(i), found.score(i));
+    return top.toMatches();
+  }
+
+  private Node node(final int id) {
+    return nodes[id];
+  }
+
+  /**
+   * Writes the index out. Must not run while anything is being added.
+   */
+  public void save(final OutputStream stream) throws IOException {
+    final DataOutputStream out = new DataOutputStream(
+                                                      new BufferedOutputStream(stream));
+    final int n = count();
+    final Node top = entry;
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(size);
+    out.writeInt(m);
+    out.writeInt(efConstruction);
+    out.writeInt(ef);
+    out.writeInt(n);
+    out.writeInt(top == null
+                             ? -1
+                             : top.id);
+    for (int id = 0; id < n; id++) {
+      final Node node = node(id);
+      out.writeInt(node.level());
+      out.writeInt(node.keys.length);
+      for (int i = 0; i < node.keys.length; i++) {
+        out.writeInt(node.keys[i]);
+        out.writeFloat(node.vals[i]);
+      }
+      for (int layer = 0; layer <= node.level(); layer++) {
+        final int[] links = node.links(layer);
+        out.writeInt(links.length);
+        for (final int link : links)
+          out.writeInt(link);
+      }
+    }
+    out.flush();
+  }
+
+  public void save(final Path path) throws IOException {
+    try (OutputStream out = Files.newOutputStream(path)) {
+      save(out);
+    }
+  }
+
+  private TopK searchLayer(final double[] query, final int[] entries,
+                           final int width, final int layer) {
+    final TopK found = new TopK(width);
+    final Candidates candidates = new Candidates();
+    final IntDoubleTable visited = new IntDoubleTable(width * 4);
+    for (final int id : entries)
+      if (visited.addTo(id, 1) == 1) {
+        final double s = similarity(query, node(id));
+        found.offer(id, s);
+        candidates.push(id, s);
+      }
+    while (!candidates.isEmpty()) {
+      if (found.isFull() && candidates.peekScore() < found.threshold())
+        break;
+      final Node node = node(candidates.poll());
+      for (final int id : node.links(layer))
+        if (visited.addTo(id, 1) == 1) {
+          final double s = similarity(query, node(id));
+          if (!found.isFull() || s > found.threshold()) {
+            candidates.push(id, s);
+            found.offer(id, s);
+          }
+        }
+    }
+    return found;
+  }
+
+  /**
+   * The neighbour selection heuristic from the HNSW paper: take candidates
+   * best first, but skip any that is closer to an already chosen neighbour
+   * than to the base node, so that links spread out in different directions.
+   * Skipped candidates fill up whatever room is left.
+   *
+   * @param self
+   *          : the id of the base node, which a concurrent insert may have
+   *          made reachable from its own search; -1 if there's no need to
+   *          check.
+   * @param scratch
+   *          : an all-zero array of length size, which each candidate in turn
+   *          is scattered into so that comparing it with the chosen
+   *          neighbours is a gather rather than a merge; left all zero.
+   */
+  private int[] selectNeighbours(final TopK candidates, final int max,
+                                 final int self, final double[] scratch) {
+    final Match[] sorted = candidates.toMatches();
+    final boolean[] used = new boolean[sorted.length];
+    int available = sorted.length;
+    for (int i = 0; i < sorted.length; i++)
+      if (sorted[i].id() == self) {
+        used[i] = true;
+        available--;
+      }
+    final int[] chosen = new int[Math.min(max, available)];
+    int c = 0;
+    for (int i = 0; i < sorted.length && c < chosen.length; i++) {
+      if (used[i])
+        continue;
+      final Node candidate = node(sorted[i].id());
+      for (int k = 0; k < candidate.keys.length; k++)
+        scratch[candidate.keys[k]] = candidate.vals[k];
+      boolean keep = true;
+      for (int j = 0; j < c && keep; j++)
+        keep = similarity(scratch, node(chosen[j])) <= sorted[i].similarity();
+      for (final int key : candidate.keys)
+        scratch[key] = 0;
+      if (keep) {
+        chosen[c++] = candidate.id;
+        used[i] = true;
+      }
+    }
+    for (int i = 0; i < sorted.length && c < chosen.length; i++)
+      if (!used[i]) {
+        chosen[c++] = sorted[i].id();
+        used[i] = true;
+      }
+    return chosen;
+  }
+
+  /**
+   * @param ef
+   *          : the default width of the layer-0 search for nearest()
+   */
+  public void setEf(final int ef) {
+    if (ef < 1)
+      throw new IllegalArgumentException("ef must be positive: " + ef);
+    this.ef = ef;
+  }
+
+  /**
+   * @return the dimensionality of the vectors in this index
+   */
+  public int size() {
+    return size;
+  }
+
+  private void store(final Node node) {
+    synchronized (growLock) {
+      if (node.id >= nodes.length)
+        nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, node.id + 1));
+      nodes[node.id] = node;
+    }
+  }
+
+  private double[] scatter(final Node node) {
+    final double[] dense = new double[size];
+    for (int i = 0; i < node.keys.length; i++)
+      dense[node.keys[i]] = node.vals[i];
+    return dense;
+  }
+
+  /**
+   * Reads an index written by save(). Every count, level and id is checked
+   * against the index it's going into, so a truncated or corrupt stream
+   * throws IOException.
+   */
+  public static HNSWIndex load(final InputStream stream) throws IOException {
+    final DataInputStream in = new DataInputStream(
+                                                   new BufferedInputStream(stream));
+    if (in.readInt() != MAGIC)
+      throw new IOException("Not a saved HNSWIndex.");
+    final int version = in.readInt();
+    if (version != VERSION)
+      throw new IOException("Unsupported HNSWIndex version: " + version);
+    final HNSWIndex index;
+    try {
+      index = new HNSWIndex(in.readInt(), in.readInt(), in.readInt());
+      index.setEf(in.readInt());
+    } catch (final IllegalArgumentException e) {
+      throw new IOException("Corrupt HNSWIndex: " + e.getMessage(), e);
+    }
+    checkLoaded(index.size >= 0, "size " + index.size);
+    final int n = in.readInt();
+    final int top = in.readInt();
+    checkLoaded(n >= 0, "node count " + n);
+    checkLoaded(top >= -1 && top < n, "entry point " + top);
+    for (int id = 0; id < n; id++) {
+      final int level = in.readInt();
+      checkLoaded(level >= 0 && level <= MAX_LEVEL,
+                  "node " + id + " has level " + level);
+      final int nnz = in.readInt();
+      checkLoaded(nnz >= 0 && nnz <= index.size,
+                  "node " + id + " has " + nnz + " non-zeros");
+      final int[] keys = new int[nnz];
+      final float[] vals = new float[nnz];
+      for (int i = 0; i < nnz; i++) {
+        keys[i] = in.readInt();
+        vals[i] = in.readFloat();
+        checkLoaded(keys[i] >= 0 && keys[i] < index.size,
+                    "node " + id + " has index " + keys[i]);
+      }
+      final Node node = new Node(id, keys, vals, level, index.m);
+      for (int layer = 0; layer <= level; layer++) {
+        final int links = in.readInt();
+        checkLoaded(links >= 0 && links <= node.links[layer].length,
+                    "node " + id + " has " + links + " links on layer "
+                                + layer);
+        for (int i = 0; i < links; i++) {
+          final int target = in.readInt();
+          checkLoaded(target >= 0 && target < n,
+                      "node " + id + " links to node " + target);
+          node.links[layer][i] = target;
+        }
+        node.linkCounts[layer] = links;
+      }
+      index.store(node);
+    }
+    index.count.set(n);
+    index.entry = top < 0
+                          ? null
+                          : index.nodes[top];
+    return index;
+  }
+
+  public static HNSWIndex load(final Path path) throws IOException {
+    try (InputStream in = Files.newInputStream(path)) {
+      return load(in);
+    }
+  }
+
+  private static void checkLoaded(final boolean ok,
+                                  final String problem) throws IOException {
+    if (!ok)
+      throw new IOException("Corrupt HNSWIndex: " + problem);
+  }
+
+  private static double similarity(final double[] query, final Node node) {
+    double sum = 0;
+    for (int i = 0; i < node.keys.length; i++)
+      sum += node.vals[i] * query[node.keys[i]];
+    return sum;
+  }
+}
@@ -0,0 +1,232 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+import com.github.druidgreeneyes.rivet.core.util.IntDoubleTable;
+
+/**
+ * An immutable inverted index over a collection of RIVs: for every dimension,
+ * the list of (id, value) pairs of the vectors that are non-zero there. Two
+ * RIVs can only have a non-zero dot product if they share a dimension, so a
+ * query only ever has to look at the posting lists of its own non-zeros
+ * instead of at every stored vector.
+ *
+ * Values are stored already divided by their vector's magnitude, so summing
+ * query value times posting value over the shared dimensions gives cosine
+ * similarity times the query's magnitude, and the final division is done once
+ * per result.
+ *
+ * Only vectors that share at least one dimension with the query are ever
+ * returned; everything else has a similarity of exactly 0.
+ *
+ * By default queries are answered document-at-a-time with MaxScore pruning:
+ * each dimension knows the largest absolute value in its posting list, so
+ * each query term has an upper bound on how much it can contribute to any
+ * score. Once the heap of the best k is full, terms whose bounds together
+ * can't lift a vector past the k-th best score stop generating candidates,
+ * and a candidate stops being scored as soon as what it has plus what it
+ * could still get falls short. The results are the same as an exhaustive
+ * search; values may be signed, so the bounds use absolute values.
+ *
+ * @author josh
+ */
+public final class InvertedIndex implements Serializable {
+
+  private static final long serialVersionUID = 1726040938154187264L;
+
+  private final int size;
+  private final int count;
+
+  /** Dimension d's postings are ids/vals[offsets[d]] to [offsets[d + 1]]. */
+  private final int[] offsets;
+  private final int[] ids;
+  private final double[] vals;
+
+  /** The largest absolute value in each dimension's posting list. */
+  private final double[] maxAbs;
+
+  public InvertedIndex(final Collection<? extends RIV> rivs) {
+    this(rivs.toArray(new RIV[rivs.size()]));
+  }
+
+  /**
+   * @param rivs
+   *          : the vectors to index, which must all be the same size; there
+   *          must be at least one.
+   */
+  public InvertedIndex(final RIV... rivs) {
+    if (rivs.length == 0)
+      throw new IllegalArgumentException(
+                                         "Cannot build an empty InvertedIndex.");
+    size = rivs[0].size();
+    count = rivs.length;
+    final SparseRIV[] sorted = new SparseRIV[count];
+    offsets = new int[size + 1];
+    for (int i = 0; i < count; i++) {
+      if (rivs[i].size() != size)
+        throw new SizeMismatchException("RIV " + i + " has size "
+                                        + rivs[i].size() + "; expected "
+                                        + size);
+      sorted[i] = new SparseRIV(rivs[i]);
+      sorted[i].destructiveRemoveZeros();
+      for (final int k : sorted[i].keyArr())
+        offsets[k + 1]++;
+    }
+    for (int d = 0; d < size; d++)
+      offsets[d + 1] += offsets[d];
+    ids = new int[offsets[size]];
+    vals = new double[offsets[size]];
+    maxAbs = new double[size];
+    final int[] fill = Arrays.copyOf(offsets, size);
+    // ids go in ascending, so every posting list comes out sorted by id
+    for (int i = 0; i < count; i++) {
+      final double mag = sorted[i].magnitude();
+      final int[] keys = sorted[i].keyArr();
+      final double[] vs = sorted[i].valArr();
+      for (int j = 0; j < keys.length; j++) {
+        final int d = keys[j];
+        final double v = vs[j] / mag;
+        ids[fill[d]] = i;
+        vals[fill[d]++] = v;
+        maxAbs[d] = Math.max(maxAbs[d], Math.abs(v));
+      }
+    }
+  }
+
+  /**
+   * @return the number of vectors in this index
+   */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * @return the k indexed vectors most similar to query, best first, using
+   *         MaxScore pruning
+   */
+  public Match[] nearest(final RIV query, final int k) {
+    return nearest(query, k, true);
+  }
+
+  /**
+   * @param prune
+   *          : if false, accumulate every posting of every query dimension
+   *          (term-at-a-time) instead of pruning; the results are the same.
+   * @return the k indexed vectors most similar to query, best first
+   */
+  public Match[] nearest(final RIV query, final int k, final boolean prune) {
+    if (query.size() != size)
+      throw new SizeMismatchException("Query has size " + query.size()
+                                      + "; this index holds vectors of size "
+                                      + size);
+    final TopK top = new TopK(TopK.clamp(k, count));
+    final double mag = query.magnitude();
+    if (mag == 0 || k == 0)
+      return top.toMatches();
+    final SparseRIV q = new SparseRIV(query);
+    q.destructiveRemoveZeros();
+    final int[] keys = q.keyArr();
+    final double[] qv = q.valArr();
+    if (prune)
+      maxScore(keys, qv, top);
+    else
+      accumulate(keys, qv, top);
+    final Match[] res = top.toMatches();
+    for (int i = 0; i < res.length; i++)
+      res[i] = new Match(res[i].id(), res[i].similarity() / mag);
+    return res;
+  }
+
+  /**
+   * Term-at-a-time: add every posting of every query term into a table of
+   * partial scores, then pick the best k.
+   */
+  private void accumulate(final int[] keys, final double[] qv,
+                          final TopK top) {
+    int postings = 0;
+    for (final int d : keys)
+      postings += offsets[d + 1] - offsets[d];
+    final IntDoubleTable scores = new IntDoubleTable(Math.min(postings,
+                                                              count));
+    for (int t = 0; t < keys.length; t++) {
+      final int d = keys[t];
+      for (int p = offsets[d]; p < offsets[d + 1]; p++)
+        scores.addTo(ids[p], qv[t] * vals[p]);
+    }
+    scores.forEach(top::offer);
+  }
+
+  /**
+   * Document-at-a-time over cursors into the query terms' posting lists,
+   * ordered by upper bound. Terms below the essential boundary only ever get
+   * probed for candidates found through the terms above it.
+   */
+  private void maxScore(final int[] keys, final double[] qv, final TopK top) {
+    final int m = keys.length;
+    final Integer[] order = new Integer[m];
+    final double[] bound = new double[m];
+    for (int t = 0; t < m; t++) {
+      order[t] = t;
+      bound[t] = Math.abs(qv[t]) * maxAbs[keys[t]];
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(bound[a], bound[b]));
+    // cursor state, in ascending bound order
+    final int[] pos = new int[m];
+    final int[] end = new int[m];
+    final double[] weight = new double[m];
+    final double[] cumulative = new double[m];
+    double sum = 0;
+    for (int i = 0; i < m; i++) {
+      final int t = order[i];
+      pos[i] = offsets[keys[t]];
+      end[i] = offsets[keys[t] + 1];
+      weight[i] = qv[t];
+      sum += bound[t];
+      cumulative[i] = sum;
+    }
+    int essential = 0;
+    while (true) {
+      int doc = Integer.MAX_VALUE;
+      for (int i = essential; i < m; i++)
+        if (pos[i] < end[i])
+          doc = Math.min(doc, ids[pos[i]]);
+      if (doc == Integer.MAX_VALUE)
+        return;
+      double score = 0;
+      for (int i = essential; i < m; i++)
+        if (pos[i] < end[i] && ids[pos[i]] == doc)
+          score += weight[i] * vals[pos[i]++];
+      final double threshold = top.threshold();
+      boolean complete = true;
+      for (int i = essential - 1; i >= 0; i--) {
+        if (score + cumulative[i] < threshold) {
+          complete = false;
+          break;
+        }
+        final int p = Arrays.binarySearch(ids, pos[i], end[i], doc);
+        if (p >= 0) {
+          score += weight[i] * vals[p];
+          pos[i] = p + 1;
+        } else
+          pos[i] = ~p;
+      }
+      if (complete && top.offer(doc, score)) {
+        final double theta = top.threshold();
+        while (essential < m && cumulative[essential] < theta)
+          essential++;
+      }
+    }
+  }
+
+  /**
+   * @return the dimensionality of the vectors in this index
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,59 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+
+/**
+ * One result of a similarity search: the id of a stored vector and its
+ * similarity to the query. Matches sort best-first, with ties going to the
+ * lower id.
+ *
+ * @author josh
+ */
+public final class Match implements Serializable, Comparable<Match> {
+
+  private static final long serialVersionUID = 4380529713126935167L;
+
+  private final int id;
+  private final double similarity;
+
+  public Match(final int id, final double similarity) {
+    this.id = id;
+    this.similarity = similarity;
+  }
+
+  @Override
+  public int compareTo(final Match other) {
+    final int c = Double.compare(other.similarity, similarity);
+    return c != 0
+                  ? c
+                  : Integer.compare(id, other.id);
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (this == other)
+      return true;
+    else if (!(other instanceof Match))
+      return false;
+    final Match m = (Match) other;
+    return id == m.id && Double.compare(similarity, m.similarity) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * id + Double.hashCode(similarity);
+  }
+
+  public int id() {
+    return id;
+  }
+
+  public double similarity() {
+    return similarity;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d|%f", id, similarity);
+  }
+}
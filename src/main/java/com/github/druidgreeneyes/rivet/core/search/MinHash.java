@@ -0,0 +1,278 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.github.druidgreeneyes.rivet.core.util.RollingHash;
+import com.github.druidgreeneyes.rivet.core.util.SplitMix64;
+
+/**
+ * MinHash sketches of shingle sets, for estimating the Jaccard similarity of
+ * two documents from a few hundred bytes each. Each of the sketch's hashes is
+ * the minimum, over the document's shingles, of some random function of the
+ * shingle; two documents agree on a given minimum with probability equal to
+ * the Jaccard similarity of their shingle sets.
+ *
+ * Shingles come in as 64-bit hashes, usually the RollingHash seeds that
+ * Shingles.rollingRivettizeText uses, so a document can be sketched and
+ * rivettized from the same pass; see signature(CharSequence, int[], int).
+ *
+ * Two ways to take the minimums:
+ * <ul>
+ * <li>classic: one independent hash function per minimum, so a shingle costs
+ * one mix per hash;</li>
+ * <li>one-permutation (Li, Owen and Zhang): each shingle is hashed once and
+ * lands in one of the bins, each of which keeps its own minimum; a shingle
+ * costs one mix whatever the number of hashes. Bins left empty by a short
+ * document borrow the minimum of a non-empty bin picked by a fixed probe
+ * sequence (Shrivastava's optimal densification), which keeps the estimate
+ * unbiased.</li>
+ * </ul>
+ *
+ * Each minimum is kept to its lowest bits bits (Li and König's b-bit
+ * MinHash), packed 64 / bits to a word. Fewer bits mean smaller signatures
+ * and more accidental agreements, which estimateJaccard() corrects for; 64
+ * keeps the minimums whole.
+ *
+ * Signatures are long[]s of hashes * bits / 64 words. Two MinHashes with the
+ * same parameters produce the same signatures.
+ *
+ * @author josh
+ */
+public final class MinHash implements Serializable {
+
+  private static final long serialVersionUID = -3712009433150457024L;
+
+  private static final long EMPTY = Long.MAX_VALUE;
+
+  private final int hashes;
+  private final int bits;
+  private final long seed;
+  private final boolean onePermutation;
+  /** Per hash function, for classic MinHash. */
+  private final long[] salts;
+  /** The lowest bit of every field in a word. */
+  private final long fieldStarts;
+
+  /**
+   * Classic MinHash with whole 64-bit minimums.
+   */
+  public MinHash(final int hashes, final long seed) {
+    this(hashes, 64, seed, false);
+  }
+
+  /**
+   * @param hashes
+   *          : the number of minimums in each signature
+   * @param bits
+   *          : how many bits of each minimum to keep; 1, 2, 4, 8, 16, 32 or
+   *          64, and hashes * bits must be a multiple of 64
+   * @param seed
+   *          : picks the hash functions
+   * @param onePermutation
+   *          : whether to hash each shingle once, into bins, rather than once
+   *          per minimum
+   */
+  public MinHash(final int hashes, final int bits, final long seed,
+                 final boolean onePermutation) {
+    if (hashes <= 0)
+      throw new IllegalArgumentException("hashes must be positive: "
+                                         + hashes);
+    if (Integer.bitCount(bits) != 1 || bits > 64)
+      throw new IllegalArgumentException("bits must be a power of 2 no greater than 64: "
+                                         + bits);
+    if ((long) hashes * bits % 64 != 0)
+      throw new IllegalArgumentException(hashes + " hashes of " + bits
+                                         + " bits don't fill whole words");
+    this.hashes = hashes;
+    this.bits = bits;
+    this.seed = seed;
+    this.onePermutation = onePermutation;
+    salts = new long[onePermutation
+                                    ? 0
+                                    : hashes];
+    final SplitMix64 random = new SplitMix64(seed);
+    for (int i = 0; i < salts.length; i++)
+      salts[i] = random.nextLong();
+    long starts = 0;
+    for (int s = 0; s < 64; s += bits)
+      starts |= 1L << s;
+    fieldStarts = starts;
+  }
+
+  public int bits() {
+    return bits;
+  }
+
+  /**
+   * @return a builder that takes one document's shingles at a time
+   */
+  public Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the estimated Jaccard similarity of the shingle sets behind two
+   *         signatures: the fraction of minimums they agree on, less the
+   *         fraction that b-bit minimums would agree on by chance
+   */
+  public double estimateJaccard(final long[] a, final long[] b) {
+    final double agreed = (double) matches(a, b) / hashes;
+    if (bits == 64)
+      return agreed;
+    final double chance = 1.0 / (1L << bits);
+    return Math.max(0, (agreed - chance) / (1 - chance));
+  }
+
+  /**
+   * @return the i-th minimum's bits in signature
+   */
+  long field(final long[] signature, final int i) {
+    if (bits == 64)
+      return signature[i];
+    final int perWord = 64 / bits;
+    return signature[i / perWord] >>> i % perWord * bits
+           & (1L << bits) - 1;
+  }
+
+  public int hashes() {
+    return hashes;
+  }
+
+  /**
+   * @return the number of minimums on which a and b agree
+   */
+  public int matches(final long[] a, final long[] b) {
+    if (a.length != b.length)
+      throw new IllegalArgumentException("Signatures of different lengths: "
+                                         + a.length + " and " + b.length);
+    int differ = 0;
+    for (int w = 0; w < a.length; w++) {
+      long x = a[w] ^ b[w];
+      if (bits == 64) {
+        if (x != 0)
+          differ++;
+        continue;
+      }
+      // fold each field down onto its lowest bit, which is then set if the
+      // fields differ anywhere
+      for (int s = 1; s < bits; s <<= 1)
+        x |= x >>> s;
+      differ += Long.bitCount(x & fieldStarts);
+    }
+    return hashes - differ;
+  }
+
+  public boolean onePermutation() {
+    return onePermutation;
+  }
+
+  public long seed() {
+    return seed;
+  }
+
+  /**
+   * @return the signature of text's character shingles at shinglePoints (see
+   *         Shingles.findShinglePoints), hashed as RIVs.Generation.ROLLING
+   *         seeds them
+   */
+  public long[] signature(final CharSequence text, final int[] shinglePoints,
+                          final int width) {
+    final Builder builder = new Builder();
+    RollingHash.forEachSeed(text, shinglePoints, width, builder::add);
+    return builder.build();
+  }
+
+  /**
+   * @return the signature of a set of shingles, given as 64-bit hashes
+   */
+  public long[] signature(final long... shingleHashes) {
+    final Builder builder = new Builder();
+    for (final long h : shingleHashes)
+      builder.add(h);
+    return builder.build();
+  }
+
+  /**
+   * Takes a document's shingle hashes one by one, keeping only the running
+   * minimums. build() hands out the signature and starts the next document.
+   * A document with no shingles gets a signature of all ones. Not thread
+   * safe.
+   */
+  public final class Builder {
+
+    private final long[] mins = new long[hashes];
+
+    private Builder() {
+      Arrays.fill(mins, EMPTY);
+    }
+
+    public Builder add(final long shingleHash) {
+      if (onePermutation) {
+        final long v = SplitMix64.mix(shingleHash ^ seed);
+        final int bin = bin(v);
+        if (v < mins[bin])
+          mins[bin] = v;
+      } else
+        for (int i = 0; i < hashes; i++) {
+          final long v = SplitMix64.mix(shingleHash ^ salts[i]);
+          if (v < mins[i])
+            mins[i] = v;
+        }
+      return this;
+    }
+
+    /**
+     * @return the lowest 32 bits of v's top half, scaled into [0, hashes)
+     */
+    private int bin(final long v) {
+      return (int) ((v >>> 32) * hashes >>> 32);
+    }
+
+    /**
+     * @return the signature of everything added since the last build()
+     */
+    public long[] build() {
+      if (onePermutation)
+        densify();
+      final long[] sig = new long[hashes * bits / 64];
+      if (bits == 64)
+        System.arraycopy(mins, 0, sig, 0, hashes);
+      else {
+        final int perWord = 64 / bits;
+        final long mask = (1L << bits) - 1;
+        for (int i = 0; i < hashes; i++)
+          sig[i / perWord] |= (mins[i] & mask) << i % perWord * bits;
+      }
+      clear();
+      return sig;
+    }
+
+    public Builder clear() {
+      Arrays.fill(mins, EMPTY);
+      return this;
+    }
+
+    /**
+     * Fills each empty bin from the first non-empty one in its own probe
+     * sequence, which depends only on the seed and the bin.
+     */
+    private void densify() {
+      boolean any = false;
+      final boolean[] filled = new boolean[hashes];
+      for (int i = 0; i < hashes; i++)
+        any |= filled[i] = mins[i] != EMPTY;
+      if (!any)
+        return;
+      for (int i = 0; i < hashes; i++)
+        if (!filled[i]) {
+          final SplitMix64 probe = new SplitMix64(seed ^ SplitMix64.mix(i));
+          int from;
+          do
+            from = bin(probe.nextLong());
+          while (!filled[from]);
+          mins[i] = mins[from];
+        }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import com.github.druidgreeneyes.rivet.core.util.RollingHash;
+
+/**
+ * Candidate retrieval and near-duplicate detection over MinHash signatures,
+ * for deduplicating documents before paying for RIV similarities. Every added
+ * signature is cut into bands of hashes / bands minimums each, and goes into
+ * one bucket per band; a query's candidates are everything that shares a
+ * bucket with it in at least one band. Documents with Jaccard similarity J
+ * agree on a band with probability J^(rows per band), so they become
+ * candidates with probability 1 - (1 - J^rows)^bands, an S-curve that rises
+ * most steeply around threshold().
+ *
+ * Candidates are then filtered by MinHash.estimateJaccard(), which costs a
+ * few popcounts per signature. Every similarity this index reports is that
+ * estimate.
+ *
+ * Ids are handed out in order from 0. Methods are synchronized, so adds and
+ * queries may come from any thread.
+ *
+ * @author josh
+ */
+public final class MinHashIndex implements Serializable {
+
+  private static final long serialVersionUID = 6619584436413425664L;
+
+  private final MinHash hash;
+  private final int rows;
+  private final BandedBuckets buckets;
+  private final ArrayList<long[]> signatures = new ArrayList<>();
+
+  /**
+   * @param hash
+   *          : makes the signatures this index will be given
+   * @param bands
+   *          : how many bands to cut each signature into; must divide
+   *          hash.hashes()
+   */
+  public MinHashIndex(final MinHash hash, final int bands) {
+    if (bands < 1 || hash.hashes() % bands != 0)
+      throw new IllegalArgumentException(bands
+                                         + " bands can't evenly cut a signature of "
+                                         + hash.hashes() + " hashes");
+    this.hash = hash;
+    rows = hash.hashes() / bands;
+    buckets = new BandedBuckets(bands);
+  }
+
+  /**
+   * @return the id of the newly added signature
+   */
+  public synchronized int add(final long[] signature) {
+    checkLength(signature);
+    final long[] copy = signature.clone();
+    final int id = signatures.size();
+    signatures.add(copy);
+    buckets.add(id, bandKeys(copy));
+    return id;
+  }
+
+  private long[] bandKeys(final long[] signature) {
+    final long[] res = new long[buckets.bands()];
+    for (int b = 0; b < res.length; b++) {
+      long key = 0;
+      for (int r = b * rows; r < (b + 1) * rows; r++)
+        key = key * RollingHash.BASE + hash.field(signature, r);
+      res[b] = key;
+    }
+    return res;
+  }
+
+  /**
+   * @return the ids of every indexed signature that shares a bucket with
+   *         signature, ascending
+   */
+  public synchronized int[] candidates(final long[] signature) {
+    checkLength(signature);
+    return buckets.candidates(bandKeys(signature));
+  }
+
+  private void checkLength(final long[] signature) {
+    final int words = hash.hashes() * hash.bits() / 64;
+    if (signature.length != words)
+      throw new IllegalArgumentException("Signature has " + signature.length
+                                         + " words; this index holds signatures of "
+                                         + words);
+  }
+
+  /**
+   * @return the number of signatures in this index
+   */
+  public synchronized int count() {
+    return signatures.size();
+  }
+
+  public MinHash hash() {
+    return hash;
+  }
+
+  /**
+   * @return every pair of indexed ids i < j that share a bucket and whose
+   *         estimated Jaccard similarity is at least minJaccard, as {i, j},
+   *         ordered by i and then j
+   */
+  public synchronized int[][] pairs(final double minJaccard) {
+    final ArrayList<int[]> res = new ArrayList<>();
+    for (int i = 0; i < signatures.size(); i++) {
+      final long[] sig = signatures.get(i);
+      for (final int j : buckets.candidates(bandKeys(sig)))
+        if (j > i && hash.estimateJaccard(sig, signatures.get(j)) >= minJaccard)
+          res.add(new int[] { i, j });
+    }
+    return res.toArray(new int[res.size()][]);
+  }
+
+  /**
+   * @return a copy of the signature with the given id
+   */
+  public synchronized long[] signature(final int id) {
+    return signatures.get(id).clone();
+  }
+
+  /**
+   * @return the Jaccard similarity at which documents are about as likely as
+   *         not to become candidates: roughly (1 / bands)^(1 / rows)
+   */
+  public double threshold() {
+    return Math.pow(1.0 / buckets.bands(), 1.0 / rows);
+  }
+
+  /**
+   * Near-duplicate detection: every candidate whose estimated Jaccard
+   * similarity to signature is at least minJaccard.
+   *
+   * @return the matches, best first
+   */
+  public synchronized Match[] within(final long[] signature,
+                                     final double minJaccard) {
+    final ArrayList<Match> res = new ArrayList<>();
+    for (final int id : candidates(signature)) {
+      final double j = hash.estimateJaccard(signature, signatures.get(id));
+      if (j >= minJaccard)
+        res.add(new Match(id, j));
+    }
+    return res.stream().sorted().toArray(Match[]::new);
+  }
+}
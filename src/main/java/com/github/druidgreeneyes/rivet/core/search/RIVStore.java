@@ -0,0 +1,227 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+import com.github.druidgreeneyes.rivet.core.labels.ImmutableRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+/**
+ * An immutable, in-memory collection of RIVs packed for fast exhaustive
+ * similarity search. All vectors live in three flat arrays in compressed
+ * sparse row layout: vector i's indices are keys[offsets[i]] through
+ * keys[offsets[i + 1] - 1], sorted, with their values at the same positions in
+ * vals. Each vector's magnitude is computed once, up front.
+ *
+ * A query is spread out into a dense array once, and then every stored vector
+ * is scored by gathering from it, so a comparison costs one multiply-add per
+ * stored non-zero. The scan is split across the common fork-join pool, with
+ * each task keeping its own bounded heap of the best k.
+ *
+ * Ids are positions in the collection the store was built from.
+ *
+ * @author josh
+ */
+public final class RIVStore implements Serializable {
+
+  private static final long serialVersionUID = -6143902236950881024L;
+
+  /** Vectors per fork-join leaf. */
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 12;
+
+  private final int size;
+  private final int[] offsets;
+  private final int[] keys;
+  private final double[] vals;
+  private final double[] magnitudes;
+
+  public RIVStore(final Collection<? extends RIV> rivs) {
+    this(rivs.toArray(new RIV[rivs.size()]));
+  }
+
+  /**
+   * @param rivs
+   *          : the vectors to store, which must all be the same size; there
+   *          must be at least one.
+   */
+  public RIVStore(final RIV... rivs) {
+    if (rivs.length == 0)
+      throw new IllegalArgumentException("Cannot build an empty RIVStore.");
+    size = rivs[0].size();
+    final SparseRIV[] sorted = new SparseRIV[rivs.length];
+    int nnz = 0;
+    for (int i = 0; i < rivs.length; i++) {
+      if (rivs[i].size() != size)
+        throw new SizeMismatchException("RIV " + i + " has size "
+                                        + rivs[i].size() + "; expected "
+                                        + size);
+      sorted[i] = new SparseRIV(rivs[i]);
+      sorted[i].destructiveRemoveZeros();
+      nnz += sorted[i].count();
+    }
+    offsets = new int[rivs.length + 1];
+    keys = new int[nnz];
+    vals = new double[nnz];
+    magnitudes = new double[rivs.length];
+    int c = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      final int n = sorted[i].count();
+      System.arraycopy(sorted[i].keyArr(), 0, keys, c, n);
+      System.arraycopy(sorted[i].valArr(), 0, vals, c, n);
+      double sum = 0;
+      for (int j = c; j < c + n; j++)
+        sum += vals[j] * vals[j];
+      magnitudes[i] = Math.sqrt(sum);
+      c += n;
+      offsets[i + 1] = c;
+    }
+  }
+
+  private void assertValidId(final int id) {
+    if (id < 0 || id >= count())
+      throw new IndexOutOfBoundsException("No vector with id " + id);
+  }
+
+  private void assertSizeMatch(final RIV riv) {
+    if (riv.size() != size)
+      throw new SizeMismatchException("Query has size " + riv.size()
+                                      + "; this store holds vectors of size "
+                                      + size);
+  }
+
+  /**
+   * @return the number of vectors in this store
+   */
+  public int count() {
+    return magnitudes.length;
+  }
+
+  /**
+   * @return a copy of the vector stored under id
+   */
+  public ImmutableRIV get(final int id) {
+    assertValidId(id);
+    final int from = offsets[id];
+    final int to = offsets[id + 1];
+    return new ImmutableRIV(Arrays.copyOfRange(keys, from, to),
+                            Arrays.copyOfRange(vals, from, to),
+                            size);
+  }
+
+  public double magnitude(final int id) {
+    assertValidId(id);
+    return magnitudes[id];
+  }
+
+  /**
+   * @return the k stored vectors most similar to query, best first
+   */
+  public Match[] nearest(final RIV query, final int k) {
+    assertSizeMatch(query);
+    return search(scatter(query), query.magnitude(), k, -1);
+  }
+
+  /**
+   * @return the k stored vectors most similar to the one stored under id, not
+   *         counting itself, best first
+   */
+  public Match[] nearest(final int id, final int k) {
+    assertValidId(id);
+    final double[] query = new double[size];
+    for (int j = offsets[id]; j < offsets[id + 1]; j++)
+      query[keys[j]] = vals[j];
+    return search(query, magnitudes[id], k, id);
+  }
+
+  private double score(final int id, final double[] query,
+                       final double queryMagnitude) {
+    final double mag = magnitudes[id] * queryMagnitude;
+    if (mag == 0)
+      return 0;
+    double dot = 0;
+    for (int j = offsets[id]; j < offsets[id + 1]; j++)
+      dot += vals[j] * query[keys[j]];
+    return dot / mag;
+  }
+
+  private Match[] search(final double[] query, final double queryMagnitude,
+                         final int k, final int exclude) {
+    final ScanTask task = new ScanTask(query, queryMagnitude,
+                                       TopK.clamp(k, count()), exclude, 0,
+                                       count());
+    final TopK top = count() <= SEQUENTIAL_THRESHOLD
+                                                     ? task.compute()
+                                                     : ForkJoinPool.commonPool()
+                                                                   .invoke(task);
+    return top.toMatches();
+  }
+
+  /**
+   * @return the cosine similarity between query and the vector stored under
+   *         id
+   */
+  public double similarity(final int id, final RIV query) {
+    assertValidId(id);
+    assertSizeMatch(query);
+    return score(id, scatter(query), query.magnitude());
+  }
+
+  /**
+   * @return the dimensionality of the vectors in this store
+   */
+  public int size() {
+    return size;
+  }
+
+  private double[] scatter(final RIV riv) {
+    final double[] dense = new double[size];
+    riv.forEachNZ((i, v) -> dense[i] += v);
+    return dense;
+  }
+
+  private final class ScanTask extends RecursiveTask<TopK> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[] query;
+    private final double queryMagnitude;
+    private final int k;
+    private final int exclude;
+    private final int from;
+    private final int to;
+
+    ScanTask(final double[] query, final double queryMagnitude, final int k,
+             final int exclude, final int from, final int to) {
+      this.query = query;
+      this.queryMagnitude = queryMagnitude;
+      this.k = k;
+      this.exclude = exclude;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected TopK compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        final TopK top = new TopK(k);
+        for (int id = from; id < to; id++)
+          if (id != exclude)
+            top.offer(id, score(id, query, queryMagnitude));
+        return top;
+      }
+      final int mid = from + to >>> 1;
+      final ScanTask right = new ScanTask(query, queryMagnitude, k, exclude,
+                                          mid, to);
+      right.fork();
+      final TopK top = new ScanTask(query, queryMagnitude, k, exclude, from,
+                                    mid).compute();
+      top.merge(right.join());
+      return top;
+    }
+  }
+}
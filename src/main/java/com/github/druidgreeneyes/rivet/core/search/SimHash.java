@@ -0,0 +1,112 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.util.SplitMix64;
+
+/**
+ * Random-hyperplane locality-sensitive hashing (Charikar's SimHash) for RIVs.
+ * Each bit of a signature is the sign of the vector's dot product with a
+ * random ±1 hyperplane, so two vectors at angle θ disagree on any given bit
+ * with probability θ / π. The Hamming distance between two signatures is
+ * therefore an estimate of the angle between the vectors, and of their cosine
+ * similarity.
+ *
+ * The hyperplanes are never stored: the component of hyperplane b at
+ * dimension i comes from a hash of (seed, i, b / 64), which yields 64
+ * hyperplanes' worth of signs at once. A signature costs one hash and 64
+ * additions per non-zero per 64 bits, and doesn't depend on the size of the
+ * vector at all.
+ *
+ * Signatures are long[]s of bits / 64 words. Two SimHashes with the same
+ * number of bits and the same seed produce the same signatures.
+ *
+ * @author josh
+ */
+public final class SimHash implements Serializable {
+
+  private static final long serialVersionUID = 3914264816250994688L;
+
+  private final int bits;
+  private final long seed;
+
+  /**
+   * @param bits
+   *          : the length of each signature; a positive multiple of 64
+   * @param seed
+   *          : picks the hyperplanes
+   */
+  public SimHash(final int bits, final long seed) {
+    if (bits <= 0 || bits % 64 != 0)
+      throw new IllegalArgumentException(
+                                         "bits must be a positive multiple of 64: "
+                                         + bits);
+    this.bits = bits;
+    this.seed = seed;
+  }
+
+  public int bits() {
+    return bits;
+  }
+
+  /**
+   * @return the similarity implied by the Hamming distance between two
+   *         signatures: cos(π * distance / bits)
+   */
+  public double estimateSimilarity(final long[] a, final long[] b) {
+    return Math.cos(Math.PI * hamming(a, b) / bits);
+  }
+
+  /**
+   * @return the largest Hamming distance whose estimated similarity is still
+   *         at least similarity
+   */
+  public int maxDistance(final double similarity) {
+    if (similarity <= -1)
+      return bits;
+    if (similarity >= 1)
+      return 0;
+    return (int) Math.floor(Math.acos(similarity) / Math.PI * bits);
+  }
+
+  public long seed() {
+    return seed;
+  }
+
+  /**
+   * @return riv's signature; an all-zero vector gets all-zero bits
+   */
+  public long[] signature(final RIV riv) {
+    final int words = bits / 64;
+    final double[] sums = new double[bits];
+    riv.forEachNZ((i, v) -> {
+      for (int w = 0; w < words; w++) {
+        final long h = SplitMix64.mix(seed + i * 0x9E3779B97F4A7C15L + w);
+        final int base = w * 64;
+        for (int b = 0; b < 64; b++)
+          sums[base + b] += (h >>> b & 1) == 0
+                                                ? -v
+                                                : v;
+      }
+    });
+    final long[] sig = new long[words];
+    for (int b = 0; b < bits; b++)
+      if (sums[b] > 0)
+        sig[b >>> 6] |= 1L << (b & 63);
+    return sig;
+  }
+
+  /**
+   * @return the number of bits on which a and b differ
+   */
+  public static int hamming(final long[] a, final long[] b) {
+    if (a.length != b.length)
+      throw new IllegalArgumentException("Signatures of different lengths: "
+                                         + a.length + " and " + b.length);
+    int d = 0;
+    for (int i = 0; i < a.length; i++)
+      d += Long.bitCount(a[i] ^ b[i]);
+    return d;
+  }
+}
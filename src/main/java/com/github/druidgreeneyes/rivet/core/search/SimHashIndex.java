@@ -0,0 +1,214 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+/**
+ * Candidate retrieval and near-duplicate detection over RIVs with SimHash
+ * signatures. Every added vector's signature is cut into bands of bits /
+ * bands bits each, and the vector goes into one bucket per band; a query's
+ * candidates are everything that shares a bucket with it in at least one
+ * band. Vectors with similarity s agree on a band with probability
+ * (1 - acos(s) / π)^(bits per band), so more, narrower bands find more
+ * distant neighbours at the cost of more candidates.
+ *
+ * Candidates are then filtered by the Hamming distance between signatures,
+ * which costs a few popcounts, and only the survivors are scored with
+ * similarityTo(). Results carry exact similarities; what's approximate is
+ * which vectors make it that far.
+ *
+ * Ids are handed out in order from 0. Methods are synchronized, so adds and
+ * queries may come from any thread.
+ *
+ * @author josh
+ */
+public final class SimHashIndex implements Serializable {
+
+  private static final long serialVersionUID = -8519237741290467328L;
+
+  public static final int DEFAULT_BITS = 256;
+  public static final int DEFAULT_BANDS = 32;
+
+  private final int size;
+  private final SimHash hash;
+  private final int bandWidth;
+  private final BandedBuckets buckets;
+  private final ArrayList<long[]> signatures = new ArrayList<>();
+  private final ArrayList<SparseRIV> rivs = new ArrayList<>();
+
+  public SimHashIndex(final int size) {
+    this(size, new SimHash(DEFAULT_BITS, 0), DEFAULT_BANDS);
+  }
+
+  /**
+   * @param size
+   *          : the dimensionality of the vectors to index
+   * @param hash
+   *          : makes the signatures
+   * @param bands
+   *          : how many bands to cut each signature into; must divide
+   *          hash.bits() into bands of at most 64 bits
+   */
+  public SimHashIndex(final int size, final SimHash hash, final int bands) {
+    if (bands < 1 || hash.bits() % bands != 0 || hash.bits() / bands > 64)
+      throw new IllegalArgumentException(bands
+                                         + " bands can't evenly cut a signature of "
+                                         + hash.bits()
+                                         + " bits into pieces of at most 64");
+    this.size = size;
+    this.hash = hash;
+    bandWidth = hash.bits() / bands;
+    buckets = new BandedBuckets(bands);
+  }
+
+  /**
+   * @return the id of the newly added vector
+   */
+  public synchronized int add(final RIV riv) {
+    checkSize(riv);
+    final SparseRIV copy = new SparseRIV(riv);
+    copy.destructiveRemoveZeros();
+    final long[] sig = hash.signature(copy);
+    final int id = rivs.size();
+    rivs.add(copy);
+    signatures.add(sig);
+    buckets.add(id, bandKeys(sig));
+    return id;
+  }
+
+  private long[] bandKeys(final long[] sig) {
+    final long[] res = new long[buckets.bands()];
+    final long mask = bandWidth == 64
+                                      ? -1L
+                                      : (1L << bandWidth) - 1;
+    for (int b = 0; b < res.length; b++) {
+      final int start = b * bandWidth;
+      final int word = start >>> 6;
+      final int shift = start & 63;
+      // bands that don't divide 64 can straddle two words
+      long bits = sig[word] >>> shift;
+      if (shift + bandWidth > 64)
+        bits |= sig[word + 1] << 64 - shift;
+      res[b] = bits & mask;
+    }
+    return res;
+  }
+
+  /**
+   * @return the ids of every indexed vector that shares a bucket with query,
+   *         ascending
+   */
+  public synchronized int[] candidates(final RIV query) {
+    checkSize(query);
+    return buckets.candidates(bandKeys(hash.signature(query)));
+  }
+
+  private void checkSize(final RIV riv) {
+    if (riv.size() != size)
+      throw new SizeMismatchException("RIV has size " + riv.size()
+                                      + "; this index holds vectors of size "
+                                      + size);
+  }
+
+  /**
+   * @return the number of vectors in this index
+   */
+  public synchronized int count() {
+    return rivs.size();
+  }
+
+  /**
+   * @return a copy of the vector with the given id
+   */
+  public synchronized SparseRIV get(final int id) {
+    return rivs.get(id).copy();
+  }
+
+  public SimHash hash() {
+    return hash;
+  }
+
+  /**
+   * @return the k candidates most similar to query, best first
+   */
+  public Match[] nearest(final RIV query, final int k) {
+    return nearest(query, k, hash.bits());
+  }
+
+  /**
+   * @param maxHamming
+   *          : candidates whose signatures differ from the query's on more
+   *          bits than this are dropped without being scored
+   * @return the k candidates most similar to query, best first
+   */
+  public synchronized Match[] nearest(final RIV query, final int k,
+                                      final int maxHamming) {
+    final TopK top = new TopK(TopK.clamp(k, rivs.size()));
+    score(query, maxHamming, top::offer);
+    return top.toMatches();
+  }
+
+  private void score(final RIV query, final int maxHamming,
+                     final Scored out) {
+    checkSize(query);
+    if (query.magnitude() == 0)
+      return;
+    final long[] sig = hash.signature(query);
+    for (final int id : buckets.candidates(bandKeys(sig)))
+      if (SimHash.hamming(sig, signatures.get(id)) <= maxHamming)
+        out.accept(id, query.similarityTo(rivs.get(id)));
+  }
+
+  /**
+   * @return riv's signature under this index's hash
+   */
+  public long[] signature(final RIV riv) {
+    return hash.signature(riv);
+  }
+
+  /**
+   * @return a copy of the signature of the vector with the given id
+   */
+  public synchronized long[] signature(final int id) {
+    return signatures.get(id).clone();
+  }
+
+  /**
+   * @return the dimensionality of the vectors in this index
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Near-duplicate detection: every candidate whose signature is within
+   * hash().maxDistance(minSimilarity) plus slack bits of the query's, and
+   * whose exact similarity is at least minSimilarity.
+   *
+   * @param slack
+   *          : how many bits of estimation error to allow for; a vector at
+   *          exactly the threshold disagrees on a random number of bits with
+   *          standard deviation up to sqrt(bits) / 2
+   * @return the matches, best first
+   */
+  public synchronized Match[] within(final RIV query,
+                                     final double minSimilarity,
+                                     final int slack) {
+    final ArrayList<Match> res = new ArrayList<>();
+    score(query, hash.maxDistance(minSimilarity) + slack, (id, sim) -> {
+      if (sim >= minSimilarity)
+        res.add(new Match(id, sim));
+      return true;
+    });
+    return res.stream().sorted().toArray(Match[]::new);
+  }
+
+  @FunctionalInterface
+  private interface Scored {
+    boolean accept(int id, double similarity);
+  }
+}
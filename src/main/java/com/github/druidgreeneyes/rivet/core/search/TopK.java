@@ -0,0 +1,151 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k best (id, score) pairs offered to it, in a binary min-heap over
+ * two primitive arrays so that the worst of the current best is always at the
+ * root. Offering a pair that doesn't make the cut costs one comparison.
+ *
+ * Not thread safe; parallel searches keep one per task and merge them.
+ *
+ * @author josh
+ */
+final class TopK {
+
+  private final int k;
+  private final int[] ids;
+  private final double[] scores;
+  private int count;
+
+  TopK(final int k) {
+    if (k < 0)
+      throw new IllegalArgumentException("k must not be negative: " + k);
+    this.k = k;
+    ids = new int[k];
+    scores = new double[k];
+    count = 0;
+  }
+
+  /**
+   * @return k, cut down to the number of ids there are to rank, so that a
+   *         huge k doesn't size a huge heap
+   * @throws IllegalArgumentException
+   *           if k is negative
+   */
+  static int clamp(final int k, final int available) {
+    if (k < 0)
+      throw new IllegalArgumentException("k must not be negative: " + k);
+    return Math.min(k, available);
+  }
+
+  int count() {
+    return count;
+  }
+
+  /**
+   * @return the id in heap slot i; slots are in no particular order
+   */
+  int id(final int i) {
+    return ids[i];
+  }
+
+  boolean isFull() {
+    return count == k;
+  }
+
+  /**
+   * @return true if (id, score) would rank behind (otherId, otherScore)
+   */
+  private static boolean worse(final int id, final double score,
+                               final int otherId, final double otherScore) {
+    return score < otherScore || score == otherScore && id > otherId;
+  }
+
+  void merge(final TopK other) {
+    for (int i = 0; i < other.count; i++)
+      offer(other.ids[i], other.scores[i]);
+  }
+
+  /**
+   * @return true if the pair was kept
+   */
+  boolean offer(final int id, final double score) {
+    if (count < k) {
+      ids[count] = id;
+      scores[count] = score;
+      siftUp(count++);
+      return true;
+    } else if (k > 0 && worse(ids[0], scores[0], id, score)) {
+      ids[0] = id;
+      scores[0] = score;
+      siftDown(0);
+      return true;
+    } else
+      return false;
+  }
+
+  /**
+   * @return the score in heap slot i; slots are in no particular order
+   */
+  double score(final int i) {
+    return scores[i];
+  }
+
+  private void siftDown(int i) {
+    final int id = ids[i];
+    final double score = scores[i];
+    int child;
+    while ((child = 2 * i + 1) < count) {
+      if (child + 1 < count
+          && worse(ids[child + 1], scores[child + 1], ids[child],
+                   scores[child]))
+        child++;
+      if (!worse(ids[child], scores[child], id, score))
+        break;
+      ids[i] = ids[child];
+      scores[i] = scores[child];
+      i = child;
+    }
+    ids[i] = id;
+    scores[i] = score;
+  }
+
+  private void siftUp(int i) {
+    final int id = ids[i];
+    final double score = scores[i];
+    while (i > 0) {
+      final int parent = i - 1 >>> 1;
+      if (!worse(id, score, ids[parent], scores[parent]))
+        break;
+      ids[i] = ids[parent];
+      scores[i] = scores[parent];
+      i = parent;
+    }
+    ids[i] = id;
+    scores[i] = score;
+  }
+
+  /**
+   * The score a new pair has to beat to get in, once the heap is full;
+   * negative infinity until then.
+   */
+  double threshold() {
+    return count < k
+                     ? Double.NEGATIVE_INFINITY
+                     : k == 0
+                             ? Double.POSITIVE_INFINITY
+                             : scores[0];
+  }
+
+  /**
+   * @return the kept pairs as Matches, best first
+   */
+  Match[] toMatches() {
+    final Match[] res = new Match[count];
+    for (int i = 0; i < count; i++)
+      res[i] = new Match(ids[i], scores[i]);
+    Arrays.sort(res);
+    return res;
+  }
+}
@@ -0,0 +1,298 @@
+package com.github.druidgreeneyes.rivet.core.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+
+/**
+ * A minimal int -> double hash map using open addressing with linear probing.
+ * Keys and values live in two flat primitive arrays, so there are no per-entry
+ * objects and nothing is boxed. Removal uses backward-shift deletion, so there
+ * are no tombstones either.
+ *
+ * Keys must be non-negative (they are vector indices); -1 marks a free slot.
+ * Not thread safe; see StripedIntDoubleTable for that.
+ *
+ * @author josh
+ */
+public final class IntDoubleTable implements Serializable {
+
+  private static final long serialVersionUID = 2384169283650150467L;
+
+  private static final int FREE = -1;
+
+  private static final int MIN_CAPACITY = 4;
+
+  private int[] keys;
+  private double[] vals;
+  private int size;
+  private int mask;
+
+  public IntDoubleTable() {
+    this(MIN_CAPACITY);
+  }
+
+  public IntDoubleTable(final int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  public IntDoubleTable(final IntDoubleTable table) {
+    keys = Arrays.copyOf(table.keys, table.keys.length);
+    vals = Arrays.copyOf(table.vals, table.vals.length);
+    size = table.size;
+    mask = table.mask;
+  }
+
+  /**
+   * Adds delta to the value at key, inserting it if it isn't there yet.
+   *
+   * @return the new value at key
+   */
+  public double addTo(final int key, final double delta) {
+    assertValidKey(key);
+    int slot = slot(key);
+    int k;
+    while ((k = keys[slot]) != FREE) {
+      if (k == key)
+        return vals[slot] += delta;
+      slot = slot + 1 & mask;
+    }
+    insert(slot, key, delta);
+    return delta;
+  }
+
+  private void allocate(final int capacity) {
+    keys = new int[capacity];
+    vals = new double[capacity];
+    Arrays.fill(keys, FREE);
+    mask = capacity - 1;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, FREE);
+    Arrays.fill(vals, 0);
+    size = 0;
+  }
+
+  public boolean containsKey(final int key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * Walks whichever table has fewer entries and looks each key up in the
+   * other.
+   */
+  public double dot(final IntDoubleTable other) {
+    if (other.size < size)
+      return other.dot(this);
+    double sum = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE) {
+        final int slot = other.find(keys[i]);
+        if (slot >= 0)
+          sum += vals[i] * other.vals[slot];
+      }
+    return sum;
+  }
+
+  private int find(final int key) {
+    if (key < 0)
+      return -1;
+    int slot = slot(key);
+    int k;
+    while ((k = keys[slot]) != FREE) {
+      if (k == key)
+        return slot;
+      slot = slot + 1 & mask;
+    }
+    return -1;
+  }
+
+  public void forEach(final IntDoubleConsumer fun) {
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE)
+        fun.accept(keys[i], vals[i]);
+  }
+
+  public double get(final int key, final double missing) {
+    final int slot = find(key);
+    return slot < 0
+                    ? missing
+                    : vals[slot];
+  }
+
+  private void insert(final int slot, final int key, final double value) {
+    keys[slot] = key;
+    vals[slot] = value;
+    if (++size * 4 > keys.length * 3)
+      rehash(keys.length << 1);
+  }
+
+  /**
+   * @return the keys in this table, in no particular order.
+   */
+  public int[] keys() {
+    final int[] res = new int[size];
+    int c = 0;
+    for (final int k : keys)
+      if (k != FREE)
+        res[c++] = k;
+    return res;
+  }
+
+  /**
+   * @return the values in this table, in the same order as keys()
+   */
+  public double[] values() {
+    final double[] res = new double[size];
+    int c = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE)
+        res[c++] = vals[i];
+    return res;
+  }
+
+  public double put(final int key, final double value) {
+    assertValidKey(key);
+    int slot = slot(key);
+    int k;
+    while ((k = keys[slot]) != FREE) {
+      if (k == key) {
+        final double old = vals[slot];
+        vals[slot] = value;
+        return old;
+      }
+      slot = slot + 1 & mask;
+    }
+    insert(slot, key, value);
+    return 0;
+  }
+
+  private void rehash(final int capacity) {
+    final int[] oldKeys = keys;
+    final double[] oldVals = vals;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++)
+      if (oldKeys[i] != FREE) {
+        int slot = slot(oldKeys[i]);
+        while (keys[slot] != FREE)
+          slot = slot + 1 & mask;
+        keys[slot] = oldKeys[i];
+        vals[slot] = oldVals[i];
+      }
+  }
+
+  /**
+   * @return the value that was removed, or 0 if there wasn't one.
+   */
+  public double remove(final int key) {
+    final int slot = find(key);
+    if (slot < 0)
+      return 0;
+    final double old = vals[slot];
+    shiftBack(slot);
+    return old;
+  }
+
+  /**
+   * Removes every entry whose value satisfies the predicate.
+   *
+   * @return the number of entries removed
+   */
+  public int removeIf(final DoublePredicate predicate) {
+    int removed = 0;
+    int i = 0;
+    while (i < keys.length)
+      if (keys[i] != FREE && predicate.test(vals[i])) {
+        // backward shift may have moved a later entry into this slot, so
+        // look at it again before moving on.
+        shiftBack(i);
+        removed++;
+      } else
+        i++;
+    return removed;
+  }
+
+  /**
+   * Multiplies every value in the table by scalar.
+   */
+  public void scale(final double scalar) {
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE)
+        vals[i] *= scalar;
+  }
+
+  /**
+   * Backward-shift deletion: walk the probe chain after the hole and pull back
+   * any entry that would no longer be reachable from its home slot.
+   */
+  private void shiftBack(int hole) {
+    int slot = hole;
+    while (true) {
+      slot = slot + 1 & mask;
+      final int k = keys[slot];
+      if (k == FREE)
+        break;
+      final int home = slot(k);
+      // is home cyclically outside (hole, slot]? then k can fill the hole.
+      if (hole <= slot
+                       ? hole >= home || home > slot
+                       : hole >= home && home > slot) {
+        keys[hole] = k;
+        vals[hole] = vals[slot];
+        hole = slot;
+      }
+    }
+    keys[hole] = FREE;
+    vals[hole] = 0;
+    size--;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int slot(final int key) {
+    final int h = key * 0x9E3779B9;
+    return (h ^ h >>> 16) & mask;
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (this == other)
+      return true;
+    else if (!(other instanceof IntDoubleTable))
+      return false;
+    final IntDoubleTable table = (IntDoubleTable) other;
+    if (size != table.size)
+      return false;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE) {
+        final int slot = table.find(keys[i]);
+        if (slot < 0 || table.vals[slot] != vals[i])
+          return false;
+      }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int sum = 0;
+    for (int i = 0; i < keys.length; i++)
+      if (keys[i] != FREE)
+        sum += keys[i] ^ Double.hashCode(vals[i]);
+    return sum;
+  }
+
+  private static void assertValidKey(final int key) {
+    if (key < 0)
+      throw new IllegalArgumentException("Negative keys are not supported: "
+                                         + key);
+  }
+
+  private static int capacityFor(final int expectedSize) {
+    final int needed = Math.max(MIN_CAPACITY,
+                                (int) Math.ceil(expectedSize / 0.75) + 1);
+    return Integer.highestOneBit(needed - 1) << 1;
+  }
+}
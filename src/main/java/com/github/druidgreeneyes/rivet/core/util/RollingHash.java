@@ -0,0 +1,70 @@
+package com.github.druidgreeneyes.rivet.core.util;
+
+import java.util.function.LongConsumer;
+
+/**
+ * The polynomial hash behind RIVs.Generation.ROLLING: the sum of c[i] *
+ * BASE^(n - 1 - i) over a token's chars, mod 2^64, run through
+ * SplitMix64.mix() to make a seed. Sliding a window one character along a
+ * text takes one multiply-subtract and one multiply-add, so every shingle of
+ * a text can be seeded in a single pass over it, with no substrings and no
+ * rehashing.
+ *
+ * @author josh
+ */
+public final class RollingHash {
+
+  /** Odd, so that no power of it is 0 mod 2^64. */
+  public static final long BASE = 0xC6A4A7935BD1E995L;
+
+  private RollingHash() {}
+
+  /**
+   * @return the unmixed hash of text[from, to)
+   */
+  public static long hash(final CharSequence text, final int from,
+                          final int to) {
+    long h = 0;
+    for (int i = from; i < to; i++)
+      h = h * BASE + text.charAt(i);
+    return h;
+  }
+
+  /**
+   * @return the ROLLING seed for token
+   */
+  public static long seed(final CharSequence token) {
+    return SplitMix64.mix(hash(token, 0, token.length()));
+  }
+
+  /**
+   * Passes fun the seed of each shingle text[point, point + width), clipped to
+   * the text the way RIVs.generateRIV clips it, for each of points in order.
+   * Ascending points closer together than width are reached by rolling the
+   * previous window forward; anything else is hashed afresh.
+   */
+  public static void forEachSeed(final CharSequence text, final int[] points,
+                                 final int width, final LongConsumer fun) {
+    final int n = text.length();
+    long top = 1;
+    for (int i = 1; i < width; i++)
+      top *= BASE;
+    long h = 0;
+    int at = -1;
+    for (final int point : points) {
+      final int from = Math.max(0, point);
+      final int to = Math.min(n, point + width);
+      if (to - from != width) {
+        fun.accept(SplitMix64.mix(hash(text, from, to)));
+        continue;
+      }
+      if (at < 0 || from < at || from - at >= width)
+        h = hash(text, from, to);
+      else
+        for (; at < from; at++)
+          h = (h - text.charAt(at) * top) * BASE + text.charAt(at + width);
+      at = from;
+      fun.accept(SplitMix64.mix(h));
+    }
+  }
+}
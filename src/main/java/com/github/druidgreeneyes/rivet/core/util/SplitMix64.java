@@ -0,0 +1,70 @@
+package com.github.druidgreeneyes.rivet.core.util;
+
+/**
+ * Steele, Lea and Flood's SplitMix64: a 64-bit counter run through a strong
+ * mixing function. It's tiny, fast, passes BigCrush, and two generators
+ * seeded differently are as good as independent, which is all index vector
+ * generation needs. Not thread safe, and not for anything cryptographic.
+ *
+ * @author josh
+ */
+public final class SplitMix64 {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private long state;
+
+  public SplitMix64(final long seed) {
+    state = seed;
+  }
+
+  /**
+   * @return the next 64 random bits
+   */
+  public long nextLong() {
+    return mix(state += GOLDEN_GAMMA);
+  }
+
+  /**
+   * Lemire's nearly-divisionless method: multiply instead of taking a
+   * remainder, and only divide in the rare case that the result might be
+   * biased.
+   *
+   * @return a uniformly random int in [0, bound)
+   */
+  public int nextInt(final int bound) {
+    if (bound <= 0)
+      throw new IllegalArgumentException("bound must be positive: " + bound);
+    long m = (nextLong() >>> 32) * bound;
+    long low = m & 0xFFFFFFFFL;
+    if (low < bound) {
+      final long threshold = (1L << 32) % bound;
+      while (low < threshold) {
+        m = (nextLong() >>> 32) * bound;
+        low = m & 0xFFFFFFFFL;
+      }
+    }
+    return (int) (m >>> 32);
+  }
+
+  /**
+   * A 64-bit FNV-1a hash of text's chars, mixed; unlike String.hashCode(), it
+   * spreads short and similar strings across all 64 bits.
+   */
+  public static long hash(final CharSequence text) {
+    long h = 0xCBF29CE484222325L;
+    for (int i = 0; i < text.length(); i++)
+      h = (h ^ text.charAt(i)) * 0x100000001B3L;
+    return mix(h);
+  }
+
+  /**
+   * The SplitMix64 finalizer (Stafford's variant 13): a bijection on longs
+   * in which every input bit affects every output bit.
+   */
+  public static long mix(long z) {
+    z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+    return z ^ z >>> 31;
+  }
+}
@@ -0,0 +1,277 @@
+package com.github.druidgreeneyes.rivet.core.util;
+
+import java.io.Serializable;
+import java.util.function.DoublePredicate;
+
+/**
+ * A thread-safe int -> double map made of one or more IntDoubleTables, each
+ * guarded by its own monitor. Keys are spread across the stripes by hash, so
+ * threads writing to different keys mostly take different locks.
+ *
+ * With a single stripe this is just a synchronized IntDoubleTable, which is
+ * what MapRIV uses by default: concurrent writers to the same RIV are rare,
+ * and every extra stripe is a few more arrays per vector. Use more stripes
+ * for RIVs that many threads accumulate into at once.
+ *
+ * @author josh
+ */
+public final class StripedIntDoubleTable implements Serializable {
+
+  private static final long serialVersionUID = -5216387736218097152L;
+
+  private static final int MAX_STRIPES = 1 << 16;
+
+  /** Breaks ties between tables with the same identity hash in dot(). */
+  private static final Object TIE_LOCK = new Object();
+
+  private final IntDoubleTable[] stripes;
+
+  private final int shift;
+
+  public StripedIntDoubleTable() {
+    this(1);
+  }
+
+  /**
+   * @param concurrencyLevel
+   *          : the number of threads expected to write at once; rounded up to
+   *          a power of two.
+   */
+  public StripedIntDoubleTable(final int concurrencyLevel) {
+    this(concurrencyLevel, 0);
+  }
+
+  public StripedIntDoubleTable(final int concurrencyLevel,
+                               final int expectedSize) {
+    final int n = stripeCount(concurrencyLevel);
+    stripes = new IntDoubleTable[n];
+    for (int i = 0; i < n; i++)
+      stripes[i] = new IntDoubleTable(expectedSize / n);
+    shift = 32 - Integer.numberOfTrailingZeros(n);
+  }
+
+  public StripedIntDoubleTable(final StripedIntDoubleTable table) {
+    stripes = new IntDoubleTable[table.stripes.length];
+    for (int i = 0; i < stripes.length; i++)
+      synchronized (table.stripes[i]) {
+        stripes[i] = new IntDoubleTable(table.stripes[i]);
+      }
+    shift = table.shift;
+  }
+
+  public double addTo(final int key, final double delta) {
+    final IntDoubleTable stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.addTo(key, delta);
+    }
+  }
+
+  public void clear() {
+    for (final IntDoubleTable stripe : stripes)
+      synchronized (stripe) {
+        stripe.clear();
+      }
+  }
+
+  public int concurrencyLevel() {
+    return stripes.length;
+  }
+
+  public boolean containsKey(final int key) {
+    final IntDoubleTable stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.containsKey(key);
+    }
+  }
+
+  /**
+   * The sum over shared keys of the products of their values.
+   *
+   * Two single-stripe tables are locked together, in a fixed order so that
+   * a.dot(b) and b.dot(a) on different threads can't deadlock; otherwise the
+   * smaller table's keys are snapshotted and looked up in both.
+   */
+  public double dot(final StripedIntDoubleTable other) {
+    if (this == other) {
+      final double[] sum = { 0 };
+      forEach((k, v) -> sum[0] += v * v);
+      return sum[0];
+    } else if (stripes.length == 1 && other.stripes.length == 1) {
+      final IntDoubleTable a = stripes[0];
+      final IntDoubleTable b = other.stripes[0];
+      final int ha = System.identityHashCode(a);
+      final int hb = System.identityHashCode(b);
+      if (ha == hb)
+        synchronized (TIE_LOCK) {
+          return lockedDot(a, b);
+        }
+      else if (ha < hb)
+        return lockedDot(a, b);
+      else
+        return lockedDot(b, a);
+    } else if (other.size() < size())
+      return other.dot(this);
+    else {
+      double sum = 0;
+      for (final int k : keys())
+        sum += get(k, 0) * other.get(k, 0);
+      return sum;
+    }
+  }
+
+  /**
+   * Visits every entry, one stripe at a time. Each stripe is copied out under
+   * its lock and visited after the lock is released, so the callback may
+   * take other locks, including other tables' (a.add(b) alongside b.add(a)
+   * must not deadlock), or write back into this table.
+   */
+  public void forEach(final IntDoubleConsumer fun) {
+    for (final IntDoubleTable stripe : stripes) {
+      final int[] keys;
+      final double[] vals;
+      synchronized (stripe) {
+        keys = stripe.keys();
+        vals = stripe.values();
+      }
+      for (int i = 0; i < keys.length; i++)
+        fun.accept(keys[i], vals[i]);
+    }
+  }
+
+  public double get(final int key, final double missing) {
+    final IntDoubleTable stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.get(key, missing);
+    }
+  }
+
+  /**
+   * @return the keys in this table, in no particular order.
+   */
+  public int[] keys() {
+    if (stripes.length == 1)
+      synchronized (stripes[0]) {
+        return stripes[0].keys();
+      }
+    final int[][] parts = new int[stripes.length][];
+    int total = 0;
+    for (int i = 0; i < stripes.length; i++)
+      synchronized (stripes[i]) {
+        parts[i] = stripes[i].keys();
+        total += parts[i].length;
+      }
+    final int[] res = new int[total];
+    int c = 0;
+    for (final int[] part : parts) {
+      System.arraycopy(part, 0, res, c, part.length);
+      c += part.length;
+    }
+    return res;
+  }
+
+  public double put(final int key, final double value) {
+    final IntDoubleTable stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.put(key, value);
+    }
+  }
+
+  public double remove(final int key) {
+    final IntDoubleTable stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.remove(key);
+    }
+  }
+
+  public int removeIf(final DoublePredicate predicate) {
+    int removed = 0;
+    for (final IntDoubleTable stripe : stripes)
+      synchronized (stripe) {
+        removed += stripe.removeIf(predicate);
+      }
+    return removed;
+  }
+
+  public void scale(final double scalar) {
+    for (final IntDoubleTable stripe : stripes)
+      synchronized (stripe) {
+        stripe.scale(scalar);
+      }
+  }
+
+  /**
+   * @return a copy of every entry, in one unsynchronized IntDoubleTable. Each
+   *         stripe is copied under its lock, so every key comes with the value
+   *         it had at that moment, and with a single stripe the copy is the
+   *         whole table at one moment.
+   */
+  public IntDoubleTable snapshot() {
+    if (stripes.length == 1)
+      synchronized (stripes[0]) {
+        return new IntDoubleTable(stripes[0]);
+      }
+    final IntDoubleTable res = new IntDoubleTable(size());
+    forEach(res::put);
+    return res;
+  }
+
+  public int size() {
+    int size = 0;
+    for (final IntDoubleTable stripe : stripes)
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    return size;
+  }
+
+  /**
+   * Uses the high bits of a different multiplier than IntDoubleTable does
+   * internally, so that keys sharing a stripe don't also share a probe chain.
+   */
+  private IntDoubleTable stripe(final int key) {
+    return shift == 32
+                       ? stripes[0]
+                       : stripes[key * 0x85EBCA6B >>> shift];
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (this == other)
+      return true;
+    else if (!(other instanceof StripedIntDoubleTable))
+      return false;
+    final StripedIntDoubleTable table = (StripedIntDoubleTable) other;
+    if (size() != table.size())
+      return false;
+    // never hold a lock on one table while taking a lock on the other
+    for (final int k : keys())
+      if (!table.containsKey(k) || table.get(k, 0) != get(k, 0))
+        return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    final int[] sum = { 0 };
+    forEach((k, v) -> sum[0] += k ^ Double.hashCode(v));
+    return sum[0];
+  }
+
+  private static double lockedDot(final IntDoubleTable first,
+                                  final IntDoubleTable second) {
+    synchronized (first) {
+      synchronized (second) {
+        return first.dot(second);
+      }
+    }
+  }
+
+  private static int stripeCount(final int concurrencyLevel) {
+    if (concurrencyLevel <= 1)
+      return 1;
+    else if (concurrencyLevel >= MAX_STRIPES)
+      return MAX_STRIPES;
+    else
+      return Integer.highestOneBit(concurrencyLevel - 1) << 1;
+  }
+}
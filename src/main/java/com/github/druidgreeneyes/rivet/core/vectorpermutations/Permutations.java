@@ -1,28 +1,91 @@
 package com.github.druidgreeneyes.rivet.core.vectorpermutations;
 
-import static com.github.druidgreeneyes.rivet.core.util.Util.randInts;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import org.apache.commons.lang3.ArrayUtils;
+import com.github.druidgreeneyes.rivet.core.util.SplitMix64;
 
 /**
  * An immutable pair of permutation vectors, such that perms.right is the
  * inverse of perms.left, and vice versa.
  *
+ * Generated pairs are cached by size and seed for the life of the process, so
+ * every lexicon of a given size shares one. Don't write to the arrays.
+ *
+ * power(times) gives a single table for permuting any number of times, so
+ * permuting by t costs one pass rather than t. Tables for small t, and for
+ * powers of two, are kept; any other t is composed from the powers of two.
+ *
  * @author josh
  */
 public final class Permutations {
+  private static final ConcurrentHashMap<Key, Permutations> CACHE = new ConcurrentHashMap<>();
+
+  /** Exact powers up to this many steps either way are kept. */
+  private static final int CACHED_POWERS = 16;
+
   public final int[] permute;
   public final int[] inverse;
 
+  /** Tables for 1..CACHED_POWERS steps forwards, then as many backwards. */
+  private final AtomicReferenceArray<int[]> powers = new AtomicReferenceArray<>(2
+                                                                                * CACHED_POWERS);
+  /** Tables for 2^i steps forwards, then 2^i steps backwards. */
+  private final AtomicReferenceArray<int[]> squares = new AtomicReferenceArray<>(64);
+
+  private static final class Key {
+    final int size;
+    final long seed;
+
+    Key(final int size, final long seed) {
+      this.size = size;
+      this.seed = seed;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof Key
+             && ((Key) other).size == size
+             && ((Key) other).seed == seed;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(SplitMix64.mix(seed) + size);
+    }
+  }
+
   /**
    * @param size
    * @return a permutation pair for random index vectors of a given size
    */
   public static Permutations generate(final int size) {
-    final int[] permutation = randInts(size, size, 0L).toArray();
+    return generate(size, 0L);
+  }
+
+  /**
+   * @return the permutation pair for the given size and seed; made by a
+   *         Fisher-Yates shuffle the first time it's asked for, and cached
+   *         after that
+   */
+  public static Permutations generate(final int size, final long seed) {
+    if (size < 0)
+      throw new IllegalArgumentException("size must not be negative: " + size);
+    return CACHE.computeIfAbsent(new Key(size, seed),
+                                 k -> shuffle(size, seed));
+  }
+
+  private static Permutations shuffle(final int size, final long seed) {
+    final SplitMix64 random = new SplitMix64(seed);
+    final int[] permutation = new int[size];
+    for (int i = 0; i < size; i++) {
+      final int j = random.nextInt(i + 1);
+      permutation[i] = permutation[j];
+      permutation[j] = i;
+    }
     final int[] inverse = new int[size];
     for (int i = 0; i < size; i++)
-      inverse[i] = ArrayUtils.indexOf(permutation, i);
+      inverse[permutation[i]] = i;
     return new Permutations(permutation, inverse);
   }
 
@@ -30,4 +93,80 @@ public final class Permutations {
     this.permute = permute;
     this.inverse = inverse;
   }
+
+  /**
+   * @return t applied after s
+   */
+  private static int[] compose(final int[] s, final int[] t) {
+    final int[] res = new int[s.length];
+    for (int i = 0; i < s.length; i++)
+      res[i] = t[s[i]];
+    return res;
+  }
+
+  /**
+   * @return a table p such that permuting a vector times times moves the
+   *         value at index i to index p[i]; negative times goes backwards.
+   *         Don't write to it.
+   */
+  public int[] power(final int times) {
+    if (times == 0)
+      return identity();
+    final long steps = Math.abs((long) times);
+    if (steps <= CACHED_POWERS) {
+      final int slot = (int) steps - 1 + (times < 0
+                                              ? CACHED_POWERS
+                                              : 0);
+      int[] table = powers.get(slot);
+      if (table == null) {
+        table = steps == 1
+                           ? times > 0
+                                       ? permute
+                                       : inverse
+                           : compose(power(times - Integer.signum(times)),
+                                     times > 0
+                                               ? permute
+                                               : inverse);
+        powers.compareAndSet(slot, null, table);
+      }
+      return table;
+    }
+    int[] res = null;
+    int bit = 0;
+    for (long rest = steps; rest != 0; rest >>>= 1, bit++)
+      if ((rest & 1) != 0) {
+        final int[] square = square(bit, times < 0);
+        res = res == null
+                          ? square
+                          : compose(res, square);
+      }
+    return res;
+  }
+
+  private int[] identity() {
+    final int[] res = new int[permute.length];
+    for (int i = 0; i < res.length; i++)
+      res[i] = i;
+    return res;
+  }
+
+  /**
+   * @return the table for 2^bit steps
+   */
+  private int[] square(final int bit, final boolean backwards) {
+    if (bit < 5)
+      return power(backwards
+                             ? -(1 << bit)
+                             : 1 << bit);
+    final int slot = bit + (backwards
+                                      ? 32
+                                      : 0);
+    int[] table = squares.get(slot);
+    if (table == null) {
+      final int[] half = square(bit - 1, backwards);
+      table = compose(half, half);
+      squares.compareAndSet(slot, null, table);
+    }
+    return table;
+  }
 }
@@ -0,0 +1,166 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * DenseKernels with explicit SIMD, through the Vector API. Compiled only by
+ * the java17 profile, and only ever loaded by DenseKernels.load(), which falls
+ * back to the scalar loops if this class or jdk.incubator.vector can't be
+ * loaded.
+ *
+ * Each loop runs over whole vectors of the platform's preferred width and
+ * finishes the tail with scalar code. Reductions keep a vector of partial
+ * sums and only reduce it across lanes at the end, so their results can
+ * differ from the scalar kernels' in the last few bits.
+ *
+ * @author josh
+ */
+final class VectorKernels extends DenseKernels {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+
+  VectorKernels() {
+    if (LANES < 2)
+      throw new UnsupportedOperationException("No vector hardware to use.");
+  }
+
+  @Override
+  void add(final double[] a, final double[] b, final int n) {
+    final int bound = SPECIES.loopBound(n);
+    int i = 0;
+    for (; i < bound; i += LANES)
+      DoubleVector.fromArray(SPECIES, a, i)
+                  .add(DoubleVector.fromArray(SPECIES, b, i))
+                  .intoArray(a, i);
+    for (; i < n; i++)
+      a[i] += b[i];
+  }
+
+  @Override
+  void divide(final double[] a, final double scalar) {
+    final int bound = SPECIES.loopBound(a.length);
+    int i = 0;
+    for (; i < bound; i += LANES)
+      DoubleVector.fromArray(SPECIES, a, i)
+                  .div(scalar)
+                  .intoArray(a, i);
+    for (; i < a.length; i++)
+      a[i] /= scalar;
+  }
+
+  @Override
+  double dot(final double[] a, final double[] b, final int n) {
+    final int bound = SPECIES.loopBound(n);
+    DoubleVector sum = DoubleVector.zero(SPECIES);
+    int i = 0;
+    for (; i < bound; i += LANES)
+      sum = DoubleVector.fromArray(SPECIES, a, i)
+                        .mul(DoubleVector.fromArray(SPECIES, b, i))
+                        .add(sum);
+    double res = sum.reduceLanes(VectorOperators.ADD);
+    for (; i < n; i++)
+      res += a[i] * b[i];
+    return res;
+  }
+
+  @Override
+  void dots(final double[] query, final double[][] rows, final int n,
+            final double[] out) {
+    final int bound = SPECIES.loopBound(n);
+    int r = 0;
+    for (; r + 3 < rows.length; r += 4) {
+      final double[] r0 = rows[r], r1 = rows[r + 1], r2 = rows[r + 2],
+          r3 = rows[r + 3];
+      DoubleVector s0 = DoubleVector.zero(SPECIES), s1 = s0, s2 = s0, s3 = s0;
+      int i = 0;
+      for (; i < bound; i += LANES) {
+        final DoubleVector q = DoubleVector.fromArray(SPECIES, query, i);
+        s0 = q.mul(DoubleVector.fromArray(SPECIES, r0, i))
+              .add(s0);
+        s1 = q.mul(DoubleVector.fromArray(SPECIES, r1, i))
+              .add(s1);
+        s2 = q.mul(DoubleVector.fromArray(SPECIES, r2, i))
+              .add(s2);
+        s3 = q.mul(DoubleVector.fromArray(SPECIES, r3, i))
+              .add(s3);
+      }
+      double t0 = s0.reduceLanes(VectorOperators.ADD),
+          t1 = s1.reduceLanes(VectorOperators.ADD),
+          t2 = s2.reduceLanes(VectorOperators.ADD),
+          t3 = s3.reduceLanes(VectorOperators.ADD);
+      for (; i < n; i++) {
+        final double q = query[i];
+        t0 += q * r0[i];
+        t1 += q * r1[i];
+        t2 += q * r2[i];
+        t3 += q * r3[i];
+      }
+      out[r] = t0;
+      out[r + 1] = t1;
+      out[r + 2] = t2;
+      out[r + 3] = t3;
+    }
+    for (; r < rows.length; r++)
+      out[r] = dot(query, rows[r], n);
+  }
+
+  @Override
+  double gather(final double[] dense, final int[] keys, final double[] vals,
+                final int count) {
+    final int bound = SPECIES.loopBound(count);
+    DoubleVector sum = DoubleVector.zero(SPECIES);
+    int i = 0;
+    for (; i < bound; i += LANES)
+      sum = DoubleVector.fromArray(SPECIES, dense, 0, keys, i)
+                        .mul(DoubleVector.fromArray(SPECIES, vals, i))
+                        .add(sum);
+    double res = sum.reduceLanes(VectorOperators.ADD);
+    for (; i < count; i++)
+      res += vals[i] * dense[keys[i]];
+    return res;
+  }
+
+  /**
+   * One row at a time: JDK 17's C2 crashes compiling four interleaved
+   * gathers, and with only the query's non-zeros to share between rows there
+   * is little to gain from blocking them anyway.
+   */
+  @Override
+  void gathers(final int[] keys, final double[] vals, final int count,
+               final double[][] rows, final double[] out) {
+    for (int r = 0; r < rows.length; r++)
+      out[r] = gather(rows[r], keys, vals, count);
+  }
+
+  @Override
+  String name() {
+    return "vector";
+  }
+
+  @Override
+  void scale(final double[] a, final double scalar) {
+    final int bound = SPECIES.loopBound(a.length);
+    int i = 0;
+    for (; i < bound; i += LANES)
+      DoubleVector.fromArray(SPECIES, a, i)
+                  .mul(scalar)
+                  .intoArray(a, i);
+    for (; i < a.length; i++)
+      a[i] *= scalar;
+  }
+
+  @Override
+  void sub(final double[] a, final double[] b, final int n) {
+    final int bound = SPECIES.loopBound(n);
+    int i = 0;
+    for (; i < bound; i += LANES)
+      DoubleVector.fromArray(SPECIES, a, i)
+                  .sub(DoubleVector.fromArray(SPECIES, b, i))
+                  .intoArray(a, i);
+    for (; i < n; i++)
+      a[i] -= b[i];
+  }
+}
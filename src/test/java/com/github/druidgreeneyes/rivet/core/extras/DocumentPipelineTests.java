@@ -0,0 +1,105 @@
+package com.github.druidgreeneyes.rivet.core.extras;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.extras.DocumentPipeline.Document;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+public class DocumentPipelineTests {
+
+  private static final int SIZE = 1000;
+  private static final int NNZ = 8;
+
+  private static String document(final int i) {
+    return "word" + i % 7 + "  word" + i % 11 + "\tword" + i % 13 + " common";
+  }
+
+  @Test
+  public final void testMatchesRivettizeText() {
+    final DocumentPipeline pipeline = new DocumentPipeline(SIZE,
+                                                           RIVs.generator(SIZE,
+                                                                          NNZ,
+                                                                          SparseRIV::new),
+                                                           4, 8);
+    final Map<Long, RIV> res;
+    try (Stream<Document> docs = pipeline.rivettize(IntStream.range(0, 500)
+                                                             .mapToObj(DocumentPipelineTests::document))) {
+      res = docs.collect(Collectors.toMap(Document::id, Document::riv));
+    }
+    assertEquals(500, res.size());
+    for (int i = 0; i < 500; i++)
+      assertEquals(UntrainedWordsMap.rivettizeText(document(i).trim(), SIZE,
+                                                   NNZ),
+                   res.get((long) i));
+    assertEquals(500, pipeline.documentCount());
+    assertEquals(2000, pipeline.tokenCount());
+    assertTrue(pipeline.elapsedNanos() > 0);
+    assertTrue(pipeline.documentsPerSecond() > 0);
+  }
+
+  @Test
+  public final void testReader() {
+    final DocumentPipeline pipeline = new DocumentPipeline(SIZE, NNZ);
+    final long count = pipeline.rivettize(new StringReader("a b\n\nc d e\n"))
+                               .count();
+    assertEquals(3, count);
+    assertEquals(5, pipeline.tokenCount());
+  }
+
+  @Test
+  public final void testBackpressureAndEarlyClose() throws InterruptedException {
+    final AtomicInteger read = new AtomicInteger();
+    final DocumentPipeline pipeline = new DocumentPipeline(SIZE,
+                                                           RIVs.generator(SIZE,
+                                                                          NNZ,
+                                                                          SparseRIV::new),
+                                                           2, 4);
+    final Stream<Document> docs = pipeline.rivettize(Stream.generate(() -> document(read.getAndIncrement())));
+    assertNotNull(docs.iterator()
+                      .next());
+    Thread.sleep(200);
+    // two full queues, a document in each worker's hands and one in the
+    // reader's
+    assertTrue(read.get() <= 4 + 4 + 2 + 1 + 1);
+    docs.close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public final void testFailuresReachTheConsumer() {
+    final DocumentPipeline pipeline = new DocumentPipeline(SIZE, token -> {
+      throw new IllegalStateException(token.toString());
+    }, 2, 4);
+    pipeline.rivettize(Stream.of("a", "b"))
+            .count();
+  }
+
+  @Test(timeout = 20000, expected = AssertionError.class)
+  public final void testErrorsReachTheConsumer() {
+    final DocumentPipeline pipeline = new DocumentPipeline(SIZE, token -> {
+      throw new AssertionError(token.toString());
+    }, 2, 4);
+    pipeline.rivettize(Stream.of("a", "b"))
+            .count();
+  }
+
+  @Test(timeout = 20000, expected = AssertionError.class)
+  public final void testSourceErrorsReachTheConsumer() {
+    final DocumentPipeline pipeline = new DocumentPipeline(SIZE, 8);
+    pipeline.rivettize(Stream.of("a", "b")
+                             .map(d -> {
+                               throw new AssertionError(d);
+                             }))
+            .count();
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.druidgreeneyes.rivet.core.extras;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -12,6 +13,9 @@ import org.junit.Test;
 
 import com.github.druidgreeneyes.rivet.core.extras.Shingles;
 import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs.Generation;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
 
 public class ShinglesTests {
 
@@ -46,6 +50,38 @@ public class ShinglesTests {
     assertError((x) -> Shingles.findShinglePoints(text1, x, 1), -1);
   }
 
+  @Test
+  public final void testParallelRivettizeText() {
+    final StringBuilder long3 = new StringBuilder();
+    while (long3.length() < 20000)
+      long3.append(text3)
+           .append(' ');
+    final String text = long3.toString();
+    final MapRIV parallel = Shingles.parallelRivettizeText(text, 9, 1, 16000,
+                                                           48);
+    assertEquals(Shingles.rivettizeText(text, 9, 1, 16000, 48), parallel);
+  }
+
+  @Test
+  public final void testRollingRivettizeText() {
+    for (final int offset : new int[] { 1, 4 }) {
+      final int[] points = Shingles.findShinglePoints(text3, offset, 9);
+      final MapRIV expected = new MapRIV(16000);
+      for (final int point : points)
+        expected.destructiveAdd(RIVs.generateRIV(16000, 48, text3, point, 9,
+                                                 SparseRIV::new,
+                                                 Generation.ROLLING));
+      expected.destructiveRemoveZeros();
+      assertEquals(expected,
+                   Shingles.rollingRivettizeText(text3, 9, offset, 16000, 48));
+    }
+    final MapRIV riv3 = Shingles.rollingRivettizeText(text3, 9, 1, 16000, 48);
+    final MapRIV riv4 = Shingles.rollingRivettizeText(text4, 9, 1, 16000, 48);
+    final MapRIV riv1 = Shingles.rollingRivettizeText(text1, 9, 1, 16000, 48);
+    assertTrue(riv3.similarityTo(riv4) > 0.1);
+    assertFalse(riv1.similarityTo(riv4) > 0.1);
+  }
+
   @Test
   public final void testRivettizeText() {
     final int width = 9;
@@ -0,0 +1,116 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.commons.lang3.NotImplementedException;
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+
+public class ByteBufferRIVTests {
+
+  private static final int SIZE = 16000;
+
+  private static SparseRIV document(final String... words) {
+    final SparseRIV riv = SparseRIV.empty(SIZE);
+    for (final String word : words)
+      riv.destructiveAdd(SparseRIV.generate(SIZE, 24, word));
+    riv.destructiveRemoveZeros();
+    return riv;
+  }
+
+  @Test
+  public final void testEveryLayout() {
+    final SparseRIV doc = document("a", "b", "c", "a");
+    final SparseRIV other = document("b", "c", "d");
+    for (final Encoding encoding : Encoding.values())
+      for (final boolean fixed : new boolean[] { false, true })
+        for (final ByteOrder order : new ByteOrder[] {
+            ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN
+        }) {
+          final byte[] bytes = RIVCodec.encode(doc, encoding, fixed);
+          final ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length + 3)
+                                           .order(order);
+          buf.position(3);
+          buf.put(bytes);
+          final ByteBufferRIV view = new ByteBufferRIV(buf, 3);
+          final RIV expected = RIVCodec.decode(bytes);
+          final String label = encoding + " " + fixed + " " + order;
+          assertEquals(label, bytes.length, view.encodedLength());
+          assertEquals(label, expected, view);
+          assertArrayEquals(expected.keyArr(), view.keyArr());
+          assertArrayEquals(expected.valArr(), view.valArr(), 0);
+          for (int i = 0; i < 200; i++) {
+            assertEquals(label, expected.get(i), view.get(i), 0);
+            assertEquals(expected.contains(i), view.contains(i));
+          }
+          for (final int k : expected.keyArr())
+            assertEquals(label, expected.get(k), view.get(k), 0);
+          assertEquals(expected.magnitude(), view.magnitude(), roundingError);
+          assertEquals(expected.dot(other), view.dot(other), roundingError);
+          assertEquals(expected.dot(other), other.dot(view), roundingError);
+          assertEquals(expected.similarityTo(expected),
+                       view.similarityTo(view), roundingError);
+          assertEquals(expected.dot(other.toDense()),
+                       view.dot(other.toDense()), roundingError);
+        }
+  }
+
+  @Test
+  public final void testScan() {
+    final SparseRIV[] docs = new SparseRIV[20];
+    final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = document("w" + i, "w" + (i + 1));
+      RIVCodec.write(docs[i], buf);
+    }
+    buf.flip();
+    for (final SparseRIV doc : docs) {
+      final ByteBufferRIV view = new ByteBufferRIV(buf);
+      assertEquals(doc, view);
+      buf.position(buf.position() + view.encodedLength());
+    }
+    assertFalse(buf.hasRemaining());
+  }
+
+  @Test
+  public final void testArithmeticMakesHeapCopies() {
+    final SparseRIV doc = document("a", "b");
+    final ByteBufferRIV view = new ByteBufferRIV(doc.keyArr(), doc.valArr(),
+                                                 SIZE);
+    assertEquals(doc.add(doc), view.add(view));
+    assertEquals(doc.multiply(2), view.multiply(2));
+    assertEquals(doc.toString(), view.toString());
+    try {
+      view.destructiveAdd(doc);
+      fail("Expected read-only view");
+    } catch (final NotImplementedException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public final void testSerializesAsImmutable() throws IOException,
+                                                ClassNotFoundException {
+    final SparseRIV doc = document("a", "b");
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(new ByteBufferRIV(doc.keyArr(), doc.valArr(), SIZE));
+    }
+    try (ObjectInputStream in = new ObjectInputStream(
+                                                      new ByteArrayInputStream(bytes.toByteArray()))) {
+      final Object read = in.readObject();
+      assertTrue(read instanceof ImmutableRIV);
+      assertEquals(doc, read);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+
+public class CompactDenseRIVTests {
+
+  @Test
+  public final void testMatchesCodec() {
+    final SparseRIV doc = CompactSparseRIVTests.document("a", "bb", "a",
+                                                         "dddd");
+    final SparseRIV other = CompactSparseRIVTests.document("a", "ccc");
+    for (final Encoding encoding : CompactSparseRIVTests.ENCODINGS) {
+      final CompactDenseRIV compact = new CompactDenseRIV(doc, encoding);
+      final DenseRIV expected = RIVCodec.decode(RIVCodec.encode(doc, encoding,
+                                                                true))
+                                        .toDense();
+      assertEquals(doc.size(), compact.size());
+      assertEquals(expected, compact);
+      assertArrayEquals(expected.valArr(), compact.valArr(), 0);
+      assertEquals(expected.magnitude(), compact.magnitude(), roundingError);
+      final RIV[] partners = { other, other.toDense(), new MTJRIV(other),
+                               new MapRIV(other),
+                               new CompactDenseRIV(other, encoding),
+                               new CompactDenseRIV(other, Encoding.FLOAT),
+                               new CompactSparseRIV(other, encoding) };
+      for (final RIV partner : partners) {
+        final String label = encoding + " . " + partner.getClass()
+                                                       .getSimpleName();
+        final RIV exact = new SparseRIV(partner);
+        assertEquals(label, expected.dot(exact), compact.dot(partner),
+                     roundingError);
+        assertEquals(label, expected.dot(exact), partner.dot(compact),
+                     roundingError);
+      }
+      assertTrue(compact.copy() instanceof DenseRIV);
+      assertEquals(expected, compact.copy());
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import org.apache.commons.lang3.NotImplementedException;
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+
+public class CompactSparseRIVTests {
+
+  private static final int SIZE = 16000;
+
+  static final Encoding[] ENCODINGS = { Encoding.FLOAT, Encoding.INT8,
+                                        Encoding.INT16 };
+
+  static SparseRIV document(final String... words) {
+    final SparseRIV riv = SparseRIV.empty(SIZE);
+    for (final String word : words)
+      riv.destructiveAdd(SparseRIV.generate(SIZE, 24, word)
+                                  .multiply(word.length() + 0.25));
+    riv.destructiveRemoveZeros();
+    return riv;
+  }
+
+  @Test
+  public final void testMatchesCodec() {
+    final SparseRIV doc = document("a", "bb", "ccc", "a");
+    final SparseRIV other = document("bb", "ccc", "dddd");
+    for (final Encoding encoding : ENCODINGS) {
+      final CompactSparseRIV compact = new CompactSparseRIV(doc, encoding);
+      final RIV expected = RIVCodec.decode(RIVCodec.encode(doc, encoding,
+                                                           true));
+      assertEquals(encoding, compact.encoding());
+      assertEquals(expected, compact);
+      assertArrayEquals(expected.keyArr(), compact.keyArr());
+      assertArrayEquals(expected.valArr(), compact.valArr(), 0);
+      for (final int k : expected.keyArr())
+        assertEquals(expected.get(k), compact.get(k), 0);
+      assertEquals(expected.magnitude(), compact.magnitude(), roundingError);
+      final RIV[] partners = { other, other.toDense(), new MTJRIV(other),
+                               new MapRIV(other),
+                               new CompactSparseRIV(other, encoding),
+                               new CompactSparseRIV(other, Encoding.FLOAT),
+                               new CompactDenseRIV(other, encoding) };
+      for (final RIV partner : partners) {
+        final String label = encoding + " . " + partner.getClass()
+                                                       .getSimpleName();
+        final RIV exact = new SparseRIV(partner);
+        assertEquals(label, expected.dot(exact), compact.dot(partner),
+                     roundingError);
+        assertEquals(label, expected.dot(exact), partner.dot(compact),
+                     roundingError);
+      }
+      assertEquals(1, compact.similarityTo(compact), roundingError);
+    }
+  }
+
+  @Test
+  public final void testIndexVectorsAreExact() {
+    final RIV word = SparseRIV.generate(SIZE, 48, "word");
+    for (final Encoding encoding : ENCODINGS)
+      assertEquals(word, new CompactSparseRIV(word, encoding));
+  }
+
+  @Test
+  public final void testDropsValuesThatRoundToZero() {
+    final CompactSparseRIV riv = new CompactSparseRIV(new int[] { 1, 2, 3 },
+                                                      new double[] { 1000,
+                                                                     -10,
+                                                                     0.001 },
+                                                      SIZE, Encoding.INT8);
+    assertArrayEquals(new int[] { 1, 2 }, riv.keyArr());
+    assertEquals(0, riv.get(3), 0);
+    assertFalse(riv.contains(3));
+  }
+
+  @Test
+  public final void testReadOnly() {
+    final CompactSparseRIV riv = new CompactSparseRIV(document("a"),
+                                                      Encoding.INT16);
+    try {
+      riv.destructiveAdd(riv);
+      fail("Expected a read-only error.");
+    } catch (final NotImplementedException e) {}
+    final RIV sum = riv.add(riv);
+    assertTrue(sum instanceof SparseRIV);
+    assertEquals(riv.multiply(2), sum);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testLosslessEncodingsRejected() {
+    new CompactSparseRIV(document("a"), Encoding.DOUBLE);
+  }
+}
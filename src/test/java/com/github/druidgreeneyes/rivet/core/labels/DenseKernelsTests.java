@@ -0,0 +1,113 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks whichever kernels this JVM picked against the scalar ones, on
+ * lengths that leave a tail after the last full vector.
+ */
+public class DenseKernelsTests {
+
+  static final int[] LENGTHS = { 0, 1, 3, 7, 8, 17, 64, 1001 };
+
+  final Random random = new Random(1234);
+  final DenseKernels scalar = DenseKernels.SCALAR;
+  final DenseKernels best = DenseKernels.INSTANCE;
+
+  double[] randomArray(final int n) {
+    final double[] a = new double[n];
+    for (int i = 0; i < n; i++)
+      a[i] = random.nextGaussian();
+    return a;
+  }
+
+  int[] randomKeys(final int count, final int size) {
+    final int[] keys = new int[count];
+    for (int i = 0; i < count; i++)
+      keys[i] = random.nextInt(size);
+    return keys;
+  }
+
+  static double tolerance(final int n) {
+    return 1e-12 * Math.max(1, n);
+  }
+
+  @Test
+  public void testElementwise() {
+    for (final int n : LENGTHS) {
+      final double[] a = randomArray(n);
+      final double[] b = randomArray(n);
+      final double[] x = a.clone(), y = a.clone();
+      scalar.add(x, b, n);
+      best.add(y, b, n);
+      assertArrayEquals(x, y, 0);
+      scalar.sub(x, b, n);
+      best.sub(y, b, n);
+      assertArrayEquals(x, y, 0);
+      scalar.scale(x, 2.5);
+      best.scale(y, 2.5);
+      assertArrayEquals(x, y, 0);
+      scalar.divide(x, 3);
+      best.divide(y, 3);
+      assertArrayEquals(x, y, 0);
+    }
+  }
+
+  @Test
+  public void testDot() {
+    for (final int n : LENGTHS) {
+      final double[] a = randomArray(n);
+      final double[] b = randomArray(n);
+      double expected = 0;
+      for (int i = 0; i < n; i++)
+        expected += a[i] * b[i];
+      assertEquals(expected, scalar.dot(a, b, n), tolerance(n));
+      assertEquals(expected, best.dot(a, b, n), tolerance(n));
+      assertEquals(scalar.sumOfSquares(a), best.sumOfSquares(a),
+                   tolerance(n));
+    }
+  }
+
+  @Test
+  public void testGather() {
+    final double[] dense = randomArray(1000);
+    for (final int n : LENGTHS) {
+      final int[] keys = randomKeys(n, dense.length);
+      final double[] vals = randomArray(n);
+      double expected = 0;
+      for (int i = 0; i < n; i++)
+        expected += vals[i] * dense[keys[i]];
+      assertEquals(expected, scalar.gather(dense, keys, vals, n),
+                   tolerance(n));
+      assertEquals(expected, best.gather(dense, keys, vals, n), tolerance(n));
+    }
+  }
+
+  @Test
+  public void testBlocks() {
+    final int n = 333;
+    for (final int rows : new int[] { 0, 1, 4, 6, 9 }) {
+      final double[][] block = new double[rows][];
+      for (int r = 0; r < rows; r++)
+        block[r] = randomArray(n);
+      final double[] query = randomArray(n);
+      final int[] keys = randomKeys(21, n);
+      final double[] vals = randomArray(keys.length);
+      for (final DenseKernels k : new DenseKernels[] { scalar, best }) {
+        final double[] dots = new double[rows];
+        final double[] gathers = new double[rows];
+        k.dots(query, block, n, dots);
+        k.gathers(keys, vals, keys.length, block, gathers);
+        for (int r = 0; r < rows; r++) {
+          assertEquals(scalar.dot(query, block[r], n), dots[r], tolerance(n));
+          assertEquals(scalar.gather(block[r], keys, vals, keys.length),
+                       gathers[r], tolerance(n));
+        }
+      }
+    }
+  }
+}
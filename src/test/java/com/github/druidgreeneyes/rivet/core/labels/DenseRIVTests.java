@@ -169,6 +169,16 @@ public class DenseRIVTests {
                  e);
   }
 
+  @Test
+  public final void testDestructivePermute() {
+    final DenseRIV testRIV4 = new DenseRIV(testPoints, testSize);
+    final Permutations p = Permutations.generate(testSize);
+    for (final int times : new int[] { 1, -1, 7, -30 })
+      assertRIVEquals(testRIV4.permute(p, times),
+                      testRIV4.copy()
+                              .destructivePermute(p, times));
+  }
+
   @Test
   public final void testPermute() {
     final DenseRIV testRIV4 = new DenseRIV(testPoints, testSize);
@@ -192,6 +202,30 @@ public class DenseRIVTests {
     assertEquals(testSize, testRIV0.count());
   }
 
+  @Test
+  public final void testDots() {
+    final DenseRIV[] block = new DenseRIV[7];
+    for (int r = 0; r < block.length; r++)
+      block[r] = new DenseRIV(SparseRIV.generate(testSize, testK, "word" + r)
+                                       .add(SparseRIV.generate(testSize, testK,
+                                                               "word")));
+    final RIV[] queries = { new DenseRIV(block[2]),
+                            SparseRIV.generate(testSize, testK, "word"),
+                            new MapRIV(block[5]) };
+    for (final RIV query : queries) {
+      final double[] dots = DenseRIV.dots(query, block);
+      final double[] sims = DenseRIV.similarities(query, block);
+      for (int r = 0; r < block.length; r++) {
+        assertEquals(query.dot(block[r]), dots[r], e);
+        assertEquals(query.similarityTo(block[r]), sims[r], e);
+      }
+    }
+    assertEquals(1, DenseRIV.similarities(block[2], block)[2], e);
+    assertEquals(0, DenseRIV.similarities(DenseRIV.empty(testSize), block)[0],
+                 0);
+    assertError(q -> DenseRIV.dots(q, block), DenseRIV.empty(testSize + 1));
+  }
+
   @Test
   public final void testToString() {
     final DenseRIV testRIV = new DenseRIV(testPoints, testSize);
@@ -0,0 +1,76 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DotProductTests {
+
+  private static final int SIZE = 16000;
+  private static final int NNZ = 24;
+
+  private static final RIVConstructor[] constructors = {
+      ArrayRIV::new,
+      ByteBufferRIV::new,
+      ColtRIV::new,
+      DenseRIV::new,
+      HPPCRIV::new,
+      ImmutableRIV::new,
+      KoloRIV::new,
+      MapRIV::new,
+      MTJRIV::new,
+      SparseRIV::new
+  };
+
+  private static double naiveDot(final RIV a, final RIV b) {
+    double sum = 0;
+    for (int i = 0; i < SIZE; i++)
+      sum += a.get(i) * b.get(i);
+    return sum;
+  }
+
+  private static RIV make(final RIVConstructor c, final String... words) {
+    final SparseRIV sum = SparseRIV.empty(SIZE);
+    for (final String word : words)
+      sum.destructiveAdd(SparseRIV.generate(SIZE, NNZ, word));
+    return c.make(sum.keyArr(), sum.valArr(), SIZE);
+  }
+
+  @Test
+  public final void testAllPairsMatchNaiveDot() {
+    for (final RIVConstructor ca : constructors)
+      for (final RIVConstructor cb : constructors) {
+        final RIV a = make(ca, "a", "b", "c");
+        final RIV b = make(cb, "b", "c", "d", "e");
+        final double expected = naiveDot(a, b);
+        assertNotEquals(0, expected, roundingError);
+        assertEquals(a.getClass().getSimpleName() + " . "
+                     + b.getClass().getSimpleName(),
+                     expected, a.dot(b), roundingError);
+        assertEquals(expected, b.dot(a), roundingError);
+      }
+  }
+
+  @Test
+  public final void testLopsidedSortedDot() {
+    final RIV small = make(SparseRIV::new, "a");
+    final String[] words = new String[50];
+    for (int i = 0; i < words.length; i++)
+      words[i] = "w" + i;
+    words[17] = "a";
+    final RIV large = make(MTJRIV::new, words);
+    assertEquals(naiveDot(small, large), small.dot(large), roundingError);
+    assertEquals(naiveDot(small, large), large.dot(small), roundingError);
+  }
+
+  @Test
+  public final void testSelfDot() {
+    final RIV a = make(MapRIV::new, "a", "b");
+    assertEquals(a.magnitude() * a.magnitude(), a.dot(a), roundingError);
+    final MapRIV striped = new MapRIV(SIZE, 4);
+    striped.destructiveAdd(a);
+    assertEquals(a.dot(a), striped.dot(a), roundingError);
+    assertEquals(a.dot(a), a.dot(striped), roundingError);
+  }
+}
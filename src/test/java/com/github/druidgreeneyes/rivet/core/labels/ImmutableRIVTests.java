@@ -0,0 +1,111 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+
+public class ImmutableRIVTests {
+
+  private static final int SIZE = 16000;
+
+  private static RIV[] words(final int n) {
+    final RIV[] words = new RIV[n];
+    for (int i = 0; i < n; i++)
+      words[i] = ImmutableRIV.generate(SIZE, 24, "word" + i % 37);
+    return words;
+  }
+
+  private static SparseRIV sum(final RIV first, final RIV[] rest,
+                               final double sign) {
+    final SparseRIV sum = new SparseRIV(first);
+    for (final RIV riv : rest)
+      sum.destructiveAdd(riv.multiply(sign));
+    return sum.destructiveRemoveZeros();
+  }
+
+  private static void assertSorted(final int[] keys) {
+    for (int i = 1; i < keys.length; i++)
+      assertTrue(keys[i - 1] < keys[i]);
+  }
+
+  @Test
+  public final void testAddMany() {
+    final RIV[] words = words(200);
+    final ImmutableRIV first = new ImmutableRIV(SparseRIV.generate(SIZE, 24,
+                                                                   "first"));
+    final ImmutableRIV total = first.add(words);
+    final SparseRIV expected = sum(first, words, 1);
+    assertSorted(total.keyArr());
+    assertArrayEquals(expected.keyArr(), total.keyArr());
+    assertArrayEquals(expected.valArr(), total.valArr(), roundingError);
+    for (final double v : total.valArr())
+      assertNotEquals(0, v, 0);
+  }
+
+  @Test
+  public final void testSubtractMany() {
+    final RIV[] words = words(50);
+    final ImmutableRIV first = ImmutableRIV.empty(SIZE)
+                                           .add(words);
+    final ImmutableRIV difference = first.subtract(words);
+    assertEquals(0, difference.count());
+    final ImmutableRIV half = first.subtract(Arrays.copyOf(words,
+                                                                     25));
+    final SparseRIV expected = sum(first, Arrays.copyOf(words, 25),
+                                   -1);
+    assertArrayEquals(expected.keyArr(), half.keyArr());
+    assertArrayEquals(expected.valArr(), half.valArr(), roundingError);
+  }
+
+  @Test
+  public final void testMixedOperands() {
+    final RIV a = new ImmutableRIV(new int[] { 9, 3, 5 },
+                                   new double[] { 1, 2, 3 }, 10);
+    final RIV b = new MTJRIV(new int[] { 3, 4 }, new double[] { -2, 1 }, 10);
+    final RIV c = new MapRIV(new int[] { 9, 0 }, new double[] { 2, 7 }, 10);
+    final ImmutableRIV ab = ((ImmutableRIV) a).add(b);
+    assertArrayEquals(new int[] { 4, 5, 9 }, ab.keyArr());
+    assertArrayEquals(new double[] { 1, 3, 1 }, ab.valArr(), 0);
+    final ImmutableRIV abc = ((ImmutableRIV) a).subtract(b, c);
+    assertArrayEquals(new int[] { 0, 3, 4, 5, 9 }, abc.keyArr());
+    assertArrayEquals(new double[] { -7, 4, -1, 3, -1 }, abc.valArr(), 0);
+    assertEquals(2, a.get(3), 0);
+    assertEquals(0, a.get(4), 0);
+    assertTrue(a.contains(9));
+  }
+
+  @Test
+  public final void testBuilder() {
+    final RIV[] words = words(100);
+    final ImmutableRIV.Builder builder = new ImmutableRIV.Builder(SIZE);
+    for (final RIV word : words)
+      builder.add(word);
+    final ImmutableRIV built = builder.build();
+    assertEquals(ImmutableRIV.empty(SIZE)
+                             .add(words),
+                 built);
+    assertSorted(built.keyArr());
+    for (final RIV word : words)
+      builder.subtract(word);
+    assertEquals(0, builder.build()
+                           .count());
+    assertEquals(built.get(built.keyArr()[0]) + 5,
+                 builder.add(built)
+                        .add(built.keyArr()[0], 5)
+                        .build()
+                        .get(built.keyArr()[0]),
+                 0);
+    assertEquals(0, builder.clear()
+                           .build()
+                           .count());
+    try {
+      builder.add(ImmutableRIV.empty(SIZE + 1));
+      fail("Expected a size mismatch.");
+    } catch (final SizeMismatchException e) {}
+  }
+}
@@ -0,0 +1,65 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+public class MapRIVTests {
+
+  private static Thread crossAdder(final MapRIV to, final MapRIV from,
+                                   final AtomicReference<Throwable> failure) {
+    final Thread t = new Thread(() -> {
+      try {
+        for (int i = 0; i < 2000; i++)
+          to.destructiveAdd((RIV) from)
+            .destructiveSub((RIV) from);
+      } catch (final Throwable e) {
+        failure.set(e);
+      }
+    });
+    t.setDaemon(true);
+    t.start();
+    return t;
+  }
+
+  @Test
+  public final void testConcurrentCrossAddsDontDeadlock() throws InterruptedException {
+    final MapRIV a = (MapRIV) MapRIV.generate(1600, 48, "a");
+    final MapRIV b = (MapRIV) MapRIV.generate(1600, 48, "b");
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread ab = crossAdder(a, b, failure);
+    final Thread ba = crossAdder(b, a, failure);
+    ab.join(20000);
+    ba.join(20000);
+    assertFalse("a += b and b += a deadlocked", ab.isAlive() || ba.isAlive());
+    assertNull(failure.get());
+  }
+
+  @Test
+  public final void testReadersNeverSeeAHalfPermutedVector() throws InterruptedException {
+    final MapRIV riv = (MapRIV) MapRIV.generate(1600, 48, "riv");
+    final Permutations permutations = Permutations.generate(1600);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread permuter = new Thread(() -> {
+      try {
+        for (int i = 0; i < 2000; i++)
+          riv.destructivePermute(permutations, 1);
+      } catch (final Throwable e) {
+        failure.set(e);
+      }
+    });
+    permuter.setDaemon(true);
+    permuter.start();
+    while (permuter.isAlive()) {
+      final double[] vals = riv.valArr();
+      assertEquals(48, vals.length);
+      for (final double v : vals)
+        assertNotEquals(0, v, 0);
+    }
+    assertNull(failure.get());
+  }
+}
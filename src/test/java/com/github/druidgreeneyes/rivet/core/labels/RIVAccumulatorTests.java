@@ -0,0 +1,127 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+
+public class RIVAccumulatorTests {
+
+  private static final int SIZE = 16000;
+
+  private static RIV[] words(final RIVConstructor constructor) {
+    final RIV[] words = new RIV[60];
+    for (int i = 0; i < words.length; i++)
+      words[i] = RIVs.generateRIV(SIZE, 24, "word" + i % 23, constructor);
+    return words;
+  }
+
+  @Test
+  public final void testEveryType() {
+    final RIVConstructor[] constructors = { SparseRIV::new, ImmutableRIV::new,
+                                            MapRIV::new, ArrayRIV::new,
+                                            DenseRIV::new, MTJRIV::new };
+    final SparseRIV expected = SparseRIV.empty(SIZE);
+    for (final RIV word : words(SparseRIV::new))
+      expected.destructiveAdd(word);
+    expected.destructiveRemoveZeros();
+    final RIVAccumulator acc = new RIVAccumulator(SIZE);
+    for (final RIVConstructor constructor : constructors) {
+      final RIV sum = acc.add(words(constructor))
+                         .finish(constructor);
+      assertEquals(constructor.make(new int[0], new double[0], SIZE)
+                              .getClass(),
+                   sum.getClass());
+      final SparseRIV s = new SparseRIV(sum).destructiveRemoveZeros();
+      assertArrayEquals(expected.keyArr(), s.keyArr());
+      assertArrayEquals(expected.valArr(), s.valArr(), roundingError);
+      assertEquals(0, acc.count());
+    }
+  }
+
+  @Test
+  public final void testWeightsAndReuse() {
+    final RIV a = SparseRIV.generate(SIZE, 24, "a");
+    final RIV b = SparseRIV.generate(SIZE, 24, "b");
+    final RIVAccumulator acc = RIVAccumulator.forThread(SIZE);
+    acc.add(a, 3)
+       .add(b)
+       .add(a, -3);
+    assertEquals(48, acc.count());
+    final RIV res = acc.finish(SparseRIV::new);
+    assertEquals(b, res);
+    acc.add(a);
+    acc.reset();
+    assertEquals(0, acc.count());
+    assertEquals(SparseRIV.empty(SIZE), acc.finish(SparseRIV::new));
+    assertEquals(a.multiply(0.5), acc.add(a)
+                                     .finish(SparseRIV::new, 0.5));
+    assertSame(acc, RIVAccumulator.forThread(SIZE)
+                                  .reset());
+  }
+
+  @Test
+  public final void testSum() {
+    final RIV[] words = words(MapRIV::new);
+    final RIV sum = RIVAccumulator.sum(MapRIV::new, words);
+    assertTrue(sum instanceof MapRIV);
+    assertEquals(sum, RIVAccumulator.sum(SIZE, SparseRIV::new,
+                                         Arrays.asList(words)));
+  }
+
+  @Test
+  public final void testParallelSum() {
+    final int count = RIVAccumulator.SEQUENTIAL_THRESHOLD * 5 + 3;
+    final RIVAccumulator expected = new RIVAccumulator(SIZE);
+    for (int i = 0; i < count; i++)
+      expected.add(SparseRIV.generate(SIZE, 8, "word" + i % 997));
+    final RIV sum = RIVAccumulator.parallelSum(SIZE, MapRIV::new, count,
+                                               i -> SparseRIV.generate(SIZE,
+                                                                       8,
+                                                                       "word"
+                                                                          + i % 997));
+    assertTrue(sum instanceof MapRIV);
+    assertEquals(expected.finish(SparseRIV::new), sum);
+    assertEquals(SparseRIV.generate(SIZE, 8, "word0"),
+                 RIVAccumulator.parallelSum(SIZE, SparseRIV::new, 1,
+                                            i -> SparseRIV.generate(SIZE, 8,
+                                                                    "word0")));
+  }
+
+  @Test
+  public final void testArrayRIVAddsEveryIndex() {
+    final ArrayRIV acc = new ArrayRIV(SIZE);
+    final RIV[] words = words(ArrayRIV::new);
+    acc.destructiveAdd(words);
+    assertEquals(RIVAccumulator.sum(SparseRIV::new, words), acc);
+    acc.destructiveSub(words);
+    assertEquals(0, acc.count());
+  }
+
+  @Test
+  public final void testNestedSums() {
+    final RIV x = new ArrayRIV(new int[] { 1 }, new double[] { 1 }, 100);
+    final RIV y = new ArrayRIV(new int[] { 2 }, new double[] { 1 }, 100);
+    final RIV expected = new SparseRIV(new int[] { 1, 2 },
+                                       new double[] { 3, 6 }, 100);
+    assertEquals(expected, RIVAccumulator.parallelSum(100, ArrayRIV::new, 3,
+                                                      i -> x.add(y, y)));
+    final RIVAccumulator outer = RIVAccumulator.forThread(100)
+                                               .add(x);
+    assertNotSame(outer, RIVAccumulator.forThread(100));
+    assertEquals(RIVAccumulator.sum(SparseRIV::new, x, y),
+                 outer.add(x.add(y, y))
+                      .finish(SparseRIV::new, 0.5));
+    assertSame(outer, RIVAccumulator.forThread(100)
+                                    .reset());
+  }
+
+  @Test(expected = SizeMismatchException.class)
+  public final void testSizeMismatch() {
+    new RIVAccumulator(SIZE).add(SparseRIV.empty(SIZE + 1));
+  }
+}
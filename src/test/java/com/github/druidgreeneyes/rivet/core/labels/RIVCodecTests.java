@@ -0,0 +1,139 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVCodec.Encoding;
+
+public class RIVCodecTests {
+
+  private static final int SIZE = 16000;
+
+  private static final RIVConstructor[] CONSTRUCTORS = {
+      ArrayRIV::new,
+      ColtRIV::new,
+      HPPCRIV::new,
+      KoloRIV::new,
+      MapRIV::new,
+      MTJRIV::new,
+      SparseRIV::new
+  };
+
+  private static RIV document() {
+    final RIV riv = MapRIV.empty(SIZE);
+    for (int i = 0; i < 30; i++)
+      riv.destructiveAdd(MapRIV.generate(SIZE, 24, "word" + i % 20));
+    return riv;
+  }
+
+  @Test
+  public final void testRoundTripEveryType() {
+    final RIV doc = document();
+    for (final RIVConstructor c : CONSTRUCTORS) {
+      final RIV riv = c.make(doc.keyArr(), doc.valArr(), SIZE);
+      final byte[] bytes = RIVCodec.encode(riv);
+      assertEquals(doc.removeZeros(), RIVCodec.decode(bytes));
+      assertEquals(riv.getClass(),
+                   RIVCodec.decode(ByteBuffer.wrap(bytes), c).getClass());
+    }
+  }
+
+  @Test
+  public final void testIntegralValuesAreSmall() {
+    final RIV doc = document().removeZeros();
+    final byte[] bytes = RIVCodec.encode(doc);
+    assertEquals(Encoding.VARINT, RIVCodec.encoding(bytes[1]));
+    // a gap and a value, each usually one or two bytes
+    assertTrue(bytes.length < doc.count() * 3 + 10);
+    assertTrue(bytes.length * 5 < doc.toString().length());
+  }
+
+  @Test
+  public final void testEncodings() {
+    final RIV doc = document().divide(7).removeZeros();
+    final double max = doc.valStream()
+                          .map(Math::abs)
+                          .max()
+                          .getAsDouble();
+    for (final boolean fixed : new boolean[] { false, true }) {
+      assertEquals(Encoding.DOUBLE,
+                   RIVCodec.encoding(RIVCodec.encode(doc)[1]));
+      assertEquals(doc, RIVCodec.decode(RIVCodec.encode(doc, Encoding.DOUBLE,
+                                                        fixed)));
+      assertClose(doc, RIVCodec.decode(RIVCodec.encode(doc, Encoding.FLOAT,
+                                                       fixed)),
+                  max * 1e-7);
+      assertClose(doc, RIVCodec.decode(RIVCodec.encode(doc, Encoding.INT16,
+                                                       fixed)),
+                  max / Short.MAX_VALUE);
+      assertClose(doc, RIVCodec.decode(RIVCodec.encode(doc, Encoding.INT8,
+                                                       fixed)),
+                  max / Byte.MAX_VALUE);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testVarintRejectsFractions() {
+    RIVCodec.encode(document().divide(7), Encoding.VARINT, false);
+  }
+
+  @Test
+  public final void testStream() throws IOException {
+    final RIV a = document();
+    final RIV b = a.divide(3);
+    final RIV empty = MapRIV.empty(SIZE);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RIVCodec.write(a, out);
+    RIVCodec.write(b, Encoding.FLOAT, true, out);
+    RIVCodec.write(empty, out);
+    final InputStream in = new ByteArrayInputStream(out.toByteArray());
+    assertEquals(a.removeZeros(), RIVCodec.read(in, MapRIV::new));
+    assertClose(b, RIVCodec.read(in, SparseRIV::new), 1e-6);
+    assertEquals(0, RIVCodec.read(in, SparseRIV::new).count());
+    try {
+      RIVCodec.read(in, SparseRIV::new);
+      fail("Expected EOF");
+    } catch (final EOFException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public final void testByteBuffer() {
+    final RIV a = document();
+    final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+    RIVCodec.write(a, buf);
+    RIVCodec.write(a, Encoding.INT16, false, buf);
+    buf.flip();
+    assertEquals(a.removeZeros(), RIVCodec.decode(buf));
+    RIVCodec.decode(buf);
+    assertFalse(buf.hasRemaining());
+  }
+
+  @Test
+  public final void testToStringLeavesZeros() {
+    final RIV riv = new HPPCRIV(new int[] { 1, 2 }, new double[] { 0, 1 },
+                                10);
+    assertEquals("2|1.000000 10", riv.toString());
+    assertEquals(2, riv.count());
+    final SparseRIV sparse = new SparseRIV(new int[] { 1, 2 },
+                                           new double[] { 0, 1 }, 10);
+    assertEquals(riv.toString(), sparse.toString());
+    assertEquals(2, sparse.count());
+  }
+
+  private static void assertClose(final RIV expected, final RIV actual,
+                                  final double delta) {
+    assertEquals(expected.size(), actual.size());
+    expected.forEachNZ((i, v) -> assertEquals(v, actual.get(i), delta));
+    actual.forEachNZ((i, v) -> assertEquals(expected.get(i), v, delta));
+  }
+}
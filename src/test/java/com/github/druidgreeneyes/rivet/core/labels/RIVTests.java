@@ -26,6 +26,7 @@ import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
 import com.github.druidgreeneyes.rivet.core.labels.RIV;
 import com.github.druidgreeneyes.rivet.core.labels.VectorElement;
 import com.github.druidgreeneyes.rivet.core.util.IntDoubleConsumer;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
 
 @RunWith(Parameterized.class)
 public class RIVTests {
@@ -246,6 +247,34 @@ public class RIVTests {
     assertEquals(0, riv0.count());
   }
 
+  @Test
+  public void testDestructivePermute() {
+    final Permutations permutations = Permutations.generate(DEFAULT_SIZE);
+    final RIV riv = invokeDefaultConstructor();
+    if (rivClass.equals(ImmutableRIV.class)) {
+      try {
+        riv.destructivePermute(permutations, 1);
+        fail("Expected NotImplementedException");
+      } catch (final NotImplementedException e) {
+        // expected
+      }
+      return;
+    }
+    for (final int times : new int[] { 1, -2, 17, -40 }) {
+      final RIV expected = riv.permute(permutations, times);
+      assertEquals(expected, riv.copy()
+                                .destructivePermute(permutations, times));
+    }
+    assertEquals(riv, riv.copy()
+                         .destructivePermute(permutations, 5)
+                         .destructivePermute(permutations, -5));
+    assertEquals(DEFAULT_MAGNITUDE,
+                 riv.copy()
+                    .destructivePermute(permutations, 3)
+                    .magnitude(),
+                 roundingError);
+  }
+
   @Test
   public void testDivide() {
     final double[] valsHalf = Arrays.stream(DEFAULT_VALS)
@@ -339,6 +368,26 @@ public class RIVTests {
     assertEquals(DEFAULT_MAGNITUDE, riv.magnitude(), roundingError);
   }
 
+  @Test
+  public void testMagnitudeFollowsMutation() {
+    if (rivClass.equals(ImmutableRIV.class))
+      return;
+    final RIV riv = invokeDefaultConstructor();
+    assertEquals(DEFAULT_MAGNITUDE, riv.magnitude(), roundingError);
+    riv.destructiveMult(2);
+    assertEquals(DEFAULT_MAGNITUDE * 2, riv.magnitude(), roundingError);
+    riv.destructiveDiv(4);
+    assertEquals(DEFAULT_MAGNITUDE / 2, riv.magnitude(), roundingError);
+    riv.destructiveAdd(riv.copy());
+    assertEquals(DEFAULT_MAGNITUDE, riv.magnitude(), roundingError);
+    riv.destructiveSub(riv.copy().destructiveDiv(2));
+    assertEquals(DEFAULT_MAGNITUDE / 2, riv.magnitude(), roundingError);
+    riv.put(DEFAULT_TEST_INDEX, 0);
+    final double expected = Math.sqrt(DEFAULT_MAGNITUDE * DEFAULT_MAGNITUDE
+                                      / 4 - 0.25);
+    assertEquals(expected, riv.magnitude(), roundingError);
+  }
+
   @Test
   public void testMultiply() {
     final double[] vals5 = Arrays.stream(DEFAULT_VALS)
@@ -359,6 +408,25 @@ public class RIVTests {
     assertEquals(1.0, rivN.magnitude(), roundingError);
   }
 
+  @Test
+  public void testPermutedDot() {
+    final Permutations permutations = Permutations.generate(DEFAULT_SIZE);
+    final RIV riv = invokeDefaultConstructor();
+    final RIV other = invokeGenerateSizeNNZWord().add(riv.permute(permutations,
+                                                                  3));
+    for (final int times : new int[] { 0, 1, 3, -3, 20 }) {
+      assertEquals(riv.dot(other.permute(permutations, times)),
+                   riv.permutedDot(other, permutations, times),
+                   roundingError);
+      assertEquals(other.dot(riv.permute(permutations, times)),
+                   other.permutedDot(riv, permutations, times),
+                   roundingError);
+      assertEquals(riv.similarityTo(other.permute(permutations, times)),
+                   riv.permutedSimilarity(other, permutations, times),
+                   roundingError);
+    }
+  }
+
   @Test
   public void testPoints() {
     final RIV riv = invokeDefaultConstructor();
@@ -490,7 +558,8 @@ public class RIVTests {
         HPPCRIV.class,
         KoloRIV.class,
         MapRIV.class,
-        MTJRIV.class
+        MTJRIV.class,
+        SparseRIV.class
     });
   }
 
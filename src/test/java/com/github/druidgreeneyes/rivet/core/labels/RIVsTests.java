@@ -0,0 +1,110 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIVs.Generation;
+import com.github.druidgreeneyes.rivet.core.util.RollingHash;
+
+public class RIVsTests {
+
+  private static void assertIndexVector(final RIV riv, final int nnz) {
+    final int[] keys = riv.keyArr();
+    assertEquals(nnz, keys.length);
+    assertEquals(nnz, Arrays.stream(keys).distinct().count());
+    for (final int k : keys)
+      assertTrue(k >= 0 && k < riv.size());
+    assertEquals(nnz, riv.valStream().map(Math::abs).sum(), 0);
+    assertEquals(nnz & 1, riv.valStream().sum(), 0);
+  }
+
+  @Test
+  public final void testLegacyIsTheDefault() {
+    for (final String word : new String[] { "a", "test-word", "zebra" })
+      assertEquals(RIVs.generateRIV(16000, 48, word, SparseRIV::new),
+                   RIVs.generateRIV(16000, 48, word, SparseRIV::new,
+                                    Generation.LEGACY));
+  }
+
+  @Test
+  public final void testRolling() {
+    final RIV a = RIVs.generateRIV(16000, 48, "word", SparseRIV::new,
+                                   Generation.ROLLING);
+    assertIndexVector(a, 48);
+    assertNotEquals(a, RIVs.generateRIV(16000, 48, "word", SparseRIV::new,
+                                        Generation.SPLITMIX));
+    assertNotEquals(a, RIVs.generateRIV(16000, 48, "wrod", SparseRIV::new,
+                                        Generation.ROLLING));
+    final String text = "the quick brown fox jumps over the lazy dog";
+    final int[] points = { -2, 0, 1, 2, 5, 20, 21, 37, 40 };
+    final RIV[] expected = new RIV[points.length];
+    for (int i = 0; i < points.length; i++)
+      expected[i] = RIVs.generateRIV(16000, 48, text, points[i], 6,
+                                     SparseRIV::new, Generation.ROLLING);
+    final RIV[] rolled = new RIV[points.length];
+    final int[] i = { 0 };
+    RollingHash.forEachSeed(text, points, 6,
+                            seed -> rolled[i[0]++] = RIVs.generateRIV(16000,
+                                                                      48,
+                                                                      seed,
+                                                                      SparseRIV::new));
+    assertArrayEquals(expected, rolled);
+    final RIVAccumulator acc = new RIVAccumulator(16000);
+    RollingHash.forEachSeed(text, points, 6, seed -> acc.addGenerated(seed,
+                                                                      48));
+    assertEquals(RIVAccumulator.sum(SparseRIV::new, expected),
+                 acc.finish(SparseRIV::new));
+  }
+
+  @Test
+  public final void testSplitMix() {
+    final RIV a = RIVs.generateRIV(16000, 48, "word", SparseRIV::new,
+                                   Generation.SPLITMIX);
+    assertIndexVector(a, 48);
+    assertEquals(a, RIVs.generateRIV(16000, 48, "word", MapRIV::new,
+                                     Generation.SPLITMIX));
+    assertNotEquals(a, RIVs.generateRIV(16000, 48, "words", SparseRIV::new,
+                                        Generation.SPLITMIX));
+    assertNotEquals(a, RIVs.generateRIV(16000, 48, "word", SparseRIV::new));
+    assertIndexVector(RIVs.generateRIV(10, 7, "odd", SparseRIV::new,
+                                       Generation.SPLITMIX),
+                      7);
+    assertIndexVector(RIVs.generateRIV(10, 10, "full", SparseRIV::new,
+                                       Generation.SPLITMIX),
+                      10);
+  }
+
+  @Test
+  public final void testSplitMixManyNonZeros() {
+    final int[] keys = new int[300];
+    final double[] vals = new double[300];
+    RIVs.splitMix(400, 42, keys, vals);
+    for (int i = 1; i < keys.length; i++)
+      assertTrue(keys[i - 1] < keys[i]);
+    assertIndexVector(new SparseRIV(keys, vals, 400), 300);
+  }
+
+  @Test
+  public final void testSplitMixSpreadsIndices() {
+    final int[] counts = new int[100];
+    for (int w = 0; w < 2000; w++)
+      RIVs.generateRIV(100, 4, "w" + w, SparseRIV::new, Generation.SPLITMIX)
+          .forEachNZ((i, v) -> counts[i]++);
+    // 80 expected per index; a fair generator stays well within this
+    for (final int c : counts)
+      assertTrue(c > 40 && c < 120);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testSplitMixTooManyNonZeros() {
+    RIVs.generateRIV(10, 11, "x", SparseRIV::new, Generation.SPLITMIX);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testRollingNegativeNonZeros() {
+    RIVs.generateRIV(10, -1, "x", SparseRIV::new, Generation.ROLLING);
+  }
+}
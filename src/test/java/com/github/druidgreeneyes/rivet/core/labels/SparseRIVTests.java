@@ -0,0 +1,61 @@
+package com.github.druidgreeneyes.rivet.core.labels;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SparseRIVTests {
+
+  private static final int SIZE = 16000;
+  private static final int NNZ = 24;
+
+  @Test
+  public final void testConstructUnsortedWithDuplicates() {
+    final SparseRIV riv = new SparseRIV(new int[] { 9, 3, 7, 3, 0 },
+                                        new double[] { 1, 2, 3, 4, 5 },
+                                        10);
+    assertArrayEquals(new int[] { 0, 3, 7, 9 }, riv.keyArr());
+    assertArrayEquals(new double[] { 5, 6, 3, 1 }, riv.valArr(),
+                      roundingError);
+  }
+
+  @Test
+  public final void testDestructiveAddMatchesMapRIV() {
+    final SparseRIV sparse = SparseRIV.empty(SIZE);
+    final MapRIV map = MapRIV.empty(SIZE);
+    for (int i = 0; i < 500; i++) {
+      final String word = "word" + i % 137;
+      sparse.destructiveAdd(SparseRIV.generate(SIZE, NNZ, word));
+      map.destructiveAdd(MapRIV.generate(SIZE, NNZ, word));
+    }
+    sparse.destructiveSub(MapRIV.generate(SIZE, NNZ, "word3"));
+    map.destructiveSub(MapRIV.generate(SIZE, NNZ, "word3"));
+    sparse.destructiveRemoveZeros();
+    map.destructiveRemoveZeros();
+    assertArrayEquals(map.points(), sparse.points());
+  }
+
+  @Test
+  public final void testDot() {
+    final RIV a = SparseRIV.generate(SIZE, NNZ, "a")
+                           .add(SparseRIV.generate(SIZE, NNZ, "b"));
+    final RIV b = SparseRIV.generate(SIZE, NNZ, "b")
+                           .add(SparseRIV.generate(SIZE, NNZ, "c"));
+    final RIV mapB = new MapRIV(b);
+    assertEquals(mapB.dot(a), a.dot(b), roundingError);
+    assertEquals(a.dot(mapB), a.dot(b), roundingError);
+  }
+
+  @Test
+  public final void testPutKeepsOrder() {
+    final SparseRIV riv = SparseRIV.empty(10);
+    riv.put(5, 1);
+    riv.put(2, 2);
+    riv.put(8, 3);
+    assertEquals(2.0, riv.put(2, 4), roundingError);
+    assertArrayEquals(new int[] { 2, 5, 8 }, riv.keyArr());
+    assertArrayEquals(new double[] { 4, 1, 3 }, riv.valArr(), roundingError);
+    RIVTests.assertError(IndexOutOfBoundsException.class, riv::get, 10);
+  }
+}
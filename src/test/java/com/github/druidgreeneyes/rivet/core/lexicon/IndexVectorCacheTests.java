@@ -0,0 +1,97 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import static org.junit.Assert.*;
+
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.extras.UntrainedCachedWordsMap;
+import com.github.druidgreeneyes.rivet.core.labels.ImmutableRIV;
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIVs.Generation;
+
+public class IndexVectorCacheTests {
+
+  private static final int SIZE = 16000;
+  private static final int NNZ = 24;
+
+  @Test
+  public final void testGeneratesTheSameVectors() {
+    final IndexVectorCache cache = new IndexVectorCache(SIZE, NNZ, 100);
+    final RIV a = cache.get("word");
+    assertEquals(MapRIV.generate(SIZE, NNZ, "word"), a);
+    assertTrue(a instanceof ImmutableRIV);
+    assertSame(a, cache.get(new StringBuilder("word")));
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(0.5, cache.hitRate(), 0);
+  }
+
+  @Test
+  public final void testStaysBounded() {
+    final IndexVectorCache cache = new IndexVectorCache(SIZE, NNZ,
+                                                        ImmutableRIV::new,
+                                                        Generation.LEGACY,
+                                                        64, 4);
+    for (int i = 0; i < 1000; i++)
+      cache.get("w" + i);
+    assertTrue(cache.count() <= 64);
+    assertEquals(1000 - cache.count(), cache.evictionCount());
+    cache.invalidateAll();
+    assertEquals(0, cache.count());
+  }
+
+  @Test
+  public final void testFrequentWordsSurviveAScan() {
+    final IndexVectorCache cache = new IndexVectorCache(SIZE, NNZ,
+                                                        ImmutableRIV::new,
+                                                        Generation.LEGACY,
+                                                        100, 1);
+    for (int round = 0; round < 2; round++)
+      for (int i = 0; i < 50; i++)
+        cache.get("common" + i);
+    for (int i = 0; i < 2000; i++)
+      cache.get("rare" + i);
+    final long misses = cache.missCount();
+    for (int i = 0; i < 50; i++)
+      cache.get("common" + i);
+    assertEquals(misses, cache.missCount());
+  }
+
+  @Test
+  public final void testConcurrentReadersAgree() {
+    final IndexVectorCache cache = new IndexVectorCache(SIZE, NNZ, 200);
+    IntStream.range(0, 5000)
+             .parallel()
+             .forEach(i -> {
+               final String word = "w" + i % 500;
+               assertEquals(ImmutableRIV.generate(SIZE, NNZ, word),
+                            cache.get(word));
+             });
+    assertEquals(5000, cache.hitCount() + cache.missCount());
+    assertTrue(cache.count() <= 200);
+  }
+
+  @Test
+  public final void testLexiconDoesNotKeepLookups() {
+    final IndexVectorCache cache = new IndexVectorCache(SIZE, NNZ, 100);
+    final LexiconInMemory lexicon = new LexiconInMemory(cache);
+    assertEquals(cache.get("word"), lexicon.getInd("word"));
+    assertEquals(0, lexicon.mappingCount());
+    lexicon.getLex("a");
+    lexicon.getLex("b");
+    lexicon.add("a", cache.get("x"));
+    assertEquals(0, lexicon.getLex("b").count());
+  }
+
+  @Test
+  public final void testRivettizeText() {
+    final IndexVectorCache cache = new IndexVectorCache(SIZE, NNZ, 100);
+    final String text = "the cat sat on the mat";
+    assertEquals(UntrainedCachedWordsMap.rivettizeText(text, SIZE, NNZ),
+                 UntrainedCachedWordsMap.cacheingRivettizeText(cache, text));
+    assertEquals(1, cache.hitCount());
+  }
+}
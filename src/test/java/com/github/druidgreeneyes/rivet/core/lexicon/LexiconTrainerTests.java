@@ -0,0 +1,128 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.vectorpermutations.Permutations;
+
+public class LexiconTrainerTests {
+
+  private static final int SIZE = 2000;
+  private static final int NNZ = 8;
+
+  private static final List<String> CORPUS = IntStream.range(0, 300)
+                                                      .mapToObj(i -> "w"
+                                                                     + i % 5
+                                                                     + " w"
+                                                                     + i % 7
+                                                                     + "  w"
+                                                                     + i % 11
+                                                                     + "\nw"
+                                                                     + i % 13)
+                                                      .collect(Collectors.toList());
+
+  /**
+   * Trains one token at a time, straight into the lexicon.
+   */
+  private static LexiconInMemory naive(final int window,
+                                       final Permutations permutations) {
+    final LexiconInMemory lexicon = new LexiconInMemory(SIZE, NNZ);
+    for (final String doc : CORPUS) {
+      final String[] words = doc.split("\\s+");
+      for (int i = 0; i < words.length; i++) {
+        final RIV context = MapRIV.empty(SIZE);
+        for (int j = Math.max(0, i - window); j < Math.min(words.length,
+                                                           i + window
+                                                                         + 1); j++)
+          if (j != i)
+            context.destructiveAdd(permutations == null
+                                                        ? lexicon.getInd(words[j])
+                                                        : lexicon.getInd(words[j])
+                                                                 .permute(permutations,
+                                                                          j - i));
+        lexicon.add(words[i], context);
+      }
+    }
+    return lexicon;
+  }
+
+  private static void assertSameLexicon(final LexiconInMemory expected,
+                                        final LexiconInMemory actual) {
+    // size() and get() don't behave like a Map's, so neither do keySet()'s
+    assertEquals(new TreeSet<>(Collections.list(expected.keys())),
+                 new TreeSet<>(Collections.list(actual.keys())));
+    for (final String word : expected.keySet()) {
+      final RIV diff = expected.getLex(word)
+                               .subtract(actual.getLex(word));
+      assertEquals(word, 0, diff.magnitude(), roundingError);
+      assertTrue(word, expected.getLex(word)
+                               .magnitude() > 0);
+    }
+  }
+
+  @Test
+  public final void testMatchesTokenAtATimeTraining() {
+    final LexiconInMemory lexicon = new LexiconInMemory(SIZE, NNZ);
+    final long tokens = new LexiconTrainer(lexicon, 2, null, 4,
+                                           7).train(CORPUS.stream());
+    assertEquals(1200, tokens);
+    assertSameLexicon(naive(2, null), lexicon);
+  }
+
+  @Test
+  public final void testPermutations() {
+    final Permutations permutations = Permutations.generate(SIZE);
+    final LexiconInMemory lexicon = new LexiconInMemory(SIZE, NNZ);
+    new LexiconTrainer(lexicon, 3, permutations, 3,
+                       100).train(CORPUS.stream());
+    assertSameLexicon(naive(3, permutations), lexicon);
+  }
+
+  @Test
+  public final void testNewWordsKeepTheirFirstUpdate() {
+    final LexiconInMemory lexicon = new LexiconInMemory(SIZE, NNZ);
+    final RIV riv = MapRIV.generate(SIZE, NNZ, "x");
+    lexicon.add("a", riv);
+    assertEquals(riv, lexicon.getLex("a"));
+    assertEquals(0, lexicon.getLex("b")
+                           .count());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public final void testFailuresAreRethrown() {
+    new LexiconTrainer(new LexiconInMemory(SIZE, NNZ), 2, null, 2,
+                       10).train(Stream.generate(() -> "a b c")
+                                       .limit(10000)
+                                       .map(s -> {
+                                         throw new IllegalStateException();
+                                       }));
+  }
+
+  @Test(timeout = 20000, expected = AssertionError.class)
+  public final void testWorkerErrorsAreRethrown() {
+    final LexiconInMemory lexicon = new LexiconInMemory(SIZE, NNZ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public RIV getInd(final String word) {
+        if (word.equals("boom"))
+          throw new AssertionError(word);
+        return super.getInd(word);
+      }
+    };
+    new LexiconTrainer(lexicon, 2, null, 2,
+                       10).train(Stream.generate(() -> "a boom c")
+                                       .limit(10000));
+  }
+}
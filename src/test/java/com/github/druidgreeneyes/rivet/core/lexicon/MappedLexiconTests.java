@@ -0,0 +1,103 @@
+package com.github.druidgreeneyes.rivet.core.lexicon;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+
+public class MappedLexiconTests {
+
+  private static final int SIZE = 1000;
+  private static final int NNZ = 8;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String word(final int i) {
+    return "word" + i % 1500;
+  }
+
+  private static RIV context(final int i) {
+    return MapRIV.generate(SIZE, NNZ, "context" + i % 37);
+  }
+
+  @Test
+  public final void testConcurrentAddAndReopen() throws IOException {
+    final Path dir = folder.getRoot().toPath().resolve("lexicon");
+    final int adds = 20000;
+    // 1500 words is enough to grow the dictionary a couple of times
+    final HashMap<String, RIV> expected = new HashMap<>();
+    for (int i = 0; i < adds; i++)
+      expected.merge(word(i), context(i), (a, b) -> a.add(b));
+    try (MappedLexicon lexicon = MappedLexicon.create(dir, SIZE, NNZ)) {
+      IntStream.range(0, adds)
+               .parallel()
+               .forEach(i -> lexicon.add(word(i), context(i)));
+      assertEquals(expected.size(), lexicon.count());
+      expected.forEach((w, lex) -> assertEquals(lex.removeZeros(),
+                                                lexicon.getLex(w)));
+    }
+    try (MappedLexicon lexicon = MappedLexicon.open(dir)) {
+      assertEquals(expected.size(), lexicon.count());
+      assertEquals(SIZE, lexicon.size());
+      expected.forEach((w, lex) -> {
+        assertEquals(lex.removeZeros(), lexicon.getLex(w));
+        assertEquals(MapRIV.generate(SIZE, NNZ, w), lexicon.getInd(w));
+      });
+      lexicon.add("word0", context(1));
+      assertEquals(expected.get("word0").add(context(1)).removeZeros(),
+                   lexicon.getLex("word0"));
+    }
+  }
+
+  @Test
+  public final void testLookupAddsWord() throws IOException {
+    try (MappedLexicon lexicon = MappedLexicon.create(folder.newFolder()
+                                                            .toPath(),
+                                                      SIZE, NNZ)) {
+      assertFalse(lexicon.contains("über"));
+      assertEquals(0, lexicon.getLex("über").count());
+      assertTrue(lexicon.contains("über"));
+      assertFalse(lexicon.contains("uber"));
+      assertEquals(1, lexicon.count());
+      assertEquals(NNZ, lexicon.getInd("über").count());
+    }
+  }
+
+  @Test(expected = FileAlreadyExistsException.class)
+  public final void testCreateRefusesExisting() throws IOException {
+    final Path dir = folder.newFolder().toPath();
+    MappedLexicon.create(dir, SIZE, NNZ).close();
+    MappedLexicon.create(dir, SIZE, NNZ);
+  }
+
+  @Test
+  public final void testOpenRejectsOtherFiles() throws IOException {
+    final Path dir = folder.newFolder().toPath();
+    try {
+      MappedLexicon.open(dir);
+      fail();
+    } catch (final IOException e) {
+      assertEquals(0, dir.toFile().list().length);
+    }
+    final byte[] junk = new byte[256];
+    Files.write(dir.resolve("entries"), junk);
+    try {
+      MappedLexicon.open(dir);
+      fail();
+    } catch (final IOException e) {
+      assertArrayEquals(new String[] { "entries" }, dir.toFile().list());
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import static com.github.druidgreeneyes.rivet.core.search.RIVStoreTests.assertMatches;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+public class HNSWIndexTests {
+
+  private static final int SIZE = 4000;
+  private static final int NNZ = 8;
+
+  private static RIV[] documents(final int n, final long seed) {
+    final Random r = new Random(seed);
+    final RIV[] rivs = new RIV[n];
+    for (int d = 0; d < n; d++) {
+      final SparseRIV riv = SparseRIV.empty(SIZE);
+      for (int w = 0; w < 10; w++)
+        riv.destructiveAdd(SparseRIV.generate(SIZE, NNZ,
+                                              "word" + r.nextInt(3000)));
+      rivs[d] = riv;
+    }
+    return rivs;
+  }
+
+  /**
+   * The fraction of the true top k that the index found, judged by
+   * similarity so that ties don't count against it.
+   */
+  private static double recall(final RIVStore exact, final HNSWIndex index,
+                               final RIV[] queries, final int k,
+                               final int ef) {
+    int hits = 0;
+    for (final RIV q : queries) {
+      final Match[] truth = exact.nearest(q, k);
+      final double kth = truth[k - 1].similarity();
+      for (final Match m : index.nearest(q, k, ef))
+        if (m.similarity() >= kth - 1e-6)
+          hits++;
+    }
+    return hits / (double) (queries.length * k);
+  }
+
+  @Test
+  public final void testConcurrentInsertRecall() {
+    final RIV[] rivs = documents(2000, 1);
+    final HNSWIndex index = new HNSWIndex(SIZE, 12, 100);
+    final int[] ids = IntStream.range(0, rivs.length)
+                               .parallel()
+                               .map(i -> index.add(rivs[i]))
+                               .toArray();
+    assertEquals(rivs.length, index.count());
+    assertEquals(rivs.length, IntStream.of(ids).distinct().count());
+    final RIV[] docsById = new RIV[rivs.length];
+    for (int i = 0; i < ids.length; i++)
+      docsById[ids[i]] = rivs[i];
+    final RIVStore exact = new RIVStore(docsById);
+    final RIV[] queries = documents(50, 2);
+    final double low = recall(exact, index, queries, 10, 10);
+    final double high = recall(exact, index, queries, 10, 200);
+    assertTrue("recall at ef=200 was " + high, high >= 0.95);
+    assertTrue(high >= low);
+  }
+
+  @Test
+  public final void testFindsItself() {
+    final RIV[] rivs = documents(500, 3);
+    final HNSWIndex index = new HNSWIndex(SIZE, 8, 100);
+    for (final RIV riv : rivs)
+      index.add(riv);
+    int found = 0;
+    for (int i = 0; i < rivs.length; i++)
+      if (index.nearest(rivs[i], 1)[0].id() == i)
+        found++;
+    assertTrue(found >= rivs.length * 0.98);
+  }
+
+  @Test
+  public final void testSaveLoad() throws IOException {
+    final RIV[] rivs = documents(400, 4);
+    final HNSWIndex index = new HNSWIndex(SIZE);
+    for (final RIV riv : rivs)
+      index.add(riv);
+    index.setEf(32);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    index.save(out);
+    final HNSWIndex loaded = HNSWIndex.load(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(index.count(), loaded.count());
+    assertEquals(index.size(), loaded.size());
+    assertEquals(32, loaded.ef());
+    for (final RIV q : documents(20, 5)) {
+      final Match[] a = index.nearest(q, 5);
+      final Match[] b = loaded.nearest(q, 5);
+      assertMatches(a, b);
+      for (int i = 0; i < a.length; i++)
+        assertEquals(a[i].id(), b[i].id());
+    }
+  }
+
+  @Test
+  public final void testLoadRejectsCorruptStreams() throws IOException {
+    final HNSWIndex index = new HNSWIndex(SIZE, 4, 20);
+    for (final RIV riv : documents(40, 8))
+      index.add(riv);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    index.save(out);
+    final byte[] saved = out.toByteArray();
+    for (int end = 0; end < saved.length; end += 7)
+      try {
+        HNSWIndex.load(new ByteArrayInputStream(saved, 0, end));
+        fail("loaded the first " + end + " bytes");
+      } catch (final IOException e) {}
+    // every int-aligned field overwritten with -1 and with MAX_VALUE; either
+    // it still loads, for a value field, or it throws IOException
+    for (int pos = 0; pos < saved.length; pos += 4)
+      for (final int bad : new int[] { -1, Integer.MAX_VALUE }) {
+        final byte[] corrupt = saved.clone();
+        for (int b = 0; b < 4; b++)
+          corrupt[pos + b] = (byte) (bad >>> 24 - 8 * b);
+        try {
+          final HNSWIndex loaded = HNSWIndex.load(new ByteArrayInputStream(corrupt));
+          if (loaded.size() == SIZE)
+            loaded.nearest(documents(1, 9)[0], 3);
+        } catch (final IOException e) {}
+      }
+  }
+
+  @Test
+  public final void testEmpty() {
+    final HNSWIndex index = new HNSWIndex(SIZE);
+    assertEquals(0, index.nearest(documents(1, 6)[0], 3).length);
+    for (final RIV riv : documents(3, 7))
+      index.add(riv);
+    assertEquals(3, index.nearest(documents(1, 6)[0], Integer.MAX_VALUE,
+                                  Integer.MAX_VALUE).length);
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import static com.github.druidgreeneyes.rivet.core.search.RIVStoreTests.assertMatches;
+import static com.github.druidgreeneyes.rivet.core.search.RIVStoreTests.documents;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+
+public class InvertedIndexTests {
+
+  /**
+   * Exhaustive search, restricted (like the index) to vectors that share a
+   * dimension with the query.
+   */
+  private static Match[] bruteForce(final RIV[] rivs, final RIV query,
+                                    final int k) {
+    final int[] qKeys = query.keyArr();
+    return IntStream.range(0, rivs.length)
+                    .filter(i -> Arrays.stream(rivs[i].keyArr())
+                                       .anyMatch(x -> Arrays.binarySearch(qKeys,
+                                                                          x) >= 0))
+                    .mapToObj(i -> new Match(i, rivs[i].similarityTo(query)))
+                    .sorted()
+                    .limit(k)
+                    .toArray(Match[]::new);
+  }
+
+  @Test
+  public final void testPrunedMatchesExhaustive() {
+    final RIV[] rivs = documents(2000);
+    final InvertedIndex index = new InvertedIndex(rivs);
+    for (int q = 0; q < 40; q++) {
+      // mixed signs, so that pruning has to cope with negative scores
+      final RIV query = rivs[(q * 37 + 11) % rivs.length].copy()
+                                                         .destructiveSub(rivs[q])
+                                                         .destructiveRemoveZeros();
+      for (final int k : new int[] { 1, 10, 100 }) {
+        final Match[] expected = bruteForce(rivs, query, k);
+        assertMatches(expected, index.nearest(query, k, false));
+        assertMatches(expected, index.nearest(query, k));
+      }
+    }
+  }
+
+  @Test
+  public final void testFindsItself() {
+    final RIV[] rivs = documents(500);
+    final InvertedIndex index = new InvertedIndex(Arrays.asList(rivs));
+    final Match[] res = index.nearest(rivs[123], 3);
+    assertEquals(1, res[0].similarity(), 1e-9);
+  }
+
+  @Test
+  public final void testEmptyQuery() {
+    final RIV[] rivs = documents(10);
+    final InvertedIndex index = new InvertedIndex(rivs);
+    assertEquals(0, index.nearest(MapRIV.empty(index.size()), 5).length);
+    assertEquals(0, index.nearest(rivs[0], 0).length);
+    assertEquals(10, index.nearest(rivs[0], Integer.MAX_VALUE).length);
+  }
+}
@@ -0,0 +1,120 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.extras.Shingles;
+import com.github.druidgreeneyes.rivet.core.util.RollingHash;
+
+public class MinHashTests {
+
+  private static final MinHash[] HASHES = { new MinHash(512, 1),
+                                            new MinHash(512, 8, 1, false),
+                                            new MinHash(512, 4, 1, true),
+                                            new MinHash(512, 64, 1, true) };
+
+  /**
+   * Shingles from..from + 999, so that documents d and e have Jaccard
+   * similarity (1000 - |d - e|) / (1000 + |d - e|).
+   */
+  private static long[] shingles(final int from) {
+    return LongStream.range(from, from + 1000)
+                     .toArray();
+  }
+
+  @Test
+  public final void testEstimateTracksJaccard() {
+    for (final MinHash hash : HASHES) {
+      final long[] a = hash.signature(shingles(0));
+      assertEquals(512 * hash.bits() / 64, a.length);
+      assertEquals(512, hash.matches(a, a));
+      assertEquals(1, hash.estimateJaccard(a, a), 0);
+      for (final int shift : new int[] { 50, 200, 500, 1000, 3000 }) {
+        final double exact = Math.max(0, 1000.0 - shift) / (1000 + shift);
+        final double est = hash.estimateJaccard(a,
+                                                hash.signature(shingles(shift)));
+        assertEquals(hash.bits() + "-bit, " + shift, exact, est, 0.08);
+      }
+    }
+  }
+
+  @Test
+  public final void testBuilderMatchesTextSignature() {
+    final String text = "There is nothing like a good joke. And that was nothing like a good joke.";
+    final int[] points = Shingles.findShinglePoints(text, 1, 9);
+    for (final MinHash hash : HASHES) {
+      final MinHash.Builder builder = hash.builder();
+      for (final int p : points)
+        builder.add(RollingHash.seed(text.substring(p, p + 9)));
+      final long[] sig = builder.build();
+      assertArrayEquals(sig, hash.signature(text, points, 9));
+      // repeated shingles don't change the set, and build() starts afresh
+      for (final int p : points)
+        builder.add(RollingHash.seed(text.substring(p, p + 9)))
+               .add(RollingHash.seed(text.substring(p, p + 9)));
+      assertArrayEquals(sig, builder.build());
+    }
+  }
+
+  @Test
+  public final void testOnePermutationShortDocuments() {
+    final MinHash hash = new MinHash(256, 8, 3, true);
+    final long[] few = hash.signature(1, 2, 3);
+    assertArrayEquals(few, hash.signature(3, 2, 1));
+    assertEquals(1, hash.estimateJaccard(few, hash.signature(1, 2, 3)), 0);
+    assertTrue(hash.estimateJaccard(few, hash.signature(4, 5, 6)) < 0.1);
+    final double half = hash.estimateJaccard(hash.signature(1, 2, 3, 4),
+                                             hash.signature(3, 4, 5, 6));
+    assertTrue("estimate " + half, half > 0.05 && half < 0.7);
+    final long[] none = hash.signature();
+    assertEquals(256, hash.matches(none, hash.signature()));
+  }
+
+  @Test
+  public final void testIndexFindsNearDuplicates() {
+    final MinHash hash = new MinHash(128, 8, 7, true);
+    final MinHashIndex index = new MinHashIndex(hash, 32);
+    assertEquals(Math.pow(1.0 / 32, 1.0 / 4), index.threshold(), 1e-12);
+    // clusters of five heavily overlapping documents, far from each other
+    for (int c = 0; c < 20; c++)
+      for (int d = 0; d < 5; d++)
+        assertEquals(c * 5 + d, index.add(hash.signature(shingles(c * 10000
+                                                                  + d * 20))));
+    assertEquals(100, index.count());
+    for (int id = 0; id < 100; id += 7) {
+      assertTrue(Arrays.binarySearch(index.candidates(index.signature(id)),
+                                     id) >= 0);
+      final Match[] found = index.within(index.signature(id), 0.7);
+      assertEquals(id, found[0].id());
+      assertEquals(1, found[0].similarity(), 0);
+      for (final Match m : found)
+        assertEquals(id / 5, m.id() / 5);
+    }
+    final int[][] pairs = index.pairs(0.7);
+    for (final int[] p : pairs) {
+      assertTrue(p[0] < p[1]);
+      assertEquals(p[0] / 5, p[1] / 5);
+    }
+    // 10 pairs within each cluster, all well above 0.7
+    assertTrue(pairs.length > 180);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testBadBits() {
+    new MinHash(64, 3, 0, false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testPartialWords() {
+    new MinHash(12, 4, 0, false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testBadBands() {
+    new MinHashIndex(new MinHash(128, 0), 3);
+  }
+}
@@ -0,0 +1,112 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.exceptions.SizeMismatchException;
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+public class RIVStoreTests {
+
+  private static final int SIZE = 2000;
+  private static final int NNZ = 8;
+
+  /**
+   * Documents made of overlapping runs of words, so that neighbouring
+   * documents are genuinely similar.
+   */
+  static RIV[] documents(final int n) {
+    final RIV[] rivs = new RIV[n];
+    for (int d = 0; d < n; d++) {
+      final MapRIV riv = MapRIV.empty(SIZE);
+      for (int w = 0; w < 12; w++)
+        riv.destructiveAdd(MapRIV.generate(SIZE, NNZ, "word" + (d + w) % 97));
+      rivs[d] = riv;
+    }
+    return rivs;
+  }
+
+  static Match[] bruteForce(final RIV[] rivs, final RIV query, final int k,
+                            final int exclude) {
+    return IntStream.range(0, rivs.length)
+                    .filter(i -> i != exclude)
+                    .mapToObj(i -> new Match(i, rivs[i].similarityTo(query)))
+                    .sorted()
+                    .limit(k)
+                    .toArray(Match[]::new);
+  }
+
+  static void assertMatches(final Match[] expected, final Match[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++)
+      assertEquals(expected[i].similarity(), actual[i].similarity(),
+                   roundingError);
+  }
+
+  @Test
+  public final void testNearestMatchesBruteForce() {
+    final RIV[] rivs = documents(300);
+    final RIVStore store = new RIVStore(rivs);
+    final RIV query = SparseRIV.generate(SIZE, NNZ, "word5")
+                               .add(SparseRIV.generate(SIZE, NNZ, "word6"));
+    assertMatches(bruteForce(rivs, query, 10, -1), store.nearest(query, 10));
+    assertMatches(bruteForce(rivs, rivs[42], 5, 42), store.nearest(42, 5));
+    for (final Match m : store.nearest(42, 5))
+      assertNotEquals(42, m.id());
+  }
+
+  @Test
+  public final void testParallelScan() {
+    // big enough to split into several fork-join tasks
+    final RIV[] rivs = documents(10000);
+    final RIVStore store = new RIVStore(rivs);
+    final Match[] expected = bruteForce(rivs, rivs[7], 20, -1);
+    final Match[] actual = store.nearest(rivs[7], 20);
+    assertMatches(expected, actual);
+    assertEquals(1, actual[0].similarity(), roundingError);
+  }
+
+  @Test
+  public final void testGetAndMagnitude() {
+    final RIV[] rivs = documents(10);
+    final RIVStore store = new RIVStore(Arrays.asList(rivs));
+    assertEquals(10, store.count());
+    assertEquals(SIZE, store.size());
+    for (int i = 0; i < rivs.length; i++) {
+      assertArrayEquals(rivs[i].keyArr(), store.get(i).keyArr());
+      assertEquals(rivs[i].magnitude(), store.magnitude(i), roundingError);
+      assertEquals(1, store.similarity(i, rivs[i]), roundingError);
+    }
+  }
+
+  @Test
+  public final void testKLargerThanStore() {
+    final RIVStore store = new RIVStore(documents(3));
+    final Match[] res = store.nearest(0, 10);
+    assertEquals(2, res.length);
+    assertTrue(Arrays.stream(res)
+                     .map(Match::similarity)
+                     .sorted(Comparator.reverseOrder())
+                     .toArray()[0]
+                     .equals(res[0].similarity()));
+    assertEquals(3, store.nearest(store.get(1), Integer.MAX_VALUE).length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testNegativeK() {
+    new RIVStore(documents(3)).nearest(0, -1);
+  }
+
+  @Test(expected = SizeMismatchException.class)
+  public final void testSizeMismatch() {
+    new RIVStore(documents(3)).nearest(MapRIV.empty(SIZE + 1), 1);
+  }
+}
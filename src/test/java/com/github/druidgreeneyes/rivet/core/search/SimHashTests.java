@@ -0,0 +1,94 @@
+package com.github.druidgreeneyes.rivet.core.search;
+
+import static com.github.druidgreeneyes.rivet.core.search.RIVStoreTests.documents;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.druidgreeneyes.rivet.core.labels.MapRIV;
+import com.github.druidgreeneyes.rivet.core.labels.RIV;
+import com.github.druidgreeneyes.rivet.core.labels.SparseRIV;
+
+public class SimHashTests {
+
+  @Test
+  public final void testSignatureIgnoresRepresentation() {
+    final RIV riv = documents(1)[0];
+    final SimHash hash = new SimHash(128, 7);
+    final long[] sig = hash.signature(riv);
+    assertEquals(2, sig.length);
+    assertArrayEquals(sig, hash.signature(MapRIV.fromString(riv.toString())));
+    assertArrayEquals(sig, hash.signature(riv.multiply(3)));
+    // flipping the vector flips every bit except where a sum came out at 0
+    assertTrue(SimHash.hamming(sig, hash.signature(riv.multiply(-1))) > 0.9
+                                                                    * hash.bits());
+    assertFalse(Arrays.equals(sig, new SimHash(128, 8).signature(riv)));
+  }
+
+  @Test
+  public final void testEstimateTracksSimilarity() {
+    final RIV[] rivs = documents(60);
+    final SimHash hash = new SimHash(2048, 1);
+    double error = 0;
+    int pairs = 0;
+    for (int i = 0; i < rivs.length; i += 3)
+      for (int j = i + 1; j < rivs.length; j += 7) {
+        final double est = hash.estimateSimilarity(hash.signature(rivs[i]),
+                                                   hash.signature(rivs[j]));
+        error += Math.abs(est - rivs[i].similarityTo(rivs[j]));
+        pairs++;
+      }
+    assertTrue("mean error " + error / pairs, error / pairs < 0.05);
+  }
+
+  @Test
+  public final void testMaxDistance() {
+    final SimHash hash = new SimHash(256, 0);
+    assertEquals(0, hash.maxDistance(1));
+    assertEquals(256, hash.maxDistance(-1));
+    assertEquals(128, hash.maxDistance(0));
+    assertTrue(hash.estimateSimilarity(new long[4],
+                                       new long[] { (1L << 20) - 1, 0, 0, 0 }) >= 0.9);
+  }
+
+  @Test
+  public final void testFindsNearDuplicates() {
+    final RIV[] rivs = documents(500);
+    final SimHashIndex index = new SimHashIndex(rivs[0].size());
+    for (final RIV riv : rivs)
+      index.add(riv);
+    for (int i = 0; i < 50; i++) {
+      // a little noise, so the copy is close to but not exactly rivs[i]
+      final SparseRIV near = new SparseRIV(rivs[i]);
+      near.destructiveAdd(SparseRIV.generate(near.size(), 2, "noise" + i));
+      final double sim = near.similarityTo(rivs[i]);
+      final Match[] found = index.within(near, Math.min(sim, 0.8), 16);
+      assertTrue(found.length > 0 && found[0].similarity() >= sim - 1e-9);
+      for (final Match m : found)
+        assertTrue(m.similarity() >= Math.min(sim, 0.8));
+    }
+    final Match[] all = index.nearest(rivs[0], Integer.MAX_VALUE);
+    assertTrue(all.length > 0 && all.length <= index.count());
+    assertEquals(1, all[0].similarity(), 1e-9);
+  }
+
+  @Test
+  public final void testStraddlingBands() {
+    final RIV[] rivs = documents(200);
+    final SimHashIndex index = new SimHashIndex(rivs[0].size(),
+                                                new SimHash(192, 3), 4);
+    for (final RIV riv : rivs)
+      index.add(riv);
+    for (int i = 0; i < rivs.length; i += 11) {
+      assertTrue(Arrays.binarySearch(index.candidates(rivs[i]), i) >= 0);
+      assertEquals(1, index.nearest(rivs[i], 1, 0)[0].similarity(), 1e-9);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testBadBands() {
+    new SimHashIndex(100, new SimHash(256, 0), 3);
+  }
+}
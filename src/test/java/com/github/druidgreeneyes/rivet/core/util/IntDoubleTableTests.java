@@ -0,0 +1,78 @@
+package com.github.druidgreeneyes.rivet.core.util;
+
+import static com.github.druidgreeneyes.rivet.core.util.Util.roundingError;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class IntDoubleTableTests {
+
+  @Test
+  public final void testMatchesHashMap() {
+    final Random r = new Random(0);
+    final IntDoubleTable table = new IntDoubleTable();
+    final HashMap<Integer, Double> map = new HashMap<>();
+    for (int i = 0; i < 20000; i++) {
+      // a small key range forces lots of collisions and reinsertions
+      final int k = r.nextInt(500);
+      switch (r.nextInt(3)) {
+        case 0:
+          table.addTo(k, 1);
+          map.merge(k, 1.0, Double::sum);
+          break;
+        case 1:
+          assertEquals(map.getOrDefault(k, 0.0), table.put(k, i), roundingError);
+          map.put(k, (double) i);
+          break;
+        default:
+          final Double old = map.remove(k);
+          assertEquals(old == null
+                                   ? 0
+                                   : old,
+                       table.remove(k), roundingError);
+      }
+      assertEquals(map.size(), table.size());
+    }
+    map.forEach((k, v) -> assertEquals(v, table.get(k, Double.NaN),
+                                       roundingError));
+    table.forEach((k, v) -> assertTrue(map.containsKey(k)));
+  }
+
+  @Test
+  public final void testRemoveIf() {
+    final IntDoubleTable table = new IntDoubleTable();
+    for (int i = 0; i < 1000; i++)
+      table.put(i, i % 3);
+    assertEquals(334, table.removeIf(v -> v == 0));
+    assertEquals(666, table.size());
+    for (int i = 0; i < 1000; i++)
+      assertEquals(i % 3 != 0, table.containsKey(i));
+  }
+
+  @Test
+  public final void testNegativeKey() {
+    final IntDoubleTable table = new IntDoubleTable();
+    assertFalse(table.containsKey(-1));
+    try {
+      table.put(-1, 1);
+      fail("Negative key was accepted.");
+    } catch (final IllegalArgumentException e) {}
+  }
+
+  @Test
+  public final void testStripedConcurrentAddTo() {
+    final StripedIntDoubleTable table = new StripedIntDoubleTable(8);
+    IntStream.range(0, 80000).parallel().forEach(i -> table.addTo(i % 1000, 1));
+    assertEquals(1000, table.size());
+    final int[] keys = table.keys();
+    Arrays.sort(keys);
+    assertArrayEquals(IntStream.range(0, 1000).toArray(), keys);
+    table.forEach((k, v) -> assertEquals(80, v, roundingError));
+    assertEquals(new StripedIntDoubleTable(table), table);
+  }
+}
@@ -0,0 +1,65 @@
+package com.github.druidgreeneyes.rivet.core.vectorpermutations;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class PermutationsTests {
+
+  @Test
+  public final void testGenerate() {
+    final Permutations p = Permutations.generate(1000, 7);
+    assertArrayEquals(IntStream.range(0, 1000)
+                               .toArray(),
+                      Arrays.stream(p.permute)
+                            .sorted()
+                            .toArray());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, p.inverse[p.permute[i]]);
+      assertEquals(i, p.permute[p.inverse[i]]);
+    }
+    assertTrue(IntStream.range(0, 1000)
+                        .filter(i -> p.permute[i] == i)
+                        .count() < 10);
+  }
+
+  @Test
+  public final void testCached() {
+    assertSame(Permutations.generate(1000), Permutations.generate(1000, 0));
+    assertNotSame(Permutations.generate(1000, 1),
+                  Permutations.generate(1000, 2));
+    assertFalse(Arrays.equals(Permutations.generate(1000, 1).permute,
+                              Permutations.generate(1000, 2).permute));
+    assertEquals(0, Permutations.generate(0).permute.length);
+  }
+
+  @Test
+  public final void testPower() {
+    final Permutations p = Permutations.generate(500, 11);
+    for (final int times : new int[] { 1, 2, 16, 17, 31, 32, 100, 1000 }) {
+      int[] forwards = IntStream.range(0, 500)
+                                .toArray();
+      int[] backwards = forwards.clone();
+      for (int t = 0; t < times; t++)
+        for (int i = 0; i < 500; i++) {
+          forwards[i] = p.permute[forwards[i]];
+          backwards[i] = p.inverse[backwards[i]];
+        }
+      assertArrayEquals(forwards, p.power(times));
+      assertArrayEquals(backwards, p.power(-times));
+    }
+    assertArrayEquals(IntStream.range(0, 500)
+                               .toArray(),
+                      p.power(0));
+    assertSame(p.power(5), p.power(5));
+  }
+
+  @Test
+  public final void testLarge() {
+    final Permutations p = Permutations.generate(1 << 20, 3);
+    assertEquals(1 << 20, p.inverse.length);
+  }
+}